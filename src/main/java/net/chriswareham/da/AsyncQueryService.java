@@ -0,0 +1,102 @@
+/*
+ * @(#) AsyncQueryService.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface is implemented by classes that execute queries
+ * asynchronously. Each query is executed on its own connection, so
+ * independent queries run concurrently. For example, an action can start all
+ * the queries for a page and then wait for the slowest:
+ * <pre>
+ * CompletableFuture&lt;User&gt; user = asyncQueryService.query(userQuery, userExecutor, userCallback);
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; orders = asyncQueryService.listQuery(orderQuery, orderExecutor, orderCallback);
+ * asyncQueryService.await(user, orders);
+ * </pre>
+ *
+ * @author Chris Wareham
+ */
+public interface AsyncQueryService {
+    /**
+     * Execute a query that returns a list of results.
+     *
+     * @param <T> the type of results to return
+     * @param query the query to execute
+     * @param callback the callback executed for each result
+     * @return a future for the results
+     */
+    <T> CompletableFuture<List<T>> listQuery(String query, QueryCallback<T> callback);
+
+    /**
+     * Execute a query that returns a list of results.
+     *
+     * @param <T> the type of results to return
+     * @param query the query to execute
+     * @param executor the query executor
+     * @param callback the callback executed for each result
+     * @return a future for the results
+     */
+    <T> CompletableFuture<List<T>> listQuery(String query, QueryExecutor executor, QueryCallback<T> callback);
+
+    /**
+     * Execute a query that returns a single result.
+     *
+     * @param <T> the type of result to return
+     * @param query the query to execute
+     * @param callback the callback executed for a result
+     * @return a future for the result
+     */
+    <T> CompletableFuture<T> query(String query, QueryCallback<T> callback);
+
+    /**
+     * Execute a query that returns a single result.
+     *
+     * @param <T> the type of result to return
+     * @param query the query to execute
+     * @param executor the query executor
+     * @param callback the callback executed for a result
+     * @return a future for the result
+     */
+    <T> CompletableFuture<T> query(String query, QueryExecutor executor, QueryCallback<T> callback);
+
+    /**
+     * Execute an update.
+     *
+     * @param update the update to execute
+     * @return a future for the number of rows updated
+     */
+    CompletableFuture<Integer> update(String update);
+
+    /**
+     * Execute an update.
+     *
+     * @param update the update to execute
+     * @param executor the update executor
+     * @return a future for the number of rows updated
+     */
+    CompletableFuture<Integer> update(String update, UpdateExecutor executor);
+
+    /**
+     * Wait for queries to complete.
+     *
+     * @param futures the futures for the queries
+     * @throws QueryException if a query fails, or the wait is interrupted
+     */
+    void await(CompletableFuture<?>... futures) throws QueryException;
+
+    /**
+     * Wait for a query to complete and get its result.
+     *
+     * @param <T> the type of result to return
+     * @param future the future for the query
+     * @return the result
+     * @throws QueryException if the query fails, or the wait is interrupted
+     */
+    <T> T join(CompletableFuture<T> future) throws QueryException;
+}
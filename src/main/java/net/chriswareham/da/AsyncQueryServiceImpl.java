@@ -0,0 +1,359 @@
+/*
+ * @(#) AsyncQueryServiceImpl.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import net.chriswareham.di.LifecycleComponent;
+import net.chriswareham.di.Required;
+
+/**
+ * This class implements methods that execute queries asynchronously, by
+ * delegating to a query service on a bounded pool of threads. The pool is
+ * sized to the maximum number of active connections of the data source, if
+ * one is set and it is bounded, as more threads would only wait for a
+ * connection. When the pool and its queue are full, a query is executed by
+ * the calling thread instead, which slows down callers rather than failing
+ * their queries. Queries that are submitted or still pending when the service
+ * is stopped fail with a query exception, so waiting on them never blocks
+ * forever.
+ *
+ * @author Chris Wareham
+ */
+public class AsyncQueryServiceImpl implements AsyncQueryService, LifecycleComponent {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(AsyncQueryServiceImpl.class);
+    /**
+     * The default number of threads.
+     */
+    private static final int DEFAULT_THREADS = 8;
+    /**
+     * The default size of the queue of pending queries.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * The query service.
+     */
+    private QueryService queryService;
+    /**
+     * The optional data source to size the pool of threads to.
+     */
+    private DataSourceImpl dataSource;
+    /**
+     * The number of threads, if the pool is not sized to the data source.
+     */
+    private int threads = DEFAULT_THREADS;
+    /**
+     * The size of the queue of pending queries.
+     */
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    /**
+     * The executor that executes queries.
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * Set the query service.
+     *
+     * @param qs the query service
+     */
+    @Required
+    public void setQueryService(final QueryService qs) {
+        queryService = qs;
+    }
+
+    /**
+     * Set the optional data source to size the pool of threads to.
+     *
+     * @param ds the data source to size the pool of threads to
+     */
+    public void setDataSource(final DataSourceImpl ds) {
+        dataSource = ds;
+    }
+
+    /**
+     * Set the number of threads, if the pool is not sized to the data source.
+     *
+     * @param t the number of threads
+     */
+    public void setThreads(final int t) {
+        threads = t;
+    }
+
+    /**
+     * Set the size of the queue of pending queries.
+     *
+     * @param qs the size of the queue of pending queries
+     */
+    public void setQueueSize(final int qs) {
+        queueSize = qs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Service has already been started");
+        }
+
+        int poolSize = dataSource != null && dataSource.getMaxActive() > 0 ? dataSource.getMaxActive() : threads;
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("start(): starting service with threads:[" + poolSize + "]");
+        }
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), new QueryThreadFactory(), new QueryRejectedHandler());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        if (executor == null) {
+            throw new IllegalStateException("Service has already been stopped");
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                List<Runnable> pending = executor.shutdownNow();
+                LOGGER.warn("stop(): abandoning pending queries:[" + pending.size() + "]");
+                abandon(pending);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            abandon(executor.shutdownNow());
+        }
+
+        executor = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<List<T>> listQuery(final String query, final QueryCallback<T> callback) {
+        return submit(() -> queryService.listQuery(query, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<List<T>> listQuery(final String query, final QueryExecutor queryExecutor, final QueryCallback<T> callback) {
+        return submit(() -> queryService.listQuery(query, queryExecutor, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<T> query(final String query, final QueryCallback<T> callback) {
+        return submit(() -> queryService.query(query, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<T> query(final String query, final QueryExecutor queryExecutor, final QueryCallback<T> callback) {
+        return submit(() -> queryService.query(query, queryExecutor, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Integer> update(final String update) {
+        return submit(() -> queryService.update(update));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Integer> update(final String update, final UpdateExecutor updateExecutor) {
+        return submit(() -> queryService.update(update, updateExecutor));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void await(final CompletableFuture<?>... futures) throws QueryException {
+        for (CompletableFuture<?> future : futures) {
+            join(future);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T join(final CompletableFuture<T> future) throws QueryException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("Interrupted waiting for query to complete", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof QueryException) {
+                throw (QueryException) cause;
+            }
+            throw new QueryException("Error executing query", cause);
+        }
+    }
+
+    /**
+     * Submit a query to the executor.
+     *
+     * @param <T> the type of result to return
+     * @param task the query
+     * @return a future for the result
+     */
+    private <T> CompletableFuture<T> submit(final QueryTask<T> task) {
+        ThreadPoolExecutor e = executor;
+        if (e == null) {
+            throw new IllegalStateException("Service has not been started");
+        }
+        QueryRunnable<T> runnable = new QueryRunnable<>(task);
+        e.execute(runnable);
+        return runnable.future;
+    }
+
+    /**
+     * Fail queries that were submitted to the executor but will not be
+     * executed.
+     *
+     * @param runnables the queries
+     */
+    private static void abandon(final List<Runnable> runnables) {
+        for (Runnable runnable : runnables) {
+            ((QueryRunnable<?>) runnable).abandon();
+        }
+    }
+
+    /**
+     * This interface is implemented by queries submitted to the executor.
+     *
+     * @param <T> the type of result to return
+     */
+    private interface QueryTask<T> {
+        /**
+         * Execute the query.
+         *
+         * @return the result
+         * @throws QueryException if an error occurs
+         */
+        T execute() throws QueryException;
+    }
+
+    /**
+     * This class provides a query submitted to the executor, which completes
+     * a future with the result of the query.
+     *
+     * @param <T> the type of result to return
+     */
+    private static final class QueryRunnable<T> implements Runnable {
+        /**
+         * The query.
+         */
+        private final QueryTask<T> task;
+        /**
+         * The future for the result.
+         */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * Construct an instance of the query.
+         *
+         * @param t the query
+         */
+        QueryRunnable(final QueryTask<T> t) {
+            task = t;
+        }
+
+        /**
+         * Execute the query and complete the future. An error completes the
+         * future before it is rethrown.
+         */
+        @Override
+        public void run() {
+            try {
+                future.complete(task.execute());
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+                if (throwable instanceof Error) {
+                    throw (Error) throwable;
+                }
+            }
+        }
+
+        /**
+         * Fail the query as it will not be executed.
+         */
+        public void abandon() {
+            future.completeExceptionally(new QueryException("Query abandoned as the service has been stopped"));
+        }
+    }
+
+    /**
+     * This class provides a handler for queries the executor cannot accept.
+     * If the executor is full the query is executed by the calling thread,
+     * and if it has been shut down the query fails.
+     */
+    private static final class QueryRejectedHandler implements RejectedExecutionHandler {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor e) {
+            if (e.isShutdown()) {
+                ((QueryRunnable<?>) runnable).abandon();
+            } else {
+                runnable.run();
+            }
+        }
+    }
+
+    /**
+     * This class provides a factory for daemon threads that execute queries.
+     */
+    private static final class QueryThreadFactory implements ThreadFactory {
+        /**
+         * The number of threads created.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "AsyncQueryService-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
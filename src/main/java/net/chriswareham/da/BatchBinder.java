@@ -0,0 +1,30 @@
+/*
+ * @(#) BatchBinder.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * This interface is implemented by classes that bind objects to the
+ * parameters of a batched update.
+ *
+ * @author Chris Wareham
+ * @param <T> the type of objects to bind
+ */
+public interface BatchBinder<T> {
+    /**
+     * Bind an object to the parameters of a statement. The statement is added
+     * to the batch by the caller, so implementations should only set the
+     * parameters.
+     *
+     * @param statement the statement to populate
+     * @param obj the object to bind
+     * @throws SQLException if an error occurs
+     */
+    void bind(PreparedStatement statement, T obj) throws SQLException;
+}
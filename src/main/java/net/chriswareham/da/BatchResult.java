@@ -0,0 +1,136 @@
+/*
+ * @(#) BatchResult.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class provides a bean that stores the outcome of a batched update.
+ * Rows are identified by their zero based position in the objects passed to
+ * the update.
+ *
+ * @author Chris Wareham
+ */
+public class BatchResult {
+    /**
+     * The number of rows executed.
+     */
+    private int rowCount;
+    /**
+     * The number of rows updated.
+     */
+    private int updateCount;
+    /**
+     * The number of rows committed before the update finished.
+     */
+    private int committedRowCount;
+    /**
+     * The positions of the rows that failed.
+     */
+    private final List<Integer> failedRows = new ArrayList<>();
+    /**
+     * Whether the update stopped at the first failure.
+     */
+    private boolean aborted;
+
+    /**
+     * Get the number of rows executed, including any that failed.
+     *
+     * @return the number of rows executed
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the number of rows updated, as reported by the driver. Rows for which
+     * the driver does not report a count are not included.
+     *
+     * @return the number of rows updated
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Get the number of rows committed before the update finished. This is
+     * only non-zero for updates that commit a transaction part of the way
+     * through.
+     *
+     * @return the number of rows committed before the update finished
+     */
+    public int getCommittedRowCount() {
+        return committedRowCount;
+    }
+
+    /**
+     * Get the positions of the rows that failed.
+     *
+     * @return the positions of the rows that failed
+     */
+    public List<Integer> getFailedRows() {
+        return Collections.unmodifiableList(failedRows);
+    }
+
+    /**
+     * Get whether any rows failed.
+     *
+     * @return whether any rows failed
+     */
+    public boolean hasFailures() {
+        return !failedRows.isEmpty();
+    }
+
+    /**
+     * Get whether the update stopped at the first failure, which happens when
+     * it is part of a transaction. The transaction is aborted, and rows after
+     * the failure were not executed.
+     *
+     * @return whether the update stopped at the first failure
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Record a row that succeeded.
+     *
+     * @param count the update count reported by the driver
+     */
+    void succeeded(final int count) {
+        ++rowCount;
+        if (count > 0) {
+            updateCount += count;
+        }
+    }
+
+    /**
+     * Record a row that failed.
+     *
+     * @param row the position of the row
+     */
+    void failed(final int row) {
+        ++rowCount;
+        failedRows.add(row);
+    }
+
+    /**
+     * Record that the rows executed so far have been committed.
+     */
+    void committed() {
+        committedRowCount = rowCount;
+    }
+
+    /**
+     * Record that the update stopped at the first failure.
+     */
+    void aborted() {
+        aborted = true;
+    }
+}
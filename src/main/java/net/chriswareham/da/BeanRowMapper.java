@@ -0,0 +1,442 @@
+/*
+ * @(#) BeanRowMapper.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class provides a query callback that maps each row to a new instance
+ * of a bean. Columns are matched to bean properties by name, ignoring case and
+ * underscores, so a column labelled <tt>first_name</tt> populates the
+ * <tt>firstName</tt> property. Columns without a matching property are
+ * ignored.
+ * <p>
+ * The setters are found once, when the mapper is created, and are called
+ * through method handles. The columns are matched to the setters once per
+ * result set, using its meta data, and each row is then read by column index.
+ * Primitive properties are read with the primitive getters of the result set,
+ * so they are not boxed, and are left at their default values if the column
+ * is null.
+ * <p>
+ * A mapper can be shared between threads, but is fastest when each result set
+ * is read by a single thread.
+ *
+ * @author Chris Wareham
+ * @param <T> the type of bean
+ */
+public class BeanRowMapper<T> implements QueryCallback<T> {
+    /**
+     * The kind of a boolean property.
+     */
+    private static final int BOOLEAN = 0;
+    /**
+     * The kind of a byte property.
+     */
+    private static final int BYTE = 1;
+    /**
+     * The kind of a short property.
+     */
+    private static final int SHORT = 2;
+    /**
+     * The kind of an int property.
+     */
+    private static final int INT = 3;
+    /**
+     * The kind of a long property.
+     */
+    private static final int LONG = 4;
+    /**
+     * The kind of a float property.
+     */
+    private static final int FLOAT = 5;
+    /**
+     * The kind of a double property.
+     */
+    private static final int DOUBLE = 6;
+    /**
+     * The kind of a string property.
+     */
+    private static final int STRING = 7;
+    /**
+     * The kind of a big decimal property.
+     */
+    private static final int BIG_DECIMAL = 8;
+    /**
+     * The kind of a timestamp or date property.
+     */
+    private static final int TIMESTAMP = 9;
+    /**
+     * The kind of a byte array property.
+     */
+    private static final int BYTES = 10;
+    /**
+     * The kind of a boxed primitive property.
+     */
+    private static final int BOXED = 11;
+    /**
+     * The kind of any other property, which is read as an object of the type
+     * of the property.
+     */
+    private static final int OBJECT = 12;
+
+    /**
+     * The type of bean.
+     */
+    private final Class<T> type;
+    /**
+     * The bean constructor, adapted to return an object.
+     */
+    private final MethodHandle constructor;
+    /**
+     * The bean properties, keyed on normalised name.
+     */
+    private final Map<String, Property> properties = new HashMap<>();
+    /**
+     * The columns of the last result set read.
+     */
+    private volatile Mapping mapping;
+
+    /**
+     * Construct an instance of the mapper.
+     *
+     * @param t the type of bean, which must have a public no argument
+     * constructor
+     */
+    public BeanRowMapper(final Class<T> t) {
+        type = t;
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            constructor = lookup.findConstructor(t, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            throw new IllegalArgumentException("Bean class " + t.getName() + " does not have a public no argument constructor", exception);
+        }
+
+        for (Method method : t.getMethods()) {
+            String name = method.getName();
+            if (name.length() > 3 && name.startsWith("set") && method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())) {
+                String key = normalise(name.substring(3));
+                if (!properties.containsKey(key)) {
+                    try {
+                        properties.put(key, new Property(method.getParameterTypes()[0], lookup.unreflect(method)));
+                    } catch (IllegalAccessException exception) {
+                        throw new IllegalArgumentException("Setter " + name + " of bean class " + t.getName() + " is not accessible", exception);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+        Mapping m = mapping;
+        if (m == null || m.resultSet.get() != resultSet) {
+            m = map(resultSet);
+            mapping = m;
+        }
+
+        try {
+            Object bean = (Object) constructor.invokeExact();
+            for (Column column : m.columns) {
+                column.read(resultSet, bean);
+            }
+            return type.cast(bean);
+        } catch (SQLException | RuntimeException | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new SQLException("Failed to map row to " + type.getName(), throwable);
+        }
+    }
+
+    /**
+     * Match the columns of a result set to the bean properties.
+     *
+     * @param resultSet the result set
+     * @return the columns that match bean properties
+     * @throws SQLException if an error occurs
+     */
+    private Mapping map(final ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int count = metaData.getColumnCount();
+        List<Column> columns = new ArrayList<>(count);
+        for (int i = 1; i <= count; ++i) {
+            Property property = properties.get(normalise(metaData.getColumnLabel(i)));
+            if (property != null) {
+                columns.add(new Column(i, property));
+            }
+        }
+        return new Mapping(resultSet, columns.toArray(new Column[columns.size()]));
+    }
+
+    /**
+     * Normalise a property or column name.
+     *
+     * @param name the name
+     * @return the name in lower case with any underscores removed
+     */
+    private static String normalise(final String name) {
+        return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Get the kind of a property type.
+     *
+     * @param t the property type
+     * @return the kind of the property type
+     */
+    private static int kind(final Class<?> t) {
+        if (t == boolean.class) {
+            return BOOLEAN;
+        }
+        if (t == byte.class) {
+            return BYTE;
+        }
+        if (t == short.class) {
+            return SHORT;
+        }
+        if (t == int.class) {
+            return INT;
+        }
+        if (t == long.class) {
+            return LONG;
+        }
+        if (t == float.class) {
+            return FLOAT;
+        }
+        if (t == double.class) {
+            return DOUBLE;
+        }
+        if (t == String.class) {
+            return STRING;
+        }
+        if (t == BigDecimal.class) {
+            return BIG_DECIMAL;
+        }
+        if (t == Timestamp.class || t == Date.class) {
+            return TIMESTAMP;
+        }
+        if (t == byte[].class) {
+            return BYTES;
+        }
+        if (t == Boolean.class || t == Byte.class || t == Short.class || t == Integer.class || t == Long.class || t == Float.class || t == Double.class) {
+            return BOXED;
+        }
+        return OBJECT;
+    }
+
+    /**
+     * This class provides a bean property.
+     */
+    private static final class Property {
+        /**
+         * The type of the property.
+         */
+        private final Class<?> type;
+        /**
+         * The kind of the property.
+         */
+        private final int kind;
+        /**
+         * The setter, adapted to take an object and either the primitive type
+         * of the property or an object.
+         */
+        private final MethodHandle setter;
+
+        /**
+         * Construct an instance of the property.
+         *
+         * @param t the type of the property
+         * @param s the setter
+         */
+        private Property(final Class<?> t, final MethodHandle s) {
+            type = t;
+            kind = kind(t);
+            Class<?> parameterType = t.isPrimitive() ? t : Object.class;
+            setter = s.asType(MethodType.methodType(void.class, Object.class, parameterType));
+        }
+    }
+
+    /**
+     * This class provides a column of a result set that matches a bean
+     * property.
+     */
+    private static final class Column {
+        /**
+         * The index of the column.
+         */
+        private final int index;
+        /**
+         * The kind of the property.
+         */
+        private final int kind;
+        /**
+         * The type of the property.
+         */
+        private final Class<?> type;
+        /**
+         * The setter of the property.
+         */
+        private final MethodHandle setter;
+
+        /**
+         * Construct an instance of the column.
+         *
+         * @param i the index of the column
+         * @param p the property
+         */
+        private Column(final int i, final Property p) {
+            index = i;
+            kind = p.kind;
+            type = p.type;
+            setter = p.setter;
+        }
+
+        /**
+         * Read the column of the current row into a bean.
+         *
+         * @param rs the result set
+         * @param bean the bean
+         * @throws Throwable if an error occurs
+         */
+        private void read(final ResultSet rs, final Object bean) throws Throwable {
+            switch (kind) {
+            case BOOLEAN:
+                boolean z = rs.getBoolean(index);
+                if (z || !rs.wasNull()) {
+                    setter.invokeExact(bean, z);
+                }
+                break;
+            case BYTE:
+                byte b = rs.getByte(index);
+                if (b != 0 || !rs.wasNull()) {
+                    setter.invokeExact(bean, b);
+                }
+                break;
+            case SHORT:
+                short s = rs.getShort(index);
+                if (s != 0 || !rs.wasNull()) {
+                    setter.invokeExact(bean, s);
+                }
+                break;
+            case INT:
+                int i = rs.getInt(index);
+                if (i != 0 || !rs.wasNull()) {
+                    setter.invokeExact(bean, i);
+                }
+                break;
+            case LONG:
+                long j = rs.getLong(index);
+                if (j != 0L || !rs.wasNull()) {
+                    setter.invokeExact(bean, j);
+                }
+                break;
+            case FLOAT:
+                float f = rs.getFloat(index);
+                if (f != 0.0f || !rs.wasNull()) {
+                    setter.invokeExact(bean, f);
+                }
+                break;
+            case DOUBLE:
+                double d = rs.getDouble(index);
+                if (d != 0.0 || !rs.wasNull()) {
+                    setter.invokeExact(bean, d);
+                }
+                break;
+            case STRING:
+                setter.invokeExact(bean, (Object) rs.getString(index));
+                break;
+            case BIG_DECIMAL:
+                setter.invokeExact(bean, (Object) rs.getBigDecimal(index));
+                break;
+            case TIMESTAMP:
+                setter.invokeExact(bean, (Object) rs.getTimestamp(index));
+                break;
+            case BYTES:
+                setter.invokeExact(bean, (Object) rs.getBytes(index));
+                break;
+            case BOXED:
+                setter.invokeExact(bean, readBoxed(rs));
+                break;
+            default:
+                setter.invokeExact(bean, rs.getObject(index, type));
+                break;
+            }
+        }
+
+        /**
+         * Read the column of the current row as a boxed primitive.
+         *
+         * @param rs the result set
+         * @return the boxed primitive, or null if the column is null
+         * @throws SQLException if an error occurs
+         */
+        private Object readBoxed(final ResultSet rs) throws SQLException {
+            Object value;
+            if (type == Integer.class) {
+                value = rs.getInt(index);
+            } else if (type == Long.class) {
+                value = rs.getLong(index);
+            } else if (type == Double.class) {
+                value = rs.getDouble(index);
+            } else if (type == Boolean.class) {
+                value = rs.getBoolean(index);
+            } else if (type == Float.class) {
+                value = rs.getFloat(index);
+            } else if (type == Short.class) {
+                value = rs.getShort(index);
+            } else {
+                value = rs.getByte(index);
+            }
+            return rs.wasNull() ? null : value;
+        }
+    }
+
+    /**
+     * This class provides the columns of a result set that match bean
+     * properties.
+     */
+    private static final class Mapping {
+        /**
+         * The result set.
+         */
+        private final WeakReference<ResultSet> resultSet;
+        /**
+         * The columns that match bean properties.
+         */
+        private final Column[] columns;
+
+        /**
+         * Construct an instance of the mapping.
+         *
+         * @param rs the result set
+         * @param c the columns that match bean properties
+         */
+        private Mapping(final ResultSet rs, final Column[] c) {
+            resultSet = new WeakReference<>(rs);
+            columns = c;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * @(#) BulkCacheLoader.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * This interface is implemented by classes that load objects that are not
+ * cached, and that can load many objects more efficiently than loading each
+ * one individually.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public interface BulkCacheLoader<I, T> extends CacheLoader<I, T> {
+    /**
+     * Load objects. Objects that do not exist should be omitted from the
+     * returned map, in which case nothing is cached for them.
+     *
+     * @param ids the ids of the objects to load
+     * @return the objects, keyed on id
+     * @throws QueryException if an error occurs
+     */
+    Map<I, T> loadAll(Collection<I> ids) throws QueryException;
+}
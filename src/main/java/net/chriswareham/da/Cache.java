@@ -6,6 +6,9 @@
 
 package net.chriswareham.da;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * This interface is implemented by classes that support the storing and
  * fetching of objects from a cache.
@@ -23,6 +26,14 @@ public interface Cache<I, T> {
      */
     T fetch(I id);
 
+    /**
+     * Fetches objects.
+     *
+     * @param ids the ids of the objects to fetch
+     * @return the objects that are cached, keyed on id
+     */
+    Map<I, T> fetchAll(Collection<I> ids);
+
     /**
      * Stores an object.
      *
@@ -6,12 +6,23 @@
 
 package net.chriswareham.da;
 
+import java.io.Serializable;
+
 /**
  * This class provides a bean that stores meta data about a cache item.
  *
  * @author Chris Wareham
  */
-public class CacheItem {
+public class CacheItem implements Serializable {
+    /**
+     * The default maximum number of items whose meta data is listed.
+     */
+    public static final int DEFAULT_LIMIT = 100;
+    /**
+     * The serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The size of the cached item in bytes.
      */
@@ -30,6 +41,17 @@ public class CacheItem {
         byteCount = bc;
     }
 
+    /**
+     * Construct an instance of cache item class.
+     *
+     * @param bc the size of the cached item in bytes
+     * @param rc the number of times the cached item has been referenced
+     */
+    public CacheItem(final long bc, final long rc) {
+        byteCount = bc;
+        referenceCount = rc;
+    }
+
     /**
      * Get the size of the cached item in bytes.
      *
@@ -0,0 +1,27 @@
+/*
+ * @(#) CacheLoader.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by classes that load objects that are not
+ * cached.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public interface CacheLoader<I, T> {
+    /**
+     * Load an object. If the object does not exist then null should be
+     * returned, in which case nothing is cached.
+     *
+     * @param id the id of the object to load
+     * @return the object, or null if it does not exist
+     * @throws QueryException if an error occurs
+     */
+    T load(I id) throws QueryException;
+}
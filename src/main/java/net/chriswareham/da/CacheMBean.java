@@ -25,9 +25,90 @@ public interface CacheMBean extends ManagedComponent {
     long getCacheSize();
 
     /**
-     * Get the meta data of the cached items.
+     * Get the meta data of the cached items, limited to the default number of
+     * items.
      *
      * @return the meta data of the cached items
+     * @see CacheItem#DEFAULT_LIMIT
      */
     Map<Object, CacheItem> getCacheItems();
+
+    /**
+     * Get the meta data of the cached items. As calculating the meta data may
+     * be expensive, this is an operation rather than an attribute, and the
+     * number of items is limited.
+     *
+     * @param limit the maximum number of items
+     * @return the meta data of the cached items
+     */
+    Map<Object, CacheItem> getCacheItems(int limit);
+
+    /**
+     * Get the number of cached items.
+     *
+     * @return the number of cached items
+     */
+    long getCacheItemCount();
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Get the ratio of cache hits to cache accesses.
+     *
+     * @return the ratio of cache hits to cache accesses
+     */
+    double getHitRatio();
+
+    /**
+     * Get the number of successful loads.
+     *
+     * @return the number of successful loads
+     */
+    long getLoadCount();
+
+    /**
+     * Get the number of failed loads.
+     *
+     * @return the number of failed loads
+     */
+    long getLoadFailureCount();
+
+    /**
+     * Get the average time taken to load, in milliseconds.
+     *
+     * @return the average time taken to load, in milliseconds
+     */
+    double getAverageLoadTime();
+
+    /**
+     * Get the number of evictions.
+     *
+     * @return the number of evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Get the estimated most frequently accessed keys and their estimated
+     * access counts, most frequently accessed first.
+     *
+     * @return the estimated most frequently accessed keys
+     */
+    Map<String, Long> getHotKeys();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
 }
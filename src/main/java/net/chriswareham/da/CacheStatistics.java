@@ -0,0 +1,307 @@
+/*
+ * @(#) CacheStatistics.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class records cache statistics. The counters are striped so that
+ * recording them from many threads does not contend on a single memory
+ * location. The most frequently accessed keys are estimated by sampling
+ * accesses into a small space-saving sketch. Sampled accesses to tracked keys
+ * are counted without locking, and a sampled access to an untracked key is
+ * dropped rather than waiting if another thread is updating the sketch.
+ *
+ * @author Chris Wareham
+ */
+public class CacheStatistics {
+    /**
+     * The default number of hot keys reported.
+     */
+    private static final int DEFAULT_HOT_KEY_COUNT = 10;
+    /**
+     * The number of accesses per sampled access, which must be a power of two.
+     */
+    private static final int SAMPLE_RATE = 16;
+    /**
+     * The number of keys tracked per hot key reported.
+     */
+    private static final int TRACKED_KEYS_PER_HOT_KEY = 10;
+
+    /**
+     * The number of cache hits.
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * The number of cache misses.
+     */
+    private final LongAdder missCount = new LongAdder();
+    /**
+     * The number of successful loads.
+     */
+    private final LongAdder loadCount = new LongAdder();
+    /**
+     * The number of failed loads.
+     */
+    private final LongAdder loadFailureCount = new LongAdder();
+    /**
+     * The total time spent loading, in nanoseconds.
+     */
+    private final LongAdder loadTime = new LongAdder();
+    /**
+     * The number of evictions.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+    /**
+     * The sampled access counts of the tracked keys.
+     */
+    private final ConcurrentMap<Object, LongAdder> sampledCounts = new ConcurrentHashMap<>();
+    /**
+     * The lock for adding keys to the tracked keys.
+     */
+    private final Lock sampleLock = new ReentrantLock();
+    /**
+     * The number of hot keys reported.
+     */
+    private volatile int hotKeyCount = DEFAULT_HOT_KEY_COUNT;
+
+    /**
+     * Set the number of hot keys reported.
+     *
+     * @param hkc the number of hot keys reported
+     */
+    public void setHotKeyCount(final int hkc) {
+        sampleLock.lock();
+        try {
+            hotKeyCount = hkc;
+            sampledCounts.clear();
+        } finally {
+            sampleLock.unlock();
+        }
+    }
+
+    /**
+     * Record a cache hit.
+     *
+     * @param key the key of the object
+     */
+    public void recordHit(final Object key) {
+        hitCount.increment();
+        sample(key);
+    }
+
+    /**
+     * Record a cache miss.
+     *
+     * @param key the key of the object
+     */
+    public void recordMiss(final Object key) {
+        missCount.increment();
+        sample(key);
+    }
+
+    /**
+     * Record a successful load.
+     *
+     * @param nanos the time taken to load, in nanoseconds
+     */
+    public void recordLoad(final long nanos) {
+        loadCount.increment();
+        loadTime.add(nanos);
+    }
+
+    /**
+     * Record a failed load.
+     *
+     * @param nanos the time taken to fail, in nanoseconds
+     */
+    public void recordLoadFailure(final long nanos) {
+        loadFailureCount.increment();
+        loadTime.add(nanos);
+    }
+
+    /**
+     * Record an eviction.
+     */
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Get the ratio of cache hits to cache accesses.
+     *
+     * @return the ratio of cache hits to cache accesses, or zero if there
+     * have been no accesses
+     */
+    public double getHitRatio() {
+        long hits = hitCount.sum();
+        long accesses = hits + missCount.sum();
+        return accesses > 0 ? (double) hits / accesses : 0.0;
+    }
+
+    /**
+     * Get the number of successful loads.
+     *
+     * @return the number of successful loads
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * Get the number of failed loads.
+     *
+     * @return the number of failed loads
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    /**
+     * Get the average time taken to load, in milliseconds.
+     *
+     * @return the average time taken to load, or zero if there have been no
+     * loads
+     */
+    public double getAverageLoadTime() {
+        long loads = loadCount.sum() + loadFailureCount.sum();
+        return loads > 0 ? loadTime.sum() / 1000000.0 / loads : 0.0;
+    }
+
+    /**
+     * Get the number of evictions.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Get the estimated most frequently accessed keys and their estimated
+     * access counts, most frequently accessed first.
+     *
+     * @return the estimated most frequently accessed keys
+     */
+    public Map<String, Long> getHotKeys() {
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>(sampledCounts.size());
+        for (Map.Entry<Object, LongAdder> entry : sampledCounts.entrySet()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<Object, Long>>() {
+            @Override
+            public int compare(final Map.Entry<Object, Long> e1, final Map.Entry<Object, Long> e2) {
+                return Long.compare(e2.getValue(), e1.getValue());
+            }
+        });
+
+        int count = hotKeyCount;
+        Map<String, Long> hotKeys = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : entries) {
+            if (hotKeys.size() == count) {
+                break;
+            }
+            hotKeys.put(String.valueOf(entry.getKey()), entry.getValue() * SAMPLE_RATE);
+        }
+        return hotKeys;
+    }
+
+    /**
+     * Reset the statistics.
+     */
+    public void reset() {
+        hitCount.reset();
+        missCount.reset();
+        loadCount.reset();
+        loadFailureCount.reset();
+        loadTime.reset();
+        evictionCount.reset();
+        sampledCounts.clear();
+    }
+
+    /**
+     * Sample an access. If the sketch is full, the key with the lowest count is
+     * replaced and the new key inherits its count, which bounds the error of
+     * the estimated counts. Accesses that race with the replacement of a key
+     * may be lost, which only affects the accuracy of the estimate.
+     *
+     * @param key the key of the object
+     */
+    private void sample(final Object key) {
+        if (key == null || (ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) != 0) {
+            return;
+        }
+
+        LongAdder count = sampledCounts.get(key);
+        if (count != null) {
+            count.increment();
+            return;
+        }
+
+        if (!sampleLock.tryLock()) {
+            return;
+        }
+        try {
+            count = sampledCounts.get(key);
+            if (count != null) {
+                count.increment();
+            } else if (sampledCounts.size() < hotKeyCount * TRACKED_KEYS_PER_HOT_KEY) {
+                count = new LongAdder();
+                count.increment();
+                sampledCounts.put(key, count);
+            } else {
+                Map.Entry<Object, LongAdder> min = null;
+                long minCount = Long.MAX_VALUE;
+                for (Map.Entry<Object, LongAdder> entry : sampledCounts.entrySet()) {
+                    long sum = entry.getValue().sum();
+                    if (sum < minCount) {
+                        min = entry;
+                        minCount = sum;
+                    }
+                }
+                if (min != null) {
+                    sampledCounts.remove(min.getKey());
+                }
+                count = new LongAdder();
+                count.add(minCount != Long.MAX_VALUE ? minCount + 1L : 1L);
+                sampledCounts.put(key, count);
+            }
+        } finally {
+            sampleLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,1175 @@
+/*
+ * @(#) CachingQueryService.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import net.chriswareham.di.LifecycleComponent;
+import net.chriswareham.di.Required;
+
+/**
+ * This class provides a query service that caches the results of queries that
+ * do not use a query connection, keyed on the query, the values bound to it by
+ * the query executor, and the class of the callback. Only queries whose
+ * callback has no instance fields, such as a non-capturing lambda or a static
+ * nested class without fields, are cached, so that a new instance of the
+ * callback shares cached results with other instances. Queries with callbacks
+ * that have state, including capturing lambdas and anonymous or inner classes
+ * that refer to their enclosing instance, are passed straight to the
+ * underlying query service, as are all other operations.
+ * <p>
+ * The values bound by a query executor are found by running it against a
+ * statement that records them, before the query is run for real on a cache
+ * miss. Queries that bind streams, large objects or arrays other than byte
+ * arrays are not cached. As cached results are shared, callbacks used with
+ * this service should create immutable objects.
+ * <p>
+ * Each query is tagged with the tables it reads, which are found by looking
+ * for table names after <tt>FROM</tt>, including comma separated lists of
+ * tables, and after <tt>JOIN</tt>. An update or delete event published on a
+ * topic named after a table invalidates all the cached results tagged with the
+ * table, as does an update made through this service. An update made on a
+ * query connection obtained from this service invalidates the tables again
+ * when the connection commits or is closed, so that results read before the
+ * update was committed are not cached under the new versions of the tables.
+ * The tables of at most {@link #setMaxStatements(int) maxStatements} distinct
+ * statements are remembered, and the tables of other statements are found
+ * each time they are executed. The underlying cache bounds the number of
+ * results, for example:
+ * <pre>
+ * &lt;component id="queryCache" class="net.chriswareham.da.MemoryCache"&gt;
+ *     &lt;property name="maxEntries" value="10000"/&gt;
+ * &lt;/component&gt;
+ *
+ * &lt;component id="cachingQueryService" class="net.chriswareham.da.CachingQueryService"&gt;
+ *     &lt;property name="queryService" refid="queryService"/&gt;
+ *     &lt;property name="cache" refid="queryCache"/&gt;
+ *     &lt;property name="eventService" refid="eventService"/&gt;
+ *     &lt;property name="timeToLive" value="30"/&gt;
+ * &lt;/component&gt;
+ * </pre>
+ *
+ * @author Chris Wareham
+ */
+public class CachingQueryService implements QueryService, LifecycleComponent {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(CachingQueryService.class);
+    /**
+     * The regular expression that matches the name of a table, which may be
+     * qualified by a schema.
+     */
+    private static final String TABLE_NAME_REGEX = "[A-Za-z_][A-Za-z0-9_$]*(?:\\.[A-Za-z_][A-Za-z0-9_$]*)*";
+    /**
+     * The regular expression that matches the optional alias of a table,
+     * which cannot be a keyword that may follow a table.
+     */
+    private static final String TABLE_ALIAS_REGEX = "(?:\\s+(?:AS\\s+)?(?!(?:WHERE|JOIN|INNER|LEFT|RIGHT|FULL|CROSS|NATURAL|OUTER|ON|USING|GROUP|ORDER|HAVING|UNION|EXCEPT|INTERSECT|LIMIT|OFFSET|FETCH|FOR|SET|VALUES|SELECT|WINDOW)\\b)[A-Za-z_][A-Za-z0-9_$]*)?";
+    /**
+     * The pattern that matches the names of the tables used by a statement,
+     * as a comma separated list of tables with optional aliases.
+     */
+    private static final Pattern TABLE_PATTERN = Pattern.compile("\\b(?:FROM|JOIN|INTO|UPDATE)\\s+(" + TABLE_NAME_REGEX + TABLE_ALIAS_REGEX + "(?:\\s*,\\s*" + TABLE_NAME_REGEX + TABLE_ALIAS_REGEX + ")*)", Pattern.CASE_INSENSITIVE);
+    /**
+     * The pattern that matches the separators between the tables in a list.
+     */
+    private static final Pattern TABLE_SEPARATOR_PATTERN = Pattern.compile("\\s*,\\s*");
+    /**
+     * The default maximum number of rows in a cached result.
+     */
+    private static final int DEFAULT_MAX_ROWS = 1000;
+    /**
+     * The default maximum number of distinct statements whose tables are
+     * remembered.
+     */
+    private static final int DEFAULT_MAX_STATEMENTS = 1000;
+
+    /**
+     * The underlying query service.
+     */
+    private QueryService queryService;
+    /**
+     * The cache of results.
+     */
+    private Cache<Object, Object> cache;
+    /**
+     * The event service.
+     */
+    private EventService eventService;
+    /**
+     * The number of milliseconds a result is cached for, or zero if results
+     * are cached until they are invalidated or evicted.
+     */
+    private long timeToLive;
+    /**
+     * The maximum number of rows in a cached result.
+     */
+    private int maxRows = DEFAULT_MAX_ROWS;
+    /**
+     * The maximum number of distinct statements whose tables are remembered.
+     */
+    private int maxStatements = DEFAULT_MAX_STATEMENTS;
+    /**
+     * The tables used by each statement, keyed on statement.
+     */
+    private final Map<String, String[]> statementTables = new ConcurrentHashMap<>();
+    /**
+     * The version of each table, incremented when the table is invalidated.
+     */
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    /**
+     * The listeners for events on each table, keyed on table.
+     */
+    private final Map<String, TopicListener> tableListeners = new ConcurrentHashMap<>();
+    /**
+     * Whether each class of callback has no instance fields, keyed on class.
+     */
+    private final Map<Class<?>, Boolean> statelessCallbacks = new ConcurrentHashMap<>();
+    /**
+     * The number of cache hits.
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * The number of cache misses.
+     */
+    private final LongAdder missCount = new LongAdder();
+    /**
+     * Whether the service is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Set the underlying query service.
+     *
+     * @param qs the underlying query service
+     */
+    @Required
+    public void setQueryService(final QueryService qs) {
+        queryService = qs;
+    }
+
+    /**
+     * Set the cache of results.
+     *
+     * @param c the cache of results
+     */
+    @Required
+    public void setCache(final Cache<Object, Object> c) {
+        cache = c;
+    }
+
+    /**
+     * Set the event service.
+     *
+     * @param es the event service
+     */
+    public void setEventService(final EventService es) {
+        eventService = es;
+    }
+
+    /**
+     * Set the number of seconds a result is cached for, or zero to cache
+     * results until they are invalidated or evicted.
+     *
+     * @param ttl the number of seconds a result is cached for
+     */
+    public void setTimeToLive(final int ttl) {
+        timeToLive = 1000L * ttl;
+    }
+
+    /**
+     * Set the maximum number of rows in a cached result. Results with more
+     * rows are returned but not cached.
+     *
+     * @param mr the maximum number of rows in a cached result
+     */
+    public void setMaxRows(final int mr) {
+        maxRows = mr;
+    }
+
+    /**
+     * Set the maximum number of distinct statements whose tables are
+     * remembered. Statements that concatenate literal values may each be
+     * distinct, so this bounds the memory used by them.
+     *
+     * @param ms the maximum number of distinct statements
+     */
+    public void setMaxStatements(final int ms) {
+        maxStatements = ms;
+    }
+
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Get the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Invalidate the cached results of queries that use a table.
+     *
+     * @param table the table
+     */
+    public void invalidate(final String table) {
+        tableVersion(table.toLowerCase(Locale.ENGLISH)).incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        running = true;
+        for (String table : tableVersions.keySet()) {
+            listen(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (eventService != null) {
+            for (Map.Entry<String, TopicListener> entry : tableListeners.entrySet()) {
+                eventService.removeTopicListener(entry.getKey(), entry.getValue());
+            }
+        }
+        tableListeners.clear();
+        cache.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The connection invalidates the tables changed by updates made on it
+     * through this service again when it commits or is closed.
+     */
+    @Override
+    public QueryConnection getQueryConnection(final boolean t) throws QueryException {
+        return new InvalidatingQueryConnection(queryService.getQueryConnection(t));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> listQuery(final String query, final QueryCallback<T> callback) throws QueryException {
+        return listQuery(query, null, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> listQuery(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
+        return queryService.listQuery(unwrap(connection), query, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> listQuery(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        QueryKey key = key(query, executor, callback, true);
+        if (key == null) {
+            return listQueryImpl(query, executor, callback);
+        }
+
+        CachedResult cached = fetch(key);
+        if (cached != null) {
+            return new ArrayList<>((List<T>) cached.result);
+        }
+
+        missCount.increment();
+        long[] versions = versions(key.tables);
+        List<T> results = listQueryImpl(query, executor, callback);
+        if (results.size() <= maxRows) {
+            cache.store(key, new CachedResult(new ArrayList<>(results), versions));
+        }
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> List<T> listQuery(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return queryService.listQuery(unwrap(connection), query, executor, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final String query, final QueryCallback<T> callback) throws QueryException {
+        return queryService.openQuery(query, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
+        return queryService.openQuery(unwrap(connection), query, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return queryService.openQuery(query, executor, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return queryService.openQuery(unwrap(connection), query, executor, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T query(final String query, final QueryCallback<T> callback) throws QueryException {
+        return query(query, null, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T query(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
+        return queryService.query(unwrap(connection), query, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T query(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        QueryKey key = key(query, executor, callback, false);
+        if (key == null) {
+            return queryImpl(query, executor, callback);
+        }
+
+        CachedResult cached = fetch(key);
+        if (cached != null) {
+            return (T) cached.result;
+        }
+
+        missCount.increment();
+        long[] versions = versions(key.tables);
+        T result = queryImpl(query, executor, callback);
+        cache.store(key, new CachedResult(result, versions));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T query(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return queryService.query(unwrap(connection), query, executor, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final String update) throws QueryException {
+        try {
+            return queryService.update(update);
+        } finally {
+            invalidateTables(update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final QueryConnection connection, final String update) throws QueryException {
+        try {
+            return queryService.update(unwrap(connection), update);
+        } finally {
+            invalidateTables(connection, update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final String update, final UpdateExecutor executor) throws QueryException {
+        try {
+            return queryService.update(update, executor);
+        } finally {
+            invalidateTables(update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final QueryConnection connection, final String update, final UpdateExecutor executor) throws QueryException {
+        try {
+            return queryService.update(unwrap(connection), update, executor);
+        } finally {
+            invalidateTables(connection, update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final String update, final UpdateCallback callback) throws QueryException {
+        try {
+            return queryService.update(update, callback);
+        } finally {
+            invalidateTables(update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final QueryConnection connection, final String update, final UpdateCallback callback) throws QueryException {
+        try {
+            return queryService.update(unwrap(connection), update, callback);
+        } finally {
+            invalidateTables(connection, update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final String update, final UpdateExecutor executor, final UpdateCallback callback) throws QueryException {
+        try {
+            return queryService.update(update, executor, callback);
+        } finally {
+            invalidateTables(update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(final QueryConnection connection, final String update, final UpdateExecutor executor, final UpdateCallback callback) throws QueryException {
+        try {
+            return queryService.update(unwrap(connection), update, executor, callback);
+        } finally {
+            invalidateTables(connection, update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> BatchResult batchUpdate(final String update, final Iterable<T> objs, final BatchBinder<T> binder) throws QueryException {
+        try {
+            return queryService.batchUpdate(update, objs, binder);
+        } finally {
+            invalidateTables(update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> BatchResult batchUpdate(final QueryConnection connection, final String update, final Iterable<T> objs, final BatchBinder<T> binder) throws QueryException {
+        try {
+            return queryService.batchUpdate(unwrap(connection), update, objs, binder);
+        } finally {
+            invalidateTables(connection, update);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void call(final String call) throws QueryException {
+        queryService.call(call);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void call(final QueryConnection connection, final String call) throws QueryException {
+        queryService.call(unwrap(connection), call);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void call(final String call, final CallExecutor executor) throws QueryException {
+        queryService.call(call, executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void call(final QueryConnection connection, final String call, final CallExecutor executor) throws QueryException {
+        queryService.call(unwrap(connection), call, executor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T call(final String call, final CallCallback<T> callback) throws QueryException {
+        return queryService.call(call, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T call(final QueryConnection connection, final String call, final CallCallback<T> callback) throws QueryException {
+        return queryService.call(unwrap(connection), call, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T call(final String call, final CallExecutor executor, final CallCallback<T> callback) throws QueryException {
+        return queryService.call(call, executor, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T call(final QueryConnection connection, final String call, final CallExecutor executor, final CallCallback<T> callback) throws QueryException {
+        return queryService.call(unwrap(connection), call, executor, callback);
+    }
+
+    /**
+     * Execute a query that returns a list of results on the underlying query
+     * service.
+     *
+     * @param <T> the type of results to return
+     * @param query the query to execute
+     * @param executor the query executor, or null if there is none
+     * @param callback the callback executed for each result
+     * @return the results
+     * @throws QueryException if an error occurs
+     */
+    private <T> List<T> listQueryImpl(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return executor != null ? queryService.listQuery(query, executor, callback) : queryService.listQuery(query, callback);
+    }
+
+    /**
+     * Execute a query that returns a single result on the underlying query
+     * service.
+     *
+     * @param <T> the type of result to return
+     * @param query the query to execute
+     * @param executor the query executor, or null if there is none
+     * @param callback the callback executed for a result
+     * @return the result
+     * @throws QueryException if an error occurs
+     */
+    private <T> T queryImpl(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return executor != null ? queryService.query(query, executor, callback) : queryService.query(query, callback);
+    }
+
+    /**
+     * Fetch a cached result, flushing it if it has expired or been
+     * invalidated.
+     *
+     * @param key the key of the result
+     * @return the cached result, or null if it is not cached
+     */
+    private CachedResult fetch(final QueryKey key) {
+        CachedResult cached = (CachedResult) cache.fetch(key);
+        if (cached == null) {
+            return null;
+        }
+        if (timeToLive > 0 && System.currentTimeMillis() - cached.timestamp > timeToLive || !Arrays.equals(cached.versions, versions(key.tables))) {
+            cache.flush(key);
+            return null;
+        }
+        hitCount.increment();
+        return cached;
+    }
+
+    /**
+     * Create the key for a query.
+     *
+     * @param query the query
+     * @param executor the query executor, or null if there is none
+     * @param callback the callback
+     * @param list whether the query returns a list of results
+     * @return the key, or null if the query cannot be cached
+     */
+    private QueryKey key(final String query, final QueryExecutor executor, final QueryCallback<?> callback, final boolean list) {
+        if (!running || !isStateless(callback)) {
+            return null;
+        }
+
+        List<Object> parameters = Collections.emptyList();
+        if (executor != null) {
+            ParameterRecorder recorder = new ParameterRecorder();
+            PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class}, recorder);
+            try {
+                executor.query(statement);
+            } catch (SQLException | RuntimeException exception) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("key(): not caching query:[" + query + "] as recording its parameters failed", exception);
+                }
+                return null;
+            }
+            if (!recorder.cacheable) {
+                return null;
+            }
+            parameters = recorder.parameters;
+        }
+
+        return new QueryKey(query, parameters, callback.getClass(), list, tables(query));
+    }
+
+    /**
+     * Get whether a callback has no instance fields. Callbacks with state may
+     * create different results for the same query, and keying results on the
+     * instance would store a new result for every instance and retain the
+     * instance, so their queries are not cached.
+     *
+     * @param callback the callback
+     * @return whether the callback has no instance fields
+     */
+    private boolean isStateless(final QueryCallback<?> callback) {
+        Class<?> type = callback.getClass();
+        Boolean stateless = statelessCallbacks.get(type);
+        if (stateless == null) {
+            stateless = statelessCallbacks.computeIfAbsent(type, CachingQueryService::isStateless);
+        }
+        return stateless;
+    }
+
+    /**
+     * Get whether a class has no instance fields, including those declared by
+     * its superclasses.
+     *
+     * @param type the class
+     * @return whether the class has no instance fields
+     */
+    private static boolean isStateless(final Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the tables used by a statement, remembering them unless the maximum
+     * number of statements has been reached.
+     *
+     * @param statement the statement
+     * @return the tables used by the statement
+     */
+    private String[] tables(final String statement) {
+        String[] tables = statementTables.get(statement);
+        if (tables == null) {
+            tables = parseTables(statement);
+            if (statementTables.size() < maxStatements) {
+                statementTables.putIfAbsent(statement, tables);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Find the tables used by a statement.
+     *
+     * @param statement the statement
+     * @return the tables used by the statement
+     */
+    private static String[] parseTables(final String statement) {
+        List<String> tables = new ArrayList<>();
+        Matcher matcher = TABLE_PATTERN.matcher(statement);
+        while (matcher.find()) {
+            for (String element : TABLE_SEPARATOR_PATTERN.split(matcher.group(1))) {
+                String table = element.split("\\s+", 2)[0].toLowerCase(Locale.ENGLISH);
+                if (!tables.contains(table)) {
+                    tables.add(table);
+                }
+            }
+        }
+        return tables.toArray(new String[tables.size()]);
+    }
+
+    /**
+     * Get the current versions of tables.
+     *
+     * @param tables the tables
+     * @return the current versions of the tables
+     */
+    private long[] versions(final String[] tables) {
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; ++i) {
+            versions[i] = tableVersion(tables[i]).get();
+        }
+        return versions;
+    }
+
+    /**
+     * Get the version of a table, listening for events on the table the first
+     * time it is seen.
+     *
+     * @param table the table
+     * @return the version of the table
+     */
+    private AtomicLong tableVersion(final String table) {
+        AtomicLong version = tableVersions.get(table);
+        if (version == null) {
+            version = tableVersions.computeIfAbsent(table, t -> new AtomicLong());
+            listen(table);
+        }
+        return version;
+    }
+
+    /**
+     * Listen for events on a table, if the service is running and is not
+     * already listening.
+     *
+     * @param table the table
+     */
+    private void listen(final String table) {
+        if (running && eventService != null) {
+            TopicListener listener = new TableListener(table);
+            if (tableListeners.putIfAbsent(table, listener) == null) {
+                eventService.addTopicListener(table, listener);
+            }
+        }
+    }
+
+    /**
+     * Get the underlying query connection of a query connection obtained from
+     * this service.
+     *
+     * @param connection the query connection
+     * @return the underlying query connection
+     */
+    private static QueryConnection unwrap(final QueryConnection connection) {
+        return connection instanceof InvalidatingQueryConnection ? ((InvalidatingQueryConnection) connection).connection : connection;
+    }
+
+    /**
+     * Invalidate the cached results of queries that use the tables changed by
+     * an update.
+     *
+     * @param update the update
+     */
+    private void invalidateTables(final String update) {
+        invalidateTables(tables(update));
+    }
+
+    /**
+     * Invalidate the cached results of queries that use the tables changed by
+     * an update made on a query connection. If the connection was obtained
+     * from this service, the tables are invalidated again when it commits or
+     * is closed, as queries on other connections may read and cache the old
+     * rows until then.
+     *
+     * @param connection the query connection
+     * @param update the update
+     */
+    private void invalidateTables(final QueryConnection connection, final String update) {
+        String[] tables = tables(update);
+        invalidateTables(tables);
+        if (connection instanceof InvalidatingQueryConnection) {
+            ((InvalidatingQueryConnection) connection).changed(tables);
+        }
+    }
+
+    /**
+     * Invalidate the cached results of queries that use tables.
+     *
+     * @param tables the tables
+     */
+    private void invalidateTables(final String[] tables) {
+        for (String table : tables) {
+            tableVersion(table).incrementAndGet();
+        }
+    }
+
+    /**
+     * This class provides a query connection that invalidates the tables
+     * changed by updates made on it when it commits or is closed.
+     */
+    private final class InvalidatingQueryConnection implements QueryConnection {
+        /**
+         * The underlying query connection.
+         */
+        private final QueryConnection connection;
+        /**
+         * The tables changed since the connection last committed.
+         */
+        private final Set<String> changedTables = new LinkedHashSet<>();
+
+        /**
+         * Construct an instance of the connection.
+         *
+         * @param c the underlying query connection
+         */
+        private InvalidatingQueryConnection(final QueryConnection c) {
+            connection = c;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isTransaction() {
+            return connection.isTransaction();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isTransactionAborted() {
+            return connection.isTransactionAborted();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setTransactionAborted() {
+            connection.setTransactionAborted();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void commitTransaction() throws QueryException {
+            try {
+                connection.commitTransaction();
+            } finally {
+                invalidateChanged();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public PreparedStatement prepareStatement(final String sql) throws SQLException {
+            return connection.prepareStatement(sql);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CallableStatement prepareCall(final String sql) throws SQLException {
+            return connection.prepareCall(sql);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            try {
+                connection.close();
+            } finally {
+                invalidateChanged();
+            }
+        }
+
+        /**
+         * Record tables changed by an update made on the connection.
+         *
+         * @param tables the tables
+         */
+        private synchronized void changed(final String[] tables) {
+            Collections.addAll(changedTables, tables);
+        }
+
+        /**
+         * Invalidate the tables changed since the connection last committed.
+         */
+        private synchronized void invalidateChanged() {
+            invalidateTables(changedTables.toArray(new String[changedTables.size()]));
+            changedTables.clear();
+        }
+    }
+
+    /**
+     * This class provides an event listener that invalidates the cached
+     * results of queries that use a table.
+     */
+    private final class TableListener implements TopicListener {
+        /**
+         * The table.
+         */
+        private final String table;
+
+        /**
+         * Construct an instance of the listener.
+         *
+         * @param t the table
+         */
+        private TableListener(final String t) {
+            table = t;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void receiveEvent(final Event event) {
+            switch (event.getType()) {
+            case UPDATE:
+            case DELETE:
+                tableVersion(table).incrementAndGet();
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * This class provides a statement that records the parameters bound to
+     * it. Executing the statement returns a null result set.
+     */
+    private static final class ParameterRecorder implements InvocationHandler {
+        /**
+         * The parameters, as a flattened list of the arguments of each call
+         * that set a parameter.
+         */
+        private final List<Object> parameters = new ArrayList<>();
+        /**
+         * Whether the parameters can be used in a cache key.
+         */
+        private boolean cacheable = true;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.add(name);
+                for (Object arg : args) {
+                    parameters.add(parameter(arg));
+                }
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            }
+
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) {
+                return Boolean.FALSE;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+
+        /**
+         * Convert a parameter to a value that can be used in a cache key.
+         *
+         * @param arg the parameter
+         * @return the value
+         */
+        private Object parameter(final Object arg) {
+            if (arg instanceof byte[]) {
+                return ByteBuffer.wrap(((byte[]) arg).clone());
+            }
+            if (arg instanceof InputStream || arg instanceof Reader || arg instanceof Blob || arg instanceof Clob || arg != null && arg.getClass().isArray()) {
+                cacheable = false;
+            }
+            return arg;
+        }
+    }
+
+    /**
+     * This class provides the key of a cached result.
+     */
+    private static final class QueryKey {
+        /**
+         * The query.
+         */
+        private final String query;
+        /**
+         * The parameters bound to the query.
+         */
+        private final List<Object> parameters;
+        /**
+         * The class of the callback.
+         */
+        private final Class<?> callback;
+        /**
+         * Whether the query returns a list of results.
+         */
+        private final boolean list;
+        /**
+         * The tables used by the query.
+         */
+        private final String[] tables;
+
+        /**
+         * Construct an instance of the key.
+         *
+         * @param q the query
+         * @param p the parameters bound to the query
+         * @param cb the class of the callback
+         * @param l whether the query returns a list of results
+         * @param t the tables used by the query
+         */
+        private QueryKey(final String q, final List<Object> p, final Class<?> cb, final boolean l, final String[] t) {
+            query = q;
+            parameters = p;
+            callback = cb;
+            list = l;
+            tables = t;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey key = (QueryKey) obj;
+            return list == key.list && query.equals(key.query) && callback == key.callback && parameters.equals(key.parameters);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return (query.hashCode() * 31 + parameters.hashCode()) * 31 + callback.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return query + " " + parameters;
+        }
+    }
+
+    /**
+     * This class provides a cached result.
+     */
+    private static final class CachedResult {
+        /**
+         * The result.
+         */
+        private final Object result;
+        /**
+         * The versions of the tables used by the query when it was executed.
+         */
+        private final long[] versions;
+        /**
+         * The time the result was cached.
+         */
+        private final long timestamp = System.currentTimeMillis();
+
+        /**
+         * Construct an instance of the cached result.
+         *
+         * @param r the result
+         * @param v the versions of the tables used by the query when it was
+         * executed
+         */
+        private CachedResult(final Object r, final long[] v) {
+            result = r;
+            versions = v;
+        }
+    }
+}
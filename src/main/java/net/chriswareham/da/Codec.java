@@ -0,0 +1,39 @@
+/*
+ * @(#) Codec.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * This interface is implemented by classes that encode objects to, and decode
+ * objects from, streams of bytes. Implementations must be thread safe, and
+ * must not close the streams they are passed.
+ *
+ * @author Chris Wareham
+ */
+public interface Codec {
+    /**
+     * Encode an object to a stream.
+     *
+     * @param obj the object to encode
+     * @param out the stream to encode the object to
+     * @throws IOException if the object cannot be encoded
+     */
+    void encode(Object obj, OutputStream out) throws IOException;
+
+    /**
+     * Decode an object from a stream.
+     *
+     * @param in the stream to decode the object from
+     * @return the decoded object
+     * @throws IOException if the object cannot be decoded
+     * @throws ClassNotFoundException if the class of the object cannot be found
+     */
+    Object decode(InputStream in) throws IOException, ClassNotFoundException;
+}
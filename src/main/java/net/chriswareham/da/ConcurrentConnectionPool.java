@@ -0,0 +1,549 @@
+/*
+ * @(#) ConcurrentConnectionPool.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.PoolingConnection;
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * This class provides a connection pool with a lock free borrow path. Each
+ * physical connection has an atomic state, and a connection is borrowed by
+ * changing its state from idle to in use. A thread first tries the connection
+ * it last returned, which is usually still idle, before scanning the pool.
+ * If every connection is in use and the pool is at its maximum size, the
+ * thread waits for a returned connection to be handed to it, scanning the pool
+ * again if none is handed to it within a short interval.
+ * <p>
+ * A connection that has been idle for longer than a short interval is checked
+ * with {@link Connection#isValid(int)} before it is handed out. A background
+ * thread periodically closes idle connections above the minimum, tops the pool
+ * up to the minimum, and reports connections borrowed for longer than the leak
+ * detection threshold, along with the stack trace of the borrower. Returned
+ * connections that were held for longer than the threshold are also counted
+ * in the pool statistics by the stack trace of the borrower.
+ *
+ * @author Chris Wareham
+ */
+public class ConcurrentConnectionPool implements ConnectionPool {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ConcurrentConnectionPool.class);
+    /**
+     * The state of an idle connection.
+     */
+    private static final int IDLE = 0;
+    /**
+     * The state of a borrowed connection.
+     */
+    private static final int IN_USE = 1;
+    /**
+     * The state of a connection that has been removed from the pool.
+     */
+    private static final int REMOVED = -1;
+    /**
+     * The number of milliseconds a connection can be idle before it is
+     * validated when borrowed.
+     */
+    private static final long VALIDATION_INTERVAL = 500L;
+    /**
+     * The maximum number of nanoseconds to wait for a handed off connection
+     * before checking whether the pool has been closed.
+     */
+    private static final long HANDOFF_POLL_INTERVAL = TimeUnit.SECONDS.toNanos(1L);
+    /**
+     * The maximum number of nanoseconds to wait for a waiting thread to take
+     * a returned connection. A waiting thread that is not polling, because it
+     * is creating or validating a connection, finds the returned connection
+     * when it next scans the pool.
+     */
+    private static final long HANDOFF_OFFER_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(1L);
+    /**
+     * The default number of milliseconds between housekeeping runs.
+     */
+    private static final long DEFAULT_HOUSEKEEPING_PERIOD = 30000L;
+
+    /**
+     * The source for physical database connections.
+     */
+    private DataSource dataSource;
+    /**
+     * The pool configuration.
+     */
+    private ConnectionPoolConfig config;
+    /**
+     * The pooled connections.
+     */
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    /**
+     * The connection each thread last returned.
+     */
+    private final ThreadLocal<Entry> lastEntry = new ThreadLocal<>();
+    /**
+     * The queue used to hand returned connections to waiting threads.
+     */
+    private final SynchronousQueue<Entry> handoff = new SynchronousQueue<>(true);
+    /**
+     * The number of physical connections, including those being created.
+     */
+    private final AtomicInteger totalCount = new AtomicInteger();
+    /**
+     * The number of idle connections.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+    /**
+     * The number of threads waiting for a connection.
+     */
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    /**
+     * The statistics of the pool.
+     */
+    private final ConnectionPoolStatistics statistics = new ConnectionPoolStatistics();
+    /**
+     * The executor that runs housekeeping.
+     */
+    private ScheduledExecutorService housekeeper;
+    /**
+     * Whether the pool is open.
+     */
+    private volatile boolean open;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final DataSource ds, final ConnectionPoolConfig c) throws SQLException {
+        if (open) {
+            throw new IllegalStateException("Pool has already been opened");
+        }
+
+        dataSource = ds;
+        config = c;
+        open = true;
+
+        fill();
+
+        long housekeepingPeriod = config.getHousekeepingPeriod() >= 0 ? config.getHousekeepingPeriod() : DEFAULT_HOUSEKEEPING_PERIOD;
+        if (housekeepingPeriod > 0) {
+            housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ConcurrentConnectionPool-housekeeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            housekeeper.scheduleWithFixedDelay(this::housekeep, housekeepingPeriod, housekeepingPeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!open) {
+            throw new SQLException("Pool is closed");
+        }
+
+        long start = statistics.startBorrow();
+        Entry entry;
+        try {
+            entry = borrow();
+        } catch (SQLTimeoutException exception) {
+            statistics.recordTimeout(start);
+            throw exception;
+        } catch (SQLException | RuntimeException exception) {
+            statistics.recordFailure(start);
+            throw exception;
+        }
+        statistics.recordBorrow(start);
+
+        entry.borrowed();
+        if (config.getLeakDetectionThreshold() > 0) {
+            entry.borrower = new Exception("Connection borrowed by thread '" + Thread.currentThread().getName() + "'");
+        }
+
+        return new PooledConnection(this, entry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveCount() {
+        return Math.max(entries.size() - idleCount.get(), 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConnectionPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        open = false;
+
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+            housekeeper = null;
+        }
+
+        for (Entry entry : entries) {
+            if (reserveIdle(entry)) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Return a connection to the pool, handing it to a waiting thread if there
+     * is one.
+     *
+     * @param entry the pool entry for the connection
+     */
+    void release(final Entry entry) {
+        long held = System.nanoTime() - entry.borrowedAt;
+        statistics.recordRelease(held);
+        Exception borrower = entry.borrower;
+        if (borrower != null && held > TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionThreshold())) {
+            statistics.recordLongHold(borrower);
+        }
+        entry.borrower = null;
+        entry.leakReported = false;
+        entry.touch();
+
+        int maxIdle = config.getMaxIdle();
+        if (!open || maxIdle >= 0 && idleCount.get() >= maxIdle && waitingCount.get() == 0) {
+            entry.state.set(REMOVED);
+            remove(entry);
+            return;
+        }
+
+        idleCount.incrementAndGet();
+        entry.state.set(IDLE);
+        lastEntry.set(entry);
+
+        if (waitingCount.get() > 0 && entry.state.get() == IDLE) {
+            try {
+                handoff.offer(entry, HANDOFF_OFFER_TIMEOUT, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Discard a borrowed connection that could not be returned to the pool.
+     *
+     * @param entry the pool entry for the connection
+     */
+    void discard(final Entry entry) {
+        entry.state.set(REMOVED);
+        remove(entry);
+    }
+
+    /**
+     * Borrow a connection, waiting if the pool is exhausted.
+     *
+     * @return the pool entry for the connection
+     * @throws SQLException if an error occurs, or no connection becomes
+     * available within the maximum wait time
+     */
+    private Entry borrow() throws SQLException {
+        Entry entry = lastEntry.get();
+        if (entry != null) {
+            lastEntry.remove();
+            if (reserveIdle(entry) && validate(entry)) {
+                return entry;
+            }
+        }
+
+        long maxWait = config.getMaxWait();
+        long deadline = maxWait > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait) : Long.MAX_VALUE;
+
+        try {
+            while (true) {
+                entry = scan();
+                if (entry != null) {
+                    return entry;
+                }
+
+                entry = create();
+                if (entry != null) {
+                    return entry;
+                }
+
+                long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTimeoutException("Timed out waiting " + maxWait + "ms for a pooled connection");
+                }
+
+                // only count the thread as waiting while it is parked, so
+                // that releases do not offer connections to scanning threads
+                waitingCount.incrementAndGet();
+                statistics.startWait();
+                try {
+                    entry = handoff.poll(Math.min(remaining, HANDOFF_POLL_INTERVAL), TimeUnit.NANOSECONDS);
+                } finally {
+                    statistics.endWait();
+                    waitingCount.decrementAndGet();
+                }
+                if (entry != null && reserveIdle(entry) && validate(entry)) {
+                    return entry;
+                }
+                if (!open) {
+                    throw new SQLException("Pool is closed");
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a pooled connection", exception);
+        }
+    }
+
+    /**
+     * Scan the pool for an idle connection.
+     *
+     * @return the pool entry for the connection, or null if there are no idle
+     * connections
+     */
+    private Entry scan() {
+        for (Entry entry : entries) {
+            if (reserveIdle(entry) && validate(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Change the state of a connection from idle to in use.
+     *
+     * @param entry the pool entry for the connection
+     * @return whether the connection was idle
+     */
+    private boolean reserveIdle(final Entry entry) {
+        if (entry.state.compareAndSet(IDLE, IN_USE)) {
+            idleCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Validate a reserved connection if it has been idle for a while,
+     * discarding it if it is no longer usable.
+     *
+     * @param entry the pool entry for the connection
+     * @return whether the connection is usable
+     */
+    private boolean validate(final Entry entry) {
+        if (System.currentTimeMillis() - entry.lastAccess < VALIDATION_INTERVAL) {
+            return true;
+        }
+        try {
+            if (entry.connection.isValid(config.getValidationTimeout())) {
+                return true;
+            }
+        } catch (SQLException exception) {
+            LOGGER.debug("validate(): error validating connection", exception);
+        }
+        LOGGER.warn("validate(): discarding invalid connection");
+        discard(entry);
+        return false;
+    }
+
+    /**
+     * Create a connection if the pool is below its maximum size.
+     *
+     * @return the pool entry for the connection, in use, or null if the pool
+     * is at its maximum size
+     * @throws SQLException if an error occurs
+     */
+    private Entry create() throws SQLException {
+        int maxActive = config.getMaxActive();
+        int count;
+        do {
+            count = totalCount.get();
+            if (maxActive > 0 && count >= maxActive) {
+                return null;
+            }
+        } while (!totalCount.compareAndSet(count, count + 1));
+
+        try {
+            Connection connection = dataSource.getConnection();
+            StatementCacheFactory statementCacheFactory = config.getStatementCacheFactory();
+            if (statementCacheFactory != null) {
+                KeyedObjectPool statementCache = statementCacheFactory.createPool();
+                PoolingConnection poolingConnection = new PoolingConnection(connection, statementCache);
+                statementCache.setFactory(poolingConnection);
+                connection = poolingConnection;
+            }
+            Entry entry = new Entry(connection);
+            entries.add(entry);
+            return entry;
+        } catch (SQLException | RuntimeException exception) {
+            totalCount.decrementAndGet();
+            throw exception;
+        }
+    }
+
+    /**
+     * Remove a connection from the pool and close it.
+     *
+     * @param entry the pool entry for the connection
+     */
+    private void remove(final Entry entry) {
+        if (entries.remove(entry)) {
+            totalCount.decrementAndGet();
+            try {
+                entry.connection.close();
+            } catch (SQLException exception) {
+                LOGGER.warn("remove(): failed to close connection", exception);
+            }
+        }
+    }
+
+    /**
+     * Top the pool up to its minimum number of idle connections.
+     */
+    private void fill() {
+        while (open && idleCount.get() < config.getMinIdle()) {
+            try {
+                Entry entry = create();
+                if (entry == null) {
+                    return;
+                }
+                entry.touch();
+                idleCount.incrementAndGet();
+                entry.state.set(IDLE);
+            } catch (SQLException exception) {
+                LOGGER.warn("fill(): failed to create connection", exception);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Close idle connections above the minimum, top the pool up to the
+     * minimum, and report possible leaks.
+     */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            long nanoNow = System.nanoTime();
+            long leakDetectionThreshold = config.getLeakDetectionThreshold();
+
+            for (Entry entry : entries) {
+                int state = entry.state.get();
+                if (state == IDLE) {
+                    if (idleCount.get() > config.getMinIdle() && now - entry.lastAccess > config.getIdleTimeout() && reserveIdle(entry)) {
+                        discard(entry);
+                    }
+                } else if (state == IN_USE && leakDetectionThreshold > 0) {
+                    Exception borrower = entry.borrower;
+                    if (borrower != null && !entry.leakReported && nanoNow - entry.borrowedAt > TimeUnit.MILLISECONDS.toNanos(leakDetectionThreshold)) {
+                        entry.leakReported = true;
+                        LOGGER.warn("housekeep(): connection borrowed for more than " + leakDetectionThreshold + "ms, possible leak", borrower);
+                    }
+                }
+            }
+
+            fill();
+        } catch (RuntimeException exception) {
+            LOGGER.error("housekeep(): error during housekeeping", exception);
+        }
+    }
+
+    /**
+     * This class provides an entry in the pool for a physical connection.
+     */
+    static final class Entry {
+        /**
+         * The physical connection.
+         */
+        private final Connection connection;
+        /**
+         * The state of the connection.
+         */
+        private final AtomicInteger state = new AtomicInteger(IN_USE);
+        /**
+         * The time the connection was last returned.
+         */
+        private volatile long lastAccess = System.currentTimeMillis();
+        /**
+         * The time the connection was last borrowed, in nanoseconds.
+         */
+        private volatile long borrowedAt;
+        /**
+         * The stack trace of the borrower, if leak detection is enabled.
+         */
+        private volatile Exception borrower;
+        /**
+         * Whether the borrow has been reported as a possible leak.
+         */
+        private volatile boolean leakReported;
+
+        /**
+         * Construct an instance of the pool entry.
+         *
+         * @param c the physical connection
+         */
+        private Entry(final Connection c) {
+            connection = c;
+        }
+
+        /**
+         * Get the physical connection.
+         *
+         * @return the physical connection
+         */
+        Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Record that the connection has been borrowed.
+         */
+        private void borrowed() {
+            borrowedAt = System.nanoTime();
+        }
+
+        /**
+         * Record that the connection has been returned.
+         */
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * @(#) ConnectionPool.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * This interface is implemented by the connection pools used by a
+ * {@link DataSourceImpl}. A pool is opened when the data source starts and
+ * closed when it stops.
+ *
+ * @author Chris Wareham
+ */
+public interface ConnectionPool {
+    /**
+     * Open the pool.
+     *
+     * @param dataSource the source for physical database connections
+     * @param config the pool configuration
+     * @throws SQLException if an error occurs
+     */
+    void open(DataSource dataSource, ConnectionPoolConfig config) throws SQLException;
+
+    /**
+     * Borrow a connection from the pool. Closing the connection returns it to
+     * the pool.
+     *
+     * @return a connection
+     * @throws SQLException if an error occurs
+     * @throws java.sql.SQLTimeoutException if no connection becomes available
+     * within the maximum wait time
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * Get the number of connections borrowed from the pool.
+     *
+     * @return the number of connections borrowed from the pool
+     */
+    int getActiveCount();
+
+    /**
+     * Get the number of idle connections in the pool.
+     *
+     * @return the number of idle connections in the pool
+     */
+    int getIdleCount();
+
+    /**
+     * Get the statistics of the pool.
+     *
+     * @return the statistics of the pool
+     */
+    ConnectionPoolStatistics getStatistics();
+
+    /**
+     * Close the pool and its idle connections. Borrowed connections are closed
+     * when they are returned.
+     */
+    void close();
+}
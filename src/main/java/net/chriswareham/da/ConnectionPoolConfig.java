@@ -0,0 +1,244 @@
+/*
+ * @(#) ConnectionPoolConfig.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This class provides a bean that stores the configuration of a connection
+ * pool.
+ *
+ * @author Chris Wareham
+ */
+public class ConnectionPoolConfig {
+    /**
+     * The default number of milliseconds a connection above the minimum may be
+     * idle before it is closed.
+     */
+    private static final long DEFAULT_IDLE_TIMEOUT = 300000L;
+    /**
+     * The default number of seconds to wait for a connection to be validated.
+     */
+    private static final int DEFAULT_VALIDATION_TIMEOUT = 5;
+
+    /**
+     * The minimum number of idle connections in the pool.
+     */
+    private int minIdle;
+    /**
+     * The maximum number of idle connections in the pool.
+     */
+    private int maxIdle;
+    /**
+     * The maximum number of active connections in the pool.
+     */
+    private int maxActive;
+    /**
+     * The maximum number of milliseconds to block when the pool is exhausted.
+     */
+    private long maxWait;
+    /**
+     * The number of milliseconds between housekeeping runs, zero if
+     * housekeeping is disabled, or negative to use the default of the pool.
+     */
+    private long housekeepingPeriod = -1L;
+    /**
+     * The number of milliseconds a connection above the minimum may be idle
+     * before it is closed.
+     */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    /**
+     * The number of seconds to wait for a connection to be validated.
+     */
+    private int validationTimeout = DEFAULT_VALIDATION_TIMEOUT;
+    /**
+     * The number of milliseconds a connection may be borrowed before it is
+     * reported as a possible leak, or zero to disable leak detection.
+     */
+    private long leakDetectionThreshold;
+    /**
+     * The factory for prepared statement caches, or null if statements are not
+     * cached.
+     */
+    private StatementCacheFactory statementCacheFactory;
+
+    /**
+     * Get the minimum number of idle connections in the pool.
+     *
+     * @return the minimum number of idle connections in the pool
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Set the minimum number of idle connections in the pool.
+     *
+     * @param m the minimum number of idle connections in the pool
+     */
+    public void setMinIdle(final int m) {
+        minIdle = m;
+    }
+
+    /**
+     * Get the maximum number of idle connections in the pool.
+     *
+     * @return the maximum number of idle connections in the pool, or a
+     * negative number if there is no limit
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Set the maximum number of idle connections in the pool.
+     *
+     * @param m the maximum number of idle connections in the pool, or a
+     * negative number if there is no limit
+     */
+    public void setMaxIdle(final int m) {
+        maxIdle = m;
+    }
+
+    /**
+     * Get the maximum number of active connections in the pool.
+     *
+     * @return the maximum number of active connections in the pool, or zero
+     * if the pool is unbounded
+     */
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * Set the maximum number of active connections in the pool.
+     *
+     * @param m the maximum number of active connections in the pool, or zero
+     * if the pool is unbounded
+     */
+    public void setMaxActive(final int m) {
+        maxActive = m;
+    }
+
+    /**
+     * Get the maximum number of milliseconds to block when the pool is exhausted.
+     *
+     * @return the maximum number of milliseconds to block when the pool is
+     * exhausted, or zero to block indefinitely
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Set the maximum number of milliseconds to block when the pool is exhausted.
+     *
+     * @param m the maximum number of milliseconds to block when the pool is
+     * exhausted, or zero to block indefinitely
+     */
+    public void setMaxWait(final long m) {
+        maxWait = m;
+    }
+
+    /**
+     * Get the number of milliseconds between housekeeping runs.
+     *
+     * @return the number of milliseconds between housekeeping runs, zero if
+     * housekeeping is disabled, or negative to use the default of the pool
+     */
+    public long getHousekeepingPeriod() {
+        return housekeepingPeriod;
+    }
+
+    /**
+     * Set the number of milliseconds between housekeeping runs, zero to
+     * disable housekeeping, or a negative number to use the default of the
+     * pool.
+     *
+     * @param hp the number of milliseconds between housekeeping runs
+     */
+    public void setHousekeepingPeriod(final long hp) {
+        housekeepingPeriod = hp;
+    }
+
+    /**
+     * Get the number of milliseconds a connection above the minimum may be
+     * idle before it is closed.
+     *
+     * @return the number of milliseconds a connection may be idle
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds a connection above the minimum may be
+     * idle before it is closed.
+     *
+     * @param it the number of milliseconds a connection may be idle
+     */
+    public void setIdleTimeout(final long it) {
+        idleTimeout = it;
+    }
+
+    /**
+     * Get the number of seconds to wait for a connection to be validated.
+     *
+     * @return the number of seconds to wait for a connection to be validated
+     */
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    /**
+     * Set the number of seconds to wait for a connection to be validated.
+     *
+     * @param vt the number of seconds to wait for a connection to be validated
+     */
+    public void setValidationTimeout(final int vt) {
+        validationTimeout = vt;
+    }
+
+    /**
+     * Get the number of milliseconds a connection may be borrowed before it is
+     * reported as a possible leak.
+     *
+     * @return the number of milliseconds a connection may be borrowed, or zero
+     * if leak detection is disabled
+     */
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    /**
+     * Set the number of milliseconds a connection may be borrowed before it is
+     * reported as a possible leak, or zero to disable leak detection.
+     *
+     * @param ldt the number of milliseconds a connection may be borrowed
+     */
+    public void setLeakDetectionThreshold(final long ldt) {
+        leakDetectionThreshold = ldt;
+    }
+
+    /**
+     * Get the factory for prepared statement caches.
+     *
+     * @return the factory for prepared statement caches, or null if statements
+     * are not cached
+     */
+    public StatementCacheFactory getStatementCacheFactory() {
+        return statementCacheFactory;
+    }
+
+    /**
+     * Set the factory for prepared statement caches.
+     *
+     * @param scf the factory for prepared statement caches, or null if
+     * statements are not cached
+     */
+    public void setStatementCacheFactory(final StatementCacheFactory scf) {
+        statementCacheFactory = scf;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * @(#) ConnectionPoolStatistics.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records connection pool statistics: how long threads wait to
+ * borrow connections, how long connections are held, and how often borrowing
+ * times out or fails. Connections held for longer than the leak detection
+ * threshold are counted by the stack trace of the borrower, so the code that
+ * hogs connections can be found.
+ *
+ * @author Chris Wareham
+ */
+public class ConnectionPoolStatistics {
+    /**
+     * The maximum number of distinct borrower stack traces counted.
+     */
+    private static final int MAX_LONG_HOLD_STACKS = 100;
+
+    /**
+     * The number of threads blocked waiting for a connection to be returned.
+     */
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    /**
+     * The number of connections borrowed.
+     */
+    private final LongAdder borrowCount = new LongAdder();
+    /**
+     * The time threads waited to borrow connections.
+     */
+    private final Histogram borrowWaitTime = new Histogram();
+    /**
+     * The time connections were held.
+     */
+    private final Histogram holdTime = new Histogram();
+    /**
+     * The number of borrows that timed out.
+     */
+    private final LongAdder timeoutCount = new LongAdder();
+    /**
+     * The number of borrows that failed for reasons other than a timeout.
+     */
+    private final LongAdder failureCount = new LongAdder();
+    /**
+     * The number of connections held for longer than the leak detection
+     * threshold.
+     */
+    private final LongAdder longHoldCount = new LongAdder();
+    /**
+     * The number of long holds by the stack trace of the borrower, guarded by
+     * this object.
+     */
+    private final Map<String, long[]> longHoldStacks = new HashMap<>();
+
+    /**
+     * Record that a thread has started to borrow a connection.
+     *
+     * @return the time the borrow started, in nanoseconds
+     */
+    public long startBorrow() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record that a borrowing thread has blocked waiting for a connection to
+     * be returned, as the pool is exhausted.
+     */
+    public void startWait() {
+        waitingCount.incrementAndGet();
+    }
+
+    /**
+     * Record that a borrowing thread has stopped waiting for a connection to
+     * be returned.
+     */
+    public void endWait() {
+        waitingCount.decrementAndGet();
+    }
+
+    /**
+     * Record that a thread has borrowed a connection.
+     *
+     * @param start the time the borrow started, in nanoseconds
+     */
+    public void recordBorrow(final long start) {
+        borrowCount.increment();
+        borrowWaitTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record that a thread timed out waiting to borrow a connection.
+     *
+     * @param start the time the borrow started, in nanoseconds
+     */
+    public void recordTimeout(final long start) {
+        timeoutCount.increment();
+        borrowWaitTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record that a thread failed to borrow a connection for a reason other
+     * than a timeout.
+     *
+     * @param start the time the borrow started, in nanoseconds
+     */
+    public void recordFailure(final long start) {
+        failureCount.increment();
+    }
+
+    /**
+     * Record that a connection has been returned.
+     *
+     * @param nanos the time the connection was held, in nanoseconds
+     */
+    public void recordRelease(final long nanos) {
+        holdTime.record(nanos);
+    }
+
+    /**
+     * Record that a connection was held for longer than the leak detection
+     * threshold.
+     *
+     * @param borrower an exception created by the borrower
+     */
+    public void recordLongHold(final Throwable borrower) {
+        longHoldCount.increment();
+
+        StringWriter writer = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(writer)) {
+            for (StackTraceElement element : borrower.getStackTrace()) {
+                printWriter.println("\tat " + element);
+            }
+        }
+        String stack = writer.toString();
+
+        synchronized (this) {
+            long[] count = longHoldStacks.get(stack);
+            if (count != null) {
+                ++count[0];
+            } else if (longHoldStacks.size() < MAX_LONG_HOLD_STACKS) {
+                longHoldStacks.put(stack, new long[] {1L});
+            }
+        }
+    }
+
+    /**
+     * Get the number of threads blocked waiting for a connection to be
+     * returned. Threads that find an idle connection or create one are not
+     * counted, so this measures how far demand exceeds the size of the pool.
+     *
+     * @return the number of threads blocked waiting for a connection
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    /**
+     * Get the number of connections borrowed.
+     *
+     * @return the number of connections borrowed
+     */
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /**
+     * Get the histogram of the time threads waited to borrow connections.
+     *
+     * @return the histogram of the time threads waited to borrow connections
+     */
+    public Histogram getBorrowWaitTime() {
+        return borrowWaitTime;
+    }
+
+    /**
+     * Get the histogram of the time connections were held.
+     *
+     * @return the histogram of the time connections were held
+     */
+    public Histogram getHoldTime() {
+        return holdTime;
+    }
+
+    /**
+     * Get the number of borrows that timed out.
+     *
+     * @return the number of borrows that timed out
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Get the number of borrows that failed for reasons other than a timeout.
+     *
+     * @return the number of borrows that failed
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Get the number of connections held for longer than the leak detection
+     * threshold.
+     *
+     * @return the number of connections held for longer than the threshold
+     */
+    public long getLongHoldCount() {
+        return longHoldCount.sum();
+    }
+
+    /**
+     * Get the stack traces of the borrowers of connections held for longer
+     * than the leak detection threshold, and the number of times each held a
+     * connection for too long, most frequent first.
+     *
+     * @return the stack traces of the borrowers of connections held for too
+     * long
+     */
+    public synchronized Map<String, Long> getLongHoldStacks() {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(longHoldStacks.entrySet());
+        Collections.sort(entries, (e1, e2) -> Long.compare(e2.getValue()[0], e1.getValue()[0]));
+
+        Map<String, Long> stacks = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> entry : entries) {
+            stacks.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return stacks;
+    }
+
+    /**
+     * Reset the statistics. The number of waiting threads is not reset.
+     */
+    public void reset() {
+        borrowCount.reset();
+        borrowWaitTime.reset();
+        holdTime.reset();
+        timeoutCount.reset();
+        failureCount.reset();
+        longHoldCount.reset();
+        synchronized (this) {
+            longHoldStacks.clear();
+        }
+    }
+}
@@ -10,49 +10,75 @@ import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
-import org.apache.commons.dbcp.DataSourceConnectionFactory;
-import org.apache.commons.dbcp.PoolableConnectionFactory;
-import org.apache.commons.dbcp.PoolingDataSource;
-import org.apache.commons.pool.impl.GenericObjectPool;
-
 import net.chriswareham.di.ComponentException;
 import net.chriswareham.di.LifecycleComponent;
 import net.chriswareham.logdriver.LogDataSource;
 
 /**
- * This class provides a pooling data source wrapper.
+ * This class provides a pooling data source wrapper. The pool implementation
+ * is pluggable, and defaults to a {@link DbcpConnectionPool}. A
+ * {@link ConcurrentConnectionPool} can be selected by configuration, for
+ * example:
+ * <pre>
+ * &lt;component id="connectionPool" class="net.chriswareham.da.ConcurrentConnectionPool"/&gt;
+ *
+ * &lt;component id="dataSource" class="net.chriswareham.da.DataSourceImpl"&gt;
+ *     &lt;property name="connectionPool" refid="connectionPool"/&gt;
+ *     ...
+ * &lt;/component&gt;
+ * </pre>
+ * The pool statistics, including histograms of the time taken to borrow
+ * connections and the time they are held, are available via JMX. If a leak
+ * detection threshold is set, the stack traces of the code that held
+ * connections for longer than the threshold are counted too.
  *
  * @author Chris Wareham
  */
-public class DataSourceImpl implements DataSource, LifecycleComponent {
+public class DataSourceImpl implements DataSource, DataSourceImplMBean, LifecycleComponent {
+    /**
+     * The default maximum number of prepared statements cached per connection.
+     */
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+    /**
+     * The number of instances created, used to generate managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
     /**
      * The source for database connections.
      */
     private DataSource dataSource;
     /**
-     * The minimum number of idle connections in the pool.
+     * The pool configuration.
+     */
+    private final ConnectionPoolConfig config = new ConnectionPoolConfig();
+    /**
+     * The connection pool.
      */
-    private int minIdle;
+    private ConnectionPool connectionPool = new DbcpConnectionPool();
     /**
-     * The maximum number of idle connections in the pool.
+     * The maximum number of prepared statements cached per connection.
      */
-    private int maxIdle;
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
     /**
-     * The maximum number of active connections in the pool.
+     * The factory for the prepared statement caches, or null if statements
+     * are not cached.
      */
-    private int maxActive;
+    private StatementCacheFactory statementCacheFactory;
     /**
-     * The maximum number of milliseconds to block when the pool is exhausted.
+     * Whether the connection pool is open.
      */
-    private long maxWait;
+    private volatile boolean running;
     /**
-     * The database connection pool.
+     * The managed name.
      */
-    private PoolingDataSource poolingDataSource;
+    private String managedName = "net.chriswareham.da:type=DataSource,name=dataSource" + INSTANCES.incrementAndGet();
 
     /**
      * Set the source for database connections.
@@ -69,7 +95,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      * @param m the minimum number of idle connections in the pool
      */
     public void setMinIdle(final int m) {
-        minIdle = m;
+        config.setMinIdle(m);
     }
 
     /**
@@ -78,7 +104,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      * @param m the maximum number of idle connections in the pool
      */
     public void setMaxIdle(final int m) {
-        maxIdle = m;
+        config.setMaxIdle(m);
     }
 
     /**
@@ -87,7 +113,15 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      * @param m the maximum number of active connections in the pool
      */
     public void setMaxActive(final int m) {
-        maxActive = m;
+        config.setMaxActive(m);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxActive() {
+        return config.getMaxActive();
     }
 
     /**
@@ -96,7 +130,240 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      * @param m the maximum number of milliseconds to block when the pool is exhausted
      */
     public void setMaxWait(final long m) {
-        maxWait = m;
+        config.setMaxWait(m);
+    }
+
+    /**
+     * Set the number of milliseconds between housekeeping runs, which close
+     * idle connections, top the pool up to its minimum, and report leaks. The
+     * default is 30 seconds for the built-in pool and 15 minutes for the DBCP
+     * pool, and zero disables housekeeping.
+     *
+     * @param hp the number of milliseconds between housekeeping runs
+     */
+    public void setHousekeepingPeriod(final long hp) {
+        config.setHousekeepingPeriod(hp);
+    }
+
+    /**
+     * Set the number of milliseconds a connection above the minimum may be
+     * idle before it is closed.
+     *
+     * @param it the number of milliseconds a connection may be idle
+     */
+    public void setIdleTimeout(final long it) {
+        config.setIdleTimeout(it);
+    }
+
+    /**
+     * Set the number of seconds to wait for a connection to be validated.
+     *
+     * @param vt the number of seconds to wait for a connection to be validated
+     */
+    public void setValidationTimeout(final int vt) {
+        config.setValidationTimeout(vt);
+    }
+
+    /**
+     * Set the number of milliseconds a connection may be borrowed before it is
+     * reported as a possible leak, or zero to disable leak detection. The
+     * stack traces of borrowers that hold connections for longer than this
+     * are also counted in the pool statistics.
+     *
+     * @param ldt the number of milliseconds a connection may be borrowed
+     */
+    public void setLeakDetectionThreshold(final long ldt) {
+        config.setLeakDetectionThreshold(ldt);
+    }
+
+    /**
+     * Set the connection pool.
+     *
+     * @param cp the connection pool
+     */
+    public void setConnectionPool(final ConnectionPool cp) {
+        connectionPool = cp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveCount() {
+        return running ? connectionPool.getActiveCount() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIdleCount() {
+        return running ? connectionPool.getIdleCount() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWaitingCount() {
+        return connectionPool.getStatistics().getWaitingCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBorrowCount() {
+        return connectionPool.getStatistics().getBorrowCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTimeoutCount() {
+        return connectionPool.getStatistics().getTimeoutCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFailureCount() {
+        return connectionPool.getStatistics().getFailureCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageBorrowWaitTime() {
+        return connectionPool.getStatistics().getBorrowWaitTime().getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxBorrowWaitTime() {
+        return connectionPool.getStatistics().getBorrowWaitTime().getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getBorrowWaitTimePercentile(final double percentile) {
+        return connectionPool.getStatistics().getBorrowWaitTime().getPercentile(percentile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getBorrowWaitTimeHistogram() {
+        return connectionPool.getStatistics().getBorrowWaitTime().getBuckets();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageHoldTime() {
+        return connectionPool.getStatistics().getHoldTime().getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxHoldTime() {
+        return connectionPool.getStatistics().getHoldTime().getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHoldTimePercentile(final double percentile) {
+        return connectionPool.getStatistics().getHoldTime().getPercentile(percentile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getHoldTimeHistogram() {
+        return connectionPool.getStatistics().getHoldTime().getBuckets();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLongHoldCount() {
+        return connectionPool.getStatistics().getLongHoldCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getLongHoldStacks() {
+        return connectionPool.getStatistics().getLongHoldStacks();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        connectionPool.getStatistics().reset();
+    }
+
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
+    /**
+     * Set the maximum number of prepared statements cached per connection, or
+     * zero to disable caching. Cached statements survive the connection being
+     * returned to the pool, so they are not prepared again each time the
+     * connection is borrowed.
+     *
+     * @param scs the maximum number of prepared statements cached per connection
+     */
+    public void setStatementCacheSize(final int scs) {
+        statementCacheSize = scs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStatementCacheHitCount() {
+        return statementCacheFactory != null ? statementCacheFactory.getHitCount() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getStatementCacheMissCount() {
+        return statementCacheFactory != null ? statementCacheFactory.getMissCount() : 0L;
     }
 
     /**
@@ -104,27 +371,16 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public void start() throws ComponentException {
+        statementCacheFactory = statementCacheSize > 0 ? new StatementCacheFactory(statementCacheSize) : null;
+        config.setStatementCacheFactory(statementCacheFactory);
+
         try {
-            GenericObjectPool objectPool = new GenericObjectPool();
-            objectPool.setMinIdle(minIdle);
-            objectPool.setMaxIdle(maxIdle);
-            objectPool.setMaxActive(maxActive);
-            objectPool.setMaxWait(maxWait);
-            if (maxActive > 0) {
-                objectPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
-            } else {
-                objectPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_GROW);
-            }
-            objectPool.setTimeBetweenEvictionRunsMillis(900000L);
-            objectPool.setSoftMinEvictableIdleTimeMillis(300000L);
-            objectPool.setNumTestsPerEvictionRun(-2);
-
-            DataSourceConnectionFactory connectionFactory = new DataSourceConnectionFactory(new LogDataSource(dataSource));
-            PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, objectPool, null, "SELECT TRUE", false, true);
-            poolingDataSource = new PoolingDataSource(objectPool);
-        } catch (RuntimeException exception) {
+            connectionPool.open(new LogDataSource(dataSource), config);
+        } catch (SQLException | RuntimeException exception) {
             throw new ComponentException("Error creating database connection pool", exception);
         }
+
+        running = true;
     }
 
     /**
@@ -132,7 +388,8 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public void stop() {
-        poolingDataSource = null;
+        running = false;
+        connectionPool.close();
     }
 
     /**
@@ -140,7 +397,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public Connection getConnection() throws SQLException {
-        return poolingDataSource.getConnection();
+        return connectionPool.getConnection();
     }
 
     /**
@@ -148,7 +405,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public Connection getConnection(final String username, final String password) throws SQLException {
-        return poolingDataSource.getConnection(username, password);
+        throw new UnsupportedOperationException();
     }
 
     /**
@@ -156,7 +413,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public int getLoginTimeout() throws SQLException {
-        return poolingDataSource.getLoginTimeout();
+        return dataSource.getLoginTimeout();
     }
 
     /**
@@ -164,7 +421,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public void setLoginTimeout(final int seconds) throws SQLException {
-        poolingDataSource.setLoginTimeout(seconds);
+        dataSource.setLoginTimeout(seconds);
     }
 
     /**
@@ -172,7 +429,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public PrintWriter getLogWriter() throws SQLException {
-        return poolingDataSource.getLogWriter();
+        return dataSource.getLogWriter();
     }
 
     /**
@@ -180,7 +437,7 @@ public class DataSourceImpl implements DataSource, LifecycleComponent {
      */
     @Override
     public void setLogWriter(final PrintWriter out) throws SQLException {
-        poolingDataSource.setLogWriter(out);
+        dataSource.setLogWriter(out);
     }
 
     /**
@@ -0,0 +1,167 @@
+/*
+ * @(#) DataSourceImplMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Map;
+
+import net.chriswareham.di.ManagedComponent;
+
+/**
+ * This interface is implemented by managed pooling data sources.
+ *
+ * @author Chris Wareham
+ */
+public interface DataSourceImplMBean extends ManagedComponent {
+    /**
+     * Get the maximum number of active connections in the pool.
+     *
+     * @return the maximum number of active connections in the pool, or zero
+     * if the pool is unbounded
+     */
+    int getMaxActive();
+
+    /**
+     * Get the number of connections borrowed from the pool.
+     *
+     * @return the number of connections borrowed from the pool
+     */
+    int getActiveCount();
+
+    /**
+     * Get the number of idle connections in the pool.
+     *
+     * @return the number of idle connections in the pool
+     */
+    int getIdleCount();
+
+    /**
+     * Get the number of threads blocked waiting for a connection to be
+     * returned to the pool.
+     *
+     * @return the number of threads blocked waiting for a connection
+     */
+    int getWaitingCount();
+
+    /**
+     * Get the number of connections borrowed from the pool since the
+     * statistics were reset.
+     *
+     * @return the number of connections borrowed from the pool
+     */
+    long getBorrowCount();
+
+    /**
+     * Get the number of borrows that timed out waiting for a connection.
+     *
+     * @return the number of borrows that timed out
+     */
+    long getTimeoutCount();
+
+    /**
+     * Get the number of borrows that failed for reasons other than a timeout.
+     *
+     * @return the number of borrows that failed
+     */
+    long getFailureCount();
+
+    /**
+     * Get the average time taken to borrow a connection, in milliseconds.
+     *
+     * @return the average time taken to borrow a connection
+     */
+    double getAverageBorrowWaitTime();
+
+    /**
+     * Get the longest time taken to borrow a connection, in milliseconds.
+     *
+     * @return the longest time taken to borrow a connection
+     */
+    double getMaxBorrowWaitTime();
+
+    /**
+     * Get an upper bound on a percentile of the time taken to borrow a
+     * connection, in milliseconds.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound on the percentile
+     */
+    double getBorrowWaitTimePercentile(double percentile);
+
+    /**
+     * Get the histogram of the time taken to borrow a connection.
+     *
+     * @return the number of borrows in each bucket of the histogram
+     */
+    Map<String, Long> getBorrowWaitTimeHistogram();
+
+    /**
+     * Get the average time connections are held, in milliseconds.
+     *
+     * @return the average time connections are held
+     */
+    double getAverageHoldTime();
+
+    /**
+     * Get the longest time a connection was held, in milliseconds.
+     *
+     * @return the longest time a connection was held
+     */
+    double getMaxHoldTime();
+
+    /**
+     * Get an upper bound on a percentile of the time connections are held, in
+     * milliseconds.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound on the percentile
+     */
+    double getHoldTimePercentile(double percentile);
+
+    /**
+     * Get the histogram of the time connections are held.
+     *
+     * @return the number of connections in each bucket of the histogram
+     */
+    Map<String, Long> getHoldTimeHistogram();
+
+    /**
+     * Get the number of connections held for longer than the leak detection
+     * threshold.
+     *
+     * @return the number of connections held for longer than the threshold
+     */
+    long getLongHoldCount();
+
+    /**
+     * Get the stack traces of the borrowers of connections held for longer
+     * than the leak detection threshold, and the number of times each held a
+     * connection for too long, most frequent first.
+     *
+     * @return the stack traces of the borrowers of connections held for too
+     * long
+     */
+    Map<String, Long> getLongHoldStacks();
+
+    /**
+     * Get the number of prepared statements that were found in a cache.
+     *
+     * @return the number of prepared statements that were found in a cache
+     */
+    long getStatementCacheHitCount();
+
+    /**
+     * Get the number of prepared statements that were not found in a cache.
+     *
+     * @return the number of prepared statements that were not found in a cache
+     */
+    long getStatementCacheMissCount();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,259 @@
+/*
+ * @(#) DbcpConnectionPool.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.DataSourceConnectionFactory;
+import org.apache.commons.dbcp.PoolableConnectionFactory;
+import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * This class provides a connection pool backed by Commons DBCP. It validates
+ * idle connections with a query rather than a validation timeout. Connections
+ * held for longer than the leak detection threshold are counted in the pool
+ * statistics when they are returned, but are not reported while they are
+ * still borrowed.
+ *
+ * @author Chris Wareham
+ */
+public class DbcpConnectionPool implements ConnectionPool {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(DbcpConnectionPool.class);
+    /**
+     * The query used to validate idle connections.
+     */
+    private static final String VALIDATION_QUERY = "SELECT TRUE";
+    /**
+     * The default number of milliseconds between eviction runs.
+     */
+    private static final long DEFAULT_HOUSEKEEPING_PERIOD = 900000L;
+
+    /**
+     * The statistics of the pool.
+     */
+    private final ConnectionPoolStatistics statistics = new ConnectionPoolStatistics();
+    /**
+     * The object pool.
+     */
+    private GenericObjectPool objectPool;
+    /**
+     * The database connection pool.
+     */
+    private PoolingDataSource poolingDataSource;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final DataSource dataSource, final ConnectionPoolConfig config) {
+        objectPool = new InstrumentedObjectPool(config.getLeakDetectionThreshold());
+        objectPool.setMinIdle(config.getMinIdle());
+        objectPool.setMaxIdle(config.getMaxIdle());
+        objectPool.setMaxActive(config.getMaxActive());
+        objectPool.setMaxWait(config.getMaxWait());
+        if (config.getMaxActive() > 0) {
+            objectPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        } else {
+            objectPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_GROW);
+        }
+        long housekeepingPeriod = config.getHousekeepingPeriod() >= 0 ? config.getHousekeepingPeriod() : DEFAULT_HOUSEKEEPING_PERIOD;
+        objectPool.setTimeBetweenEvictionRunsMillis(housekeepingPeriod > 0 ? housekeepingPeriod : -1L);
+        objectPool.setSoftMinEvictableIdleTimeMillis(config.getIdleTimeout());
+        objectPool.setNumTestsPerEvictionRun(-2);
+
+        DataSourceConnectionFactory connectionFactory = new DataSourceConnectionFactory(dataSource);
+        new PoolableConnectionFactory(connectionFactory, objectPool, config.getStatementCacheFactory(), VALIDATION_QUERY, false, true);
+        poolingDataSource = new PoolingDataSource(objectPool);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return poolingDataSource.getConnection();
+        } catch (SQLException exception) {
+            if (exception.getCause() instanceof NoSuchElementException) {
+                throw new SQLTimeoutException(exception.getMessage(), exception);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActiveCount() {
+        return objectPool.getNumActive();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIdleCount() {
+        return objectPool.getNumIdle();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConnectionPoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        try {
+            objectPool.close();
+        } catch (Exception exception) {
+            LOGGER.warn("close(): failed to close pool", exception);
+        }
+        poolingDataSource = null;
+    }
+
+    /**
+     * This class provides an object pool that records the time taken to
+     * borrow connections and the time they are held.
+     */
+    private final class InstrumentedObjectPool extends GenericObjectPool {
+        /**
+         * The number of nanoseconds a connection may be borrowed before it is
+         * counted as a long hold, or zero if long holds are not counted.
+         */
+        private final long leakDetectionThreshold;
+        /**
+         * The borrowed connections and the details of their borrowers.
+         */
+        private final Map<Object, Borrow> borrows = new ConcurrentHashMap<>();
+
+        /**
+         * Construct an instance of the object pool.
+         *
+         * @param ldt the number of milliseconds a connection may be borrowed
+         * before it is counted as a long hold, or zero if long holds are not
+         * counted
+         */
+        private InstrumentedObjectPool(final long ldt) {
+            leakDetectionThreshold = TimeUnit.MILLISECONDS.toNanos(ldt);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object borrowObject() throws Exception {
+            long start = statistics.startBorrow();
+            // the pool does not expose its waiting threads, so a borrow is
+            // counted as waiting if the pool is exhausted when it starts
+            boolean waiting = getNumIdle() == 0 && getMaxActive() > 0 && getNumActive() >= getMaxActive();
+            if (waiting) {
+                statistics.startWait();
+            }
+            Object obj;
+            try {
+                obj = super.borrowObject();
+            } catch (NoSuchElementException exception) {
+                statistics.recordTimeout(start);
+                throw exception;
+            } catch (Exception exception) {
+                statistics.recordFailure(start);
+                throw exception;
+            } finally {
+                if (waiting) {
+                    statistics.endWait();
+                }
+            }
+            statistics.recordBorrow(start);
+
+            Exception borrower = null;
+            if (leakDetectionThreshold > 0) {
+                borrower = new Exception("Connection borrowed by thread '" + Thread.currentThread().getName() + "'");
+            }
+            borrows.put(obj, new Borrow(borrower));
+            return obj;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void returnObject(final Object obj) throws Exception {
+            released(obj);
+            super.returnObject(obj);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void invalidateObject(final Object obj) throws Exception {
+            released(obj);
+            super.invalidateObject(obj);
+        }
+
+        /**
+         * Record that a connection has been returned.
+         *
+         * @param obj the connection
+         */
+        private void released(final Object obj) {
+            Borrow borrow = borrows.remove(obj);
+            if (borrow != null) {
+                long held = System.nanoTime() - borrow.start;
+                statistics.recordRelease(held);
+                if (borrow.borrower != null && held > leakDetectionThreshold) {
+                    statistics.recordLongHold(borrow.borrower);
+                }
+            }
+        }
+    }
+
+    /**
+     * This class provides the details of a borrowed connection.
+     */
+    private static final class Borrow {
+        /**
+         * The time the connection was borrowed, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+        /**
+         * The stack trace of the borrower, or null if long holds are not
+         * counted.
+         */
+        private final Exception borrower;
+
+        /**
+         * Construct an instance of the borrow details.
+         *
+         * @param b the stack trace of the borrower, or null if long holds are
+         * not counted
+         */
+        private Borrow(final Exception b) {
+            borrower = b;
+        }
+    }
+}
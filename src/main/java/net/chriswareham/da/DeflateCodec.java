@@ -0,0 +1,79 @@
+/*
+ * @(#) DeflateCodec.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class provides a codec that compresses the output of another codec
+ * with the deflate algorithm.
+ *
+ * @author Chris Wareham
+ */
+public class DeflateCodec implements Codec {
+    /**
+     * The codec that is compressed.
+     */
+    private Codec codec = new JavaCodec();
+    /**
+     * The compression level.
+     */
+    private int level = Deflater.BEST_SPEED;
+
+    /**
+     * Set the codec that is compressed. The default is Java serialisation.
+     *
+     * @param c the codec that is compressed
+     */
+    public void setCodec(final Codec c) {
+        codec = c;
+    }
+
+    /**
+     * Set the compression level, from 0 for no compression to 9 for the best
+     * compression. The default is 1 for the fastest compression.
+     *
+     * @param l the compression level
+     */
+    public void setLevel(final int l) {
+        level = l;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(final Object obj, final OutputStream out) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream outputStream = new DeflaterOutputStream(out, deflater);
+            codec.encode(obj, outputStream);
+            outputStream.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object decode(final InputStream in) throws IOException, ClassNotFoundException {
+        Inflater inflater = new Inflater();
+        try {
+            return codec.decode(new InflaterInputStream(in, inflater));
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -6,15 +6,19 @@
 
 package net.chriswareham.da;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -27,16 +31,34 @@ import net.chriswareham.di.LifecycleComponent;
  * It also provides a purge thread which flushes objects that have been in the
  * cache longer than a configurable expiration time, and an event listener which
  * flushes objects on receipt of an update or delete event.
+ * <p>
+ * Objects are written by a storage backend, which by default writes each
+ * object to a file named after its id. A segmented backend, which appends
+ * objects to a small number of large files and keeps an in-memory index of
+ * them, is better suited to caches with many objects. The segmented backend
+ * can also memory map its segments, so that fetching an object copies it from
+ * the page cache rather than reading it from a file.
+ * <p>
+ * Objects are serialised with a configurable codec, which by default uses Java
+ * serialisation. Serialised objects can be fetched and stored as raw bytes,
+ * which suits binary content that is rendered without being deserialised.
+ * <p>
+ * The cache is a managed component, and exposes its statistics via JMX when
+ * created by a component factory with a component manager.
  *
  * @author Chris Wareham
  * @param <I> the type of object that is used to identify cached objects
  * @param <T> the type of cached objects
  */
-public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleComponent {
+public class DiskCache<I, T> implements Cache<I, T>, DiskCacheMBean, TopicListener, LifecycleComponent {
     /**
      * The logger.
      */
     private static final Logger LOGGER = Logger.getLogger(DiskCache.class);
+    /**
+     * The number of instances, used to generate default managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
 
     /**
      * Whether the cache is running.
@@ -50,6 +72,26 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
      * The directory to cache objects to.
      */
     private File cacheDirectory;
+    /**
+     * The name of the storage.
+     */
+    private String storageName = "file";
+    /**
+     * The maximum size of a segment, if the storage is segmented.
+     */
+    private long segmentSize;
+    /**
+     * Whether segments are memory mapped, if the storage is segmented.
+     */
+    private boolean memoryMapped;
+    /**
+     * The codec.
+     */
+    private Codec codec = new JavaCodec();
+    /**
+     * The storage.
+     */
+    private volatile DiskCacheStorage storage;
     /**
      * How long an object is cached before the purger thread flushes it.
      */
@@ -66,6 +108,14 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
      * The event service.
      */
     private EventService eventService;
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatistics statistics = new CacheStatistics();
+    /**
+     * The managed name.
+     */
+    private String managedName = "net.chriswareham.da:type=DiskCache,name=diskCache" + INSTANCES.incrementAndGet();
 
     /**
      * Set the directory to cache objects to.
@@ -76,6 +126,48 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
         cacheDirectory = new File(cd);
     }
 
+    /**
+     * Set the name of the storage, which is one of "file" to write each object
+     * to a file named after its id, or "segmented" to append objects to
+     * segment files. The default is "file".
+     *
+     * @param s the name of the storage
+     */
+    public void setStorage(final String s) {
+        createStorage(s);
+        storageName = s;
+    }
+
+    /**
+     * Set the maximum size of a segment in megabytes, if the storage is
+     * segmented.
+     *
+     * @param ss the maximum size of a segment in megabytes
+     */
+    public void setSegmentSize(final int ss) {
+        segmentSize = 1024L * 1024L * ss;
+    }
+
+    /**
+     * Set the codec objects are serialised with. The default is Java
+     * serialisation.
+     *
+     * @param c the codec objects are serialised with
+     */
+    public void setCodec(final Codec c) {
+        codec = c;
+    }
+
+    /**
+     * Set whether segments are memory mapped for reading, if the storage is
+     * segmented.
+     *
+     * @param mm whether segments are memory mapped for reading
+     */
+    public void setMemoryMapped(final boolean mm) {
+        memoryMapped = mm;
+    }
+
     /**
      * Set the number of minutes an object is cached before the purge thread flushes it.
      *
@@ -103,6 +195,168 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
         eventService = es;
     }
 
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * Set the number of hot keys reported.
+     *
+     * @param hkc the number of hot keys reported
+     */
+    public void setHotKeyCount(final int hkc) {
+        statistics.setHotKeyCount(hkc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCacheDirectory() {
+        return cacheDirectory.getPath();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getStorage() {
+        return storageName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheSize() {
+        DiskCacheStorage s = storage;
+        return s != null ? s.getSize() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems() {
+        return getCacheItems(CacheItem.DEFAULT_LIMIT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The reference count of each item is not tracked, so is always zero.
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems(final int limit) {
+        Map<Object, CacheItem> items = new LinkedHashMap<>();
+        DiskCacheStorage s = storage;
+        if (s != null) {
+            for (Map.Entry<String, Long> size : s.getSizes().entrySet()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                items.put(size.getKey(), new CacheItem(size.getValue(), 0L));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheItemCount() {
+        DiskCacheStorage s = storage;
+        return s != null ? s.getCount() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return statistics.getHitCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return statistics.getMissCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        return statistics.getHitRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadCount() {
+        return statistics.getLoadCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadFailureCount() {
+        return statistics.getLoadFailureCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageLoadTime() {
+        return statistics.getAverageLoadTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The cache is not bounded, so no objects are evicted.
+     */
+    @Override
+    public long getEvictionCount() {
+        return 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getHotKeys() {
+        return statistics.getHotKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -126,14 +380,145 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
         }
 
         if (obj != null) {
+            statistics.recordHit(id);
             // not sure if it's possible to make this type-safe
             @SuppressWarnings("unchecked") T t = (T) obj;
             return t;
         }
 
+        statistics.recordMiss(id);
+
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<I, T> fetchAll(final Collection<I> ids) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetchAll(): ids:[" + ids.size() + "]");
+        }
+
+        Map<I, T> objs = Collections.emptyMap();
+
+        if (running) {
+            objs = new LinkedHashMap<>();
+            try {
+                lock.readLock().lock();
+                for (I id : ids) {
+                    try {
+                        Object obj = fetchImpl(id);
+                        if (obj != null) {
+                            statistics.recordHit(id);
+                            // not sure if it's possible to make this type-safe
+                            @SuppressWarnings("unchecked") T t = (T) obj;
+                            objs.put(id, t);
+                        } else {
+                            statistics.recordMiss(id);
+                        }
+                    } catch (ClassNotFoundException exception) {
+                        LOGGER.error("fetchAll(): error fetching id:[" + id + "]", exception);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        return objs;
+    }
+
+    /**
+     * Fetches the serialised form of an object without deserialising it.
+     *
+     * @param id the id of the object to fetch
+     * @return the serialised object, or null if it is not cached
+     */
+    public byte[] fetchBytes(final I id) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetchBytes(): id:[" + id + "]");
+        }
+
+        byte[] data = null;
+
+        if (running) {
+            try {
+                lock.readLock().lock();
+                data = storage.read(id.toString());
+            } catch (IOException exception) {
+                LOGGER.error("fetchBytes(): error fetching id:[" + id + "]", exception);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        if (data != null) {
+            statistics.recordHit(id);
+        } else {
+            statistics.recordMiss(id);
+        }
+
+        return data;
+    }
+
+    /**
+     * Stores raw bytes, which can only be fetched with fetchBytes(). As with
+     * objects, bytes that are already cached are not replaced.
+     *
+     * @param id the id of the bytes to store
+     * @param data the bytes to store
+     */
+    public void storeBytes(final I id, final byte[] data) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("storeBytes(): id:[" + id + "]");
+        }
+
+        if (running) {
+            try {
+                lock.writeLock().lock();
+                String key = id.toString();
+                if (!storage.contains(key)) {
+                    storage.write(key, data);
+                } else {
+                    storage.touch(key);
+                }
+            } catch (IOException exception) {
+                LOGGER.error("storeBytes(): error storing id:[" + id + "]", exception);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Stores objects.
+     *
+     * @param objs the objects to store
+     * @param idFetcher the id fetcher for the objects
+     */
+    public void store(final List<T> objs, final IdFetcher<I, T> idFetcher) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("store(): all");
+        }
+
+        if (running) {
+            try {
+                lock.writeLock().lock();
+                for (T obj : objs) {
+                    I id = idFetcher.fetchId(obj);
+                    try {
+                        storeImpl(id, obj);
+                    } catch (IOException exception) {
+                        LOGGER.error("store(): error storing id:[" + id + "]", exception);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -190,6 +575,8 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
             try {
                 lock.writeLock().lock();
                 flushImpl(id);
+            } catch (IOException exception) {
+                LOGGER.error("flush(): error flushing id:[" + id + "]", exception);
             } finally {
                 lock.writeLock().unlock();
             }
@@ -208,11 +595,9 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
         if (running) {
             try {
                 lock.writeLock().lock();
-                if (cacheDirectory.exists()) {
-                    for (File file : cacheDirectory.listFiles()) {
-                        file.delete();
-                    }
-                }
+                storage.clear();
+            } catch (IOException exception) {
+                LOGGER.error("flush(): error flushing all", exception);
             } finally {
                 lock.writeLock().unlock();
             }
@@ -241,6 +626,13 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
             cacheDirectory.mkdirs();
         }
 
+        storage = createStorage(storageName);
+        try {
+            storage.open(cacheDirectory);
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to open cache storage", exception);
+        }
+
         running = true;
 
         if (eventService != null) {
@@ -276,6 +668,13 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
             purger.interrupt();
             purger = null;
         }
+
+        try {
+            lock.writeLock().lock();
+            storage.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -302,17 +701,22 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
     private Object fetchImpl(final I id) throws ClassNotFoundException {
         Object obj = null;
 
-        File file = new File(cacheDirectory, id.toString());
+        String key = id.toString();
 
-        if (file.exists()) {
-            try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(file))) {
-                obj = inputStream.readObject();
-            } catch (IOException exception) {
-                LOGGER.warn("fetchImpl(): id:[" + id + "] file read failed:[" + exception.getMessage() + "]");
-                file.delete();
+        try {
+            byte[] data = storage.read(key);
+            if (data != null) {
+                obj = codec.decode(new ByteArrayInputStream(data));
+            } else if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("fetchImpl(): id:[" + id + "] not cached");
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("fetchImpl(): id:[" + id + "] read failed:[" + exception.getMessage() + "]");
+            try {
+                storage.remove(key);
+            } catch (IOException removeException) {
+                LOGGER.warn("fetchImpl(): id:[" + id + "] remove failed:[" + removeException.getMessage() + "]");
             }
-        } else if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("fetchImpl(): id:[" + id + "] not cached");
         }
 
         return obj;
@@ -326,17 +730,17 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
      * @throws IOException if an input or output error occurs
      */
     private void storeImpl(final I id, final T obj) throws IOException {
-        File file = new File(cacheDirectory, id.toString());
+        String key = id.toString();
 
-        if (!file.exists()) {
-            try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(file))) {
-                outputStream.writeObject(obj);
-            }
+        if (!storage.contains(key)) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            codec.encode(obj, data);
+            storage.write(key, data.toByteArray());
         } else {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("storeImpl(): id:[" + id + "] already cached");
             }
-            file.setLastModified(System.currentTimeMillis());
+            storage.touch(key);
         }
     }
 
@@ -344,17 +748,41 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
      * Flushes an object.
      *
      * @param id the id of the object to flush
+     * @throws IOException if an input or output error occurs
      */
-    private void flushImpl(final I id) {
-        File file = new File(cacheDirectory, id.toString());
+    private void flushImpl(final I id) throws IOException {
+        String key = id.toString();
 
-        if (file.exists()) {
-            file.delete();
+        if (storage.contains(key)) {
+            storage.remove(key);
         } else if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("flushImpl(): id:[" + id + "] not cached");
         }
     }
 
+    /**
+     * Create a storage.
+     *
+     * @param name the name of the storage
+     * @return the storage
+     * @throws IllegalArgumentException if the name is not that of a storage
+     */
+    private DiskCacheStorage createStorage(final String name) {
+        switch (name.toLowerCase()) {
+        case "file":
+            return new FileDiskCacheStorage();
+        case "segmented":
+            SegmentedDiskCacheStorage segmentedStorage = new SegmentedDiskCacheStorage();
+            if (segmentSize > 0) {
+                segmentedStorage.setSegmentSize(segmentSize);
+            }
+            segmentedStorage.setMemoryMapped(memoryMapped);
+            return segmentedStorage;
+        default:
+            throw new IllegalArgumentException("Unknown storage '" + name + "'");
+        }
+    }
+
     /**
      * This class provides a purger thread.
      */
@@ -370,31 +798,20 @@ public class DiskCache<I, T> implements Cache<I, T>, TopicListener, LifecycleCom
         @Override
         public void run() {
             while (running) {
-                try {
-                    lock.writeLock().lock();
-
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("run(): purge started:[" + dateFormat.format(new Date()) + "]");
-                    }
-
-                    if (cacheDirectory.exists()) {
-                        long now = System.currentTimeMillis();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("run(): purge started:[" + dateFormat.format(new Date()) + "]");
+                }
 
-                        for (File file : cacheDirectory.listFiles()) {
-                            if (file.lastModified() + purgeTime < now) {
-                                if (LOGGER.isTraceEnabled()) {
-                                    LOGGER.trace("run(): purging file:[" + file.getName() + "]");
-                                }
-                                file.delete();
-                            }
-                        }
-                    }
+                // the storage only holds the lock while it removes objects,
+                // so that fetches are not blocked while it finds them
+                try {
+                    storage.purge(System.currentTimeMillis() - purgeTime, lock.writeLock());
+                } catch (IOException exception) {
+                    LOGGER.error("run(): error purging", exception);
+                }
 
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("run(): purge finished:[" + dateFormat.format(new Date()) + "]");
-                    }
-                } finally {
-                    lock.writeLock().unlock();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("run(): purge finished:[" + dateFormat.format(new Date()) + "]");
                 }
 
                 try {
@@ -0,0 +1,28 @@
+/*
+ * @(#) DiskCacheMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by managed disk caches.
+ *
+ * @author Chris Wareham
+ */
+public interface DiskCacheMBean extends CacheMBean {
+    /**
+     * Get the directory objects are cached to.
+     *
+     * @return the directory objects are cached to
+     */
+    String getCacheDirectory();
+
+    /**
+     * Get the name of the storage objects are written with.
+     *
+     * @return the name of the storage objects are written with
+     */
+    String getStorage();
+}
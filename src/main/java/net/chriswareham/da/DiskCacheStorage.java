@@ -0,0 +1,126 @@
+/*
+ * @(#) DiskCacheStorage.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * This interface is implemented by classes that store the serialised objects of
+ * a disk cache. Implementations must be thread safe, although a disk cache does
+ * not read an object while it is being written or removed.
+ *
+ * @author Chris Wareham
+ */
+public interface DiskCacheStorage {
+    /**
+     * Get the name of the storage.
+     *
+     * @return the name of the storage
+     */
+    String getName();
+
+    /**
+     * Open the storage, recovering any objects stored in the directory by a
+     * previous instance.
+     *
+     * @param directory the directory to store objects in
+     * @throws IOException if an input or output error occurs
+     */
+    void open(File directory) throws IOException;
+
+    /**
+     * Close the storage.
+     */
+    void close();
+
+    /**
+     * Get whether an object is stored.
+     *
+     * @param key the key of the object
+     * @return whether the object is stored
+     */
+    boolean contains(String key);
+
+    /**
+     * Read a serialised object.
+     *
+     * @param key the key of the object
+     * @return the serialised object, or null if it is not stored
+     * @throws IOException if an input or output error occurs
+     */
+    byte[] read(String key) throws IOException;
+
+    /**
+     * Write a serialised object, replacing any object stored with the same key.
+     *
+     * @param key the key of the object
+     * @param data the serialised object
+     * @throws IOException if an input or output error occurs
+     */
+    void write(String key, byte[] data) throws IOException;
+
+    /**
+     * Record that an object that is already stored has been stored again. The
+     * storage may use this to delay the expiry of the object.
+     *
+     * @param key the key of the object
+     * @throws IOException if an input or output error occurs
+     */
+    void touch(String key) throws IOException;
+
+    /**
+     * Remove an object.
+     *
+     * @param key the key of the object
+     * @throws IOException if an input or output error occurs
+     */
+    void remove(String key) throws IOException;
+
+    /**
+     * Remove all objects.
+     *
+     * @throws IOException if an input or output error occurs
+     */
+    void clear() throws IOException;
+
+    /**
+     * Remove objects that were stored before a time. The disk cache does not
+     * hold its lock while calling this, so that finding the objects to remove
+     * does not block reads. Instead the storage must hold the lock while it
+     * removes objects, and should hold it for no longer than that.
+     *
+     * @param expiry the time before which objects were stored, in milliseconds
+     * since the epoch
+     * @param lock the lock to hold while removing objects
+     * @throws IOException if an input or output error occurs
+     */
+    void purge(long expiry, Lock lock) throws IOException;
+
+    /**
+     * Get the number of bytes the storage occupies on disk.
+     *
+     * @return the number of bytes the storage occupies on disk
+     */
+    long getSize();
+
+    /**
+     * Get the number of stored objects.
+     *
+     * @return the number of stored objects
+     */
+    long getCount();
+
+    /**
+     * Get the sizes of the stored objects.
+     *
+     * @return the sizes of the stored objects in bytes, keyed on key
+     */
+    Map<String, Long> getSizes();
+}
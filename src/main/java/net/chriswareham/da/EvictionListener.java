@@ -0,0 +1,26 @@
+/*
+ * @(#) EvictionListener.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by classes that are notified when a bounded
+ * cache evicts an object. Listeners are notified while the cache holds its
+ * eviction lock, so they must not block or access the cache.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public interface EvictionListener<I, T> {
+    /**
+     * Notification that an object has been evicted.
+     *
+     * @param id the id of the object
+     * @param obj the object
+     */
+    void evicted(I id, T obj);
+}
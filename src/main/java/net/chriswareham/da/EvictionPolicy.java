@@ -0,0 +1,58 @@
+/*
+ * @(#) EvictionPolicy.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by classes that select which objects to evict
+ * from a bounded cache. Implementations are not required to be thread safe, as
+ * a cache serialises calls to its eviction policy.
+ *
+ * @author Chris Wareham
+ * @param <K> the type of object that is used to identify cached objects
+ */
+public interface EvictionPolicy<K> {
+    /**
+     * Get the name of the eviction policy.
+     *
+     * @return the name of the eviction policy
+     */
+    String getName();
+
+    /**
+     * Record an access of an object. This is called for both cache hits and
+     * cache misses, so the key may not be tracked by the policy.
+     *
+     * @param key the key of the object
+     */
+    void recordAccess(K key);
+
+    /**
+     * Record the insertion of an object.
+     *
+     * @param key the key of the object
+     */
+    void recordInsert(K key);
+
+    /**
+     * Record the removal of an object that was not evicted by the policy.
+     *
+     * @param key the key of the object
+     */
+    void recordRemoval(K key);
+
+    /**
+     * Select an object to evict and stop tracking it.
+     *
+     * @return the key of the object to evict, or null if no objects are tracked
+     */
+    K evict();
+
+    /**
+     * Stop tracking all objects.
+     */
+    void clear();
+}
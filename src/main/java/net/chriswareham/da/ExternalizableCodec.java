@@ -0,0 +1,236 @@
+/*
+ * @(#) ExternalizableCodec.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class provides a compact binary codec for objects that implement
+ * {@link Externalizable}, such as {@link net.chriswareham.util.Geocode}. An
+ * externalizable object is encoded as the name of its class followed by the
+ * output of its writeExternal() method, without the class descriptors and
+ * block headers written by Java serialisation. The name of a class is only
+ * written the first time an object of that class is encoded to a stream.
+ * <p>
+ * Objects that are not externalizable, including those written by
+ * writeExternal() methods with writeObject(), are encoded with Java
+ * serialisation.
+ *
+ * @author Chris Wareham
+ */
+public class ExternalizableCodec implements Codec {
+    /**
+     * The tag of a null object.
+     */
+    private static final int NULL = 0;
+    /**
+     * The tag of an externalizable object whose class name follows.
+     */
+    private static final int CLASS = 1;
+    /**
+     * The tag of an externalizable object whose class index follows.
+     */
+    private static final int CLASS_REFERENCE = 2;
+    /**
+     * The tag of an object encoded with Java serialisation.
+     */
+    private static final int SERIALIZABLE = 3;
+
+    /**
+     * The no argument constructors of externalizable classes, keyed on class.
+     */
+    private final ConcurrentMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(final Object obj, final OutputStream out) throws IOException {
+        BinaryOutput output = new BinaryOutput(out);
+        output.writeObject(obj);
+        output.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object decode(final InputStream in) throws IOException, ClassNotFoundException {
+        BinaryInput input = new BinaryInput(in);
+        return input.readObject();
+    }
+
+    /**
+     * Create an instance of an externalizable class with its no argument
+     * constructor, which need not be public.
+     *
+     * @param type the class
+     * @return the instance
+     * @throws InvalidClassException if the class cannot be instantiated
+     */
+    private Externalizable newInstance(final Class<?> type) throws InvalidClassException {
+        if (!Externalizable.class.isAssignableFrom(type)) {
+            throw new InvalidClassException(type.getName(), "Not externalizable");
+        }
+        try {
+            Constructor<?> constructor = constructors.get(type);
+            if (constructor == null) {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                constructors.putIfAbsent(type, constructor);
+            }
+            return (Externalizable) constructor.newInstance();
+        } catch (ReflectiveOperationException | SecurityException exception) {
+            InvalidClassException invalidClassException = new InvalidClassException(type.getName(), "No usable no argument constructor");
+            invalidClassException.initCause(exception);
+            throw invalidClassException;
+        }
+    }
+
+    /**
+     * This class provides the object output passed to writeExternal() methods.
+     */
+    private static final class BinaryOutput extends DataOutputStream implements ObjectOutput {
+        /**
+         * The indexes of the classes written to the stream, keyed on class.
+         */
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+        /**
+         * Construct an instance of the binary output.
+         *
+         * @param out the stream to write to
+         */
+        BinaryOutput(final OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void writeObject(final Object obj) throws IOException {
+            if (obj == null) {
+                writeByte(NULL);
+            } else if (obj instanceof Externalizable) {
+                Class<?> type = obj.getClass();
+                Integer index = classes.get(type);
+                if (index != null) {
+                    writeByte(CLASS_REFERENCE);
+                    writeInt(index);
+                } else {
+                    classes.put(type, classes.size());
+                    writeByte(CLASS);
+                    writeUTF(type.getName());
+                }
+                ((Externalizable) obj).writeExternal(this);
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+                    outputStream.writeObject(obj);
+                }
+                writeByte(SERIALIZABLE);
+                writeInt(bytes.size());
+                bytes.writeTo(this);
+            }
+        }
+    }
+
+    /**
+     * This class provides the object input passed to readExternal() methods.
+     */
+    private final class BinaryInput extends DataInputStream implements ObjectInput {
+        /**
+         * The classes read from the stream, in the order they were read.
+         */
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        /**
+         * Construct an instance of the binary input.
+         *
+         * @param in the stream to read from
+         */
+        BinaryInput(final InputStream in) {
+            super(in);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object readObject() throws IOException, ClassNotFoundException {
+            int tag = readByte();
+            switch (tag) {
+            case NULL:
+                return null;
+            case CLASS:
+                Class<?> type = Class.forName(readUTF(), false, classLoader());
+                classes.add(type);
+                return readExternalizable(type);
+            case CLASS_REFERENCE:
+                int index = readInt();
+                if (index < 0 || index >= classes.size()) {
+                    throw new StreamCorruptedException("Invalid class index " + index);
+                }
+                return readExternalizable(classes.get(index));
+            case SERIALIZABLE:
+                byte[] bytes = new byte[readInt()];
+                readFully(bytes);
+                try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return inputStream.readObject();
+                }
+            default:
+                throw new StreamCorruptedException("Invalid tag " + tag);
+            }
+        }
+
+        /**
+         * Read an externalizable object.
+         *
+         * @param type the class of the object
+         * @return the object
+         * @throws IOException if an input or output error occurs
+         * @throws ClassNotFoundException if the class of an object read by the
+         * object cannot be found
+         */
+        private Object readExternalizable(final Class<?> type) throws IOException, ClassNotFoundException {
+            Externalizable obj = newInstance(type);
+            obj.readExternal(this);
+            return obj;
+        }
+
+        /**
+         * Get the class loader to load classes with.
+         *
+         * @return the class loader to load classes with
+         */
+        private ClassLoader classLoader() {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            return classLoader != null ? classLoader : ExternalizableCodec.class.getClassLoader();
+        }
+    }
+}
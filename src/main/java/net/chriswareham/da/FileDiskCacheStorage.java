@@ -0,0 +1,185 @@
+/*
+ * @(#) FileDiskCacheStorage.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class provides disk cache storage that writes each object to a file
+ * named after its key. Objects are expired according to the last modified time
+ * of their file, which is updated when they are stored again.
+ *
+ * @author Chris Wareham
+ */
+public class FileDiskCacheStorage implements DiskCacheStorage {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(FileDiskCacheStorage.class);
+
+    /**
+     * The directory to store objects in.
+     */
+    private File directory;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final File d) {
+        directory = d;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        directory = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final String key) {
+        return new File(directory, key).exists();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] read(final String key) throws IOException {
+        try {
+            return Files.readAllBytes(new File(directory, key).toPath());
+        } catch (NoSuchFileException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final String key, final byte[] data) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(new File(directory, key))) {
+            outputStream.write(data);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void touch(final String key) {
+        new File(directory, key).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(final String key) {
+        new File(directory, key).delete();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (File file : listFiles()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void purge(final long expiry, final Lock lock) {
+        for (File file : listFiles()) {
+            if (file.lastModified() < expiry) {
+                lock.lock();
+                try {
+                    // the object may have been stored again since the files
+                    // were listed
+                    if (file.lastModified() < expiry) {
+                        if (LOGGER.isTraceEnabled()) {
+                            LOGGER.trace("purge(): purging file:[" + file.getName() + "]");
+                        }
+                        file.delete();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (File file : listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        return listFiles().length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (File file : listFiles()) {
+            sizes.put(file.getName(), file.length());
+        }
+        return sizes;
+    }
+
+    /**
+     * List the files in the directory.
+     *
+     * @return the files in the directory, or an empty array if it is not open
+     * or does not exist
+     */
+    private File[] listFiles() {
+        File[] files = directory != null ? directory.listFiles() : null;
+        return files != null ? files : new File[0];
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * @(#) Histogram.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records a histogram of durations. The durations are counted in
+ * fixed buckets, whose upper bounds follow a 1-2-5 progression of
+ * milliseconds, so recording a duration never allocates and percentiles are
+ * accurate to within a bucket. The counters are striped so that recording
+ * them from many threads does not contend on a single memory location.
+ *
+ * @author Chris Wareham
+ */
+public class Histogram {
+    /**
+     * The upper bounds of the buckets, in milliseconds. Durations above the
+     * last bound are counted in an overflow bucket.
+     */
+    private static final long[] BOUNDS = {1L, 2L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L, 2000L, 5000L, 10000L, 30000L};
+
+    /**
+     * The number of durations in each bucket.
+     */
+    private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+    /**
+     * The total of the durations, in nanoseconds.
+     */
+    private final LongAdder total = new LongAdder();
+    /**
+     * The longest duration, in nanoseconds.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Construct an instance of the histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(final long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int i = 0;
+        while (i < BOUNDS.length && millis >= BOUNDS[i]) {
+            ++i;
+        }
+        counts[i].increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Get the number of recorded durations.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        long count = 0L;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Get the average duration, in milliseconds.
+     *
+     * @return the average duration, or zero if no durations have been
+     * recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? total.sum() / 1000000.0 / count : 0.0;
+    }
+
+    /**
+     * Get the longest duration, in milliseconds.
+     *
+     * @return the longest duration, or zero if no durations have been
+     * recorded
+     */
+    public double getMax() {
+        return max.get() / 1000000.0;
+    }
+
+    /**
+     * Get an upper bound on a percentile of the durations, in milliseconds.
+     * The bound is the upper bound of the bucket containing the percentile,
+     * or the longest duration if that is smaller or the percentile falls in
+     * the overflow bucket.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound on the percentile, or zero if no durations have
+     * been recorded
+     */
+    public double getPercentile(final double percentile) {
+        long[] snapshot = new long[counts.length];
+        long count = 0L;
+        for (int i = 0; i < counts.length; ++i) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0L) {
+            return 0.0;
+        }
+
+        long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+        long cumulative = 0L;
+        for (int i = 0; i < BOUNDS.length; ++i) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return Math.min((double) BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Get the number of durations in each bucket, keyed on a description of
+     * the bucket, in ascending order of duration.
+     *
+     * @return the number of durations in each bucket
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS.length; ++i) {
+            buckets.put("<" + BOUNDS[i] + "ms", counts[i].sum());
+        }
+        buckets.put(">=" + BOUNDS[BOUNDS.length - 1] + "ms", counts[BOUNDS.length].sum());
+        return buckets;
+    }
+
+    /**
+     * Reset the histogram.
+     */
+    public void reset() {
+        for (LongAdder bucket : counts) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+}
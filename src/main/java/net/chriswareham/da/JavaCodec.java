@@ -0,0 +1,39 @@
+/*
+ * @(#) JavaCodec.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * This class provides a codec that uses Java serialisation.
+ *
+ * @author Chris Wareham
+ */
+public class JavaCodec implements Codec {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encode(final Object obj, final OutputStream out) throws IOException {
+        ObjectOutputStream outputStream = new ObjectOutputStream(out);
+        outputStream.writeObject(obj);
+        outputStream.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object decode(final InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream inputStream = new ObjectInputStream(in);
+        return inputStream.readObject();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * @(#) LfuEvictionPolicy.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class provides an eviction policy that evicts the least frequently used
+ * object. Objects with the same frequency are evicted in least recently used
+ * order.
+ *
+ * @author Chris Wareham
+ * @param <K> the type of object that is used to identify cached objects
+ */
+public class LfuEvictionPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * The access frequencies of the tracked keys.
+     */
+    private final Map<K, Long> frequencies = new HashMap<>();
+    /**
+     * The tracked keys, grouped by access frequency.
+     */
+    private final TreeMap<Long, Set<K>> buckets = new TreeMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return "lfu";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordAccess(final K key) {
+        Long frequency = frequencies.get(key);
+        if (frequency != null) {
+            removeFromBucket(key, frequency);
+            addToBucket(key, frequency + 1);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordInsert(final K key) {
+        recordRemoval(key);
+        addToBucket(key, 1L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordRemoval(final K key) {
+        Long frequency = frequencies.remove(key);
+        if (frequency != null) {
+            removeFromBucket(key, frequency);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public K evict() {
+        if (buckets.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, Set<K>> bucket = buckets.firstEntry();
+        Iterator<K> i = bucket.getValue().iterator();
+        K key = i.next();
+        i.remove();
+        if (bucket.getValue().isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        frequencies.remove(key);
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        frequencies.clear();
+        buckets.clear();
+    }
+
+    /**
+     * Add a key to the bucket for an access frequency.
+     *
+     * @param key the key
+     * @param frequency the access frequency
+     */
+    private void addToBucket(final K key, final long frequency) {
+        Set<K> bucket = buckets.get(frequency);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<>();
+            buckets.put(frequency, bucket);
+        }
+        bucket.add(key);
+        frequencies.put(key, frequency);
+    }
+
+    /**
+     * Remove a key from the bucket for an access frequency.
+     *
+     * @param key the key
+     * @param frequency the access frequency
+     */
+    private void removeFromBucket(final K key, final long frequency) {
+        Set<K> bucket = buckets.get(frequency);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(frequency);
+        }
+    }
+}
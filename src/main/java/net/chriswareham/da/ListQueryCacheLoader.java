@@ -0,0 +1,245 @@
+/*
+ * @(#) ListQueryCacheLoader.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.chriswareham.di.Required;
+
+/**
+ * This class provides a loader that loads objects with a single list query
+ * per batch of ids, rather than a query per id. The query must contain an
+ * <tt>IN (?)</tt> clause, for example:
+ * <pre>
+ * SELECT id, name FROM users WHERE id IN (?)
+ * </pre>
+ * The placeholder is expanded to one placeholder per id in the batch. Batches
+ * are padded to a power of two by repeating the last id, so that only a few
+ * distinct statements are prepared. Any other placeholders in the query are
+ * bound to the parameters set with {@link #setParameters(List)}, in order.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public class ListQueryCacheLoader<I, T> implements BulkCacheLoader<I, T> {
+    /**
+     * The pattern of the clause containing the placeholder for the ids.
+     */
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\bIN\\s*(\\(\\s*\\?\\s*\\))", Pattern.CASE_INSENSITIVE);
+    /**
+     * The default maximum number of ids in a query.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 128;
+
+    /**
+     * The query service.
+     */
+    private QueryService queryService;
+    /**
+     * The part of the query before the placeholder for the ids.
+     */
+    private String queryPrefix;
+    /**
+     * The part of the query after the placeholder for the ids.
+     */
+    private String querySuffix;
+    /**
+     * The number of other placeholders in the query before the placeholder
+     * for the ids.
+     */
+    private int prefixPlaceholders;
+    /**
+     * The number of other placeholders in the query after the placeholder for
+     * the ids.
+     */
+    private int suffixPlaceholders;
+    /**
+     * The values of the other placeholders in the query, in order.
+     */
+    private List<?> parameters = Collections.emptyList();
+    /**
+     * The callback executed for each result.
+     */
+    private QueryCallback<T> callback;
+    /**
+     * The id fetcher for the results.
+     */
+    private IdFetcher<I, T> idFetcher;
+    /**
+     * The maximum number of ids in a query.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Set the query service.
+     *
+     * @param qs the query service
+     */
+    @Required
+    public void setQueryService(final QueryService qs) {
+        queryService = qs;
+    }
+
+    /**
+     * Set the query, which must contain an <tt>IN (?)</tt> clause. Only the
+     * first such clause is expanded, and other placeholders in the query such
+     * as <tt>LOWER(?)</tt> are bound to the parameters. Placeholders are
+     * counted without parsing the query, so the query must not contain a
+     * question mark in a literal or comment.
+     *
+     * @param q the query
+     */
+    @Required
+    public void setQuery(final String q) {
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(q);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Query must contain an 'IN (?)' clause");
+        }
+        queryPrefix = q.substring(0, matcher.start(1));
+        querySuffix = q.substring(matcher.end(1));
+        prefixPlaceholders = countPlaceholders(queryPrefix);
+        suffixPlaceholders = countPlaceholders(querySuffix);
+    }
+
+    /**
+     * Set the values of the placeholders in the query other than the one for
+     * the ids, in the order they appear in the query.
+     *
+     * @param p the values of the other placeholders
+     */
+    public void setParameters(final List<?> p) {
+        parameters = new ArrayList<>(p);
+    }
+
+    /**
+     * Set the callback executed for each result.
+     *
+     * @param c the callback executed for each result
+     */
+    @Required
+    public void setCallback(final QueryCallback<T> c) {
+        callback = c;
+    }
+
+    /**
+     * Set the id fetcher for the results.
+     *
+     * @param i the id fetcher for the results
+     */
+    @Required
+    public void setIdFetcher(final IdFetcher<I, T> i) {
+        idFetcher = i;
+    }
+
+    /**
+     * Set the maximum number of ids in a query.
+     *
+     * @param bs the maximum number of ids in a query
+     */
+    public void setBatchSize(final int bs) {
+        batchSize = bs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T load(final I id) throws QueryException {
+        return loadAll(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<I, T> loadAll(final Collection<I> ids) throws QueryException {
+        Map<I, T> objs = new HashMap<>();
+
+        List<I> batch = new ArrayList<>(Math.min(ids.size(), batchSize));
+        for (I id : ids) {
+            batch.add(id);
+            if (batch.size() == batchSize) {
+                loadBatch(batch, objs);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            loadBatch(batch, objs);
+        }
+
+        return objs;
+    }
+
+    /**
+     * Load a batch of objects.
+     *
+     * @param batch the ids of the objects to load
+     * @param objs the map to add the loaded objects to
+     * @throws QueryException if an error occurs
+     */
+    private void loadBatch(final List<I> batch, final Map<I, T> objs) throws QueryException {
+        if (parameters.size() != prefixPlaceholders + suffixPlaceholders) {
+            throw new IllegalStateException("Query has " + (prefixPlaceholders + suffixPlaceholders) + " other placeholders but " + parameters.size() + " parameters were set");
+        }
+
+        int size = batch.size() > 1 ? Math.min(Integer.highestOneBit(batch.size() - 1) << 1, batchSize) : 1;
+        List<I> params = new ArrayList<>(batch);
+        while (params.size() < size) {
+            params.add(batch.get(batch.size() - 1));
+        }
+
+        StringBuilder sql = new StringBuilder(queryPrefix.length() + querySuffix.length() + size * 3);
+        sql.append(queryPrefix).append("(?");
+        for (int i = 1; i < size; ++i) {
+            sql.append(", ?");
+        }
+        sql.append(')').append(querySuffix);
+
+        List<T> results = queryService.listQuery(sql.toString(), (final PreparedStatement statement) -> {
+            int index = 1;
+            for (int i = 0; i < prefixPlaceholders; ++i) {
+                statement.setObject(index++, parameters.get(i));
+            }
+            for (I id : params) {
+                statement.setObject(index++, id);
+            }
+            for (int i = prefixPlaceholders; i < parameters.size(); ++i) {
+                statement.setObject(index++, parameters.get(i));
+            }
+            return statement.executeQuery();
+        }, callback);
+
+        for (T result : results) {
+            objs.put(idFetcher.fetchId(result), result);
+        }
+    }
+
+    /**
+     * Count the placeholders in part of a query.
+     *
+     * @param sql the part of the query
+     * @return the number of placeholders
+     */
+    private static int countPlaceholders(final String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); ++i) {
+            if (sql.charAt(i) == '?') {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
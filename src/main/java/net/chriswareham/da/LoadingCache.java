@@ -0,0 +1,828 @@
+/*
+ * @(#) LoadingCache.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import net.chriswareham.di.LifecycleComponent;
+import net.chriswareham.di.Required;
+
+/**
+ * This class provides a cache that loads objects that are not cached from a
+ * loader, and stores them in an underlying cache. Concurrent fetches of an
+ * object that is not cached wait for a single load rather than each invoking
+ * the loader.
+ * <p>
+ * If a purge time and a refresh ahead time are set, a fetch of an object that
+ * is due to be purged within the refresh ahead time returns the cached object
+ * and reloads it in the background.
+ * <p>
+ * If the loader is a {@link BulkCacheLoader}, fetching many objects loads all
+ * of those that are not cached with a single call to the loader.
+ * <p>
+ * It also provides an event listener which flushes objects on receipt of an
+ * update or delete event, and discards the result of any load of those objects
+ * that is in progress.
+ * <p>
+ * The cache is a managed component, and exposes its statistics via JMX when
+ * created by a component factory with a component manager. The size and items
+ * are those of the underlying cache if it is also a managed cache.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public class LoadingCache<I, T> implements Cache<I, T>, LoadingCacheMBean, TopicListener, LifecycleComponent {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(LoadingCache.class);
+    /**
+     * The key used in place of a null object identifier.
+     */
+    private static final Object NULL_KEY = new Object();
+    /**
+     * The number of instances, used to generate default managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    /**
+     * Whether the cache is running.
+     */
+    private volatile boolean running;
+    /**
+     * The underlying cache.
+     */
+    private Cache<I, T> cache;
+    /**
+     * The loader.
+     */
+    private CacheLoader<I, T> loader;
+    /**
+     * How long an object is cached before the underlying cache purges it.
+     */
+    private long purgeTime;
+    /**
+     * How long before an object is purged that it is reloaded.
+     */
+    private long refreshAheadTime;
+    /**
+     * The number of threads that reload objects.
+     */
+    private int refreshThreads = 1;
+    /**
+     * The loads in progress, keyed on id.
+     */
+    private final ConcurrentMap<Object, CompletableFuture<T>> loads = new ConcurrentHashMap<>();
+    /**
+     * The times objects were stored, keyed on id. This is only maintained if
+     * objects are reloaded ahead of being purged.
+     */
+    private final ConcurrentMap<Object, Long> storeTimes = new ConcurrentHashMap<>();
+    /**
+     * The executor that reloads objects, or null if objects are not reloaded
+     * ahead of being purged.
+     */
+    private ScheduledExecutorService refreshExecutor;
+    /**
+     * The event service.
+     */
+    private EventService eventService;
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatistics statistics = new CacheStatistics();
+    /**
+     * The managed name.
+     */
+    private String managedName = "net.chriswareham.da:type=LoadingCache,name=loadingCache" + INSTANCES.incrementAndGet();
+
+    /**
+     * Set the underlying cache.
+     *
+     * @param c the underlying cache
+     */
+    @Required
+    public void setCache(final Cache<I, T> c) {
+        cache = c;
+    }
+
+    /**
+     * Set the loader.
+     *
+     * @param l the loader
+     */
+    @Required
+    public void setLoader(final CacheLoader<I, T> l) {
+        loader = l;
+    }
+
+    /**
+     * Set the number of minutes an object is cached before the underlying
+     * cache purges it. This should match the purge time of the underlying
+     * cache, and is only used to reload objects ahead of being purged.
+     *
+     * @param pt the number of minutes an object is cached before the underlying cache purges it
+     */
+    public void setPurgeTime(final int pt) {
+        purgeTime = 60000L * pt;
+    }
+
+    /**
+     * Set the number of minutes before an object is purged that a fetch of it
+     * reloads it in the background, or zero to not reload objects.
+     *
+     * @param rat the number of minutes before an object is purged that a fetch of it reloads it
+     */
+    public void setRefreshAheadTime(final int rat) {
+        refreshAheadTime = 60000L * rat;
+    }
+
+    /**
+     * Set the number of threads that reload objects.
+     *
+     * @param rt the number of threads that reload objects
+     */
+    public void setRefreshThreads(final int rt) {
+        refreshThreads = rt;
+    }
+
+    /**
+     * Set the event service.
+     *
+     * @param es the event service
+     */
+    public void setEventService(final EventService es) {
+        eventService = es;
+    }
+
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * Set the number of hot keys reported.
+     *
+     * @param hkc the number of hot keys reported
+     */
+    public void setHotKeyCount(final int hkc) {
+        statistics.setHotKeyCount(hkc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLoadsInProgress() {
+        return loads.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheSize() {
+        return cache instanceof CacheMBean ? ((CacheMBean) cache).getCacheSize() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems() {
+        return getCacheItems(CacheItem.DEFAULT_LIMIT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems(final int limit) {
+        return cache instanceof CacheMBean ? ((CacheMBean) cache).getCacheItems(limit) : Collections.<Object, CacheItem>emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheItemCount() {
+        return cache instanceof CacheMBean ? ((CacheMBean) cache).getCacheItemCount() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return statistics.getHitCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return statistics.getMissCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        return statistics.getHitRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadCount() {
+        return statistics.getLoadCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadFailureCount() {
+        return statistics.getLoadFailureCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageLoadTime() {
+        return statistics.getAverageLoadTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEvictionCount() {
+        return cache instanceof CacheMBean ? ((CacheMBean) cache).getEvictionCount() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getHotKeys() {
+        return statistics.getHotKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+    }
+
+    /**
+     * Fetches an object, loading it if it is not cached.
+     *
+     * @param id the id of the object to fetch
+     * @return the object, or null if it does not exist
+     * @throws QueryException if the object is not cached and loading it fails
+     */
+    public T get(final I id) throws QueryException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("get(): id:[" + id + "]");
+        }
+
+        if (!running) {
+            return invokeLoader(id);
+        }
+
+        T obj = cache.fetch(id);
+
+        if (obj != null) {
+            statistics.recordHit(id);
+            refreshIfDue(id);
+            return obj;
+        }
+
+        statistics.recordMiss(id);
+
+        return load(id);
+    }
+
+    /**
+     * Fetches an object, loading it if it is not cached. Errors loading the
+     * object are logged and null is returned.
+     *
+     * @param id the id of the object to fetch
+     * @return the object, or null if it does not exist or cannot be loaded
+     */
+    @Override
+    public T fetch(final I id) {
+        try {
+            return get(id);
+        } catch (QueryException exception) {
+            LOGGER.error("fetch(): error loading id:[" + id + "]", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Fetches objects, loading those that are not cached.
+     *
+     * @param ids the ids of the objects to fetch
+     * @return the objects that exist, keyed on id
+     * @throws QueryException if loading the objects fails
+     */
+    public Map<I, T> getAll(final Collection<I> ids) throws QueryException {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("getAll(): ids:[" + ids.size() + "]");
+        }
+
+        if (!running) {
+            return loadAll(ids);
+        }
+
+        Map<I, T> objs = new LinkedHashMap<>(cache.fetchAll(ids));
+
+        Map<I, CompletableFuture<T>> ownLoads = new LinkedHashMap<>();
+        Map<I, CompletableFuture<T>> otherLoads = new LinkedHashMap<>();
+
+        for (I id : ids) {
+            if (objs.containsKey(id)) {
+                statistics.recordHit(id);
+                refreshIfDue(id);
+            } else if (!ownLoads.containsKey(id)) {
+                statistics.recordMiss(id);
+                CompletableFuture<T> load = new CompletableFuture<>();
+                CompletableFuture<T> existing = loads.putIfAbsent(maskNull(id), load);
+                if (existing != null) {
+                    otherLoads.put(id, existing);
+                } else {
+                    ownLoads.put(id, load);
+                }
+            }
+        }
+
+        if (!ownLoads.isEmpty()) {
+            Map<I, T> loaded;
+            try {
+                loaded = loadAll(ownLoads.keySet());
+            } catch (QueryException | RuntimeException exception) {
+                for (Map.Entry<I, CompletableFuture<T>> load : ownLoads.entrySet()) {
+                    loads.remove(maskNull(load.getKey()), load.getValue());
+                    load.getValue().completeExceptionally(exception);
+                }
+                throw exception;
+            }
+
+            for (Map.Entry<I, CompletableFuture<T>> load : ownLoads.entrySet()) {
+                I id = load.getKey();
+                Object key = maskNull(id);
+                T obj = loaded.get(id);
+                storeLoaded(id, key, load.getValue(), obj);
+                load.getValue().complete(obj);
+                if (obj != null) {
+                    objs.put(id, obj);
+                }
+            }
+        }
+
+        for (Map.Entry<I, CompletableFuture<T>> load : otherLoads.entrySet()) {
+            T obj = await(load.getKey(), load.getValue());
+            if (obj != null) {
+                objs.put(load.getKey(), obj);
+            }
+        }
+
+        return objs;
+    }
+
+    /**
+     * Fetches objects, loading those that are not cached. Errors loading the
+     * objects are logged and only the cached objects are returned.
+     *
+     * @param ids the ids of the objects to fetch
+     * @return the objects that exist, keyed on id
+     */
+    @Override
+    public Map<I, T> fetchAll(final Collection<I> ids) {
+        try {
+            return getAll(ids);
+        } catch (QueryException exception) {
+            LOGGER.error("fetchAll(): error loading ids:[" + ids + "]", exception);
+            return running ? cache.fetchAll(ids) : Collections.<I, T>emptyMap();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final I id, final T obj) {
+        if (running) {
+            cache.store(id, obj);
+            recordStoreTime(maskNull(id));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushAndStore(final I id, final T obj) {
+        if (running) {
+            Object key = maskNull(id);
+            discardLoad(key);
+            cache.flushAndStore(id, obj);
+            recordStoreTime(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush(final I id) {
+        if (running) {
+            Object key = maskNull(id);
+            discardLoad(key);
+            storeTimes.remove(key);
+            cache.flush(id);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        if (running) {
+            loads.clear();
+            storeTimes.clear();
+            cache.flush();
+        }
+    }
+
+    /**
+     * Starts the cache.
+     */
+    @Override
+    public void start() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("start(): starting cache");
+        }
+
+        if (running) {
+            throw new IllegalStateException("Cache has already been started");
+        }
+
+        if (purgeTime > 0 && refreshAheadTime > 0 && refreshAheadTime < purgeTime) {
+            refreshExecutor = Executors.newScheduledThreadPool(refreshThreads, new RefreshThreadFactory());
+            refreshExecutor.scheduleWithFixedDelay(() -> {
+                purgeStoreTimes();
+            }, purgeTime, purgeTime, TimeUnit.MILLISECONDS);
+        }
+
+        running = true;
+
+        if (eventService != null) {
+            eventService.addTopicListener("", this);
+        }
+    }
+
+    /**
+     * Stops the cache.
+     */
+    @Override
+    public void stop() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("stop(): stopping cache");
+        }
+
+        if (!running) {
+            throw new IllegalStateException("Cache has already been stopped");
+        }
+
+        running = false;
+
+        if (eventService != null) {
+            eventService.removeTopicListener("", this);
+        }
+
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            refreshExecutor = null;
+        }
+
+        loads.clear();
+        storeTimes.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void receiveEvent(final Event event) {
+        switch (event.getType()) {
+        case UPDATE:
+        case DELETE:
+            flush((I) event.getId());
+            break;
+        }
+    }
+
+    /**
+     * Load an object and store it in the underlying cache, or wait for a load
+     * that is already in progress.
+     *
+     * @param id the id of the object to load
+     * @return the object, or null if it does not exist
+     * @throws QueryException if loading the object fails
+     */
+    private T load(final I id) throws QueryException {
+        Object key = maskNull(id);
+
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> existing = loads.putIfAbsent(key, load);
+        if (existing != null) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("load(): id:[" + id + "] waiting for load in progress");
+            }
+            return await(id, existing);
+        }
+
+        T obj;
+        try {
+            obj = invokeLoader(id);
+        } catch (QueryException | RuntimeException exception) {
+            loads.remove(key, load);
+            load.completeExceptionally(exception);
+            throw exception;
+        }
+
+        storeLoaded(id, key, load, obj);
+        load.complete(obj);
+
+        return obj;
+    }
+
+    /**
+     * Store a loaded object in the underlying cache and remove its load,
+     * unless the object was flushed while it was loading. The object is stored
+     * before the load is removed, so that there is no window where another
+     * fetch would find neither. If the removal then finds that the object was
+     * flushed while it was being stored, the store is undone so that the stale
+     * object is not resurrected.
+     *
+     * @param id the id of the object
+     * @param key the key of the object
+     * @param load the load of the object
+     * @param obj the object, or null if it does not exist
+     */
+    private void storeLoaded(final I id, final Object key, final CompletableFuture<T> load, final T obj) {
+        if (obj == null || loads.get(key) != load) {
+            loads.remove(key, load);
+            return;
+        }
+        cache.flushAndStore(id, obj);
+        recordStoreTime(key);
+        if (!loads.remove(key, load)) {
+            cache.flush(id);
+            storeTimes.remove(key);
+        }
+    }
+
+    /**
+     * Load objects with the loader, in a single call if it is a bulk loader.
+     *
+     * @param ids the ids of the objects to load
+     * @return the objects that exist, keyed on id
+     * @throws QueryException if loading the objects fails
+     */
+    private Map<I, T> loadAll(final Collection<I> ids) throws QueryException {
+        if (loader instanceof BulkCacheLoader) {
+            long start = System.nanoTime();
+            try {
+                Map<I, T> objs = ((BulkCacheLoader<I, T>) loader).loadAll(ids);
+                statistics.recordLoad(System.nanoTime() - start);
+                return objs;
+            } catch (QueryException | RuntimeException exception) {
+                statistics.recordLoadFailure(System.nanoTime() - start);
+                throw exception;
+            }
+        }
+
+        Map<I, T> objs = new LinkedHashMap<>();
+        for (I id : ids) {
+            T obj = invokeLoader(id);
+            if (obj != null) {
+                objs.put(id, obj);
+            }
+        }
+        return objs;
+    }
+
+    /**
+     * Load an object with the loader, recording the load time.
+     *
+     * @param id the id of the object to load
+     * @return the object, or null if it does not exist
+     * @throws QueryException if loading the object fails
+     */
+    private T invokeLoader(final I id) throws QueryException {
+        long start = System.nanoTime();
+        try {
+            T obj = loader.load(id);
+            statistics.recordLoad(System.nanoTime() - start);
+            return obj;
+        } catch (QueryException | RuntimeException exception) {
+            statistics.recordLoadFailure(System.nanoTime() - start);
+            throw exception;
+        }
+    }
+
+    /**
+     * Reload an object in the background if it is due to be purged within the
+     * refresh ahead time, and it is not already being loaded. If the cache is
+     * stopped, the object is not reloaded and the cached copy is served.
+     *
+     * @param id the id of the object
+     */
+    private void refreshIfDue(final I id) {
+        ScheduledExecutorService executor = refreshExecutor;
+        if (executor == null || !running) {
+            return;
+        }
+
+        Object key = maskNull(id);
+
+        Long storeTime = storeTimes.get(key);
+        if (storeTime == null || storeTime + purgeTime - refreshAheadTime > System.currentTimeMillis()) {
+            return;
+        }
+
+        CompletableFuture<T> load = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, load) != null) {
+            return;
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("refreshIfDue(): id:[" + id + "] reloading");
+        }
+
+        try {
+            executor.execute(() -> {
+                reload(id, key, load);
+            });
+        } catch (RejectedExecutionException exception) {
+            // the cache was stopped after the executor was read
+            loads.remove(key, load);
+            load.completeExceptionally(new QueryException("Cache has been stopped", exception));
+        }
+    }
+
+    /**
+     * Reload an object and replace it in the underlying cache.
+     *
+     * @param id the id of the object
+     * @param key the key of the object
+     * @param load the load of the object
+     */
+    private void reload(final I id, final Object key, final CompletableFuture<T> load) {
+        try {
+            T obj = invokeLoader(id);
+            if (obj != null) {
+                storeLoaded(id, key, load, obj);
+            } else {
+                if (loads.get(key) == load) {
+                    cache.flush(id);
+                    storeTimes.remove(key);
+                }
+                loads.remove(key, load);
+            }
+            load.complete(obj);
+        } catch (QueryException | RuntimeException exception) {
+            LOGGER.warn("reload(): error reloading id:[" + id + "]", exception);
+            loads.remove(key, load);
+            load.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Wait for a load that is in progress.
+     *
+     * @param id the id of the object being loaded
+     * @param load the load
+     * @return the object, or null if it does not exist
+     * @throws QueryException if loading the object fails
+     */
+    private T await(final I id, final CompletableFuture<T> load) throws QueryException {
+        try {
+            return load.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("Interrupted waiting for id '" + id + "' to load", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof QueryException) {
+                throw (QueryException) cause;
+            }
+            throw new QueryException("Error loading id '" + id + "'", cause);
+        }
+    }
+
+    /**
+     * Discard the result of a load that is in progress, so that a stale
+     * object is not stored after it has been flushed.
+     *
+     * @param key the key of the object
+     */
+    private void discardLoad(final Object key) {
+        loads.remove(key);
+    }
+
+    /**
+     * Record the time an object was stored, if objects are reloaded ahead of
+     * being purged.
+     *
+     * @param key the key of the object
+     */
+    private void recordStoreTime(final Object key) {
+        if (refreshExecutor != null) {
+            storeTimes.put(key, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Remove the store times of objects that the underlying cache will have
+     * purged.
+     */
+    private void purgeStoreTimes() {
+        long expiry = System.currentTimeMillis() - purgeTime;
+        int size = storeTimes.size();
+        storeTimes.values().removeIf((final Long storeTime) -> storeTime < expiry);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("purgeStoreTimes(): purged:[" + (size - storeTimes.size()) + "]");
+        }
+    }
+
+    /**
+     * Mask a null object identifier, as the concurrent maps do not support null
+     * keys.
+     *
+     * @param id the object identifier
+     * @return the object identifier, or a placeholder key if it is null
+     */
+    private static Object maskNull(final Object id) {
+        return id != null ? id : NULL_KEY;
+    }
+
+    /**
+     * This class provides a factory for daemon threads that reload objects.
+     */
+    private static final class RefreshThreadFactory implements ThreadFactory {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "LoadingCache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
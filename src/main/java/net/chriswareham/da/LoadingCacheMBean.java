@@ -0,0 +1,21 @@
+/*
+ * @(#) LoadingCacheMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by managed loading caches.
+ *
+ * @author Chris Wareham
+ */
+public interface LoadingCacheMBean extends CacheMBean {
+    /**
+     * Get the number of loads in progress.
+     *
+     * @return the number of loads in progress
+     */
+    int getLoadsInProgress();
+}
@@ -0,0 +1,79 @@
+/*
+ * @(#) LruEvictionPolicy.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class provides an eviction policy that evicts the least recently used
+ * object.
+ *
+ * @author Chris Wareham
+ * @param <K> the type of object that is used to identify cached objects
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * The tracked keys, in access order.
+     */
+    private final Map<K, Boolean> keys = new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return "lru";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordAccess(final K key) {
+        keys.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordInsert(final K key) {
+        keys.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordRemoval(final K key) {
+        keys.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public K evict() {
+        Iterator<K> i = keys.keySet().iterator();
+        if (!i.hasNext()) {
+            return null;
+        }
+        K key = i.next();
+        i.remove();
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        keys.clear();
+    }
+}
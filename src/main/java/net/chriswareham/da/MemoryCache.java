@@ -6,17 +6,44 @@
 
 package net.chriswareham.da;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 
@@ -24,35 +51,112 @@ import net.chriswareham.di.LifecycleComponent;
 
 /**
  * This class supports the storing and fetching of objects from a memory cache.
- * It also provides an event listener which flushes objects on receipt of an
- * update or delete event.
+ * It also provides a purge thread which flushes objects that have been in the
+ * cache longer than a configurable expiration time, and an event listener which
+ * flushes objects on receipt of an update or delete event.
+ * <p>
+ * Objects are held in a concurrent map, so fetches never block on stores,
+ * flushes or purges. Entries are also appended to a queue in the order they
+ * are stored, which allows the purge thread to expire them by polling the head
+ * of the queue rather than scanning the whole cache.
+ * <p>
+ * The cache can optionally be bounded by a maximum number of entries and/or a
+ * maximum total weight, in which case an eviction policy selects the objects
+ * to evict when a bound is exceeded. Stores, flushes and evictions of a
+ * bounded cache are serialised by a lock, but fetches are not. Instead they
+ * record accesses in a lossy ring buffer that is drained into the eviction
+ * policy by whichever thread next acquires the lock.
+ * <p>
+ * The cache can optionally be snapshotted to a file periodically and when it is
+ * stopped, and reloaded from the snapshot in the background when it is
+ * started. Objects are written to and read from the snapshot one at a time, so
+ * neither needs to hold a copy of the whole cache, and fetches are served from
+ * the partially loaded cache while the snapshot is being read.
+ * <p>
+ * The cache is a managed component, and exposes its statistics via JMX when
+ * created by a component factory with a component manager.
  *
  * @author Chris Wareham
  * @param <I> the type of object that is used to identify cached objects
  * @param <T> the type of cached objects
  */
-public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleComponent {
+public class MemoryCache<I, T> implements Cache<I, T>, MemoryCacheMBean, TopicListener, LifecycleComponent {
     /**
      * The logger.
      */
     private static final Logger LOGGER = Logger.getLogger(MemoryCache.class);
+    /**
+     * The key used in place of a null object identifier.
+     */
+    private static final Object NULL_KEY = new Object();
+    /**
+     * The size of the read buffer, which must be a power of two.
+     */
+    private static final int READ_BUFFER_SIZE = 128;
+    /**
+     * The number of reads between attempts to drain the read buffer, which must
+     * be a power of two.
+     */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+    /**
+     * The number of entries the expiry queue may hold beyond twice the number
+     * of cached objects before it is compacted.
+     */
+    private static final int EXPIRY_QUEUE_SLACK = 1024;
+    /**
+     * The maximum number of objects serialised to estimate the size of the
+     * cache.
+     */
+    private static final int SIZE_SAMPLE_COUNT = 64;
+    /**
+     * The magic number at the start of a snapshot file.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x4d435331;
+    /**
+     * The timestamp that marks the end of a snapshot file.
+     */
+    private static final long SNAPSHOT_END = -1L;
+    /**
+     * The size of the buffer used to read and write snapshot files.
+     */
+    private static final int SNAPSHOT_BUFFER_SIZE = 65536;
+    /**
+     * The number of instances, used to generate default managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
 
     /**
      * Whether the cache is running.
      */
     private volatile boolean running;
     /**
-     * The read-write lock.
+     * The object cache map, keyed on id.
+     */
+    private final ConcurrentMap<Object, Entry<I, T>> cache = new ConcurrentHashMap<>();
+    /**
+     * The cache entries, in the order they were stored.
      */
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<Entry<I, T>> expiryQueue = new ConcurrentLinkedQueue<>();
     /**
-     * The object cache map, keyed on id.
+     * The approximate number of entries in the expiry queue, including those
+     * that have since been flushed, replaced or evicted.
      */
-    private final Map<Key<I>, T> cache = new HashMap<>();
+    private final AtomicLong expiryQueueSize = new AtomicLong();
+    /**
+     * Whether the expiry queue is being compacted.
+     */
+    private final AtomicBoolean compactingExpiryQueue = new AtomicBoolean();
+    /**
+     * The cache entries restored from the snapshot file, in timestamp order,
+     * or null if there are none waiting to expire. These are kept apart from
+     * the expiry queue as they are older than the entries stored while the
+     * snapshot was loading.
+     */
+    private volatile Queue<Entry<I, T>> restoredExpiryQueue;
     /**
      * How long an object is cached before the purger thread flushes it.
      */
-    private long purgeTime;
+    private volatile long purgeTime;
     /**
      * How long between runs of the purger thread.
      */
@@ -65,6 +169,88 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
      * The event service.
      */
     private EventService eventService;
+    /**
+     * The maximum number of entries, or zero if unbounded.
+     */
+    private long maxEntries;
+    /**
+     * The maximum total weight of the entries, or zero if unbounded.
+     */
+    private long maxWeight;
+    /**
+     * The weigher for cached objects.
+     */
+    private Weigher<I, T> weigher;
+    /**
+     * The listener notified of evictions.
+     */
+    private EvictionListener<I, T> evictionListener;
+    /**
+     * The name of the eviction policy.
+     */
+    private String evictionPolicyName = "lru";
+    /**
+     * The eviction policy, or null if the cache is unbounded.
+     */
+    private EvictionPolicy<Object> evictionPolicy;
+    /**
+     * The lock that serialises access to the eviction policy.
+     */
+    private final Lock evictionLock = new ReentrantLock();
+    /**
+     * The total weight of the entries, guarded by the eviction lock.
+     */
+    private volatile long weightedSize;
+    /**
+     * The buffer of keys that have been read but not yet recorded by the
+     * eviction policy.
+     */
+    private final AtomicReferenceArray<Object> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    /**
+     * The number of writes to the read buffer.
+     */
+    private final AtomicLong readBufferWrites = new AtomicLong();
+    /**
+     * The file the cache is snapshotted to, or null if it is not snapshotted.
+     */
+    private File snapshotFile;
+    /**
+     * How long between snapshots.
+     */
+    private long snapshotFrequency;
+    /**
+     * The number of threads that decode objects read from a snapshot.
+     */
+    private int snapshotLoadThreads = 2;
+    /**
+     * The codec objects are written to the snapshot with.
+     */
+    private Codec snapshotCodec = new JavaCodec();
+    /**
+     * The lock that serialises writing snapshots.
+     */
+    private final Object snapshotLock = new Object();
+    /**
+     * The snapshot thread.
+     */
+    private Thread snapshotter;
+    /**
+     * The thread that loads the snapshot.
+     */
+    private Thread snapshotLoader;
+    /**
+     * Whether the snapshot has been loaded, which prevents a partially loaded
+     * cache from replacing it.
+     */
+    private volatile boolean snapshotLoaded;
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatistics statistics = new CacheStatistics();
+    /**
+     * The managed name.
+     */
+    private String managedName = "net.chriswareham.da:type=MemoryCache,name=memoryCache" + INSTANCES.incrementAndGet();
 
     /**
      * Set the event service.
@@ -93,6 +279,273 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
         purgeFrequency = 60000L * pf;
     }
 
+    /**
+     * Set the maximum number of entries, or zero for no maximum.
+     *
+     * @param me the maximum number of entries
+     */
+    public void setMaxEntries(final long me) {
+        maxEntries = me;
+    }
+
+    /**
+     * Set the maximum total weight of the entries, or zero for no maximum.
+     * Unless a weigher is set, each entry has a weight of one.
+     *
+     * @param mw the maximum total weight of the entries
+     */
+    public void setMaxWeight(final long mw) {
+        maxWeight = mw;
+    }
+
+    /**
+     * Set the weigher for cached objects.
+     *
+     * @param w the weigher for cached objects
+     */
+    public void setWeigher(final Weigher<I, T> w) {
+        weigher = w;
+    }
+
+    /**
+     * Set the listener notified when objects are evicted because the cache
+     * exceeded a bound.
+     *
+     * @param el the listener notified when objects are evicted
+     */
+    public void setEvictionListener(final EvictionListener<I, T> el) {
+        evictionListener = el;
+    }
+
+    /**
+     * Set the eviction policy used when the cache is bounded. The supported
+     * policies are <tt>lru</tt> (least recently used, the default),
+     * <tt>lfu</tt> (least frequently used) and <tt>tinylfu</tt> (W-TinyLFU).
+     *
+     * @param ep the name of the eviction policy
+     */
+    public void setEvictionPolicy(final String ep) {
+        createEvictionPolicy(ep);
+        evictionPolicyName = ep;
+    }
+
+    /**
+     * Set the file the cache is snapshotted to.
+     *
+     * @param sf the file the cache is snapshotted to
+     */
+    public void setSnapshotFile(final String sf) {
+        snapshotFile = new File(sf);
+    }
+
+    /**
+     * Set the number of minutes between snapshots, or zero to only snapshot
+     * the cache when it is stopped.
+     *
+     * @param sf the number of minutes between snapshots
+     */
+    public void setSnapshotFrequency(final int sf) {
+        snapshotFrequency = 60000L * sf;
+    }
+
+    /**
+     * Set the number of threads that decode objects read from the snapshot.
+     *
+     * @param slt the number of threads that decode objects read from the snapshot
+     */
+    public void setSnapshotLoadThreads(final int slt) {
+        snapshotLoadThreads = slt;
+    }
+
+    /**
+     * Set the codec objects are written to the snapshot with. The default is
+     * Java serialisation.
+     *
+     * @param sc the codec objects are written to the snapshot with
+     */
+    public void setSnapshotCodec(final Codec sc) {
+        snapshotCodec = sc;
+    }
+
+    /**
+     * Get whether the snapshot has been loaded.
+     *
+     * @return whether the snapshot has been loaded
+     */
+    public boolean isSnapshotLoaded() {
+        return snapshotLoaded;
+    }
+
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * Set the number of hot keys reported.
+     *
+     * @param hkc the number of hot keys reported
+     */
+    public void setHotKeyCount(final int hkc) {
+        statistics.setHotKeyCount(hkc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getEvictionPolicy() {
+        return evictionPolicyName;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is only maintained for bounded caches.
+     */
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The size is estimated by serialising a sample of the cached objects.
+     */
+    @Override
+    public long getCacheSize() {
+        long count = 0;
+        long size = 0;
+        for (Entry<I, T> entry : cache.values()) {
+            if (count == SIZE_SAMPLE_COUNT) {
+                break;
+            }
+            size += serialisedSize(entry.getValue());
+            ++count;
+        }
+        return count > 0 ? size * cache.size() / count : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems() {
+        return getCacheItems(CacheItem.DEFAULT_LIMIT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The size of each item is calculated by serialising it.
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems(final int limit) {
+        Map<Object, CacheItem> items = new LinkedHashMap<>();
+        for (Entry<I, T> entry : cache.values()) {
+            if (items.size() >= limit) {
+                break;
+            }
+            items.put(entry.getId(), new CacheItem(serialisedSize(entry.getValue()), entry.getReferenceCount()));
+        }
+        return items;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheItemCount() {
+        return cache.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return statistics.getHitCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return statistics.getMissCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        return statistics.getHitRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadCount() {
+        return statistics.getLoadCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadFailureCount() {
+        return statistics.getLoadFailureCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageLoadTime() {
+        return statistics.getAverageLoadTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the number of objects evicted because the cache exceeded a bound.
+     */
+    @Override
+    public long getEvictionCount() {
+        return statistics.getEvictionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getHotKeys() {
+        return statistics.getHotKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+    }
+
     /**
      * Fetches all objects.
      *
@@ -105,231 +558,787 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
 
         List<T> objs = Collections.emptyList();
 
+        if (running && !cache.isEmpty()) {
+            objs = new ArrayList<>(cache.size());
+            long expiry = expiry();
+            for (Entry<I, T> entry : cache.values()) {
+                if (!entry.expired(expiry)) {
+                    objs.add(entry.getValue());
+                }
+            }
+        }
+
+        return objs;
+    }
+
+    /**
+     * Performs an action for each object that has not expired, without
+     * recording the objects as accessed.
+     *
+     * @param action the action to perform with the id of each object and the
+     * object
+     */
+    public void forEach(final BiConsumer<? super I, ? super T> action) {
         if (running) {
+            long expiry = expiry();
+            for (Entry<I, T> entry : cache.values()) {
+                if (!entry.expired(expiry)) {
+                    action.accept(entry.getId(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T fetch(final I id) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetch(): id:[" + id + "]");
+        }
+
+        T obj = null;
+
+        if (running) {
+            Object key = maskNull(id);
+            Entry<I, T> entry = cache.get(key);
+            if (entry != null && !entry.expired(expiry())) {
+                statistics.recordHit(id);
+                entry.referenced();
+                obj = entry.getValue();
+            } else {
+                statistics.recordMiss(id);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("fetch(): id:[" + id + "] not cached");
+                }
+            }
+            recordAccess(key);
+        }
+
+        return obj;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<I, T> fetchAll(final Collection<I> ids) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetchAll(): ids:[" + ids.size() + "]");
+        }
+
+        Map<I, T> objs = Collections.emptyMap();
+
+        if (running) {
+            objs = new LinkedHashMap<>();
+            long expiry = expiry();
+            for (I id : ids) {
+                Object key = maskNull(id);
+                Entry<I, T> entry = cache.get(key);
+                if (entry != null && !entry.expired(expiry)) {
+                    statistics.recordHit(id);
+                    entry.referenced();
+                    objs.put(id, entry.getValue());
+                } else {
+                    statistics.recordMiss(id);
+                }
+                recordAccess(key);
+            }
+            if (LOGGER.isDebugEnabled() && objs.size() < ids.size()) {
+                LOGGER.debug("fetchAll(): ids:[" + (ids.size() - objs.size()) + "] not cached");
+            }
+        }
+
+        return objs;
+    }
+
+    /**
+     * Stores objects.
+     *
+     * @param objs the objects to store
+     * @param idFetcher the id fetcher for the objects
+     */
+    public void store(final List<T> objs, final IdFetcher<I, T> idFetcher) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("store(): all");
+        }
+
+        if (running) {
+            for (T obj : objs) {
+                storeImpl(idFetcher.fetchId(obj), obj);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final I id, final T obj) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("store(): id:[" + id + "]");
+        }
+
+        if (running) {
+            storeImpl(id, obj);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushAndStore(final I id, final T obj) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flushAndStore(): id:[" + id + "]");
+        }
+
+        if (running) {
+            Object key = maskNull(id);
+            Entry<I, T> entry = new Entry<>(id, obj, weigh(id, obj), System.currentTimeMillis());
+            lockIfBounded();
+            try {
+                Entry<I, T> replaced = cache.put(key, entry);
+                if (replaced == null && LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("flushAndStore(): id:[" + id + "] not cached");
+                }
+                enqueue(entry, expiryQueue);
+                recordStore(key, entry, replaced);
+            } finally {
+                unlockIfBounded();
+            }
+            compactExpiryQueueIfDue();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush(final I id) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flush(): id:[" + id + "]");
+        }
+
+        if (running) {
+            Object key = maskNull(id);
+            lockIfBounded();
             try {
-                lock.readLock().lock();
-                if (!cache.isEmpty()) {
-                    objs = new ArrayList<>(cache.values());
+                Entry<I, T> removed = cache.remove(key);
+                if (removed != null) {
+                    recordRemoval(key, removed);
+                } else if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("flush(): id:[" + id + "] not cached");
                 }
             } finally {
-                lock.readLock().unlock();
+                unlockIfBounded();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flush(): all");
+        }
+
+        if (running) {
+            lockIfBounded();
+            try {
+                clear();
+            } finally {
+                unlockIfBounded();
+            }
+        }
+    }
+
+    /**
+     * Starts the cache.
+     */
+    @Override
+    public void start() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("start(): starting cache");
+        }
+
+        if (running) {
+            throw new IllegalStateException("Cache has already been started");
+        }
+
+        if (maxEntries > 0 || maxWeight > 0) {
+            evictionPolicy = createEvictionPolicy(evictionPolicyName);
+        }
+
+        running = true;
+
+        if (eventService != null) {
+            eventService.addTopicListener("", this);
+        }
+
+        if (purgeFrequency > 0) {
+            purger = new Purger();
+            purger.start();
+        }
+
+        if (snapshotFile != null) {
+            snapshotLoaded = false;
+            snapshotLoader = new SnapshotLoader();
+            snapshotLoader.start();
+            if (snapshotFrequency > 0) {
+                snapshotter = new Snapshotter();
+                snapshotter.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the cache.
+     */
+    @Override
+    public void stop() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("stop(): stopping cache");
+        }
+
+        if (!running) {
+            throw new IllegalStateException("Cache has already been stopped");
+        }
+
+        running = false;
+
+        if (eventService != null) {
+            eventService.removeTopicListener("", this);
+        }
+
+        if (purger != null) {
+            purger.interrupt();
+            purger = null;
+        }
+
+        if (snapshotFile != null) {
+            if (snapshotter != null) {
+                snapshotter.interrupt();
+                snapshotter = null;
+            }
+            try {
+                snapshotLoader.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            snapshotLoader = null;
+            writeSnapshot();
+        }
+
+        if (evictionPolicy != null && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("stop(): policy:[" + evictionPolicyName + "] hits:[" + statistics.getHitCount() + "] misses:[" + statistics.getMissCount() + "] evictions:[" + statistics.getEvictionCount() + "]");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void receiveEvent(final Event event) {
+        switch (event.getType()) {
+        case UPDATE:
+        case DELETE:
+            flush((I) event.getId());
+            break;
+        }
+    }
+
+    /**
+     * Stores an object if it is not already cached, or if the cached copy has
+     * expired.
+     *
+     * @param id the id of the object to store
+     * @param obj the object to store
+     */
+    private void storeImpl(final I id, final T obj) {
+        storeImpl(id, obj, System.currentTimeMillis(), expiryQueue);
+    }
+
+    /**
+     * Stores an object if it is not cached, or if it is cached but has
+     * expired.
+     *
+     * @param id the id of the object to store
+     * @param obj the object to store
+     * @param timestamp the time the object was stored
+     * @param queue the queue to append the entry to if it expires
+     */
+    private void storeImpl(final I id, final T obj, final long timestamp, final Collection<Entry<I, T>> queue) {
+        Object key = maskNull(id);
+        Entry<I, T> entry = new Entry<>(id, obj, weigh(id, obj), timestamp);
+        lockIfBounded();
+        try {
+            Entry<I, T> existing = cache.putIfAbsent(key, entry);
+            if (existing != null) {
+                if (!existing.expired(expiry()) || !cache.replace(key, existing, entry)) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("store(): id:[" + id + "] already cached");
+                    }
+                    return;
+                }
+            }
+            enqueue(entry, queue);
+            recordStore(key, entry, existing);
+        } finally {
+            unlockIfBounded();
+        }
+        compactExpiryQueueIfDue();
+    }
+
+    /**
+     * Remove all entries.
+     */
+    private void clear() {
+        cache.clear();
+        expiryQueue.clear();
+        expiryQueueSize.set(0);
+        restoredExpiryQueue = null;
+        if (evictionPolicy != null) {
+            evictionPolicy.clear();
+            weightedSize = 0;
+        }
+    }
+
+    /**
+     * Acquire the eviction lock if the cache is bounded.
+     */
+    private void lockIfBounded() {
+        if (evictionPolicy != null) {
+            evictionLock.lock();
+        }
+    }
+
+    /**
+     * Release the eviction lock if the cache is bounded.
+     */
+    private void unlockIfBounded() {
+        if (evictionPolicy != null) {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Calculate the weight of an object.
+     *
+     * @param id the id of the object
+     * @param obj the object
+     * @return the weight of the object
+     */
+    private int weigh(final I id, final T obj) {
+        return weigher != null ? weigher.weigh(id, obj) : 1;
+    }
+
+    /**
+     * Record an access in the read buffer, and drain the buffer into the
+     * eviction policy if it is due to be drained and the eviction lock is
+     * free. This never blocks.
+     *
+     * @param key the key of the accessed object
+     */
+    private void recordAccess(final Object key) {
+        if (evictionPolicy != null) {
+            long index = readBufferWrites.getAndIncrement();
+            readBuffer.lazySet((int) (index & (READ_BUFFER_SIZE - 1)), key);
+            if ((index & (READ_BUFFER_DRAIN_THRESHOLD - 1)) == 0 && evictionLock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drain the read buffer into the eviction policy. The eviction lock must be
+     * held.
+     */
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; ++i) {
+            Object key = readBuffer.getAndSet(i, null);
+            if (key != null) {
+                evictionPolicy.recordAccess(key);
             }
         }
-
-        return objs;
     }
 
     /**
-     * {@inheritDoc}
+     * Record the storing of an entry in the eviction policy, and evict entries
+     * until the cache is within its bounds. The eviction lock must be held.
+     *
+     * @param key the key of the entry
+     * @param entry the entry
+     * @param replaced the entry that was replaced, or null
      */
-    @Override
-    public T fetch(final I id) {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("fetch(): id:[" + id + "]");
+    private void recordStore(final Object key, final Entry<I, T> entry, final Entry<I, T> replaced) {
+        if (evictionPolicy == null) {
+            return;
         }
 
-        T obj = null;
+        drainReadBuffer();
 
-        if (running) {
-            try {
-                lock.readLock().lock();
-                Key<I> key = new Key<>(id);
-                if (cache.containsKey(key)) {
-                    obj = cache.get(key);
-                } else if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("fetch(): id:[" + id + "] not cached");
+        if (replaced != null) {
+            weightedSize += entry.getWeight() - replaced.getWeight();
+            evictionPolicy.recordAccess(key);
+        } else {
+            weightedSize += entry.getWeight();
+            evictionPolicy.recordInsert(key);
+        }
+
+        while ((maxEntries > 0 && cache.size() > maxEntries) || (maxWeight > 0 && weightedSize > maxWeight)) {
+            Object victim = evictionPolicy.evict();
+            if (victim == null) {
+                break;
+            }
+            Entry<I, T> evicted = cache.remove(victim);
+            if (evicted != null) {
+                weightedSize -= evicted.getWeight();
+                statistics.recordEviction();
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("recordStore(): evicted id:[" + evicted.getId() + "]");
+                }
+                if (evictionListener != null) {
+                    evictionListener.evicted(evicted.getId(), evicted.getValue());
                 }
-            } finally {
-                lock.readLock().unlock();
             }
         }
-
-        return obj;
     }
 
     /**
-     * Stores objects.
+     * Record the removal of an entry in the eviction policy. The eviction lock
+     * must be held.
      *
-     * @param objs the objects to store
-     * @param idFetcher the id fetcher for the objects
+     * @param key the key of the entry
+     * @param entry the entry
      */
-    public void store(final List<T> objs, final IdFetcher<I, T> idFetcher) {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("store(): all");
+    private void recordRemoval(final Object key, final Entry<I, T> entry) {
+        if (evictionPolicy != null) {
+            weightedSize -= entry.getWeight();
+            evictionPolicy.recordRemoval(key);
         }
+    }
 
-        if (running) {
-            try {
-                lock.writeLock().lock();
-                for (T obj : objs) {
-                    I id = idFetcher.fetchId(obj);
-                    Key<I> key = new Key<>(id);
-                    if (!cache.containsKey(key)) {
-                        cache.put(key, obj);
-                    } else if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("store(): id:[" + id + "] already cached");
-                    }
-                }
-            } finally {
-                lock.writeLock().unlock();
-            }
+    /**
+     * Create an eviction policy.
+     *
+     * @param name the name of the eviction policy
+     * @return the eviction policy
+     */
+    private static EvictionPolicy<Object> createEvictionPolicy(final String name) {
+        switch (name.toLowerCase()) {
+        case "lru":
+            return new LruEvictionPolicy<>();
+        case "lfu":
+            return new LfuEvictionPolicy<>();
+        case "tinylfu":
+            return new TinyLfuEvictionPolicy<>();
+        default:
+            throw new IllegalArgumentException("Unknown eviction policy '" + name + "'");
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Append an entry to an expiry queue, if the purge thread is configured to
+     * expire entries.
+     *
+     * @param entry the entry
+     * @param queue the expiry queue
      */
-    @Override
-    public void store(final I id, final T obj) {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("store(): id:[" + id + "]");
+    private void enqueue(final Entry<I, T> entry, final Collection<Entry<I, T>> queue) {
+        if (purgeFrequency > 0 && purgeTime > 0) {
+            queue.add(entry);
+            if (queue == expiryQueue) {
+                expiryQueueSize.incrementAndGet();
+            }
         }
+    }
 
-        if (running) {
+    /**
+     * Compact the expiry queue if it holds more than twice as many entries as
+     * there are cached objects. Entries that have been flushed, replaced or
+     * evicted stay in the queue until they expire, so without this the queue
+     * of a cache with many stores grows with the number of stores rather than
+     * the number of cached objects. The eviction lock must not be held.
+     */
+    private void compactExpiryQueueIfDue() {
+        if (expiryQueueSize.get() > 2L * cache.size() + EXPIRY_QUEUE_SLACK && compactingExpiryQueue.compareAndSet(false, true)) {
             try {
-                lock.writeLock().lock();
-                Key<I> key = new Key<>(id);
-                if (!cache.containsKey(key)) {
-                    cache.put(key, obj);
-                } else if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("store(): id:[" + id + "] already cached");
-                }
+                expiryQueue.removeIf(entry -> {
+                    if (cache.get(maskNull(entry.getId())) == entry) {
+                        return false;
+                    }
+                    expiryQueueSize.decrementAndGet();
+                    return true;
+                });
             } finally {
-                lock.writeLock().unlock();
+                compactingExpiryQueue.set(false);
             }
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Get the approximate number of entries in the expiry queue.
+     *
+     * @return the approximate number of entries in the expiry queue
      */
-    @Override
-    public void flushAndStore(final I id, final T obj) {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("flushAndStore(): id:[" + id + "]");
-        }
+    long getExpiryQueueSize() {
+        return expiryQueueSize.get();
+    }
 
-        if (running) {
-            try {
-                lock.writeLock().lock();
-                Key<I> key = new Key<>(id);
-                if (cache.containsKey(key)) {
-                    cache.remove(key);
-                } else if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("flushAndStore(): id:[" + id + "] not cached");
+    /**
+     * Get the time before which stored objects have expired.
+     *
+     * @return the time before which stored objects have expired, or zero if
+     * objects only expire when the purge thread runs
+     */
+    private long expiry() {
+        long pt = purgeTime;
+        return pt > 0 ? System.currentTimeMillis() - pt : 0L;
+    }
+
+    /**
+     * Purges expired objects by polling the heads of the expiry queues.
+     * Entries that have since been flushed or replaced are discarded without
+     * touching the cache map.
+     *
+     * @return the number of objects purged
+     */
+    private int purge() {
+        int purged = 0;
+
+        if (purgeTime > 0) {
+            long expiry = expiry();
+            purged = purge(expiryQueue, expiry);
+            Queue<Entry<I, T>> restored = restoredExpiryQueue;
+            if (restored != null) {
+                purged += purge(restored, expiry);
+                if (restored.isEmpty()) {
+                    restoredExpiryQueue = null;
                 }
-                cache.put(key, obj);
+            }
+        } else {
+            lockIfBounded();
+            try {
+                purged = cache.size();
+                clear();
             } finally {
-                lock.writeLock().unlock();
+                unlockIfBounded();
             }
         }
+
+        return purged;
     }
 
     /**
-     * {@inheritDoc}
+     * Purges expired objects by polling the head of an expiry queue, which
+     * must be in timestamp order.
+     *
+     * @param queue the expiry queue
+     * @param expiry the time before which stored objects have expired
+     * @return the number of objects purged
      */
-    @Override
-    public void flush(final I id) {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("flush(): id:[" + id + "]");
-        }
+    private int purge(final Queue<Entry<I, T>> queue, final long expiry) {
+        int purged = 0;
 
-        if (running) {
-            try {
-                lock.writeLock().lock();
-                Key<I> key = new Key<>(id);
-                if (cache.containsKey(key)) {
-                    cache.remove(key);
-                } else if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("flush(): id:[" + id + "] not cached");
+        for (Entry<I, T> entry = queue.peek(); entry != null && entry.expired(expiry); entry = queue.peek()) {
+            if (queue.remove(entry)) {
+                if (queue == expiryQueue) {
+                    expiryQueueSize.decrementAndGet();
+                }
+                Object key = maskNull(entry.getId());
+                lockIfBounded();
+                try {
+                    if (cache.remove(key, entry)) {
+                        recordRemoval(key, entry);
+                        ++purged;
+                    }
+                } finally {
+                    unlockIfBounded();
                 }
-            } finally {
-                lock.writeLock().unlock();
             }
         }
+
+        return purged;
     }
 
     /**
-     * {@inheritDoc}
+     * Write the cache to the snapshot file, unless the snapshot has not been
+     * loaded. Each object is written as its timestamp, the lengths of its
+     * encoded id and value, and then the encoded id and value. The snapshot is
+     * written to a temporary file that then replaces the snapshot file.
      */
-    @Override
-    public void flush() {
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("flush(): all");
+    private void writeSnapshot() {
+        if (!snapshotLoaded) {
+            LOGGER.warn("writeSnapshot(): snapshot not written as it has not been loaded");
+            return;
         }
 
-        if (running) {
+        synchronized (snapshotLock) {
+            File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+            long expiry = expiry();
+            int count = 0;
+
             try {
-                lock.writeLock().lock();
-                cache.clear();
-            } finally {
-                lock.writeLock().unlock();
+                try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), SNAPSHOT_BUFFER_SIZE))) {
+                    outputStream.writeInt(SNAPSHOT_MAGIC);
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    for (Entry<I, T> entry : cache.values()) {
+                        if (entry.expired(expiry)) {
+                            continue;
+                        }
+                        buffer.reset();
+                        int idLength;
+                        try {
+                            snapshotCodec.encode(entry.getId(), buffer);
+                            idLength = buffer.size();
+                            snapshotCodec.encode(entry.getValue(), buffer);
+                        } catch (IOException exception) {
+                            LOGGER.warn("writeSnapshot(): id:[" + entry.getId() + "] not written:[" + exception.getMessage() + "]");
+                            continue;
+                        }
+                        outputStream.writeLong(entry.getTimestamp());
+                        outputStream.writeInt(idLength);
+                        outputStream.writeInt(buffer.size() - idLength);
+                        buffer.writeTo(outputStream);
+                        ++count;
+                    }
+                    outputStream.writeLong(SNAPSHOT_END);
+                }
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException exception) {
+                LOGGER.error("writeSnapshot(): error writing snapshot:[" + snapshotFile + "]", exception);
+                tmpFile.delete();
+                return;
+            }
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("writeSnapshot(): written objects:[" + count + "] to:[" + snapshotFile + "]");
             }
         }
     }
 
     /**
-     * Starts the cache.
+     * Load the snapshot file. Objects are read by the calling thread and
+     * decoded and stored by a pool of threads, unless they have expired or
+     * have been stored since the cache was started. As the threads store the
+     * objects out of order, the restored entries are sorted by timestamp once
+     * they are all stored, and then expire from their own queue.
      */
-    @Override
-    public void start() {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("start(): starting cache");
-        }
-
-        if (running) {
-            throw new IllegalStateException("Cache has already been started");
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            snapshotLoaded = true;
+            return;
         }
 
-        running = true;
+        ThreadPoolExecutor decoders = new ThreadPoolExecutor(snapshotLoadThreads, snapshotLoadThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(snapshotLoadThreads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Entry<I, T>> restored = Collections.synchronizedList(new ArrayList<>());
+        int count = 0;
+        boolean complete = false;
 
-        if (eventService != null) {
-            eventService.addTopicListener("", this);
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), SNAPSHOT_BUFFER_SIZE))) {
+            if (inputStream.readInt() != SNAPSHOT_MAGIC) {
+                LOGGER.warn("loadSnapshot(): ignoring invalid snapshot:[" + snapshotFile + "]");
+                complete = true;
+                return;
+            }
+            while (running) {
+                long timestamp = inputStream.readLong();
+                if (timestamp == SNAPSHOT_END) {
+                    complete = true;
+                    break;
+                }
+                int idLength = inputStream.readInt();
+                int valueLength = inputStream.readInt();
+                byte[] data = new byte[idLength + valueLength];
+                inputStream.readFully(data);
+                decoders.execute(() -> {
+                    restore(data, idLength, timestamp, restored);
+                });
+                ++count;
+            }
+        } catch (EOFException exception) {
+            LOGGER.warn("loadSnapshot(): snapshot truncated:[" + snapshotFile + "]");
+            complete = true;
+        } catch (IOException exception) {
+            LOGGER.error("loadSnapshot(): error reading snapshot:[" + snapshotFile + "]", exception);
+        } finally {
+            decoders.shutdown();
+            try {
+                decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (!restored.isEmpty()) {
+                restored.sort((e1, e2) -> Long.compare(e1.getTimestamp(), e2.getTimestamp()));
+                restoredExpiryQueue = new ConcurrentLinkedQueue<>(restored);
+            }
+            snapshotLoaded = complete;
         }
 
-        if (purgeFrequency > 0) {
-            purger = new Purger();
-            purger.start();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("loadSnapshot(): read objects:[" + count + "] from:[" + snapshotFile + "] complete:[" + complete + "]");
         }
     }
 
     /**
-     * Stops the cache.
+     * Decode and store an object read from the snapshot file.
+     *
+     * @param data the encoded id and value of the object
+     * @param idLength the length of the encoded id
+     * @param timestamp the time the object was stored
+     * @param restored the entries restored, to which the entry for the
+     * object is added if it expires
      */
-    @Override
-    public void stop() {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("stop(): stopping cache");
-        }
-
-        if (!running) {
-            throw new IllegalStateException("Cache has already been stopped");
+    private void restore(final byte[] data, final int idLength, final long timestamp, final Collection<Entry<I, T>> restored) {
+        if (!running || timestamp < expiry()) {
+            return;
         }
-
-        running = false;
-
-        if (eventService != null) {
-            eventService.removeTopicListener("", this);
+        try {
+            // not sure if it's possible to make this type-safe
+            @SuppressWarnings("unchecked") I id = (I) snapshotCodec.decode(new ByteArrayInputStream(data, 0, idLength));
+            @SuppressWarnings("unchecked") T obj = (T) snapshotCodec.decode(new ByteArrayInputStream(data, idLength, data.length - idLength));
+            storeImpl(id, obj, timestamp, restored);
+        } catch (IOException | ClassNotFoundException | ClassCastException exception) {
+            LOGGER.warn("restore(): error decoding object:[" + exception.getMessage() + "]");
         }
+    }
 
-        if (purger != null) {
-            purger.interrupt();
-            purger = null;
+    /**
+     * Calculate the serialised size of an object.
+     *
+     * @param obj the object
+     * @return the serialised size of the object in bytes, or zero if it cannot
+     * be serialised
+     */
+    private static long serialisedSize(final Object obj) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(counter)) {
+            outputStream.writeObject(obj);
+        } catch (IOException exception) {
+            return 0L;
         }
+        return counter.getCount();
     }
 
     /**
-     * {@inheritDoc}
+     * Mask a null object identifier, as the concurrent map does not support
+     * null keys.
+     *
+     * @param id the object identifier
+     * @return the object identifier, or a placeholder key if it is null
      */
-    @Override
-    @SuppressWarnings("unchecked")
-    public void receiveEvent(final Event event) {
-        switch (event.getType()) {
-        case UPDATE:
-        case DELETE:
-            flush((I) event.getId());
-            break;
-        }
+    private static Object maskNull(final Object id) {
+        return id != null ? id : NULL_KEY;
     }
 
     /**
@@ -347,29 +1356,14 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
         @Override
         public void run() {
             while (running) {
-                try {
-                    lock.writeLock().lock();
-
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("run(): purge started:[" + dateFormat.format(new Date()) + "] cache size:[" + cache.size() + "]");
-                    }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("run(): purge started:[" + dateFormat.format(new Date()) + "] cache size:[" + cache.size() + "]");
+                }
 
-                    if (purgeTime > 0) {
-                        long expiry = System.currentTimeMillis() - purgeTime;
-                        for (Iterator<Key<I>> i = cache.keySet().iterator(); i.hasNext();) {
-                            if (i.next().expired(expiry)) {
-                                i.remove();
-                            }
-                        }
-                    } else {
-                        cache.clear();
-                    }
+                int purged = purge();
 
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("run(): purge started:[" + dateFormat.format(new Date()) + "] cache size:[" + cache.size() + "]");
-                    }
-                } finally {
-                    lock.writeLock().unlock();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("run(): purge finished:[" + dateFormat.format(new Date()) + "] purged:[" + purged + "] cache size:[" + cache.size() + "]");
                 }
 
                 try {
@@ -382,29 +1376,152 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
     }
 
     /**
-     * This class provides a wrapper for cached object identifiers that adds a
-     * timestamp.
+     * This class provides a snapshot thread.
+     */
+    private class Snapshotter extends Thread {
+        /**
+         * Construct an instance of the snapshot thread.
+         */
+        Snapshotter() {
+            super("MemoryCache-snapshot");
+            setDaemon(true);
+        }
+
+        /**
+         * The snapshot thread run loop.
+         */
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Thread.sleep(snapshotFrequency);
+                } catch (InterruptedException exception) {
+                    continue;
+                }
+
+                if (running && snapshotLoaded) {
+                    writeSnapshot();
+                }
+            }
+        }
+    }
+
+    /**
+     * This class provides a thread that loads the snapshot.
+     */
+    private class SnapshotLoader extends Thread {
+        /**
+         * Construct an instance of the snapshot loader thread.
+         */
+        SnapshotLoader() {
+            super("MemoryCache-snapshot-load");
+            setDaemon(true);
+        }
+
+        /**
+         * Load the snapshot.
+         */
+        @Override
+        public void run() {
+            loadSnapshot();
+        }
+    }
+
+    /**
+     * This class provides a wrapper for cached objects that adds the object
+     * identifier, a weight and a timestamp.
      *
      * @param <I> the type of object that is used to identify cached objects
+     * @param <T> the type of cached objects
      */
-    private static class Key<I> {
+    private static final class Entry<I, T> {
         /**
          * The cached object identifier.
          */
-        private final I key;
+        private final I id;
+        /**
+         * The cached object.
+         */
+        private final T value;
+        /**
+         * The weight of the cached object.
+         */
+        private final int weight;
         /**
          * The cache timestamp.
          */
         private final long timestamp;
+        /**
+         * The number of times the cached object has been referenced. This is
+         * incremented without synchronisation, so is only an estimate.
+         */
+        private int referenceCount;
+
+        /**
+         * Construct an instance of the wrapper for a cached object.
+         *
+         * @param i the cached object identifier
+         * @param v the cached object
+         * @param w the weight of the cached object
+         * @param t the cache timestamp
+         */
+        Entry(final I i, final T v, final int w, final long t) {
+            id = i;
+            value = v;
+            weight = w;
+            timestamp = t;
+        }
+
+        /**
+         * Get the cached object identifier.
+         *
+         * @return the cached object identifier
+         */
+        public I getId() {
+            return id;
+        }
 
         /**
-         * Construct an instance of the wrapper for a cached object identifier.
+         * Get the cached object.
          *
-         * @param k the cached object identifier
+         * @return the cached object
          */
-        Key(final I k) {
-            key = k;
-            timestamp = System.currentTimeMillis();
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Get the cache timestamp.
+         *
+         * @return the cache timestamp
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Get the number of times the cached object has been referenced.
+         *
+         * @return the number of times the cached object has been referenced
+         */
+        public int getReferenceCount() {
+            return referenceCount;
+        }
+
+        /**
+         * Record a reference to the cached object.
+         */
+        public void referenced() {
+            ++referenceCount;
+        }
+
+        /**
+         * Get the weight of the cached object.
+         *
+         * @return the weight of the cached object
+         */
+        public int getWeight() {
+            return weight;
         }
 
         /**
@@ -416,28 +1533,41 @@ public class MemoryCache<I, T> implements Cache<I, T>, TopicListener, LifecycleC
         public boolean expired(final long expiry) {
             return timestamp < expiry;
         }
+    }
+
+    /**
+     * This class provides an output stream that discards its output and counts
+     * the number of bytes written.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        /**
+         * The number of bytes written.
+         */
+        private long count;
+
+        /**
+         * Get the number of bytes written.
+         *
+         * @return the number of bytes written
+         */
+        public long getCount() {
+            return count;
+        }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public boolean equals(final Object obj) {
-            if (obj == this) {
-                return true;
-            }
-            if (!(obj instanceof Key)) {
-                return false;
-            }
-            Key<?> k = (Key) obj;
-            return key != null ? key.equals(k.key) : k.key == null;
+        public void write(final int b) {
+            ++count;
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public int hashCode() {
-            return key != null ? key.hashCode() : 0;
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
         }
     }
 }
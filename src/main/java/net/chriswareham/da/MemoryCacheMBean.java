@@ -0,0 +1,28 @@
+/*
+ * @(#) MemoryCacheMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by managed memory caches.
+ *
+ * @author Chris Wareham
+ */
+public interface MemoryCacheMBean extends CacheMBean {
+    /**
+     * Get the name of the eviction policy.
+     *
+     * @return the name of the eviction policy
+     */
+    String getEvictionPolicy();
+
+    /**
+     * Get the total weight of the cached objects.
+     *
+     * @return the total weight of the cached objects
+     */
+    long getWeightedSize();
+}
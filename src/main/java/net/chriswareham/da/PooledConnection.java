@@ -0,0 +1,759 @@
+/*
+ * @(#) PooledConnection.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * This class provides the connection handed out by a
+ * {@link ConcurrentConnectionPool}. It delegates to a pooled physical
+ * connection until it is closed, when it closes any statements left open,
+ * restores the settings of the physical connection that were changed through
+ * it and returns it to the pool. The statements it
+ * creates return it, rather than the physical connection, from
+ * {@link Statement#getConnection()}.
+ *
+ * @author Chris Wareham
+ */
+final class PooledConnection implements Connection {
+    /**
+     * The value of a setting that has not been changed.
+     */
+    private static final int UNCHANGED = -1;
+
+    /**
+     * The pool the physical connection belongs to.
+     */
+    private final ConcurrentConnectionPool pool;
+    /**
+     * The pool entry for the physical connection.
+     */
+    private final ConcurrentConnectionPool.Entry entry;
+    /**
+     * The physical connection, or null once closed.
+     */
+    private Connection connection;
+    /**
+     * Whether auto-commit has been disabled.
+     */
+    private boolean autoCommitDisabled;
+    /**
+     * Whether the connection has been set to read only.
+     */
+    private boolean readOnly;
+    /**
+     * The transaction isolation before it was changed, or
+     * {@link #UNCHANGED} if it has not been changed.
+     */
+    private int initialIsolation = UNCHANGED;
+    /**
+     * The holdability before it was changed, or {@link #UNCHANGED} if it has
+     * not been changed.
+     */
+    private int initialHoldability = UNCHANGED;
+    /**
+     * Whether the catalog has been changed.
+     */
+    private boolean catalogChanged;
+    /**
+     * The catalog before it was changed.
+     */
+    private String initialCatalog;
+    /**
+     * Whether the schema has been changed.
+     */
+    private boolean schemaChanged;
+    /**
+     * The schema before it was changed.
+     */
+    private String initialSchema;
+    /**
+     * The type map before it was changed, or null if it has not been changed.
+     */
+    private Map<String, Class<?>> initialTypeMap;
+    /**
+     * The physical statements that have not been closed, or null if no
+     * statements have been created.
+     */
+    private Set<Statement> statements;
+
+    /**
+     * Construct an instance of the pooled connection.
+     *
+     * @param p the pool the physical connection belongs to
+     * @param e the pool entry for the physical connection
+     */
+    PooledConnection(final ConcurrentConnectionPool p, final ConcurrentConnectionPool.Entry e) {
+        pool = p;
+        entry = e;
+        connection = e.getConnection();
+    }
+
+    /**
+     * Returns the physical connection to the pool, after closing any
+     * statements left open, rolling back any uncommitted transaction and
+     * restoring auto-commit, read-write mode and any transaction isolation,
+     * holdability, catalog, schema or type map set through this connection.
+     * Client info and the network timeout are not restored. If the physical
+     * connection cannot be reset it is discarded.
+     *
+     * @throws SQLException if the physical connection cannot be reset
+     */
+    @Override
+    public void close() throws SQLException {
+        Connection c = connection;
+        if (c == null) {
+            return;
+        }
+        connection = null;
+        try {
+            closeStatements();
+            if (autoCommitDisabled) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            if (readOnly) {
+                c.setReadOnly(false);
+            }
+            restoreSettings(c);
+            c.clearWarnings();
+        } catch (SQLException exception) {
+            pool.discard(entry);
+            throw exception;
+        }
+        pool.release(entry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed() throws SQLException {
+        return connection == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        connection().setAutoCommit(autoCommit);
+        autoCommitDisabled = !autoCommit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setReadOnly(final boolean ro) throws SQLException {
+        connection().setReadOnly(ro);
+        readOnly = ro;
+    }
+
+    /**
+     * Aborts the physical connection and discards it from the pool.
+     *
+     * @param executor the executor used by the abort
+     * @throws SQLException if an error occurs
+     */
+    @Override
+    public void abort(final Executor executor) throws SQLException {
+        Connection c = connection;
+        if (c == null) {
+            return;
+        }
+        connection = null;
+        statements = null;
+        try {
+            c.abort(executor);
+        } finally {
+            pool.discard(entry);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClientInfo(final String name, final String value) throws SQLClientInfoException {
+        if (connection == null) {
+            throw new SQLClientInfoException("Connection is closed", Collections.emptyMap());
+        }
+        connection.setClientInfo(name, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClientInfo(final Properties properties) throws SQLClientInfoException {
+        if (connection == null) {
+            throw new SQLClientInfoException("Connection is closed", Collections.emptyMap());
+        }
+        connection.setClientInfo(properties);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || connection().isWrapperFor(iface);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return connection().unwrap(iface);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement createStatement() throws SQLException {
+        return track(connection().createStatement(), Statement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return track(connection().createStatement(resultSetType, resultSetConcurrency), Statement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return track(connection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), Statement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        return track(connection().prepareStatement(sql), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return track(connection().prepareStatement(sql, autoGeneratedKeys), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+        return track(connection().prepareStatement(sql, columnIndexes), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+        return track(connection().prepareStatement(sql, columnNames), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return track(connection().prepareStatement(sql, resultSetType, resultSetConcurrency), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return track(connection().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), PreparedStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException {
+        return track(connection().prepareCall(sql), CallableStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return track(connection().prepareCall(sql, resultSetType, resultSetConcurrency), CallableStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return track(connection().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), CallableStatement.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String nativeSQL(final String sql) throws SQLException {
+        return connection().nativeSQL(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return connection().getAutoCommit();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return connection().setSavepoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Savepoint setSavepoint(final String name) throws SQLException {
+        return connection().setSavepoint(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+        connection().releaseSavepoint(savepoint);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        connection().rollback(savepoint);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rollback() throws SQLException {
+        connection().rollback();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws SQLException {
+        connection().commit();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return connection().getMetaData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return connection().isReadOnly();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCatalog(final String catalog) throws SQLException {
+        Connection c = connection();
+        if (!catalogChanged) {
+            initialCatalog = c.getCatalog();
+            catalogChanged = true;
+        }
+        c.setCatalog(catalog);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCatalog() throws SQLException {
+        return connection().getCatalog();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTransactionIsolation(final int level) throws SQLException {
+        Connection c = connection();
+        if (initialIsolation == UNCHANGED) {
+            initialIsolation = c.getTransactionIsolation();
+        }
+        c.setTransactionIsolation(level);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return connection().getTransactionIsolation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return connection().getWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearWarnings() throws SQLException {
+        connection().clearWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return connection().getTypeMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTypeMap(final Map<String, Class<?>> map) throws SQLException {
+        Connection c = connection();
+        if (initialTypeMap == null) {
+            initialTypeMap = c.getTypeMap();
+        }
+        c.setTypeMap(map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setHoldability(final int holdability) throws SQLException {
+        Connection c = connection();
+        if (initialHoldability == UNCHANGED) {
+            initialHoldability = c.getHoldability();
+        }
+        c.setHoldability(holdability);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHoldability() throws SQLException {
+        return connection().getHoldability();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Clob createClob() throws SQLException {
+        return connection().createClob();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Blob createBlob() throws SQLException {
+        return connection().createBlob();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NClob createNClob() throws SQLException {
+        return connection().createNClob();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return connection().createSQLXML();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isValid(final int timeout) throws SQLException {
+        return connection().isValid(timeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getClientInfo(final String name) throws SQLException {
+        return connection().getClientInfo(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return connection().getClientInfo();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException {
+        return connection().createArrayOf(typeName, elements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException {
+        return connection().createStruct(typeName, attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSchema(final String schema) throws SQLException {
+        Connection c = connection();
+        if (!schemaChanged) {
+            initialSchema = c.getSchema();
+            schemaChanged = true;
+        }
+        c.setSchema(schema);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSchema() throws SQLException {
+        return connection().getSchema();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+        connection().setNetworkTimeout(executor, milliseconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return connection().getNetworkTimeout();
+    }
+
+    /**
+     * Restore the settings of the physical connection that were changed
+     * through this connection.
+     *
+     * @param c the physical connection
+     * @throws SQLException if a setting cannot be restored
+     */
+    private void restoreSettings(final Connection c) throws SQLException {
+        if (initialIsolation != UNCHANGED) {
+            c.setTransactionIsolation(initialIsolation);
+        }
+        if (initialHoldability != UNCHANGED) {
+            c.setHoldability(initialHoldability);
+        }
+        if (catalogChanged) {
+            c.setCatalog(initialCatalog);
+        }
+        if (schemaChanged) {
+            c.setSchema(initialSchema);
+        }
+        if (initialTypeMap != null) {
+            c.setTypeMap(initialTypeMap);
+        }
+    }
+
+    /**
+     * Get the physical connection.
+     *
+     * @return the physical connection
+     * @throws SQLException if the connection is closed
+     */
+    private Connection connection() throws SQLException {
+        Connection c = connection;
+        if (c == null) {
+            throw new SQLException("Connection is closed");
+        }
+        return c;
+    }
+
+    /**
+     * Track a physical statement until it is closed, and wrap it so that it
+     * returns this connection as its connection.
+     *
+     * @param <S> the type of the statement
+     * @param statement the physical statement
+     * @param type the interface of the statement
+     * @return the wrapped statement
+     */
+    private <S extends Statement> S track(final S statement, final Class<S> type) {
+        if (statements == null) {
+            statements = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        statements.add(statement);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new StatementHandler(statement)));
+    }
+
+    /**
+     * Close the physical statements that have not been closed.
+     *
+     * @throws SQLException if a statement cannot be closed, after attempting
+     * to close the others
+     */
+    private void closeStatements() throws SQLException {
+        if (statements == null || statements.isEmpty()) {
+            return;
+        }
+        List<Statement> open = new ArrayList<>(statements);
+        statements.clear();
+        SQLException failure = null;
+        for (Statement statement : open) {
+            try {
+                statement.close();
+            } catch (SQLException exception) {
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * This class provides an invocation handler that delegates to a physical
+     * statement, returning the pooled connection as the connection of the
+     * statement and forgetting the statement when it is closed.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        /**
+         * The physical statement.
+         */
+        private final Statement statement;
+
+        /**
+         * Construct an instance of the handler.
+         *
+         * @param s the physical statement
+         */
+        private StatementHandler(final Statement s) {
+            statement = s;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getConnection":
+                return PooledConnection.this;
+            case "close":
+                if (statements != null) {
+                    statements.remove(statement);
+                }
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * @(#) QueryCursor.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by cursors over the results of a query. Unlike
+ * a list query, the results are read from the database as the cursor is
+ * advanced, so the cursor holds its statement (and, if it opened it, its
+ * connection) until it is closed. It is typically used in a
+ * <tt>try</tt>-with-resources block:
+ * <pre>
+ * try (QueryCursor&lt;User&gt; cursor = queryService.openQuery(query, callback)) {
+ *     while (cursor.next()) {
+ *         User user = cursor.get();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Chris Wareham
+ * @param <T> the type of results
+ */
+public interface QueryCursor<T> extends AutoCloseable {
+    /**
+     * Advance the cursor to the next result. Rows for which the callback
+     * returns null are skipped.
+     *
+     * @return whether there is a next result
+     * @throws QueryException if an error occurs
+     */
+    boolean next() throws QueryException;
+
+    /**
+     * Get the current result.
+     *
+     * @return the current result
+     */
+    T get();
+
+    /**
+     * Get the number of results read so far.
+     *
+     * @return the number of results read so far
+     */
+    int getCount();
+
+    /**
+     * Close the cursor, along with its statement and any connection it opened.
+     */
+    @Override
+    void close();
+}
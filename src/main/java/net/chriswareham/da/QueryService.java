@@ -71,6 +71,58 @@ public interface QueryService {
      */
     <T> List<T> listQuery(QueryConnection connection, String query, QueryExecutor executor, QueryCallback<T> callback) throws QueryException;
 
+    /**
+     * Open a cursor over the results of a query. The cursor opens its own
+     * connection, which is held until the cursor is closed.
+     *
+     * @param <T> the type of results to return
+     * @param query the query to execute
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    <T> QueryCursor<T> openQuery(String query, QueryCallback<T> callback) throws QueryException;
+
+    /**
+     * Open a cursor over the results of a query. The connection is not closed
+     * when the cursor is closed.
+     *
+     * @param <T> the type of results to return
+     * @param connection the query connection
+     * @param query the query to execute
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    <T> QueryCursor<T> openQuery(QueryConnection connection, String query, QueryCallback<T> callback) throws QueryException;
+
+    /**
+     * Open a cursor over the results of a query. The cursor opens its own
+     * connection, which is held until the cursor is closed.
+     *
+     * @param <T> the type of results to return
+     * @param query the query to execute
+     * @param executor the query executor
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    <T> QueryCursor<T> openQuery(String query, QueryExecutor executor, QueryCallback<T> callback) throws QueryException;
+
+    /**
+     * Open a cursor over the results of a query. The connection is not closed
+     * when the cursor is closed.
+     *
+     * @param <T> the type of results to return
+     * @param connection the query connection
+     * @param query the query to execute
+     * @param executor the query executor
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    <T> QueryCursor<T> openQuery(QueryConnection connection, String query, QueryExecutor executor, QueryCallback<T> callback) throws QueryException;
+
     /**
      * Execute a query that returns a single result.
      *
@@ -203,6 +255,37 @@ public interface QueryService {
      */
     int update(QueryConnection connection, String update, UpdateExecutor executor, UpdateCallback callback) throws QueryException;
 
+    /**
+     * Execute an update once per object, sending the updates to the database
+     * in batches. Rows that fail are recorded in the result, and the remaining
+     * rows are still executed.
+     *
+     * @param <T> the type of objects to bind
+     * @param update the update to execute
+     * @param objs the objects to bind to the update
+     * @param binder the binder for the objects
+     * @return the outcome of the update
+     * @throws QueryException if an error occurs
+     */
+    <T> BatchResult batchUpdate(String update, Iterable<T> objs, BatchBinder<T> binder) throws QueryException;
+
+    /**
+     * Execute an update once per object, sending the updates to the database
+     * in batches. If the connection is performing a transaction, the first
+     * row that fails aborts the transaction and no further rows are executed.
+     * Otherwise rows that fail are recorded in the result, and the remaining
+     * rows are still executed.
+     *
+     * @param <T> the type of objects to bind
+     * @param connection the query connection
+     * @param update the update to execute
+     * @param objs the objects to bind to the update
+     * @param binder the binder for the objects
+     * @return the outcome of the update
+     * @throws QueryException if an error occurs
+     */
+    <T> BatchResult batchUpdate(QueryConnection connection, String update, Iterable<T> objs, BatchBinder<T> binder) throws QueryException;
+
     /**
      * Execute a stored procedure.
      *
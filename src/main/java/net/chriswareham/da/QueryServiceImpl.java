@@ -6,6 +6,11 @@
 
 package net.chriswareham.da;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -17,6 +22,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.sql.DataSource;
 
@@ -24,19 +34,95 @@ import org.apache.log4j.Logger;
 
 /**
  * This class implements methods that execute queries.
+ * <p>
+ * If replica data sources are added, queries that do not use a query
+ * connection are routed to a replica, while updates, calls and queries that
+ * use a query connection stay on the primary data source. Replicas are
+ * selected either at random, weighted by the maximum number of active
+ * connections in their pools, or by picking the replica with the fewest
+ * borrowed connections and threads blocked waiting for a connection relative
+ * to its pool size. If a read your writes window is set, a thread's queries
+ * stay on the primary for that long after it last made an update or call.
+ * <p>
+ * The execution time, number of rows and number of errors of every statement
+ * are recorded, keyed on the statement normalised so that statements that
+ * differ only in their literal values share statistics, and are exposed as an
+ * MBean. If a slow query threshold is set, statements that take longer are
+ * logged with their bind parameters. Recording the bind parameters wraps the
+ * statements passed to executors and binders in a proxy, so it adds a small
+ * cost to those statements while the threshold is set.
  *
  * @author Chris Wareham
  */
-public class QueryServiceImpl implements QueryService {
+public class QueryServiceImpl implements QueryService, QueryServiceImplMBean {
     /**
      * The logger.
      */
     private static final Logger LOGGER = Logger.getLogger(QueryServiceImpl.class);
+    /**
+     * The default number of rows fetched at a time by cursors.
+     */
+    private static final int DEFAULT_FETCH_SIZE = 500;
+    /**
+     * The default number of rows in a batched update.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * The number of instances created, used to generate managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
 
     /**
      * The database connection source.
      */
     private DataSource dataSource;
+    /**
+     * The number of rows fetched at a time by cursors.
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    /**
+     * The number of rows in a batched update.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * The number of batches between commits in a transaction, or zero to
+     * leave committing to the caller.
+     */
+    private int commitBatches;
+    /**
+     * The replica data sources.
+     */
+    private final List<DataSourceImpl> replicaDataSources = new ArrayList<>();
+    /**
+     * Whether replicas are selected by load rather than at random.
+     */
+    private boolean leastLoaded;
+    /**
+     * The number of milliseconds a thread's queries stay on the primary data
+     * source after an update, or zero if they do not.
+     */
+    private long readYourWritesWindow;
+    /**
+     * The time each thread last made an update, in nanoseconds.
+     */
+    private final ThreadLocal<long[]> lastWrite = new ThreadLocal<>();
+    /**
+     * The managed name.
+     */
+    private String managedName = "net.chriswareham.da:type=QueryService,name=queryService" + INSTANCES.incrementAndGet();
+    /**
+     * The statistics of the statements.
+     */
+    private final QueryStatisticsRegistry statistics = new QueryStatisticsRegistry();
+    /**
+     * The number of milliseconds after which a statement is logged as slow,
+     * or zero if slow statements are not logged.
+     */
+    private volatile long slowQueryThreshold;
+    /**
+     * The number of statements logged as slow.
+     */
+    private final LongAdder slowQueryCount = new LongAdder();
 
     /**
      * Set the database connection source.
@@ -47,6 +133,166 @@ public class QueryServiceImpl implements QueryService {
         dataSource = ds;
     }
 
+    /**
+     * Set the number of rows fetched at a time by cursors, or zero to use the
+     * driver default. Some drivers, such as PostgreSQL, only honour the fetch
+     * size when auto-commit is disabled, in which case open the cursor with a
+     * transactional connection.
+     *
+     * @param fs the number of rows fetched at a time by cursors
+     */
+    public void setFetchSize(final int fs) {
+        fetchSize = fs;
+    }
+
+    /**
+     * Set the number of rows in a batched update.
+     *
+     * @param bs the number of rows in a batched update
+     */
+    public void setBatchSize(final int bs) {
+        batchSize = bs;
+    }
+
+    /**
+     * Set the number of batches between commits when a batched update is part
+     * of a transaction, or zero to leave committing to the caller. This bounds
+     * the size of the transaction for large imports.
+     *
+     * @param cb the number of batches between commits in a transaction
+     */
+    public void setCommitBatches(final int cb) {
+        commitBatches = cb;
+    }
+
+    /**
+     * Add a replica data source.
+     *
+     * @param rds the replica data source
+     */
+    public void addReplicaDataSource(final DataSourceImpl rds) {
+        replicaDataSources.add(rds);
+    }
+
+    /**
+     * Set how replicas are selected. The supported selections are
+     * <tt>weighted</tt> (at random, weighted by pool size, the default) and
+     * <tt>leastloaded</tt> (the fewest borrowed connections and threads
+     * blocked waiting for a connection, relative to pool size).
+     *
+     * @param rs how replicas are selected
+     */
+    public void setReplicaSelection(final String rs) {
+        switch (rs.toLowerCase()) {
+        case "weighted":
+            leastLoaded = false;
+            break;
+        case "leastloaded":
+            leastLoaded = true;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown replica selection '" + rs + "'");
+        }
+    }
+
+    /**
+     * Set the number of milliseconds a thread's queries stay on the primary
+     * data source after it makes an update or call, or zero to always route
+     * queries to replicas.
+     *
+     * @param rywm the number of milliseconds queries stay on the primary
+     */
+    public void setReadYourWritesWindow(final long rywm) {
+        readYourWritesWindow = rywm;
+    }
+
+    /**
+     * Set the maximum number of distinct normalised statements with
+     * statistics. Once the maximum is reached, new statements share a single
+     * set of statistics.
+     *
+     * @param ms the maximum number of distinct normalised statements
+     */
+    public void setMaxStatements(final int ms) {
+        statistics.setMaxStatements(ms);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSlowQueryThreshold(final long sqt) {
+        slowQueryThreshold = sqt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSlowQueryCount() {
+        return slowQueryCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStatementCount() {
+        return statistics.getStatementCount();
+    }
+
+    /**
+     * Get the statistics of each normalised statement, in descending order of
+     * total execution time.
+     *
+     * @return the statistics of each normalised statement
+     */
+    public List<QueryStatistics> getQueryStatistics() {
+        return statistics.getQueryStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> getStatementStatistics() {
+        return statistics.getStatementStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+        slowQueryCount.reset();
+    }
+
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -68,7 +314,7 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public <T> List<T> listQuery(final String query, final QueryCallback<T> callback) throws QueryException {
-        try (QueryConnection connection = getQueryConnection(false)) {
+        try (QueryConnection connection = getReadQueryConnection()) {
             return listQuery(connection, query, callback);
         }
     }
@@ -80,11 +326,7 @@ public class QueryServiceImpl implements QueryService {
     public <T> List<T> listQuery(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
         List<T> results = new ArrayList<>();
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try (Statement statement = connection.createStatement()) {
             ResultSet resultSet = statement.executeQuery(query);
@@ -98,14 +340,17 @@ public class QueryServiceImpl implements QueryService {
 
             resultSet.close();
         } catch (SQLException exception) {
+            recordError(query);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("List query error", initCauses(exception));
         }
 
+        long elapsed = record(query, start, results.size(), null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("listQuery(): read:[" + results.size() + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("listQuery(): read:[" + results.size() + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return results;
@@ -116,7 +361,7 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public <T> List<T> listQuery(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
-        try (QueryConnection connection = getQueryConnection(false)) {
+        try (QueryConnection connection = getReadQueryConnection()) {
             return listQuery(connection, query, executor, callback);
         }
     }
@@ -128,14 +373,11 @@ public class QueryServiceImpl implements QueryService {
     public <T> List<T> listQuery(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
         List<T> results = new ArrayList<>();
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            PreparedStatement statement = connection.prepareStatement(query);
+            PreparedStatement statement = recordBinds(connection.prepareStatement(query), PreparedStatement.class, binds);
 
             ResultSet resultSet = executor.query(statement);
 
@@ -148,25 +390,80 @@ public class QueryServiceImpl implements QueryService {
 
             resultSet.close();
         } catch (SQLException exception) {
+            recordError(query);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("List query error", initCauses(exception));
         }
 
+        long elapsed = record(query, start, results.size(), binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("listQuery(): read:[" + results.size() + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("listQuery(): read:[" + results.size() + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return results;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final String query, final QueryCallback<T> callback) throws QueryException {
+        QueryConnection connection = getReadQueryConnection();
+        boolean opened = false;
+        try {
+            QueryCursor<T> cursor = openQuery(connection, true, query, callback);
+            opened = true;
+            return cursor;
+        } finally {
+            if (!opened) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
+        return openQuery(connection, false, query, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        QueryConnection connection = getReadQueryConnection();
+        boolean opened = false;
+        try {
+            QueryCursor<T> cursor = openQuery(connection, true, query, executor, callback);
+            opened = true;
+            return cursor;
+        } finally {
+            if (!opened) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> QueryCursor<T> openQuery(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        return openQuery(connection, false, query, executor, callback);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public <T> T query(final String query, final QueryCallback<T> callback) throws QueryException {
-        try (QueryConnection connection = getQueryConnection(false)) {
+        try (QueryConnection connection = getReadQueryConnection()) {
             return query(connection, query, callback);
         }
     }
@@ -178,11 +475,7 @@ public class QueryServiceImpl implements QueryService {
     public <T> T query(final QueryConnection connection, final String query, final QueryCallback<T> callback) throws QueryException {
         T result = null;
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try (Statement statement = connection.createStatement()) {
             ResultSet resultSet = statement.executeQuery(query);
@@ -193,14 +486,17 @@ public class QueryServiceImpl implements QueryService {
 
             resultSet.close();
         } catch (SQLException exception) {
+            recordError(query);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Query error", initCauses(exception));
         }
 
+        long elapsed = record(query, start, result != null ? 1 : 0, null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("query(): read:[" + (result != null) + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("query(): read:[" + (result != null) + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return result;
@@ -211,7 +507,7 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public <T> T query(final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
-        try (QueryConnection connection = getQueryConnection(false)) {
+        try (QueryConnection connection = getReadQueryConnection()) {
             return query(connection, query, executor, callback);
         }
     }
@@ -223,14 +519,11 @@ public class QueryServiceImpl implements QueryService {
     public <T> T query(final QueryConnection connection, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
         T result = null;
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            PreparedStatement statement = connection.prepareStatement(query);
+            PreparedStatement statement = recordBinds(connection.prepareStatement(query), PreparedStatement.class, binds);
 
             ResultSet resultSet = executor.query(statement);
 
@@ -240,14 +533,17 @@ public class QueryServiceImpl implements QueryService {
 
             resultSet.close();
         } catch (SQLException exception) {
+            recordError(query);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Query error", initCauses(exception));
         }
 
+        long elapsed = record(query, start, result != null ? 1 : 0, binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("query(): read:[" + (result != null) + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("query(): read:[" + (result != null) + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return result;
@@ -268,25 +564,26 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public int update(final QueryConnection connection, final String update) throws QueryException {
-        int updated = 0;
+        wrote();
 
-        long timestamp = 0;
+        int updated = 0;
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try (Statement statement = connection.createStatement()) {
             updated = statement.executeUpdate(update);
         } catch (SQLException exception) {
+            recordError(update);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Update error", initCauses(exception));
         }
 
+        long elapsed = record(update, start, updated, null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return updated;
@@ -307,27 +604,29 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public int update(final QueryConnection connection, final String update, final UpdateExecutor executor) throws QueryException {
+        wrote();
+
         int updated = 0;
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            PreparedStatement statement = connection.prepareStatement(update);
+            PreparedStatement statement = recordBinds(connection.prepareStatement(update), PreparedStatement.class, binds);
 
             updated = executor.update(statement);
         } catch (SQLException exception) {
+            recordError(update);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Update error", initCauses(exception));
         }
 
+        long elapsed = record(update, start, updated, binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return updated;
@@ -348,13 +647,11 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public int update(final QueryConnection connection, final String update, final UpdateCallback callback) throws QueryException {
-        int updated = 0;
+        wrote();
 
-        long timestamp = 0;
+        int updated = 0;
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try (Statement statement = connection.createStatement()) {
 
@@ -362,14 +659,17 @@ public class QueryServiceImpl implements QueryService {
 
             callback.callback(connection);
         } catch (SQLException exception) {
+            recordError(update);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Update error", initCauses(exception));
         }
 
+        long elapsed = record(update, start, updated, null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return updated;
@@ -390,34 +690,99 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public int update(final QueryConnection connection, final String update, final UpdateExecutor executor, final UpdateCallback callback) throws QueryException {
-        int updated = 0;
+        wrote();
 
-        long timestamp = 0;
+        int updated = 0;
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            PreparedStatement statement = connection.prepareStatement(update);
+            PreparedStatement statement = recordBinds(connection.prepareStatement(update), PreparedStatement.class, binds);
 
             updated = executor.update(statement);
 
             callback.callback(connection);
         } catch (SQLException exception) {
+            recordError(update);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Update error", initCauses(exception));
         }
 
+        long elapsed = record(update, start, updated, binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("update(): updated:[" + updated + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return updated;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> BatchResult batchUpdate(final String update, final Iterable<T> objs, final BatchBinder<T> binder) throws QueryException {
+        try (QueryConnection connection = getQueryConnection(false)) {
+            return batchUpdate(connection, update, objs, binder);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> BatchResult batchUpdate(final QueryConnection connection, final String update, final Iterable<T> objs, final BatchBinder<T> binder) throws QueryException {
+        wrote();
+
+        BatchResult result = new BatchResult();
+
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
+
+        try {
+            PreparedStatement statement = recordBinds(connection.prepareStatement(update), PreparedStatement.class, binds);
+
+            List<T> batch = new ArrayList<>(batchSize);
+            int batches = 0;
+
+            for (T obj : objs) {
+                batch.add(obj);
+                if (batch.size() == batchSize) {
+                    if (!executeBatch(connection, statement, batch, binder, result)) {
+                        break;
+                    }
+                    batch.clear();
+                    if (connection.isTransaction() && commitBatches > 0 && ++batches == commitBatches) {
+                        connection.commitTransaction();
+                        result.committed();
+                        batches = 0;
+                    }
+                }
+            }
+
+            if (!batch.isEmpty() && !result.isAborted()) {
+                executeBatch(connection, statement, batch, binder, result);
+            }
+        } catch (SQLException exception) {
+            recordError(update);
+            if (connection.isTransaction()) {
+                connection.setTransactionAborted();
+            }
+            throw new QueryException("Batch update error", initCauses(exception));
+        }
+
+        long elapsed = record(update, start, result.getRowCount(), binds);
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("batchUpdate(): rows:[" + result.getRowCount() + "] updated:[" + result.getUpdateCount() + "] failed:[" + result.getFailedRows().size() + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
+        }
+
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -433,25 +798,26 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public void call(final QueryConnection connection, final String call) throws QueryException {
-        long timestamp = 0;
+        wrote();
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try {
             CallableStatement statement = connection.prepareCall(call);
 
             statement.execute();
         } catch (SQLException exception) {
+            recordError(call);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Call error", initCauses(exception));
         }
 
+        long elapsed = record(call, start, 0, null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("call(): elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("call(): elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
     }
 
@@ -470,25 +836,27 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public void call(final QueryConnection connection, final String call, final CallExecutor executor) throws QueryException {
-        long timestamp = 0;
+        wrote();
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            CallableStatement statement = connection.prepareCall(call);
+            CallableStatement statement = recordBinds(connection.prepareCall(call), CallableStatement.class, binds);
 
             executor.call(statement);
         } catch (SQLException exception) {
+            recordError(call);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Call error", initCauses(exception));
         }
 
+        long elapsed = record(call, start, 0, binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("call(): elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("call(): elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
     }
 
@@ -507,13 +875,11 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public <T> T call(final QueryConnection connection, final String call, final CallCallback<T> callback) throws QueryException {
-        T result = null;
+        wrote();
 
-        long timestamp = 0;
+        T result = null;
 
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        long start = System.nanoTime();
 
         try {
             CallableStatement statement = connection.prepareCall(call);
@@ -523,14 +889,17 @@ public class QueryServiceImpl implements QueryService {
             result = callback.callback(connection, statement);
 
         } catch (SQLException exception) {
+            recordError(call);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Call error", initCauses(exception));
         }
 
+        long elapsed = record(call, start, 0, null);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("call(): read:[" + (result != null) + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("call(): read:[" + (result != null) + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return result;
@@ -551,34 +920,361 @@ public class QueryServiceImpl implements QueryService {
      */
     @Override
     public <T> T call(final QueryConnection connection, final String call, final CallExecutor executor, final CallCallback<T> callback) throws QueryException {
+        wrote();
+
         T result = null;
 
-        long timestamp = 0;
-
-        if (LOGGER.isTraceEnabled()) {
-            timestamp = System.currentTimeMillis();
-        }
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
 
         try {
-            CallableStatement statement = connection.prepareCall(call);
+            CallableStatement statement = recordBinds(connection.prepareCall(call), CallableStatement.class, binds);
 
             executor.call(statement);
 
             result = callback.callback(connection, statement);
         } catch (SQLException exception) {
+            recordError(call);
             if (connection.isTransaction()) {
                 connection.setTransactionAborted();
             }
             throw new QueryException("Call error", initCauses(exception));
         }
 
+        long elapsed = record(call, start, 0, binds);
+
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("call(): read:[" + (result != null) + "] elapsed:[" + (System.currentTimeMillis() - timestamp) + "ms]");
+            LOGGER.trace("call(): read:[" + (result != null) + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
         }
 
         return result;
     }
 
+    /**
+     * Get a non-transactional data source connection wrapper for queries,
+     * from a replica if there are any and the thread has not made an update
+     * within the read your writes window. If the replica fails to provide a
+     * connection, one is taken from the primary data source instead.
+     *
+     * @return a data source connection wrapper
+     * @throws QueryException if an error occurs
+     */
+    private QueryConnection getReadQueryConnection() throws QueryException {
+        if (replicaDataSources.isEmpty()) {
+            return getQueryConnection(false);
+        }
+
+        if (readYourWritesWindow > 0) {
+            long[] wrote = lastWrite.get();
+            if (wrote != null && System.nanoTime() - wrote[0] < readYourWritesWindow * 1000000L) {
+                return getQueryConnection(false);
+            }
+        }
+
+        DataSourceImpl replica = selectReplica();
+        try {
+            return new QueryConnectionImpl(replica.getConnection(), false);
+        } catch (SQLException exception) {
+            LOGGER.warn("getReadQueryConnection(): failed to get replica connection, using primary", exception);
+            return getQueryConnection(false);
+        }
+    }
+
+    /**
+     * Select a replica data source.
+     *
+     * @return the replica data source
+     */
+    private DataSourceImpl selectReplica() {
+        int size = replicaDataSources.size();
+        if (size == 1) {
+            return replicaDataSources.get(0);
+        }
+
+        if (leastLoaded) {
+            DataSourceImpl selected = null;
+            double selectedLoad = Double.MAX_VALUE;
+            int offset = ThreadLocalRandom.current().nextInt(size);
+            for (int i = 0; i < size; ++i) {
+                DataSourceImpl replica = replicaDataSources.get((offset + i) % size);
+                double load = (double) (replica.getActiveCount() + replica.getWaitingCount()) / weight(replica);
+                if (load < selectedLoad) {
+                    selected = replica;
+                    selectedLoad = load;
+                }
+            }
+            return selected;
+        }
+
+        int total = 0;
+        for (DataSourceImpl replica : replicaDataSources) {
+            total += weight(replica);
+        }
+        int n = ThreadLocalRandom.current().nextInt(total);
+        for (DataSourceImpl replica : replicaDataSources) {
+            n -= weight(replica);
+            if (n < 0) {
+                return replica;
+            }
+        }
+        return replicaDataSources.get(size - 1);
+    }
+
+    /**
+     * Get the weight of a replica data source, which is the maximum number of
+     * active connections in its pool, or one if the pool is unbounded.
+     *
+     * @param replica the replica data source
+     * @return the weight of the replica data source
+     */
+    private static int weight(final DataSourceImpl replica) {
+        return Math.max(replica.getMaxActive(), 1);
+    }
+
+    /**
+     * Record that the thread has made an update, if queries stay on the
+     * primary data source after an update.
+     */
+    private void wrote() {
+        if (readYourWritesWindow > 0 && !replicaDataSources.isEmpty()) {
+            long[] wrote = lastWrite.get();
+            if (wrote == null) {
+                wrote = new long[1];
+                lastWrite.set(wrote);
+            }
+            wrote[0] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Record an execution of a statement, and log it if it was slow.
+     *
+     * @param statement the statement
+     * @param start the time the statement was executed, in nanoseconds
+     * @param rows the number of rows read or updated
+     * @param binds the recorder of the bind parameters, or null
+     * @return the execution time, in nanoseconds
+     */
+    private long record(final String statement, final long start, final long rows, final BindRecorder binds) {
+        long elapsed = System.nanoTime() - start;
+        statistics.getStatistics(statement).record(elapsed, rows);
+        long threshold = slowQueryThreshold;
+        if (threshold > 0 && elapsed >= TimeUnit.MILLISECONDS.toNanos(threshold)) {
+            slowQueryCount.increment();
+            LOGGER.warn("record(): slow statement:[" + statement + "] parameters:[" + (binds != null ? binds : "") + "] rows:[" + rows + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
+        }
+        return elapsed;
+    }
+
+    /**
+     * Record a failed execution of a statement.
+     *
+     * @param statement the statement
+     */
+    private void recordError(final String statement) {
+        statistics.getStatistics(statement).recordError();
+    }
+
+    /**
+     * Get a recorder for the bind parameters of a statement, if slow
+     * statements are logged.
+     *
+     * @return a recorder for the bind parameters, or null if slow statements
+     * are not logged
+     */
+    private BindRecorder bindRecorder() {
+        return slowQueryThreshold > 0 ? new BindRecorder() : null;
+    }
+
+    /**
+     * Wrap a statement so that its bind parameters are recorded.
+     *
+     * @param <S> the type of statement
+     * @param statement the statement
+     * @param type the interface of the statement
+     * @param binds the recorder of the bind parameters, or null if they are
+     * not recorded
+     * @return the wrapped statement, or the statement if the bind parameters
+     * are not recorded
+     */
+    private static <S extends Statement> S recordBinds(final S statement, final Class<S> type, final BindRecorder binds) {
+        if (binds == null) {
+            return statement;
+        }
+        binds.statement = statement;
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, binds));
+    }
+
+    /**
+     * Open a cursor over the results of a query.
+     *
+     * @param <T> the type of results to return
+     * @param connection the query connection
+     * @param owner whether the cursor closes the connection
+     * @param query the query to execute
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    private <T> QueryCursor<T> openQuery(final QueryConnection connection, final boolean owner, final String query, final QueryCallback<T> callback) throws QueryException {
+        long start = System.nanoTime();
+
+        Statement statement = null;
+        boolean opened = false;
+
+        try {
+            statement = connection.createStatement();
+            statement.setFetchSize(fetchSize);
+
+            ResultSet resultSet = statement.executeQuery(query);
+
+            QueryCursor<T> cursor = new QueryCursorImpl<>(connection, owner, statement, null, 0, resultSet, callback, query, start, null);
+            opened = true;
+            return cursor;
+        } catch (SQLException exception) {
+            recordError(query);
+            if (connection.isTransaction()) {
+                connection.setTransactionAborted();
+            }
+            throw new QueryException("Open query error", initCauses(exception));
+        } finally {
+            if (!opened && statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException exception) {
+                    LOGGER.warn("openQuery(): failed to close statement", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a cursor over the results of a query.
+     *
+     * @param <T> the type of results to return
+     * @param connection the query connection
+     * @param owner whether the cursor closes the connection
+     * @param query the query to execute
+     * @param executor the query executor
+     * @param callback the callback executed for each result
+     * @return the cursor
+     * @throws QueryException if an error occurs
+     */
+    private <T> QueryCursor<T> openQuery(final QueryConnection connection, final boolean owner, final String query, final QueryExecutor executor, final QueryCallback<T> callback) throws QueryException {
+        BindRecorder binds = bindRecorder();
+        long start = System.nanoTime();
+
+        PreparedStatement statement = null;
+        int previousFetchSize = 0;
+        boolean opened = false;
+
+        try {
+            statement = recordBinds(connection.prepareStatement(query), PreparedStatement.class, binds);
+            previousFetchSize = statement.getFetchSize();
+            statement.setFetchSize(fetchSize);
+
+            ResultSet resultSet = executor.query(statement);
+
+            // the prepared statement is cached by the connection, so it is
+            // left for the connection to close, but its fetch size is
+            // restored when the cursor is closed so that it does not carry
+            // over to later queries
+            QueryCursor<T> cursor = new QueryCursorImpl<>(connection, owner, null, statement, previousFetchSize, resultSet, callback, query, start, binds);
+            opened = true;
+            return cursor;
+        } catch (SQLException exception) {
+            recordError(query);
+            if (connection.isTransaction()) {
+                connection.setTransactionAborted();
+            }
+            throw new QueryException("Open query error", initCauses(exception));
+        } finally {
+            if (!opened && statement != null) {
+                restoreFetchSize(statement, previousFetchSize);
+            }
+        }
+    }
+
+    /**
+     * Restore the fetch size of a statement that is cached by a connection.
+     *
+     * @param statement the statement
+     * @param size the fetch size to restore
+     */
+    private static void restoreFetchSize(final Statement statement, final int size) {
+        try {
+            statement.setFetchSize(size);
+        } catch (SQLException exception) {
+            LOGGER.warn("restoreFetchSize(): failed to restore fetch size", exception);
+        }
+    }
+
+    /**
+     * Execute a batch of updates. If a row fails and the driver stops
+     * executing the batch, the rows after it are sent again as a new batch,
+     * unless the connection is performing a transaction, in which case the
+     * transaction is aborted.
+     *
+     * @param <T> the type of objects to bind
+     * @param connection the query connection
+     * @param statement the statement to populate and execute
+     * @param batch the objects to bind to the update
+     * @param binder the binder for the objects
+     * @param result the outcome of the update to record the batch in
+     * @return whether to continue with the next batch
+     * @throws SQLException if an error occurs
+     */
+    private static <T> boolean executeBatch(final QueryConnection connection, final PreparedStatement statement, final List<T> batch, final BatchBinder<T> binder, final BatchResult result) throws SQLException {
+        int start = 0;
+
+        while (start < batch.size()) {
+            int offset = result.getRowCount();
+
+            for (int i = start; i < batch.size(); ++i) {
+                binder.bind(statement, batch.get(i));
+                statement.addBatch();
+            }
+
+            try {
+                for (int count : statement.executeBatch()) {
+                    result.succeeded(count);
+                }
+                start = batch.size();
+            } catch (BatchUpdateException exception) {
+                statement.clearBatch();
+
+                int[] counts = exception.getUpdateCounts();
+                int executed = counts != null ? counts.length : 0;
+
+                for (int i = 0; i < executed; ++i) {
+                    if (counts[i] == Statement.EXECUTE_FAILED) {
+                        result.failed(offset + i);
+                    } else {
+                        result.succeeded(counts[i]);
+                    }
+                }
+
+                if (executed < batch.size() - start) {
+                    // the driver stopped at the failed row
+                    result.failed(offset + executed);
+                    start += executed + 1;
+                } else {
+                    start = batch.size();
+                }
+
+                LOGGER.warn("executeBatch(): batch update failed", initCauses(exception));
+
+                if (connection.isTransaction()) {
+                    connection.setTransactionAborted();
+                    result.aborted();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Set exception causes. The JDBC exceptions implement their own chaining
      * mechanism that predates the one added to the <code>Throwable</code> class
@@ -596,6 +1292,63 @@ public class QueryServiceImpl implements QueryService {
         return exception;
     }
 
+    /**
+     * This class provides a statement wrapper that records the parameters
+     * bound to the statement. For a batch, the parameters of the last row
+     * bound are recorded.
+     */
+    private static final class BindRecorder implements InvocationHandler {
+        /**
+         * The wrapped statement.
+         */
+        private Statement statement;
+        /**
+         * The bound parameters, keyed on index.
+         */
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Integer, Object> entry : parameters.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                Object value = entry.getValue();
+                sb.append(entry.getKey()).append('=');
+                if (value instanceof byte[]) {
+                    sb.append("byte[").append(((byte[]) value).length).append(']');
+                } else if (value instanceof String) {
+                    sb.append('\'').append(value).append('\'');
+                } else {
+                    sb.append(value);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
     /**
      * This class implements a data source connection wrapper.
      */
@@ -757,4 +1510,179 @@ public class QueryServiceImpl implements QueryService {
             }
         }
     }
+
+    /**
+     * This class implements a cursor over the results of a query.
+     *
+     * @param <T> the type of results
+     */
+    private final class QueryCursorImpl<T> implements QueryCursor<T> {
+        /**
+         * The query connection.
+         */
+        private final QueryConnection connection;
+        /**
+         * Whether the cursor closes the connection.
+         */
+        private final boolean owner;
+        /**
+         * The statement closed with the cursor, or null if the statement is
+         * owned by the connection.
+         */
+        private final Statement statement;
+        /**
+         * The statement owned by the connection whose fetch size is restored
+         * when the cursor is closed, or null.
+         */
+        private final Statement cachedStatement;
+        /**
+         * The fetch size of the statement owned by the connection before the
+         * query was executed.
+         */
+        private final int cachedFetchSize;
+        /**
+         * The result set.
+         */
+        private final ResultSet resultSet;
+        /**
+         * The callback executed for each result.
+         */
+        private final QueryCallback<T> callback;
+        /**
+         * The query.
+         */
+        private final String query;
+        /**
+         * The time the query was executed, in nanoseconds.
+         */
+        private final long start;
+        /**
+         * The recorder of the bind parameters, or null if they are not
+         * recorded.
+         */
+        private final BindRecorder binds;
+        /**
+         * The current result.
+         */
+        private T current;
+        /**
+         * The number of results read.
+         */
+        private int count;
+        /**
+         * Whether the result set is exhausted.
+         */
+        private boolean exhausted;
+        /**
+         * Whether the cursor is closed.
+         */
+        private boolean closed;
+
+        /**
+         * Construct an instance of the cursor.
+         *
+         * @param c the query connection
+         * @param o whether the cursor closes the connection
+         * @param s the statement closed with the cursor, or null
+         * @param cs the statement owned by the connection whose fetch size is
+         * restored, or null
+         * @param cfs the fetch size to restore
+         * @param rs the result set
+         * @param cb the callback executed for each result
+         * @param q the query
+         * @param st the time the query was executed, in nanoseconds
+         * @param b the recorder of the bind parameters, or null
+         */
+        private QueryCursorImpl(final QueryConnection c, final boolean o, final Statement s, final Statement cs, final int cfs, final ResultSet rs, final QueryCallback<T> cb, final String q, final long st, final BindRecorder b) {
+            connection = c;
+            owner = o;
+            statement = s;
+            cachedStatement = cs;
+            cachedFetchSize = cfs;
+            resultSet = rs;
+            callback = cb;
+            query = q;
+            start = st;
+            binds = b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean next() throws QueryException {
+            current = null;
+            if (exhausted || closed) {
+                return false;
+            }
+            try {
+                while (resultSet.next()) {
+                    T result = callback.callback(connection, resultSet);
+                    if (result != null) {
+                        current = result;
+                        ++count;
+                        return true;
+                    }
+                }
+            } catch (SQLException exception) {
+                recordError(query);
+                if (connection.isTransaction()) {
+                    connection.setTransactionAborted();
+                }
+                throw new QueryException("Query cursor error", initCauses(exception));
+            }
+            exhausted = true;
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public T get() {
+            return current;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = null;
+            try {
+                resultSet.close();
+            } catch (SQLException exception) {
+                LOGGER.warn("close(): failed to close result set", exception);
+            }
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException exception) {
+                    LOGGER.warn("close(): failed to close statement", exception);
+                }
+            }
+            if (cachedStatement != null) {
+                restoreFetchSize(cachedStatement, cachedFetchSize);
+            }
+            if (owner) {
+                connection.close();
+            }
+            long elapsed = record(query, start, count, binds);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("openQuery(): read:[" + count + "] elapsed:[" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms]");
+            }
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * @(#) QueryServiceImplMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Map;
+
+import net.chriswareham.di.ManagedComponent;
+
+/**
+ * This interface is implemented by managed query services.
+ *
+ * @author Chris Wareham
+ */
+public interface QueryServiceImplMBean extends ManagedComponent {
+    /**
+     * Get the number of milliseconds after which a statement is logged as
+     * slow.
+     *
+     * @return the number of milliseconds after which a statement is logged as
+     * slow, or zero if slow statements are not logged
+     */
+    long getSlowQueryThreshold();
+
+    /**
+     * Set the number of milliseconds after which a statement is logged as
+     * slow, with its bind parameters.
+     *
+     * @param sqt the number of milliseconds after which a statement is logged
+     * as slow, or zero to not log slow statements
+     */
+    void setSlowQueryThreshold(long sqt);
+
+    /**
+     * Get the number of statements logged as slow.
+     *
+     * @return the number of statements logged as slow
+     */
+    long getSlowQueryCount();
+
+    /**
+     * Get the number of distinct normalised statements with statistics.
+     *
+     * @return the number of distinct normalised statements with statistics
+     */
+    int getStatementCount();
+
+    /**
+     * Get a summary of the statistics of each normalised statement, in
+     * descending order of total execution time.
+     *
+     * @return a summary of the statistics of each normalised statement, keyed
+     * on the statement
+     */
+    Map<String, String> getStatementStatistics();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,351 @@
+/*
+ * @(#) QueryStatistics.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * This class records the statistics of a normalised SQL statement: the number
+ * of executions, the number of rows read or updated, the number of errors and
+ * a histogram of the execution times.
+ * <p>
+ * The histogram counts execution times in microseconds in log-linear
+ * buckets, with 8 buckets for each power of two, in the same way as
+ * HdrHistogram. Recording a time never allocates, and percentiles are
+ * accurate to within 12.5% across the whole range from a microsecond to
+ * several days.
+ *
+ * @author Chris Wareham
+ */
+public class QueryStatistics {
+    /**
+     * The number of bits of a time that select a bucket within a power of
+     * two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * The number of buckets for each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * The highest power of two of the recorded times, in microseconds. Longer
+     * times are counted in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+    /**
+     * The longest time that has its own bucket, in microseconds.
+     */
+    private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1L;
+    /**
+     * The number of buckets.
+     */
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+    /**
+     * The pattern matching a list of placeholders.
+     */
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\?(?:, ?\\?)+\\)");
+
+    /**
+     * The normalised SQL statement.
+     */
+    private final String sql;
+    /**
+     * The number of times in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    /**
+     * The number of executions.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * The number of rows read or updated.
+     */
+    private final LongAdder rows = new LongAdder();
+    /**
+     * The number of executions that failed.
+     */
+    private final LongAdder errors = new LongAdder();
+    /**
+     * The total of the execution times, in nanoseconds.
+     */
+    private final LongAdder total = new LongAdder();
+    /**
+     * The longest execution time, in nanoseconds.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Construct an instance of the statistics.
+     *
+     * @param s the normalised SQL statement
+     */
+    public QueryStatistics(final String s) {
+        sql = s;
+    }
+
+    /**
+     * Get the normalised SQL statement.
+     *
+     * @return the normalised SQL statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Record an execution of the statement.
+     *
+     * @param nanos the execution time, in nanoseconds
+     * @param r the number of rows read or updated
+     */
+    public void record(final long nanos, final long r) {
+        buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        count.increment();
+        rows.add(r);
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Record rows read after an execution of the statement was recorded, such
+     * as rows fetched from a result set.
+     *
+     * @param r the number of rows read
+     */
+    public void addRows(final long r) {
+        rows.add(r);
+    }
+
+    /**
+     * Record a failed execution of the statement.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Get the number of successful executions.
+     *
+     * @return the number of successful executions
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the number of rows read or updated.
+     *
+     * @return the number of rows read or updated
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * Get the number of failed executions.
+     *
+     * @return the number of failed executions
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Get the total execution time, in milliseconds.
+     *
+     * @return the total execution time
+     */
+    public double getTotalTime() {
+        return total.sum() / 1000000.0;
+    }
+
+    /**
+     * Get the average execution time, in milliseconds.
+     *
+     * @return the average execution time, or zero if the statement has not
+     * been executed
+     */
+    public double getMean() {
+        long c = count.sum();
+        return c > 0 ? total.sum() / 1000000.0 / c : 0.0;
+    }
+
+    /**
+     * Get the longest execution time, in milliseconds.
+     *
+     * @return the longest execution time, or zero if the statement has not
+     * been executed
+     */
+    public double getMax() {
+        return max.get() / 1000000.0;
+    }
+
+    /**
+     * Get an upper bound on a percentile of the execution times, in
+     * milliseconds. The bound is the upper bound of the bucket containing the
+     * percentile, or the longest execution time if that is smaller.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound on the percentile, or zero if the statement has
+     * not been executed
+     */
+    public double getPercentile(final double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long c = 0L;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = buckets.get(i);
+            c += snapshot[i];
+        }
+        if (c == 0L) {
+            return 0.0;
+        }
+
+        long rank = Math.max((long) Math.ceil(c * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0), 1L);
+        long cumulative = 0L;
+        for (int i = 0; i < BUCKETS; ++i) {
+            cumulative += snapshot[i];
+            if (cumulative >= rank) {
+                return Math.min(upperBound(i) / 1000.0, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Reset the statistics.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        rows.reset();
+        errors.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Normalise an SQL statement, so that statements that differ only in
+     * their literal values, whitespace or comments share statistics. String
+     * and numeric literals are replaced with placeholders, lists of
+     * placeholders are collapsed to a single placeholder, comments are
+     * removed and runs of whitespace are replaced with a single space.
+     *
+     * @param statement the SQL statement
+     * @return the normalised SQL statement
+     */
+    public static String normalise(final String statement) {
+        int length = statement.length();
+        StringBuilder sb = new StringBuilder(length);
+        boolean space = false;
+        int i = 0;
+        while (i < length) {
+            char c = statement.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                ++i;
+                continue;
+            }
+            if (c == '-' && i + 1 < length && statement.charAt(i + 1) == '-') {
+                while (i < length && statement.charAt(i) != '\n') {
+                    ++i;
+                }
+                space = sb.length() > 0;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && statement.charAt(i + 1) == '*') {
+                int end = statement.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            if (c == '\'') {
+                ++i;
+                while (i < length) {
+                    if (statement.charAt(i) == '\'') {
+                        if (i + 1 < length && statement.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    ++i;
+                }
+                sb.append('?');
+                ++i;
+            } else if (c == '"') {
+                int end = statement.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(statement, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+                while (i < length && (Character.isLetterOrDigit(statement.charAt(i)) || statement.charAt(i) == '.')) {
+                    ++i;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                ++i;
+            }
+        }
+        return PLACEHOLDER_LIST.matcher(sb).replaceAll("(?)");
+    }
+
+    /**
+     * Get whether the last character of a partly normalised statement is part
+     * of an identifier, so a following digit is part of the same identifier.
+     *
+     * @param sb the partly normalised statement
+     * @return whether the last character is part of an identifier
+     */
+    private static boolean isIdentifierPart(final StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '"';
+    }
+
+    /**
+     * Get the bucket of a time.
+     *
+     * @param micros the time, in microseconds
+     * @return the index of the bucket
+     */
+    private static int bucket(final long micros) {
+        long value = Math.min(Math.max(micros, 0L), MAX_MICROS);
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + (int) (value >>> (exponent - SUB_BUCKET_BITS));
+    }
+
+    /**
+     * Get the upper bound of a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the upper bound of the bucket, in microseconds
+     */
+    private static long upperBound(final int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index + 1L;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (mantissa + 1L) << shift;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * @(#) QueryStatisticsRegistry.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class holds the statistics of SQL statements, keyed on the statement
+ * normalised so that statements that differ only in their literal values
+ * share statistics. The number of distinct normalised statements is bounded,
+ * and once the bound is reached new statements share a single set of
+ * statistics.
+ *
+ * @author Chris Wareham
+ */
+public class QueryStatisticsRegistry {
+    /**
+     * The default maximum number of distinct normalised statements with
+     * statistics.
+     */
+    private static final int DEFAULT_MAX_STATEMENTS = 1000;
+    /**
+     * The key of the statistics shared by statements once the maximum number
+     * of distinct normalised statements is reached.
+     */
+    private static final String OTHER_STATEMENTS = "(other)";
+
+    /**
+     * The statistics, keyed on normalised statement.
+     */
+    private final ConcurrentMap<String, QueryStatistics> statistics = new ConcurrentHashMap<>();
+    /**
+     * The statistics, keyed on statement, to avoid normalising statements
+     * that have been executed before.
+     */
+    private final ConcurrentMap<String, QueryStatistics> statementStatistics = new ConcurrentHashMap<>();
+    /**
+     * The maximum number of distinct normalised statements with statistics.
+     */
+    private int maxStatements = DEFAULT_MAX_STATEMENTS;
+
+    /**
+     * Set the maximum number of distinct normalised statements with
+     * statistics.
+     *
+     * @param ms the maximum number of distinct normalised statements
+     */
+    public void setMaxStatements(final int ms) {
+        maxStatements = ms;
+    }
+
+    /**
+     * Get the statistics of a statement, creating them if necessary.
+     *
+     * @param statement the statement
+     * @return the statistics of the statement
+     */
+    public QueryStatistics getStatistics(final String statement) {
+        QueryStatistics s = statementStatistics.get(statement);
+        if (s == null) {
+            String sql = QueryStatistics.normalise(statement);
+            s = statistics.get(sql);
+            if (s == null) {
+                String key = statistics.size() < maxStatements ? sql : OTHER_STATEMENTS;
+                s = statistics.computeIfAbsent(key, QueryStatistics::new);
+            }
+            if (statementStatistics.size() < maxStatements) {
+                statementStatistics.put(statement, s);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Get the number of distinct normalised statements with statistics.
+     *
+     * @return the number of distinct normalised statements
+     */
+    public int getStatementCount() {
+        return statistics.size();
+    }
+
+    /**
+     * Get the statistics of each normalised statement, in descending order of
+     * total execution time.
+     *
+     * @return the statistics of each normalised statement
+     */
+    public List<QueryStatistics> getQueryStatistics() {
+        List<QueryStatistics> list = new ArrayList<>(statistics.values());
+        Collections.sort(list, (s1, s2) -> Double.compare(s2.getTotalTime(), s1.getTotalTime()));
+        return list;
+    }
+
+    /**
+     * Get a summary of the statistics of each normalised statement, in
+     * descending order of total execution time.
+     *
+     * @return the summaries, keyed on normalised statement
+     */
+    public Map<String, String> getStatementStatistics() {
+        Map<String, String> summaries = new LinkedHashMap<>();
+        for (QueryStatistics s : getQueryStatistics()) {
+            summaries.put(s.getSql(), format(s));
+        }
+        return summaries;
+    }
+
+    /**
+     * Reset the statistics of every statement.
+     */
+    public void reset() {
+        for (QueryStatistics s : statistics.values()) {
+            s.reset();
+        }
+    }
+
+    /**
+     * Format the statistics of a statement.
+     *
+     * @param s the statistics
+     * @return the formatted statistics
+     */
+    public static String format(final QueryStatistics s) {
+        return String.format("count:[%d] rows:[%d] errors:[%d] mean:[%.3fms] p50:[%.3fms] p99:[%.3fms] max:[%.3fms]",
+            s.getCount(), s.getRows(), s.getErrorCount(), s.getMean(), s.getPercentile(50.0), s.getPercentile(99.0), s.getMax());
+    }
+}
@@ -0,0 +1,997 @@
+/*
+ * @(#) SegmentedDiskCacheStorage.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class provides disk cache storage that appends objects to a sequence of
+ * segment files, and keeps an in-memory index of the offset of each object.
+ * Replacing or removing an object appends a new record, so the space used by
+ * the old record is reclaimed by a background thread that compacts segments
+ * when the proportion of live records in them falls below a threshold.
+ * <p>
+ * Objects are expired by dropping whole segments, oldest first, once every
+ * record in a segment was written before the expiry time. An object may
+ * therefore outlive the purge time until the rest of its segment expires.
+ * Storing an object again appends a copy of it with the current time, so it
+ * does not expire with the segment it was first written to.
+ * <p>
+ * Each record has a header containing the length of the key, the length of the
+ * object or -1 for a removal, the time the object was stored and a checksum,
+ * followed by the key and the object. When the storage is opened the index is
+ * rebuilt by reading the segments in order, and a segment is truncated at the
+ * first incomplete or corrupt record.
+ * <p>
+ * If the storage is memory mapped, segments that are no longer being appended
+ * to are mapped into memory, so reading an object from them copies it from
+ * the page cache rather than reading it from the file.
+ *
+ * @author Chris Wareham
+ */
+public class SegmentedDiskCacheStorage implements DiskCacheStorage {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(SegmentedDiskCacheStorage.class);
+    /**
+     * The prefix of segment file names.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+    /**
+     * The suffix of segment file names.
+     */
+    private static final String SEGMENT_SUFFIX = ".dat";
+    /**
+     * The length of a record header.
+     */
+    private static final int HEADER_LENGTH = 20;
+    /**
+     * The object length of a record that removes an object.
+     */
+    private static final int REMOVED = -1;
+    /**
+     * The default maximum size of a segment.
+     */
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+    /**
+     * The default proportion of live records below which a segment is compacted.
+     */
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    /**
+     * The number of attempts to read an object that is moved by compaction.
+     */
+    private static final int READ_ATTEMPTS = 3;
+
+    /**
+     * The maximum size of a segment.
+     */
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    /**
+     * The proportion of live records below which a segment is compacted.
+     */
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    /**
+     * Whether segments that are no longer being appended to are memory mapped.
+     */
+    private boolean memoryMapped;
+    /**
+     * The directory to store segments in.
+     */
+    private File directory;
+    /**
+     * The location of each object, keyed on key.
+     */
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    /**
+     * The segments, oldest first. The last segment is the one being appended to.
+     */
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    /**
+     * The lock that serialises appends to segments and changes to the list of
+     * segments.
+     */
+    private final Lock appendLock = new ReentrantLock();
+    /**
+     * The segment being appended to.
+     */
+    private Segment active;
+    /**
+     * The id of the next segment.
+     */
+    private long nextSegmentId;
+    /**
+     * The executor that compacts segments.
+     */
+    private volatile ExecutorService compactor;
+
+    /**
+     * Set the maximum size of a segment in bytes.
+     *
+     * @param ss the maximum size of a segment in bytes
+     */
+    public void setSegmentSize(final long ss) {
+        segmentSize = ss;
+    }
+
+    /**
+     * Set the proportion of live records below which a segment is compacted.
+     *
+     * @param ct the proportion of live records below which a segment is compacted
+     */
+    public void setCompactionThreshold(final double ct) {
+        compactionThreshold = ct;
+    }
+
+    /**
+     * Set whether segments that are no longer being appended to are memory
+     * mapped. Segments larger than 2GB are never memory mapped.
+     *
+     * @param mm whether segments that are no longer being appended to are memory mapped
+     */
+    public void setMemoryMapped(final boolean mm) {
+        memoryMapped = mm;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return "segmented";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open(final File d) throws IOException {
+        directory = d;
+
+        List<Long> ids = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16));
+                    } catch (NumberFormatException exception) {
+                        LOGGER.warn("open(): ignoring file:[" + name + "]");
+                    }
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        appendLock.lock();
+        try {
+            for (long id : ids) {
+                Segment segment = new Segment(segmentFile(id));
+                recover(segment);
+                segments.add(segment);
+                nextSegmentId = id + 1;
+            }
+
+            if (!segments.isEmpty() && segments.get(segments.size() - 1).size < segmentSize) {
+                active = segments.get(segments.size() - 1);
+            } else {
+                active = createSegment();
+            }
+
+            compactor = Executors.newSingleThreadExecutor(new CompactorThreadFactory());
+
+            for (Segment segment : segments) {
+                if (segment != active) {
+                    seal(segment);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("open(): segments:[" + segments.size() + "] objects:[" + index.size() + "]");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        // the compactor is not interrupted, as that would close the channel of
+        // the segment it is using, and instead stops when the executor is unset
+        ExecutorService executor = compactor;
+        if (executor != null) {
+            compactor = null;
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        appendLock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+            active = null;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(final String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] read(final String key) throws IOException {
+        for (int attempt = 0; attempt < READ_ATTEMPTS; ++attempt) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            byte[] data = new byte[location.valueLength];
+            if (location.segment.read(ByteBuffer.wrap(data), location.valuePosition())) {
+                return data;
+            }
+            // the segment was dropped or compacted, so look the object up again
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final String key, final byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        appendLock.lock();
+        try {
+            Location location = append(keyBytes, data, System.currentTimeMillis());
+            release(index.put(key, location));
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Objects expire with the segment they were written to, so this appends a
+     * copy of the object with the current time to the active segment.
+     */
+    @Override
+    public void touch(final String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        for (int attempt = 0; attempt < READ_ATTEMPTS; ++attempt) {
+            Location location = index.get(key);
+            if (location == null) {
+                return;
+            }
+            byte[] data = new byte[location.valueLength];
+            if (location.segment.read(ByteBuffer.wrap(data), location.valuePosition()) && copy(key, keyBytes, data, location, System.currentTimeMillis())) {
+                return;
+            }
+            // the object was replaced, or its segment was dropped or
+            // compacted, so look the object up again
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(final String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        appendLock.lock();
+        try {
+            if (index.containsKey(key)) {
+                append(keyBytes, null, System.currentTimeMillis());
+                release(index.remove(key));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() throws IOException {
+        appendLock.lock();
+        try {
+            index.clear();
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            active = createSegment();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This drops the oldest segments in which every record was written before
+     * the expiry time. The objects in them are found with a single scan of the
+     * index, the lock is only held while their index entries are removed, and
+     * the segment files are deleted once it is released.
+     */
+    @Override
+    public void purge(final long expiry, final Lock lock) throws IOException {
+        Set<Segment> dropped = new HashSet<>();
+
+        appendLock.lock();
+        try {
+            while (!segments.isEmpty()) {
+                Segment oldest = segments.get(0);
+                if (oldest == active && oldest.size == 0 || oldest.newestTimestamp >= expiry) {
+                    break;
+                }
+                if (oldest == active) {
+                    active = createSegment();
+                }
+                segments.remove(0);
+                oldest.closed = true;
+                dropped.add(oldest);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (dropped.isEmpty()) {
+            return;
+        }
+
+        Map<String, Location> expired = new HashMap<>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            if (dropped.contains(entry.getValue().segment)) {
+                expired.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        lock.lock();
+        try {
+            for (Map.Entry<String, Location> entry : expired.entrySet()) {
+                index.remove(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Segment segment : dropped) {
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("purge(): dropping segment:[" + segment.file.getName() + "]");
+            }
+            segment.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        return index.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            sizes.put(entry.getKey(), (long) entry.getValue().valueLength);
+        }
+        return sizes;
+    }
+
+    /**
+     * Append a record to the active segment, creating a new active segment if
+     * the record would make it exceed the maximum size. The append lock must be
+     * held.
+     *
+     * @param keyBytes the key of the object
+     * @param data the object, or null to record its removal
+     * @param timestamp the time the object was stored
+     * @return the location of the record
+     * @throws IOException if an input or output error occurs
+     */
+    private Location append(final byte[] keyBytes, final byte[] data, final long timestamp) throws IOException {
+        int valueLength = data != null ? data.length : REMOVED;
+        int recordLength = HEADER_LENGTH + keyBytes.length + (data != null ? data.length : 0);
+
+        if (active.size > 0 && active.size + recordLength > segmentSize) {
+            Segment sealed = active;
+            active = createSegment();
+            seal(sealed);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        if (data != null) {
+            crc.update(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+        buffer.putInt(keyBytes.length);
+        buffer.putInt(valueLength);
+        buffer.putLong(timestamp);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(keyBytes);
+        if (data != null) {
+            buffer.put(data);
+        }
+        buffer.flip();
+
+        Segment segment = active;
+        long offset = segment.size;
+        segment.write(buffer, offset);
+        segment.size = offset + recordLength;
+        segment.newestTimestamp = Math.max(segment.newestTimestamp, timestamp);
+        if (data != null) {
+            segment.liveBytes.addAndGet(recordLength);
+        }
+
+        return new Location(segment, offset, keyBytes.length, valueLength, timestamp);
+    }
+
+    /**
+     * Seal a segment that is no longer being appended to, memory mapping it if
+     * configured to, and compact it if it is sparse.
+     *
+     * @param segment the segment
+     * @throws IOException if an input or output error occurs
+     */
+    private void seal(final Segment segment) throws IOException {
+        if (memoryMapped && segment.size <= Integer.MAX_VALUE) {
+            segment.map();
+        }
+        compactIfSparse(segment);
+    }
+
+    /**
+     * Release the space used by a record that has been replaced or removed, and
+     * compact its segment if it has become sparse.
+     *
+     * @param location the location of the record, or null if there is none
+     */
+    private void release(final Location location) {
+        if (location != null) {
+            location.segment.liveBytes.addAndGet(-location.recordLength());
+            compactIfSparse(location.segment);
+        }
+    }
+
+    /**
+     * Schedule the compaction of a segment if it is not being appended to, it
+     * is not already being compacted, and the proportion of live records in it
+     * is below the compaction threshold.
+     *
+     * @param segment the segment
+     */
+    private void compactIfSparse(final Segment segment) {
+        ExecutorService executor = compactor;
+        if (executor == null || segment == active || segment.closed) {
+            return;
+        }
+        if (segment.liveBytes.get() < compactionThreshold * segment.size && segment.compacting.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                compact(segment);
+            });
+        }
+    }
+
+    /**
+     * Compact a segment by appending its live records to the active segment
+     * and then deleting it. Records of removals are also copied, unless the
+     * segment is the oldest, so that an older record of the same object is not
+     * recovered when the storage is next opened.
+     *
+     * @param segment the segment
+     */
+    private void compact(final Segment segment) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("compact(): compacting segment:[" + segment.file.getName() + "] live:[" + segment.liveBytes.get() + "] size:[" + segment.size + "]");
+        }
+
+        try {
+            boolean oldest = !segments.isEmpty() && segments.get(0) == segment;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            long position = 0;
+
+            while (position < segment.size) {
+                if (segment.closed || compactor == null) {
+                    segment.compacting.set(false);
+                    return;
+                }
+                header.clear();
+                if (!segment.read(header, position)) {
+                    return;
+                }
+                header.flip();
+                int keyLength = header.getInt();
+                int valueLength = header.getInt();
+                long timestamp = header.getLong();
+
+                byte[] keyBytes = new byte[keyLength];
+                if (!segment.read(ByteBuffer.wrap(keyBytes), position + HEADER_LENGTH)) {
+                    return;
+                }
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+                if (valueLength == REMOVED) {
+                    if (!oldest) {
+                        copyRemoval(key, keyBytes, timestamp);
+                    }
+                } else {
+                    Location location = index.get(key);
+                    if (location != null && location.segment == segment && location.offset == position) {
+                        byte[] data = new byte[valueLength];
+                        if (!segment.read(ByteBuffer.wrap(data), location.valuePosition())) {
+                            return;
+                        }
+                        copy(key, keyBytes, data, location, location.timestamp);
+                    }
+                }
+
+                position += HEADER_LENGTH + keyLength + Math.max(valueLength, 0);
+            }
+
+            appendLock.lock();
+            try {
+                if (!segment.closed) {
+                    segments.remove(segment);
+                    segment.delete();
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (IOException exception) {
+            LOGGER.warn("compact(): error compacting segment:[" + segment.file.getName() + "]", exception);
+            segment.compacting.set(false);
+        }
+    }
+
+    /**
+     * Copy a live record to the active segment, if the object has not been
+     * replaced or removed since it was read.
+     *
+     * @param key the key of the object
+     * @param keyBytes the encoded key of the object
+     * @param data the object
+     * @param location the location of the record
+     * @param timestamp the time to record the object as stored
+     * @return whether the record was copied
+     * @throws IOException if an input or output error occurs
+     */
+    private boolean copy(final String key, final byte[] keyBytes, final byte[] data, final Location location, final long timestamp) throws IOException {
+        appendLock.lock();
+        try {
+            if (index.get(key) != location || location.segment.closed) {
+                return false;
+            }
+            index.put(key, append(keyBytes, data, timestamp));
+            release(location);
+            return true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Copy the record of a removal to the active segment, if the object has
+     * not been stored again since it was removed.
+     *
+     * @param key the key of the object
+     * @param keyBytes the encoded key of the object
+     * @param timestamp the time the object was removed
+     * @throws IOException if an input or output error occurs
+     */
+    private void copyRemoval(final String key, final byte[] keyBytes, final long timestamp) throws IOException {
+        appendLock.lock();
+        try {
+            if (!index.containsKey(key)) {
+                append(keyBytes, null, timestamp);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the records of a segment, truncating the segment
+     * at the first incomplete or corrupt record.
+     *
+     * @param segment the segment
+     * @throws IOException if an input or output error occurs
+     */
+    private void recover(final Segment segment) throws IOException {
+        long length = segment.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        long position = 0;
+
+        while (position + HEADER_LENGTH <= length) {
+            header.clear();
+            segment.read(header, position);
+            header.flip();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            long timestamp = header.getLong();
+            int checksum = header.getInt();
+
+            int recordLength = HEADER_LENGTH + keyLength + Math.max(valueLength, 0);
+            if (keyLength <= 0 || valueLength < REMOVED || recordLength < 0 || position + recordLength > length) {
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            segment.read(ByteBuffer.wrap(keyBytes), position + HEADER_LENGTH);
+            CRC32 crc = new CRC32();
+            crc.update(keyBytes);
+            if (valueLength > 0) {
+                byte[] data = new byte[valueLength];
+                segment.read(ByteBuffer.wrap(data), position + HEADER_LENGTH + keyLength);
+                crc.update(data);
+            }
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (valueLength == REMOVED) {
+                Location previous = index.remove(key);
+                if (previous != null) {
+                    previous.segment.liveBytes.addAndGet(-previous.recordLength());
+                }
+            } else {
+                Location previous = index.put(key, new Location(segment, position, keyLength, valueLength, timestamp));
+                if (previous != null) {
+                    previous.segment.liveBytes.addAndGet(-previous.recordLength());
+                }
+                segment.liveBytes.addAndGet(recordLength);
+            }
+            segment.newestTimestamp = Math.max(segment.newestTimestamp, timestamp);
+
+            position += recordLength;
+        }
+
+        if (position < length) {
+            LOGGER.warn("recover(): truncating segment:[" + segment.file.getName() + "] at:[" + position + "] length:[" + length + "]");
+            segment.channel.truncate(position);
+        }
+
+        segment.size = position;
+    }
+
+    /**
+     * Create a new segment and make it the last segment. The append lock must
+     * be held.
+     *
+     * @return the segment
+     * @throws IOException if an input or output error occurs
+     */
+    private Segment createSegment() throws IOException {
+        long id = nextSegmentId++;
+        Segment segment = new Segment(segmentFile(id));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Get the file of a segment.
+     *
+     * @param id the id of the segment
+     * @return the file of the segment
+     */
+    private File segmentFile(final long id) {
+        return new File(directory, String.format("%s%016x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * This class provides a segment file.
+     */
+    private static final class Segment {
+        /**
+         * The segment file.
+         */
+        private final File file;
+        /**
+         * The channel of the segment file.
+         */
+        private volatile FileChannel channel;
+        /**
+         * The size of the segment, which is only changed with the append lock
+         * held.
+         */
+        private volatile long size;
+        /**
+         * The time the newest record in the segment was stored.
+         */
+        private volatile long newestTimestamp;
+        /**
+         * The number of bytes used by live records.
+         */
+        private final AtomicLong liveBytes = new AtomicLong();
+        /**
+         * Whether the segment is being compacted.
+         */
+        private final AtomicBoolean compacting = new AtomicBoolean();
+        /**
+         * Whether the segment has been closed or deleted.
+         */
+        private volatile boolean closed;
+        /**
+         * The memory mapped contents of the segment, or null if it is not
+         * memory mapped.
+         */
+        private volatile MappedByteBuffer mapped;
+
+        /**
+         * Construct an instance of a segment.
+         *
+         * @param f the segment file
+         * @throws IOException if an input or output error occurs
+         */
+        Segment(final File f) throws IOException {
+            file = f;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Read from the segment until a buffer is full.
+         *
+         * @param buffer the buffer
+         * @param position the position to read from
+         * @return whether the buffer was filled, or false if the segment has
+         * been closed or deleted
+         * @throws IOException if an input or output error occurs
+         */
+        public boolean read(final ByteBuffer buffer, final long position) throws IOException {
+            MappedByteBuffer contents = mapped;
+            if (contents != null) {
+                if (closed) {
+                    return false;
+                }
+                ByteBuffer source = contents.duplicate();
+                source.limit((int) position + buffer.remaining());
+                source.position((int) position);
+                buffer.put(source);
+                return true;
+            }
+
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                if (closed) {
+                    return false;
+                }
+                int count;
+                try {
+                    count = channel.read(buffer, offset);
+                } catch (ClosedByInterruptException exception) {
+                    throw exception;
+                } catch (ClosedChannelException exception) {
+                    // another thread was interrupted while using the channel
+                    reopen();
+                    continue;
+                }
+                if (count < 0) {
+                    throw new EOFException("Unexpected end of segment '" + file.getName() + "'");
+                }
+                offset += count;
+            }
+            return true;
+        }
+
+        /**
+         * Write a buffer to the segment.
+         *
+         * @param buffer the buffer
+         * @param position the position to write at
+         * @throws IOException if an input or output error occurs
+         */
+        public void write(final ByteBuffer buffer, final long position) throws IOException {
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                try {
+                    offset += channel.write(buffer, offset);
+                } catch (ClosedByInterruptException exception) {
+                    throw exception;
+                } catch (ClosedChannelException exception) {
+                    if (closed) {
+                        throw exception;
+                    }
+                    reopen();
+                }
+            }
+        }
+
+        /**
+         * Memory map the segment, which must no longer be appended to.
+         *
+         * @throws IOException if an input or output error occurs
+         */
+        public synchronized void map() throws IOException {
+            if (!closed && mapped == null) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        /**
+         * Close the segment. A memory mapping of the segment is released when
+         * it is garbage collected.
+         */
+        public synchronized void close() {
+            closed = true;
+            mapped = null;
+            try {
+                channel.close();
+            } catch (IOException exception) {
+                LOGGER.warn("close(): error closing segment:[" + file.getName() + "]", exception);
+            }
+        }
+
+        /**
+         * Close and delete the segment.
+         */
+        public void delete() {
+            close();
+            file.delete();
+        }
+
+        /**
+         * Reopen the channel of the segment if it was closed by an interrupt.
+         *
+         * @throws IOException if an input or output error occurs
+         */
+        private synchronized void reopen() throws IOException {
+            if (!closed && !channel.isOpen()) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+    }
+
+    /**
+     * This class provides the location of a record.
+     */
+    private static final class Location {
+        /**
+         * The segment.
+         */
+        private final Segment segment;
+        /**
+         * The offset of the record in the segment.
+         */
+        private final long offset;
+        /**
+         * The length of the key.
+         */
+        private final int keyLength;
+        /**
+         * The length of the object.
+         */
+        private final int valueLength;
+        /**
+         * The time the object was stored.
+         */
+        private final long timestamp;
+
+        /**
+         * Construct an instance of a record location.
+         *
+         * @param s the segment
+         * @param o the offset of the record in the segment
+         * @param kl the length of the key
+         * @param vl the length of the object
+         * @param t the time the object was stored
+         */
+        Location(final Segment s, final long o, final int kl, final int vl, final long t) {
+            segment = s;
+            offset = o;
+            keyLength = kl;
+            valueLength = vl;
+            timestamp = t;
+        }
+
+        /**
+         * Get the position of the object in the segment.
+         *
+         * @return the position of the object in the segment
+         */
+        public long valuePosition() {
+            return offset + HEADER_LENGTH + keyLength;
+        }
+
+        /**
+         * Get the length of the record.
+         *
+         * @return the length of the record
+         */
+        public int recordLength() {
+            return HEADER_LENGTH + keyLength + valueLength;
+        }
+    }
+
+    /**
+     * This class provides a factory for daemon threads that compact segments.
+     */
+    private static final class CompactorThreadFactory implements ThreadFactory {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "SegmentedDiskCacheStorage-compactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -9,8 +9,8 @@ package net.chriswareham.da;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
@@ -27,7 +27,8 @@ import org.apache.commons.codec.binary.Base64;
 
 /**
  * This class implements methods that serialise and deserialise objects to and
- * from strings.
+ * from strings. Objects are encoded with a configurable codec, which by
+ * default uses Java serialisation, and then encrypted and Base64 encoded.
  *
  * @author Chris Wareham
  */
@@ -57,6 +58,10 @@ public class SerialiserServiceImpl implements SerialiserService {
      * The key for encrypting and decrypting serialised objects.
      */
     private Key key;
+    /**
+     * The codec.
+     */
+    private Codec codec = new JavaCodec();
 
     /**
      * Set the algorithm.
@@ -90,6 +95,15 @@ public class SerialiserServiceImpl implements SerialiserService {
         }
     }
 
+    /**
+     * Set the codec. The default is Java serialisation.
+     *
+     * @param c the codec
+     */
+    public void setCodec(final Codec c) {
+        codec = c;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -124,8 +138,8 @@ public class SerialiserServiceImpl implements SerialiserService {
 
             ByteArrayOutputStream sink = new ByteArrayOutputStream();
 
-            try (ObjectOutputStream out = new ObjectOutputStream(new CipherOutputStream(sink, cipher))) {
-                out.writeObject(obj);
+            try (OutputStream out = new CipherOutputStream(sink, cipher)) {
+                codec.encode(obj, out);
             }
 
             byte[] bytes = sink.toByteArray();
@@ -149,8 +163,8 @@ public class SerialiserServiceImpl implements SerialiserService {
 
             ByteArrayInputStream source = new ByteArrayInputStream(Base64.decodeBase64(bytes));
 
-            try (ObjectInputStream in = new ObjectInputStream(new CipherInputStream(source, cipher))) {
-                Object obj = in.readObject();
+            try (InputStream in = new CipherInputStream(source, cipher)) {
+                Object obj = codec.decode(in);
                 return type.cast(obj);
             }
         } catch (GeneralSecurityException | IOException | ClassNotFoundException | ClassCastException exception) {
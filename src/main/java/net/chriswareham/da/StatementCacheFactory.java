@@ -0,0 +1,179 @@
+/*
+ * @(#) StatementCacheFactory.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+
+/**
+ * This class provides a factory for the prepared statement caches of pooled
+ * connections. Each physical connection gets its own cache, keyed on SQL, so
+ * statements survive the connection being returned to the pool and borrowed
+ * again. When a cache is full, its least recently returned idle statements
+ * are closed to make room. Hits and misses are counted across all the caches
+ * created by the factory.
+ *
+ * @author Chris Wareham
+ */
+public class StatementCacheFactory implements KeyedObjectPoolFactory {
+    /**
+     * The maximum number of statements cached per connection.
+     */
+    private final int capacity;
+    /**
+     * The number of statements borrowed from the caches.
+     */
+    private final LongAdder borrowCount = new LongAdder();
+    /**
+     * The number of statements prepared because they were not cached.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Construct an instance of the factory.
+     *
+     * @param c the maximum number of statements cached per connection
+     */
+    public StatementCacheFactory(final int c) {
+        capacity = c;
+    }
+
+    /**
+     * Get the maximum number of statements cached per connection.
+     *
+     * @return the maximum number of statements cached per connection
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of statements that were found in a cache.
+     *
+     * @return the number of statements that were found in a cache
+     */
+    public long getHitCount() {
+        return Math.max(borrowCount.sum() - missCount.sum(), 0L);
+    }
+
+    /**
+     * Get the number of statements that were prepared because they were not
+     * found in a cache.
+     *
+     * @return the number of statements that were not found in a cache
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KeyedObjectPool createPool() {
+        return new StatementCache();
+    }
+
+    /**
+     * This class provides a prepared statement cache for a connection. A
+     * statement that is already in use is prepared again rather than waited
+     * for, as a connection is only used by one thread at a time.
+     */
+    private final class StatementCache extends GenericKeyedObjectPool {
+        /**
+         * Construct an instance of the cache.
+         */
+        private StatementCache() {
+            setMaxActive(-1);
+            setMaxIdle(1);
+            setMaxTotal(capacity);
+            setWhenExhaustedAction(WHEN_EXHAUSTED_GROW);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object borrowObject(final Object key) throws Exception {
+            borrowCount.increment();
+            return super.borrowObject(key);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setFactory(final KeyedPoolableObjectFactory factory) {
+            super.setFactory(new CountingFactory(factory));
+        }
+    }
+
+    /**
+     * This class provides a statement factory that counts the statements it
+     * prepares.
+     */
+    private final class CountingFactory implements KeyedPoolableObjectFactory {
+        /**
+         * The wrapped factory.
+         */
+        private final KeyedPoolableObjectFactory factory;
+
+        /**
+         * Construct an instance of the factory.
+         *
+         * @param f the wrapped factory
+         */
+        private CountingFactory(final KeyedPoolableObjectFactory f) {
+            factory = f;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object makeObject(final Object key) throws Exception {
+            missCount.increment();
+            return factory.makeObject(key);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void destroyObject(final Object key, final Object obj) throws Exception {
+            factory.destroyObject(key, obj);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean validateObject(final Object key, final Object obj) {
+            return factory.validateObject(key, obj);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void activateObject(final Object key, final Object obj) throws Exception {
+            factory.activateObject(key, obj);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void passivateObject(final Object key, final Object obj) throws Exception {
+            factory.passivateObject(key, obj);
+        }
+    }
+}
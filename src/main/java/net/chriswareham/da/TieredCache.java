@@ -0,0 +1,745 @@
+/*
+ * @(#) TieredCache.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import net.chriswareham.di.LifecycleComponent;
+import net.chriswareham.di.Required;
+
+/**
+ * This class provides a cache with a memory tier over a disk tier, which is
+ * usually a bounded {@link MemoryCache} over a {@link DiskCache}. Objects that
+ * are not in the memory tier are fetched from the disk tier and promoted to the
+ * memory tier. Objects that the memory tier evicts are demoted to the disk tier
+ * by a background thread, and objects can optionally be written through to the
+ * disk tier when they are stored, so that they survive a restart. Objects
+ * waiting to be demoted are still returned by a fetch, and the objects in the
+ * memory tier are written to the disk tier when the cache is stopped.
+ * <p>
+ * It also provides an event listener which flushes objects from both tiers on
+ * receipt of an update or delete event. The tiers should not listen for events
+ * themselves. A flush also discards any pending demotion of the object, and a
+ * promotion or demotion that races with a flush is undone, so that a flushed
+ * object is never resurrected in either tier.
+ * <p>
+ * The cache is a managed component, and exposes its statistics via JMX when
+ * created by a component factory with a component manager.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public class TieredCache<I, T> implements Cache<I, T>, TieredCacheMBean, TopicListener, LifecycleComponent {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TieredCache.class);
+    /**
+     * The number of invalidation generations, which must be a power of two.
+     */
+    private static final int GENERATIONS = 256;
+    /**
+     * The default size of the demotion queue.
+     */
+    private static final int DEFAULT_DEMOTION_QUEUE_SIZE = 10000;
+    /**
+     * The number of instances, used to generate default managed names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+    /**
+     * The key used in place of a null object id.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * Whether the cache is running.
+     */
+    private volatile boolean running;
+    /**
+     * The memory tier.
+     */
+    private MemoryCache<I, T> memoryCache;
+    /**
+     * The disk tier.
+     */
+    private Cache<I, T> diskCache;
+    /**
+     * Whether stored objects are also written to the disk tier.
+     */
+    private boolean writeThrough;
+    /**
+     * The size of the demotion queue.
+     */
+    private int demotionQueueSize = DEFAULT_DEMOTION_QUEUE_SIZE;
+    /**
+     * The executor that writes objects to the disk tier.
+     */
+    private volatile ThreadPoolExecutor demotionExecutor;
+    /**
+     * The demotions that have not yet been written to the disk tier, keyed by
+     * object id, so that objects that have been removed from the memory tier
+     * can still be fetched while they are waiting to be written.
+     */
+    private final ConcurrentMap<Object, Demotion> pendingDemotions = new ConcurrentHashMap<>();
+    /**
+     * The invalidation generations, indexed by the hash of an object id. A
+     * generation is incremented whenever an object with an id that hashes to
+     * it is flushed, so that a promotion or demotion that started before the
+     * flush can detect it.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+    /**
+     * The number of promotions.
+     */
+    private final LongAdder promotionCount = new LongAdder();
+    /**
+     * The number of demotions.
+     */
+    private final LongAdder demotionCount = new LongAdder();
+    /**
+     * The number of discarded demotions.
+     */
+    private final LongAdder discardedDemotionCount = new LongAdder();
+    /**
+     * The cache statistics.
+     */
+    private final CacheStatistics statistics = new CacheStatistics();
+    /**
+     * The managed name.
+     */
+    private String managedName = "net.chriswareham.da:type=TieredCache,name=tieredCache" + INSTANCES.incrementAndGet();
+    /**
+     * The event service.
+     */
+    private EventService eventService;
+
+    /**
+     * Set the memory tier. The cache registers itself as the eviction
+     * listener of the memory tier.
+     *
+     * @param mc the memory tier
+     */
+    @Required
+    public void setMemoryCache(final MemoryCache<I, T> mc) {
+        memoryCache = mc;
+        memoryCache.setEvictionListener((id, obj) -> {
+            demote(id, obj);
+        });
+    }
+
+    /**
+     * Set the disk tier.
+     *
+     * @param dc the disk tier
+     */
+    @Required
+    public void setDiskCache(final Cache<I, T> dc) {
+        diskCache = dc;
+    }
+
+    /**
+     * Set whether stored objects are also written to the disk tier in the
+     * background, rather than only when they are evicted from the memory tier.
+     *
+     * @param wt whether stored objects are also written to the disk tier
+     */
+    public void setWriteThrough(final boolean wt) {
+        writeThrough = wt;
+    }
+
+    /**
+     * Set the maximum number of objects waiting to be written to the disk
+     * tier. Further objects are discarded rather than written.
+     *
+     * @param dqs the maximum number of objects waiting to be written to the disk tier
+     */
+    public void setDemotionQueueSize(final int dqs) {
+        demotionQueueSize = dqs;
+    }
+
+    /**
+     * Set the event service.
+     *
+     * @param es the event service
+     */
+    public void setEventService(final EventService es) {
+        eventService = es;
+    }
+
+    /**
+     * Set the managed name.
+     *
+     * @param mn the managed name
+     */
+    public void setManagedName(final String mn) {
+        managedName = mn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getManagedName() {
+        return managedName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPromotionCount() {
+        return promotionCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDemotionCount() {
+        return demotionCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDiscardedDemotionCount() {
+        return discardedDemotionCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPendingDemotions() {
+        ThreadPoolExecutor executor = demotionExecutor;
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the size of the memory tier.
+     */
+    @Override
+    public long getCacheSize() {
+        return memoryCache.getCacheSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems() {
+        return getCacheItems(CacheItem.DEFAULT_LIMIT);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * These are the items of the memory tier.
+     */
+    @Override
+    public Map<Object, CacheItem> getCacheItems(final int limit) {
+        return memoryCache.getCacheItems(limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the number of items in the memory tier.
+     */
+    @Override
+    public long getCacheItemCount() {
+        return memoryCache.getCacheItemCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return statistics.getHitCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return statistics.getMissCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        return statistics.getHitRatio();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadCount() {
+        return statistics.getLoadCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLoadFailureCount() {
+        return statistics.getLoadFailureCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageLoadTime() {
+        return statistics.getAverageLoadTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the number of objects evicted from the memory tier.
+     */
+    @Override
+    public long getEvictionCount() {
+        return memoryCache.getEvictionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getHotKeys() {
+        return statistics.getHotKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+        promotionCount.reset();
+        demotionCount.reset();
+        discardedDemotionCount.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T fetch(final I id) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetch(): id:[" + id + "]");
+        }
+
+        T obj = memoryCache.fetch(id);
+
+        if (obj == null && running) {
+            long generation = generation(id);
+            Demotion demotion = pendingDemotions.get(maskNull(id));
+            obj = demotion != null ? demotion.obj : diskCache.fetch(id);
+            if (obj != null) {
+                promote(id, obj, generation);
+            }
+        }
+
+        if (obj != null) {
+            statistics.recordHit(id);
+        } else {
+            statistics.recordMiss(id);
+        }
+
+        return obj;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<I, T> fetchAll(final Collection<I> ids) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("fetchAll(): ids:[" + ids.size() + "]");
+        }
+
+        Map<I, T> objs = new LinkedHashMap<>(memoryCache.fetchAll(ids));
+
+        if (running && objs.size() < ids.size()) {
+            List<I> missing = new ArrayList<>();
+            List<Long> missingGenerations = new ArrayList<>();
+            for (I id : ids) {
+                if (!objs.containsKey(id)) {
+                    long generation = generation(id);
+                    Demotion demotion = pendingDemotions.get(maskNull(id));
+                    if (demotion != null) {
+                        promote(id, demotion.obj, generation);
+                        objs.put(id, demotion.obj);
+                    } else {
+                        missing.add(id);
+                        missingGenerations.add(generation);
+                    }
+                }
+            }
+            Map<I, T> diskObjs = missing.isEmpty() ? Collections.<I, T>emptyMap() : diskCache.fetchAll(missing);
+            for (int i = 0; i < missing.size(); ++i) {
+                I id = missing.get(i);
+                T obj = diskObjs.get(id);
+                if (obj != null) {
+                    promote(id, obj, missingGenerations.get(i));
+                    objs.put(id, obj);
+                }
+            }
+        }
+
+        for (I id : ids) {
+            if (objs.containsKey(id)) {
+                statistics.recordHit(id);
+            } else {
+                statistics.recordMiss(id);
+            }
+        }
+
+        return objs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(final I id, final T obj) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("store(): id:[" + id + "]");
+        }
+
+        if (running) {
+            memoryCache.store(id, obj);
+            if (writeThrough) {
+                demote(id, obj);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushAndStore(final I id, final T obj) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flushAndStore(): id:[" + id + "]");
+        }
+
+        if (running) {
+            invalidate(id);
+            pendingDemotions.remove(maskNull(id));
+            diskCache.flush(id);
+            memoryCache.flushAndStore(id, obj);
+            if (writeThrough) {
+                demote(id, obj);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush(final I id) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flush(): id:[" + id + "]");
+        }
+
+        if (running) {
+            invalidate(id);
+            pendingDemotions.remove(maskNull(id));
+            memoryCache.flush(id);
+            diskCache.flush(id);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("flush(): all");
+        }
+
+        if (running) {
+            for (int i = 0; i < GENERATIONS; ++i) {
+                generations.incrementAndGet(i);
+            }
+            demotionExecutor.getQueue().clear();
+            pendingDemotions.clear();
+            memoryCache.flush();
+            diskCache.flush();
+        }
+    }
+
+    /**
+     * Starts the cache.
+     */
+    @Override
+    public void start() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("start(): starting cache");
+        }
+
+        if (running) {
+            throw new IllegalStateException("Cache has already been started");
+        }
+
+        demotionExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(demotionQueueSize), new DemotionThreadFactory(), (runnable, executor) -> {
+            discardedDemotionCount.increment();
+            ((TieredCache<?, ?>.Demotion) runnable).discard();
+        });
+
+        running = true;
+
+        if (eventService != null) {
+            eventService.addTopicListener("", this);
+        }
+    }
+
+    /**
+     * Stops the cache, waiting for pending demotions to be written to the disk
+     * tier. Unless stored objects are written through, the objects in the
+     * memory tier are then written to the disk tier, so that the most recently
+     * used objects survive a restart.
+     */
+    @Override
+    public void stop() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("stop(): stopping cache");
+        }
+
+        if (!running) {
+            throw new IllegalStateException("Cache has already been stopped");
+        }
+
+        if (eventService != null) {
+            eventService.removeTopicListener("", this);
+        }
+
+        demotionExecutor.shutdown();
+        try {
+            if (!demotionExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("stop(): discarding pending demotions:[" + demotionExecutor.shutdownNow().size() + "]");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            demotionExecutor.shutdownNow();
+        }
+        pendingDemotions.clear();
+
+        running = false;
+
+        if (!writeThrough) {
+            memoryCache.forEach((id, obj) -> {
+                diskCache.store(id, obj);
+            });
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("stop(): promotions:[" + promotionCount.sum() + "] demotions:[" + demotionCount.sum() + "] discarded:[" + discardedDemotionCount.sum() + "]");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void receiveEvent(final Event event) {
+        switch (event.getType()) {
+        case UPDATE:
+        case DELETE:
+            flush((I) event.getId());
+            break;
+        }
+    }
+
+    /**
+     * Promote an object fetched from the disk tier to the memory tier, undoing
+     * the promotion if the object was flushed while it was being fetched.
+     *
+     * @param id the id of the object
+     * @param obj the object
+     * @param generation the invalidation generation before the object was fetched
+     */
+    private void promote(final I id, final T obj, final long generation) {
+        memoryCache.store(id, obj);
+        if (generation(id) != generation) {
+            memoryCache.flush(id);
+        } else {
+            promotionCount.increment();
+        }
+    }
+
+    /**
+     * Queue an object to be written to the disk tier. This is called with the
+     * eviction lock of the memory tier held, so must not block.
+     *
+     * @param id the id of the object
+     * @param obj the object
+     */
+    private void demote(final I id, final T obj) {
+        ThreadPoolExecutor executor = demotionExecutor;
+        if (!running || executor == null || executor.isShutdown()) {
+            return;
+        }
+        Demotion demotion = new Demotion(id, obj, generation(id));
+        pendingDemotions.put(demotion.key, demotion);
+        executor.execute(demotion);
+    }
+
+    /**
+     * Increment the invalidation generation of an object id.
+     *
+     * @param id the id of the object
+     */
+    private void invalidate(final I id) {
+        generations.incrementAndGet(generationIndex(id));
+    }
+
+    /**
+     * Get the invalidation generation of an object id.
+     *
+     * @param id the id of the object
+     * @return the invalidation generation
+     */
+    private long generation(final I id) {
+        return generations.get(generationIndex(id));
+    }
+
+    /**
+     * Get the index of the invalidation generation of an object id.
+     *
+     * @param id the id of the object
+     * @return the index of the invalidation generation
+     */
+    private static int generationIndex(final Object id) {
+        int h = id != null ? id.hashCode() : 0;
+        h ^= h >>> 16;
+        return h & (GENERATIONS - 1);
+    }
+
+    /**
+     * Mask a null object identifier, as the concurrent map does not support
+     * null keys.
+     *
+     * @param id the object identifier
+     * @return the object identifier, or a placeholder key if it is null
+     */
+    private static Object maskNull(final Object id) {
+        return id != null ? id : NULL_KEY;
+    }
+
+    /**
+     * This class writes an object that has been evicted from the memory tier to
+     * the disk tier. The object remains fetchable as a pending demotion until
+     * it has been written.
+     */
+    private final class Demotion implements Runnable {
+        /**
+         * The id of the object.
+         */
+        private final I id;
+        /**
+         * The key of the object in the pending demotions.
+         */
+        private final Object key;
+        /**
+         * The object.
+         */
+        private final T obj;
+        /**
+         * The invalidation generation when the object was demoted.
+         */
+        private final long generation;
+
+        /**
+         * Construct an instance of the demotion.
+         *
+         * @param i the id of the object
+         * @param o the object
+         * @param g the invalidation generation when the object was demoted
+         */
+        Demotion(final I i, final T o, final long g) {
+            id = i;
+            key = maskNull(i);
+            obj = o;
+            generation = g;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                if (generation(id) == generation) {
+                    diskCache.store(id, obj);
+                    if (generation(id) != generation) {
+                        diskCache.flush(id);
+                    } else {
+                        demotionCount.increment();
+                    }
+                }
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Remove the demotion from the pending demotions, unless it has been
+         * replaced by a later demotion of the same object.
+         */
+        void discard() {
+            pendingDemotions.remove(key, this);
+        }
+    }
+
+    /**
+     * This class provides a factory for daemon threads that demote objects.
+     */
+    private static final class DemotionThreadFactory implements ThreadFactory {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "TieredCache-demote");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * @(#) TieredCacheMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by managed tiered caches.
+ *
+ * @author Chris Wareham
+ */
+public interface TieredCacheMBean extends CacheMBean {
+    /**
+     * Get the number of objects promoted from the disk tier to the memory tier.
+     *
+     * @return the number of objects promoted
+     */
+    long getPromotionCount();
+
+    /**
+     * Get the number of objects demoted from the memory tier to the disk tier.
+     *
+     * @return the number of objects demoted
+     */
+    long getDemotionCount();
+
+    /**
+     * Get the number of demotions discarded because the demotion queue was
+     * full.
+     *
+     * @return the number of demotions discarded
+     */
+    long getDiscardedDemotionCount();
+
+    /**
+     * Get the number of demotions waiting to be written to the disk tier.
+     *
+     * @return the number of demotions waiting to be written
+     */
+    int getPendingDemotions();
+}
@@ -0,0 +1,300 @@
+/*
+ * @(#) TinyLfuEvictionPolicy.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class provides a W-TinyLFU eviction policy. New objects enter a small
+ * least recently used admission window. Objects leaving the window are only
+ * admitted to the main segmented least recently used region if they have been
+ * accessed more frequently than the object they would displace, as estimated
+ * by a count-min sketch whose counters are periodically halved so that old
+ * popularity decays.
+ *
+ * @author Chris Wareham
+ * @param <K> the type of object that is used to identify cached objects
+ */
+public class TinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * The percentage of tracked keys held in the admission window.
+     */
+    private static final int WINDOW_PERCENTAGE = 1;
+    /**
+     * The percentage of the main region held in the protected segment.
+     */
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    /**
+     * The admission window, in access order.
+     */
+    private final Map<K, Boolean> window = new LinkedHashMap<>(16, 0.75F, true);
+    /**
+     * The probation segment of the main region, in access order.
+     */
+    private final Map<K, Boolean> probation = new LinkedHashMap<>(16, 0.75F, true);
+    /**
+     * The protected segment of the main region, in access order.
+     */
+    private final Map<K, Boolean> protect = new LinkedHashMap<>(16, 0.75F, true);
+    /**
+     * The access frequency sketch.
+     */
+    private final FrequencySketch sketch = new FrequencySketch();
+    /**
+     * The key most recently moved from the admission window to the probation
+     * segment, which has not yet been compared against an eviction victim.
+     */
+    private K candidate;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return "tinylfu";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordAccess(final K key) {
+        sketch.increment(key.hashCode());
+
+        if (window.containsKey(key)) {
+            window.get(key);
+        } else if (probation.remove(key) != null) {
+            if (key.equals(candidate)) {
+                candidate = null;
+            }
+            protect.put(key, Boolean.TRUE);
+            int protectedMax = Math.max(1, (size() - windowMax()) * PROTECTED_PERCENTAGE / 100);
+            if (protect.size() > protectedMax) {
+                probation.put(removeEldest(protect), Boolean.TRUE);
+            }
+        } else {
+            protect.get(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordInsert(final K key) {
+        recordRemoval(key);
+
+        window.put(key, Boolean.TRUE);
+        sketch.ensureCapacity(size());
+
+        candidate = null;
+        if (window.size() > windowMax()) {
+            candidate = removeEldest(window);
+            probation.put(candidate, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordRemoval(final K key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protect.remove(key);
+        }
+        if (key.equals(candidate)) {
+            candidate = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public K evict() {
+        if (candidate != null) {
+            K c = candidate;
+            candidate = null;
+            K victim = eldest(probation);
+            if (victim != null && !victim.equals(c)) {
+                K evicted = sketch.frequency(c.hashCode()) > sketch.frequency(victim.hashCode()) ? victim : c;
+                probation.remove(evicted);
+                return evicted;
+            }
+        }
+
+        K key = removeEldest(probation);
+        if (key == null) {
+            key = removeEldest(protect);
+        }
+        if (key == null) {
+            key = removeEldest(window);
+        }
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protect.clear();
+        candidate = null;
+    }
+
+    /**
+     * Get the number of tracked keys.
+     *
+     * @return the number of tracked keys
+     */
+    private int size() {
+        return window.size() + probation.size() + protect.size();
+    }
+
+    /**
+     * Get the maximum number of keys in the admission window.
+     *
+     * @return the maximum number of keys in the admission window
+     */
+    private int windowMax() {
+        return Math.max(1, size() * WINDOW_PERCENTAGE / 100);
+    }
+
+    /**
+     * Get the eldest key in a segment.
+     *
+     * @param <K> the type of key
+     * @param segment the segment
+     * @return the eldest key, or null if the segment is empty
+     */
+    private static <K> K eldest(final Map<K, Boolean> segment) {
+        Iterator<K> i = segment.keySet().iterator();
+        return i.hasNext() ? i.next() : null;
+    }
+
+    /**
+     * Remove the eldest key from a segment.
+     *
+     * @param <K> the type of key
+     * @param segment the segment
+     * @return the eldest key, or null if the segment is empty
+     */
+    private static <K> K removeEldest(final Map<K, Boolean> segment) {
+        Iterator<K> i = segment.keySet().iterator();
+        if (!i.hasNext()) {
+            return null;
+        }
+        K key = i.next();
+        i.remove();
+        return key;
+    }
+
+    /**
+     * This class provides a count-min sketch of access frequencies, with four
+     * rows of saturating counters that are halved once the number of
+     * increments reaches ten times the width of the sketch.
+     */
+    private static final class FrequencySketch {
+        /**
+         * The number of rows in the sketch.
+         */
+        private static final int DEPTH = 4;
+        /**
+         * The maximum value of a counter.
+         */
+        private static final int MAX_COUNT = 15;
+        /**
+         * The minimum width of the sketch.
+         */
+        private static final int MIN_WIDTH = 16;
+        /**
+         * The seeds used to derive the counter index for each row.
+         */
+        private static final int[] SEEDS = {0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f, 0x165667b1};
+
+        /**
+         * The counters, with each row occupying a contiguous slice.
+         */
+        private byte[] counters = new byte[DEPTH * MIN_WIDTH];
+        /**
+         * The width of each row, which is always a power of two.
+         */
+        private int width = MIN_WIDTH;
+        /**
+         * The number of increments since the counters were last halved.
+         */
+        private int additions;
+
+        /**
+         * Grow the sketch, discarding its counters, if it is too narrow for the
+         * number of tracked keys.
+         *
+         * @param size the number of tracked keys
+         */
+        void ensureCapacity(final int size) {
+            if (size > width) {
+                width = Integer.highestOneBit(size - 1) << 1;
+                counters = new byte[DEPTH * width];
+                additions = 0;
+            }
+        }
+
+        /**
+         * Get the estimated access frequency of a key.
+         *
+         * @param hash the hash code of the key
+         * @return the estimated access frequency
+         */
+        int frequency(final int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; ++i) {
+                frequency = Math.min(frequency, counters[index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * Increment the estimated access frequency of a key.
+         *
+         * @param hash the hash code of the key
+         */
+        void increment(final int hash) {
+            boolean incremented = false;
+            for (int i = 0; i < DEPTH; ++i) {
+                int index = index(hash, i);
+                if (counters[index] < MAX_COUNT) {
+                    ++counters[index];
+                    incremented = true;
+                }
+            }
+            if (incremented && ++additions >= 10 * width) {
+                for (int i = 0; i < counters.length; ++i) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        /**
+         * Get the index of the counter for a key in a row.
+         *
+         * @param hash the hash code of the key
+         * @param row the row
+         * @return the index of the counter
+         */
+        private int index(final int hash, final int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 16;
+            return row * width + (h & (width - 1));
+        }
+    }
+}
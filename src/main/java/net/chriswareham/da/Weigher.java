@@ -0,0 +1,26 @@
+/*
+ * @(#) Weigher.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+/**
+ * This interface is implemented by classes that calculate the weight of cached
+ * objects, for caches that are bounded by a maximum weight.
+ *
+ * @author Chris Wareham
+ * @param <I> the type of object that is used to identify cached objects
+ * @param <T> the type of cached objects
+ */
+public interface Weigher<I, T> {
+    /**
+     * Calculate the weight of a cached object.
+     *
+     * @param id the id of the object
+     * @param obj the object
+     * @return the weight of the object, which must not be negative
+     */
+    int weigh(I id, T obj);
+}
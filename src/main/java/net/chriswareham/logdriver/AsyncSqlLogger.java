@@ -0,0 +1,394 @@
+/*
+ * @(#) AsyncSqlLogger.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class provides an asynchronous logger for the JDBC wrappers. The
+ * parts of a log message are copied into a pre-allocated slot of a bounded,
+ * lock free ring buffer, and a background thread formats the messages and
+ * writes them to log4j, so the thread executing a statement neither formats
+ * the message nor waits for the appender. If the ring buffer is full, the
+ * message is dropped rather than blocking the statement, and the number of
+ * dropped messages is logged once the buffer drains. The background thread
+ * parks while the buffer is empty and is unparked by the next message, and
+ * it writes the remaining messages and stops when the virtual machine shuts
+ * down.
+ */
+final class AsyncSqlLogger {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(AsyncSqlLogger.class);
+    /**
+     * The number of slots in the ring buffer, which must be a power of two.
+     */
+    private static final int CAPACITY = 8192;
+    /**
+     * The number of nanoseconds a thread waiting for messages to be written
+     * sleeps between checks.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    /**
+     * The maximum number of milliseconds to wait for messages to be written
+     * when the virtual machine shuts down.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+    /**
+     * The shared instance.
+     */
+    private static final AsyncSqlLogger INSTANCE = new AsyncSqlLogger(CAPACITY);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> INSTANCE.shutdown(SHUTDOWN_TIMEOUT), "logdriver-sql-logger-shutdown"));
+    }
+
+    /**
+     * The slots of the ring buffer.
+     */
+    private final Event[] events;
+    /**
+     * The sequence number of each slot, which records whether it is free for
+     * a producer or published for the background thread.
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * The mask that maps a position to a slot.
+     */
+    private final int mask;
+    /**
+     * The next position to be claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The next position to be read by the background thread.
+     */
+    private volatile long head;
+    /**
+     * The number of dropped messages.
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * The number of dropped messages that have been logged.
+     */
+    private long reportedDropped;
+    /**
+     * Whether the background thread has been started.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+    /**
+     * The background thread, or null if it has not been started.
+     */
+    private volatile Thread thread;
+    /**
+     * Whether the background thread is parked waiting for messages.
+     */
+    private volatile boolean parked;
+    /**
+     * Whether the background thread should stop once the ring buffer is
+     * empty.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Construct an instance of the logger.
+     *
+     * @param capacity the number of slots in the ring buffer
+     */
+    private AsyncSqlLogger(final int capacity) {
+        events = new Event[capacity];
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; ++i) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Get the shared instance of the logger.
+     *
+     * @return the shared instance of the logger
+     */
+    static AsyncSqlLogger getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Log a message at debug level.
+     *
+     * @param logger the logger to write the message to
+     * @param message the message
+     */
+    void log(final Logger logger, final String message) {
+        log(logger, message, null, null, null);
+    }
+
+    /**
+     * Log a message at debug level, followed by the string representation of
+     * an object.
+     *
+     * @param logger the logger to write the message to
+     * @param message the message
+     * @param detail the object, which is converted to a string by the calling
+     * thread
+     */
+    void log(final Logger logger, final String message, final Object detail) {
+        log(logger, message, null, null, detail);
+    }
+
+    /**
+     * Log a statement at debug level.
+     *
+     * @param logger the logger to write the message to
+     * @param message the message
+     * @param sql the SQL of the statement, or null
+     * @param binds the bind parameters, which are copied, or null
+     * @param detail an object appended to the message, which is converted to
+     * a string by the calling thread, or null
+     */
+    void log(final Logger logger, final String message, final String sql, final BindParameters binds, final Object detail) {
+        log(logger, message, sql, binds, detail, -1L);
+    }
+
+    /**
+     * Log a statement that has executed at debug level, with the time it
+     * took.
+     *
+     * @param logger the logger to write the message to
+     * @param message the message
+     * @param sql the SQL of the statement, or null
+     * @param binds the bind parameters, which are copied, or null
+     * @param detail an object appended to the message, which is converted to
+     * a string by the calling thread, or null
+     * @param elapsed the time the statement took, in nanoseconds, or a
+     * negative number if it has not executed
+     */
+    void log(final Logger logger, final String message, final String sql, final BindParameters binds, final Object detail, final long elapsed) {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            Thread t = new Thread(this::run, "logdriver-sql-logger");
+            t.setDaemon(true);
+            thread = t;
+            t.start();
+        }
+
+        // the detail may be mutable or not thread safe, such as a connection,
+        // so it is converted to a string before the statement continues
+        String detailString = detail != null ? detail.toString() : null;
+
+        long position = tail.get();
+        int index;
+        for (;;) {
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (tail.compareAndSet(position, position + 1L)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0L) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+
+        Event event = events[index];
+        event.logger = logger;
+        event.message = message;
+        event.sql = sql;
+        event.binds.copyFrom(binds);
+        event.detail = detailString;
+        event.elapsed = elapsed;
+        // a volatile write, so that it cannot be reordered with the read of
+        // whether the background thread is parked
+        sequences.set(index, position + 1L);
+
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Wait for the messages logged so far to be written.
+     *
+     * @param timeout the maximum number of milliseconds to wait
+     * @return whether the messages were written within the timeout
+     */
+    boolean flush(final long timeout) {
+        long position = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (head < position) {
+            if (System.nanoTime() - deadline > 0L) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Write the messages logged so far and stop the background thread. The
+     * thread is started again if another message is logged.
+     *
+     * @param timeout the maximum number of milliseconds to wait
+     * @return whether the background thread stopped within the timeout
+     */
+    boolean shutdown(final long timeout) {
+        Thread t = thread;
+        if (t == null) {
+            return true;
+        }
+        stopping = true;
+        LockSupport.unpark(t);
+        try {
+            t.join(timeout);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) {
+            return false;
+        }
+        thread = null;
+        stopping = false;
+        started.set(false);
+        return true;
+    }
+
+    /**
+     * Get the number of messages dropped because the ring buffer was full.
+     *
+     * @return the number of dropped messages
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Format and write messages until the logger is shut down, parking while
+     * the ring buffer is empty.
+     */
+    private void run() {
+        StringBuilder sb = new StringBuilder(256);
+        for (;;) {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1L) {
+                reportDropped();
+                if (stopping) {
+                    return;
+                }
+                // check again after publishing that the thread is parked, as
+                // a message logged before then does not unpark it
+                parked = true;
+                if (sequences.get(index) != position + 1L && !stopping) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+
+            Event event = events[index];
+            try {
+                sb.setLength(0);
+                event.format(sb);
+                event.logger.debug(sb.toString());
+            } catch (Throwable throwable) {
+                LOGGER.warn("Couldn't write SQL log message", throwable);
+            }
+            event.clear();
+            sequences.lazySet(index, position + events.length);
+            head = position + 1L;
+        }
+    }
+
+    /**
+     * Log the number of messages dropped since the last report.
+     */
+    private void reportDropped() {
+        long count = dropped.sum();
+        if (count != reportedDropped) {
+            LOGGER.warn("Dropped " + (count - reportedDropped) + " SQL log messages because the log buffer was full");
+            reportedDropped = count;
+        }
+    }
+
+    /**
+     * This class provides a slot of the ring buffer.
+     */
+    private static final class Event {
+        /**
+         * The logger to write the message to.
+         */
+        private Logger logger;
+        /**
+         * The message.
+         */
+        private String message;
+        /**
+         * The SQL of the statement, or null.
+         */
+        private String sql;
+        /**
+         * The bind parameters.
+         */
+        private final BindParameters binds = new BindParameters();
+        /**
+         * The string representation of an object appended to the message, or
+         * null.
+         */
+        private String detail;
+        /**
+         * The time the statement took, in nanoseconds, or a negative number
+         * if it has not executed.
+         */
+        private long elapsed = -1L;
+
+        /**
+         * Format the message.
+         *
+         * @param sb the string builder to format the message into
+         */
+        private void format(final StringBuilder sb) {
+            sb.append(message);
+            if (sql != null) {
+                sb.append(sql);
+            }
+            if (!binds.isEmpty()) {
+                sb.append(" Bind parameters: ");
+                binds.appendTo(sb);
+            }
+            if (detail != null) {
+                sb.append(detail);
+            }
+            if (elapsed >= 0L) {
+                sb.append(String.format(" Elapsed: %.3fms", elapsed / 1000000.0));
+            }
+        }
+
+        /**
+         * Clear the references held by the slot.
+         */
+        private void clear() {
+            logger = null;
+            message = null;
+            sql = null;
+            binds.clear();
+            detail = null;
+            elapsed = -1L;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * @(#) BindParameters.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.Arrays;
+
+/**
+ * This class records the parameters bound to a prepared statement by index.
+ * Primitive values are stored unboxed in a parallel array of longs, and the
+ * arrays are reused when the parameters are cleared, so recording parameters
+ * does not allocate once the arrays have grown to fit the statement.
+ */
+final class BindParameters {
+    /**
+     * The type of an unset parameter.
+     */
+    static final byte NONE = 0;
+    /**
+     * The type of a null parameter.
+     */
+    static final byte NULL = 1;
+    /**
+     * The type of a boolean parameter.
+     */
+    static final byte BOOLEAN = 2;
+    /**
+     * The type of a byte, short, int or long parameter.
+     */
+    static final byte LONG = 3;
+    /**
+     * The type of a float parameter.
+     */
+    static final byte FLOAT = 4;
+    /**
+     * The type of a double parameter.
+     */
+    static final byte DOUBLE = 5;
+    /**
+     * The type of an object parameter.
+     */
+    static final byte OBJECT = 6;
+    /**
+     * The initial number of parameters the arrays can hold.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The types of the parameters.
+     */
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    /**
+     * The primitive values of the parameters.
+     */
+    private long[] primitives = new long[INITIAL_CAPACITY];
+    /**
+     * The object values of the parameters.
+     */
+    private Object[] objects = new Object[INITIAL_CAPACITY];
+    /**
+     * The highest index of a recorded parameter.
+     */
+    private int size;
+
+    /**
+     * Record a null parameter.
+     *
+     * @param index the index of the parameter
+     */
+    void setNull(final int index) {
+        set(index, NULL, 0L, null);
+    }
+
+    /**
+     * Record a boolean parameter.
+     *
+     * @param index the index of the parameter
+     * @param value the value of the parameter
+     */
+    void setBoolean(final int index, final boolean value) {
+        set(index, BOOLEAN, value ? 1L : 0L, null);
+    }
+
+    /**
+     * Record a byte, short, int or long parameter.
+     *
+     * @param index the index of the parameter
+     * @param value the value of the parameter
+     */
+    void setLong(final int index, final long value) {
+        set(index, LONG, value, null);
+    }
+
+    /**
+     * Record a float parameter.
+     *
+     * @param index the index of the parameter
+     * @param value the value of the parameter
+     */
+    void setFloat(final int index, final float value) {
+        set(index, FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    /**
+     * Record a double parameter.
+     *
+     * @param index the index of the parameter
+     * @param value the value of the parameter
+     */
+    void setDouble(final int index, final double value) {
+        set(index, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * Record an object parameter.
+     *
+     * @param index the index of the parameter
+     * @param value the value of the parameter
+     */
+    void setObject(final int index, final Object value) {
+        if (value == null) {
+            set(index, NULL, 0L, null);
+        } else {
+            set(index, OBJECT, 0L, value);
+        }
+    }
+
+    /**
+     * Clear the parameters, keeping the arrays for reuse.
+     */
+    void clear() {
+        Arrays.fill(types, 0, size, NONE);
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Get whether any parameters are recorded.
+     *
+     * @return whether any parameters are recorded
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the highest index of a recorded parameter.
+     *
+     * @return the highest index of a recorded parameter, or zero if none are
+     * recorded
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the type of a parameter.
+     *
+     * @param index the index of the parameter
+     * @return the type of the parameter
+     */
+    byte getType(final int index) {
+        return types[index - 1];
+    }
+
+    /**
+     * Get the primitive value of a parameter, which is the raw bits of a
+     * float or double parameter.
+     *
+     * @param index the index of the parameter
+     * @return the primitive value of the parameter
+     */
+    long getPrimitive(final int index) {
+        return primitives[index - 1];
+    }
+
+    /**
+     * Get the object value of a parameter.
+     *
+     * @param index the index of the parameter
+     * @return the object value of the parameter
+     */
+    Object getObject(final int index) {
+        return objects[index - 1];
+    }
+
+    /**
+     * Replace the parameters with a copy of other parameters.
+     *
+     * @param other the parameters to copy, or null to clear the parameters
+     */
+    void copyFrom(final BindParameters other) {
+        clear();
+        if (other == null || other.size == 0) {
+            return;
+        }
+        ensureCapacity(other.size);
+        System.arraycopy(other.types, 0, types, 0, other.size);
+        System.arraycopy(other.primitives, 0, primitives, 0, other.size);
+        System.arraycopy(other.objects, 0, objects, 0, other.size);
+        size = other.size;
+    }
+
+    /**
+     * Append the parameters to a string builder, in the same format as a map
+     * of index to value.
+     *
+     * @param sb the string builder
+     */
+    void appendTo(final StringBuilder sb) {
+        sb.append('{');
+        boolean first = true;
+        for (int i = 0; i < size; ++i) {
+            if (types[i] == NONE) {
+                continue;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(i + 1).append('=');
+            switch (types[i]) {
+            case BOOLEAN:
+                sb.append(primitives[i] != 0L);
+                break;
+            case LONG:
+                sb.append(primitives[i]);
+                break;
+            case FLOAT:
+                sb.append(Float.intBitsToFloat((int) primitives[i]));
+                break;
+            case DOUBLE:
+                sb.append(Double.longBitsToDouble(primitives[i]));
+                break;
+            case OBJECT:
+                sb.append(objects[i]);
+                break;
+            default:
+                sb.append("null");
+                break;
+            }
+        }
+        sb.append('}');
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Record a parameter.
+     *
+     * @param index the index of the parameter
+     * @param type the type of the parameter
+     * @param primitive the primitive value of the parameter
+     * @param object the object value of the parameter
+     */
+    private void set(final int index, final byte type, final long primitive, final Object object) {
+        if (index < 1) {
+            return;
+        }
+        ensureCapacity(index);
+        types[index - 1] = type;
+        primitives[index - 1] = primitive;
+        objects[index - 1] = object;
+        if (index > size) {
+            size = index;
+        }
+    }
+
+    /**
+     * Grow the arrays to hold a number of parameters.
+     *
+     * @param capacity the number of parameters
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > types.length) {
+            int length = Math.max(capacity, types.length * 2);
+            types = Arrays.copyOf(types, length);
+            primitives = Arrays.copyOf(primitives, length);
+            objects = Arrays.copyOf(objects, length);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * @(#) JdbcMetrics.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import net.chriswareham.da.Histogram;
+import net.chriswareham.da.QueryStatistics;
+import net.chriswareham.da.QueryStatisticsRegistry;
+
+/**
+ * This class records the metrics of the connections and statements of a
+ * logging driver or data source: the execution time, rows and errors of each
+ * normalised statement, the rows fetched from result sets, the size of
+ * batches, and the time taken to open, commit and roll back connections.
+ * Each named instance is registered with the platform MBean server, and can
+ * periodically write a summary to the log.
+ */
+public class JdbcMetrics implements JdbcMetricsMBean {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JdbcMetrics.class);
+    /**
+     * The maximum number of statements included in a summary.
+     */
+    private static final int SUMMARY_STATEMENTS = 20;
+    /**
+     * The instances, keyed on name.
+     */
+    private static final ConcurrentMap<String, JdbcMetrics> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * The name.
+     */
+    private final String name;
+    /**
+     * The statistics of the statements.
+     */
+    private final QueryStatisticsRegistry statistics = new QueryStatisticsRegistry();
+    /**
+     * The number of rows fetched from result sets.
+     */
+    private final LongAdder rowsFetched = new LongAdder();
+    /**
+     * The number of batches executed.
+     */
+    private final LongAdder batchCount = new LongAdder();
+    /**
+     * The number of statements in executed batches.
+     */
+    private final LongAdder batchStatements = new LongAdder();
+    /**
+     * The largest number of statements in a batch.
+     */
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0L);
+    /**
+     * The times taken to open connections.
+     */
+    private final Histogram openTimes = new Histogram();
+    /**
+     * The times taken to commit.
+     */
+    private final Histogram commitTimes = new Histogram();
+    /**
+     * The times taken to roll back.
+     */
+    private final Histogram rollbackTimes = new Histogram();
+    /**
+     * The number of seconds between summaries, or zero if summaries are not
+     * written.
+     */
+    private long summaryInterval;
+    /**
+     * The executor that writes summaries.
+     */
+    private ScheduledExecutorService summaryExecutor;
+
+    /**
+     * Construct an instance of the metrics.
+     *
+     * @param n the name
+     */
+    JdbcMetrics(final String n) {
+        name = n;
+    }
+
+    /**
+     * Get the metrics with a name, creating and registering them with the
+     * platform MBean server if necessary.
+     *
+     * @param name the name
+     * @return the metrics
+     */
+    public static JdbcMetrics getInstance(final String name) {
+        JdbcMetrics metrics = INSTANCES.get(name);
+        if (metrics == null) {
+            metrics = INSTANCES.computeIfAbsent(name, n -> {
+                JdbcMetrics m = new JdbcMetrics(n);
+                m.register();
+                return m;
+            });
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the statistics of a statement.
+     *
+     * @param statement the statement
+     * @return the statistics of the statement
+     */
+    public QueryStatistics getStatistics(final String statement) {
+        return statistics.getStatistics(statement);
+    }
+
+    /**
+     * Get the statistics of each normalised statement, in descending order of
+     * total execution time.
+     *
+     * @return the statistics of each normalised statement
+     */
+    public List<QueryStatistics> getQueryStatistics() {
+        return statistics.getQueryStatistics();
+    }
+
+    /**
+     * Record rows fetched from a result set.
+     *
+     * @param s the statistics of the statement that produced the result set
+     * @param rows the number of rows fetched
+     */
+    void recordRows(final QueryStatistics s, final long rows) {
+        s.addRows(rows);
+        rowsFetched.add(rows);
+    }
+
+    /**
+     * Record the execution of a batch.
+     *
+     * @param size the number of statements in the batch
+     */
+    void recordBatch(final long size) {
+        batchCount.increment();
+        batchStatements.add(size);
+        maxBatchSize.accumulate(size);
+    }
+
+    /**
+     * Record the opening of a connection.
+     *
+     * @param nanos the time taken, in nanoseconds
+     */
+    void recordOpen(final long nanos) {
+        openTimes.record(nanos);
+    }
+
+    /**
+     * Record a commit.
+     *
+     * @param nanos the time taken, in nanoseconds
+     */
+    void recordCommit(final long nanos) {
+        commitTimes.record(nanos);
+    }
+
+    /**
+     * Record a rollback.
+     *
+     * @param nanos the time taken, in nanoseconds
+     */
+    void recordRollback(final long nanos) {
+        rollbackTimes.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStatementCount() {
+        return statistics.getStatementCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> getStatementStatistics() {
+        return statistics.getStatementStatistics();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowsFetched() {
+        return rowsFetched.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageBatchSize() {
+        long count = batchCount.sum();
+        return count > 0 ? (double) batchStatements.sum() / count : 0.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConnectionOpenCount() {
+        return openTimes.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageConnectionOpenTime() {
+        return openTimes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxConnectionOpenTime() {
+        return openTimes.getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCommitCount() {
+        return commitTimes.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageCommitTime() {
+        return commitTimes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxCommitTime() {
+        return commitTimes.getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRollbackCount() {
+        return rollbackTimes.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAverageRollbackTime() {
+        return rollbackTimes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxRollbackTime() {
+        return rollbackTimes.getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getSummaryInterval() {
+        return summaryInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setSummaryInterval(final long si) {
+        if (si == summaryInterval) {
+            return;
+        }
+        summaryInterval = si;
+        if (summaryExecutor != null) {
+            summaryExecutor.shutdownNow();
+            summaryExecutor = null;
+        }
+        if (si > 0) {
+            summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "JdbcMetrics-summary");
+                thread.setDaemon(true);
+                return thread;
+            });
+            summaryExecutor.scheduleWithFixedDelay(this::logSummary, si, si, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("JDBC metrics:[").append(name).append(']');
+        sb.append(String.format(" opens:[%d] mean:[%.3fms] max:[%.3fms]", openTimes.getCount(), openTimes.getMean(), openTimes.getMax()));
+        sb.append(String.format(" commits:[%d] mean:[%.3fms] max:[%.3fms]", commitTimes.getCount(), commitTimes.getMean(), commitTimes.getMax()));
+        sb.append(String.format(" rollbacks:[%d] mean:[%.3fms] max:[%.3fms]", rollbackTimes.getCount(), rollbackTimes.getMean(), rollbackTimes.getMax()));
+        sb.append(String.format(" batches:[%d] mean size:[%.1f] max size:[%d]", getBatchCount(), getAverageBatchSize(), getMaxBatchSize()));
+        sb.append(" rows fetched:[").append(getRowsFetched()).append(']');
+        List<QueryStatistics> list = getQueryStatistics();
+        for (int i = 0; i < list.size() && i < SUMMARY_STATEMENTS; ++i) {
+            QueryStatistics s = list.get(i);
+            sb.append("\n  ").append(s.getSql()).append(' ').append(QueryStatisticsRegistry.format(s));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetStatistics() {
+        statistics.reset();
+        rowsFetched.reset();
+        batchCount.reset();
+        batchStatements.reset();
+        maxBatchSize.reset();
+        openTimes.reset();
+        commitTimes.reset();
+        rollbackTimes.reset();
+    }
+
+    /**
+     * Write a summary of the metrics to the log.
+     */
+    private void logSummary() {
+        try {
+            LOGGER.info(getSummary());
+        } catch (RuntimeException exception) {
+            LOGGER.warn("Couldn't write JDBC metrics summary", exception);
+        }
+    }
+
+    /**
+     * Register the metrics with the platform MBean server.
+     */
+    private void register() {
+        try {
+            ObjectName objectName = new ObjectName("net.chriswareham.logdriver:type=JdbcMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException exception) {
+            LOGGER.warn("Couldn't register JDBC metrics " + name, exception);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * @(#) JdbcMetricsMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.Map;
+
+/**
+ * This interface is implemented by managed JDBC metrics.
+ */
+public interface JdbcMetricsMBean {
+    /**
+     * Get the number of distinct normalised statements with statistics.
+     *
+     * @return the number of distinct normalised statements with statistics
+     */
+    int getStatementCount();
+
+    /**
+     * Get a summary of the statistics of each normalised statement, in
+     * descending order of total execution time.
+     *
+     * @return a summary of the statistics of each normalised statement, keyed
+     * on the statement
+     */
+    Map<String, String> getStatementStatistics();
+
+    /**
+     * Get the number of rows fetched from result sets.
+     *
+     * @return the number of rows fetched from result sets
+     */
+    long getRowsFetched();
+
+    /**
+     * Get the number of batches executed.
+     *
+     * @return the number of batches executed
+     */
+    long getBatchCount();
+
+    /**
+     * Get the average number of statements in a batch.
+     *
+     * @return the average number of statements in a batch
+     */
+    double getAverageBatchSize();
+
+    /**
+     * Get the largest number of statements in a batch.
+     *
+     * @return the largest number of statements in a batch
+     */
+    long getMaxBatchSize();
+
+    /**
+     * Get the number of connections opened.
+     *
+     * @return the number of connections opened
+     */
+    long getConnectionOpenCount();
+
+    /**
+     * Get the average time taken to open a connection, in milliseconds.
+     *
+     * @return the average time taken to open a connection
+     */
+    double getAverageConnectionOpenTime();
+
+    /**
+     * Get the longest time taken to open a connection, in milliseconds.
+     *
+     * @return the longest time taken to open a connection
+     */
+    double getMaxConnectionOpenTime();
+
+    /**
+     * Get the number of commits.
+     *
+     * @return the number of commits
+     */
+    long getCommitCount();
+
+    /**
+     * Get the average time taken to commit, in milliseconds.
+     *
+     * @return the average time taken to commit
+     */
+    double getAverageCommitTime();
+
+    /**
+     * Get the longest time taken to commit, in milliseconds.
+     *
+     * @return the longest time taken to commit
+     */
+    double getMaxCommitTime();
+
+    /**
+     * Get the number of rollbacks.
+     *
+     * @return the number of rollbacks
+     */
+    long getRollbackCount();
+
+    /**
+     * Get the average time taken to roll back, in milliseconds.
+     *
+     * @return the average time taken to roll back
+     */
+    double getAverageRollbackTime();
+
+    /**
+     * Get the longest time taken to roll back, in milliseconds.
+     *
+     * @return the longest time taken to roll back
+     */
+    double getMaxRollbackTime();
+
+    /**
+     * Get the number of seconds between summaries written to the log.
+     *
+     * @return the number of seconds between summaries, or zero if summaries
+     * are not written
+     */
+    long getSummaryInterval();
+
+    /**
+     * Set the number of seconds between summaries written to the log.
+     *
+     * @param si the number of seconds between summaries, or zero to not
+     * write summaries
+     */
+    void setSummaryInterval(long si);
+
+    /**
+     * Get a summary of the metrics.
+     *
+     * @return a summary of the metrics
+     */
+    String getSummary();
+
+    /**
+     * Reset the statistics.
+     */
+    void resetStatistics();
+}
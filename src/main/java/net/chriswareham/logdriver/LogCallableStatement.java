@@ -43,10 +43,6 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
      * The wrapped callable statement.
      */
     private CallableStatement statement;
-    /**
-     * The SQL.
-     */
-    private String sql;
     /**
      * The bind parameters by name.
      */
@@ -64,9 +60,21 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
      * @param s the SQL
      */
     public LogCallableStatement(final CallableStatement cs, final Connection c, final String s) {
-        super(cs, c, s);
+        this(cs, c, s, new LogConfig());
+    }
+
+    /**
+     * Construct an instance of the logging prepared JDBC statement.
+     *
+     * @param cs the wrapped prepared statement
+     * @param c the connection
+     * @param s the SQL
+     * @param cfg the configuration, which is read when the statement is
+     * constructed
+     */
+    public LogCallableStatement(final CallableStatement cs, final Connection c, final String s, final LogConfig cfg) {
+        super(cs, c, s, cfg);
         statement = cs;
-        sql = s;
     }
 
     /**
@@ -75,7 +83,17 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public boolean execute() throws SQLException {
         logStatement("Executing: ");
-        return statement.execute();
+        recordWorkload(WorkloadRecorder.EXECUTE, getSql(), getBindParameters());
+        long start = startTimer();
+        try {
+            boolean result = statement.execute();
+            executed(getQueryStatistics(), getSql(), getBindParameters(), start, -1L);
+            logSlowStatement("Executing: ", start);
+            return result;
+        } catch (SQLException exception) {
+            failed(getQueryStatistics(), getSql(), getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -84,7 +102,17 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public ResultSet executeQuery() throws SQLException {
         logStatement("Executing query: ");
-        return statement.executeQuery();
+        recordWorkload(WorkloadRecorder.QUERY, getSql(), getBindParameters());
+        long start = startTimer();
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            executed(getQueryStatistics(), getSql(), getBindParameters(), start, -1L);
+            logSlowStatement("Executing query: ", start);
+            return wrap(getQueryStatistics(), resultSet);
+        } catch (SQLException exception) {
+            failed(getQueryStatistics(), getSql(), getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -93,7 +121,17 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public int executeUpdate() throws SQLException {
         logStatement("Executing update: ");
-        return statement.executeUpdate();
+        recordWorkload(WorkloadRecorder.UPDATE, getSql(), getBindParameters());
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate();
+            executed(getQueryStatistics(), getSql(), getBindParameters(), start, updated);
+            logSlowStatement("Executing update: ", start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(getQueryStatistics(), getSql(), getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -102,7 +140,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void addBatch() throws SQLException {
         logStatement("Adding to batch: ");
+        recordWorkload(WorkloadRecorder.ADD_BATCH, getSql(), getBindParameters());
         statement.addBatch();
+        addedBatch();
     }
 
     /**
@@ -110,8 +150,22 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
      */
     @Override
     public int[] executeBatch() throws SQLException {
-        LOGGER.debug("Executing batch");
-        return statement.executeBatch();
+        if (isTraced(LOGGER, null)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing batch");
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE_BATCH, getSql(), null);
+        long start = startTimer();
+        try {
+            int[] counts = executedBatch(getQueryStatistics(), getSql(), start, statement.executeBatch());
+            long elapsed = slowElapsed(LOGGER, null, start);
+            if (elapsed >= 0L) {
+                AsyncSqlLogger.getInstance().log(LOGGER, "Executing batch", null, null, null, elapsed);
+            }
+            return counts;
+        } catch (SQLException exception) {
+            failedBatch(getQueryStatistics(), getSql(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -664,7 +718,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNull(final String parameterName, final int sqlType) throws SQLException {
         statement.setNull(parameterName, sqlType);
-        bindParams.put(parameterName, null);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, null);
+        }
     }
 
     /**
@@ -673,7 +729,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNull(final String parameterName, final int sqlType, final String typeName) throws SQLException {
         statement.setNull(parameterName, sqlType, typeName);
-        bindParams.put(parameterName, null);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, null);
+        }
     }
 
     /**
@@ -682,7 +740,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBoolean(final String parameterName, final boolean x) throws SQLException {
         statement.setBoolean(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -691,7 +751,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setByte(final String parameterName, final byte x) throws SQLException {
         statement.setByte(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -700,7 +762,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setShort(final String parameterName, final short x) throws SQLException {
         statement.setShort(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -709,7 +773,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setInt(final String parameterName, final int x) throws SQLException {
         statement.setInt(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -718,7 +784,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setLong(final String parameterName, final long x) throws SQLException {
         statement.setLong(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -727,7 +795,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setFloat(final String parameterName, final float x) throws SQLException {
         statement.setFloat(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -736,7 +806,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setDouble(final String parameterName, final double x) throws SQLException {
         statement.setDouble(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -745,7 +817,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBigDecimal(final String parameterName, final BigDecimal x) throws SQLException {
         statement.setBigDecimal(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -754,7 +828,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setString(final String parameterName, final String x) throws SQLException {
         statement.setString(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -763,7 +839,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBytes(final String parameterName, final byte[] x) throws SQLException {
         statement.setBytes(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -772,7 +850,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setDate(final String parameterName, final Date x, final Calendar cal) throws SQLException {
         statement.setDate(parameterName, x, cal);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -781,7 +861,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setDate(final String parameterName, final Date x) throws SQLException {
         statement.setDate(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -790,7 +872,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setTime(final String parameterName, final Time x, final Calendar cal) throws SQLException {
         statement.setTime(parameterName, x, cal);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -799,7 +883,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setTime(final String parameterName, final Time x) throws SQLException {
         statement.setTime(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -808,7 +894,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setTimestamp(final String parameterName, final Timestamp x, final Calendar cal) throws SQLException {
         statement.setTimestamp(parameterName, x, cal);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -817,7 +905,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setTimestamp(final String parameterName, final Timestamp x) throws SQLException {
         statement.setTimestamp(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -826,7 +916,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x, final long length) throws SQLException {
         statement.setAsciiStream(parameterName, x, length);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -835,7 +927,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x, final int length) throws SQLException {
         statement.setAsciiStream(parameterName, x, length);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -844,7 +938,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setAsciiStream(final String parameterName, final InputStream x) throws SQLException {
         statement.setAsciiStream(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -853,7 +949,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x, final long length) throws SQLException {
         statement.setBinaryStream(parameterName, x, length);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -862,7 +960,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x, final int length) throws SQLException {
         statement.setBinaryStream(parameterName, x, length);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -871,7 +971,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBinaryStream(final String parameterName, final InputStream x) throws SQLException {
         statement.setBinaryStream(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -880,7 +982,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setObject(final String parameterName, final Object x, final int targetSqlType, final int scale) throws SQLException {
         statement.setObject(parameterName, x, targetSqlType);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -889,7 +993,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setObject(final String parameterName, final Object x, final int targetSqlType) throws SQLException {
         statement.setObject(parameterName, x, targetSqlType);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -898,7 +1004,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setObject(final String parameterName, final Object x) throws SQLException {
         statement.setObject(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -907,7 +1015,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader, final long length) throws SQLException {
         statement.setCharacterStream(parameterName, reader, length);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -916,7 +1026,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader, final int length) throws SQLException {
         statement.setCharacterStream(parameterName, reader, length);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -925,7 +1037,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setCharacterStream(final String parameterName, final Reader reader) throws SQLException {
         statement.setCharacterStream(parameterName, reader);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -934,7 +1048,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setURL(final String parameterName, final URL val) throws SQLException {
         statement.setURL(parameterName, val);
-        bindParams.put(parameterName, val);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, val);
+        }
     }
 
     /**
@@ -951,7 +1067,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNString(final String parameterName, final String value) throws SQLException {
         statement.setNString(parameterName, value);
-        bindParams.put(parameterName, value);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, value);
+        }
     }
 
     /**
@@ -960,7 +1078,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNCharacterStream(final String parameterName, final Reader value, final long length) throws SQLException {
         statement.setNCharacterStream(parameterName, value, length);
-        bindParams.put(parameterName, value);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, value);
+        }
     }
 
     /**
@@ -969,7 +1089,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNCharacterStream(final String parameterName, final Reader value) throws SQLException {
         statement.setNCharacterStream(parameterName, value);
-        bindParams.put(parameterName, value);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, value);
+        }
     }
 
     /**
@@ -978,7 +1100,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNClob(final String parameterName, final Reader reader, final long length) throws SQLException {
         statement.setNClob(parameterName, reader, length);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -987,7 +1111,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNClob(final String parameterName, final Reader reader) throws SQLException {
         statement.setNClob(parameterName, reader);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -996,7 +1122,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setNClob(final String parameterName, final NClob value) throws SQLException {
         statement.setNClob(parameterName, value);
-        bindParams.put(parameterName, value);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, value);
+        }
     }
 
     /**
@@ -1005,7 +1133,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setClob(final String parameterName, final Reader reader, final long length) throws SQLException {
         statement.setClob(parameterName, reader, length);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -1014,7 +1144,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setClob(final String parameterName, final Reader reader) throws SQLException {
         statement.setClob(parameterName, reader);
-        bindParams.put(parameterName, reader);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, reader);
+        }
     }
 
     /**
@@ -1023,7 +1155,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setClob(final String parameterName, final Clob x) throws SQLException {
         statement.setClob(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -1032,7 +1166,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBlob(final String parameterName, final InputStream inputStream, final long length) throws SQLException {
         statement.setBlob(parameterName, inputStream, length);
-        bindParams.put(parameterName, inputStream);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, inputStream);
+        }
     }
 
     /**
@@ -1041,7 +1177,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBlob(final String parameterName, final InputStream inputStream) throws SQLException {
         statement.setBlob(parameterName, inputStream);
-        bindParams.put(parameterName, inputStream);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, inputStream);
+        }
     }
 
     /**
@@ -1050,7 +1188,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setBlob(final String parameterName, final Blob x) throws SQLException {
         statement.setBlob(parameterName, x);
-        bindParams.put(parameterName, x);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, x);
+        }
     }
 
     /**
@@ -1059,7 +1199,9 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
     @Override
     public void setSQLXML(final String parameterName, final SQLXML xmlObject) throws SQLException {
         statement.setSQLXML(parameterName, xmlObject);
-        bindParams.put(parameterName, xmlObject);
+        if (isCapturingBinds()) {
+            bindParams.put(parameterName, xmlObject);
+        }
     }
 
     /**
@@ -1093,15 +1235,92 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
         throw new SQLException(getClass().getName() + " is not a wrapper for " + iface);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    byte workloadFlags() {
+        return WorkloadRecorder.CALLABLE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void clearBinds() {
+        super.clearBinds();
+        bindParams.clear();
+    }
+
     /**
      * Log a statement.
      *
      * @param msg the log message
      */
     private void logStatement(final String msg) {
-        if (LOGGER.isDebugEnabled()) {
-            StringBuilder buf = new StringBuilder(msg);
-            buf.append(sql);
+        if (isTraced(LOGGER)) {
+            logStatement(LOGGER, msg, callParams(), -1L);
+        }
+    }
+
+    /**
+     * Log a statement after it has executed, if it was slow.
+     *
+     * @param msg the log message
+     * @param start the time the execution started, in nanoseconds
+     */
+    private void logSlowStatement(final String msg, final long start) {
+        long elapsed = slowElapsed(LOGGER, start);
+        if (elapsed >= 0L) {
+            logStatement(LOGGER, msg, callParams(), elapsed);
+        }
+    }
+
+    /**
+     * Copy the named bind parameters and out parameters.
+     *
+     * @return a copy of the parameters, or null if there are none
+     */
+    private CallParams callParams() {
+        if (isBindsUnknown() || bindParams.isEmpty() && outParams.isEmpty()) {
+            return null;
+        }
+        return new CallParams(new TreeMap<>(bindParams), new TreeMap<>(outParams));
+    }
+
+    /**
+     * This class holds a copy of the named bind parameters and out parameters
+     * of a call, which are formatted when the call is logged.
+     */
+    private static class CallParams {
+        /**
+         * The bind parameters by name.
+         */
+        private final Map<String, Object> bindParams;
+        /**
+         * The out parameters by name.
+         */
+        private final Map<Object, OutParam> outParams;
+
+        /**
+         * Construct an instance of the class that holds call parameters.
+         *
+         * @param bp the bind parameters by name
+         * @param op the out parameters by name
+         */
+        CallParams(final Map<String, Object> bp, final Map<Object, OutParam> op) {
+            bindParams = bp;
+            outParams = op;
+        }
+
+        /**
+         * Get the description of the call parameters.
+         *
+         * @return the description of the call parameters
+         */
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
             if (!bindParams.isEmpty()) {
                 buf.append(" Bind parameters: ");
                 buf.append(bindParams);
@@ -1110,7 +1329,7 @@ public class LogCallableStatement extends LogPreparedStatement implements Callab
                 buf.append(" Out parameters: ");
                 buf.append(outParams);
             }
-            LOGGER.debug(buf);
+            return buf.toString();
         }
     }
 
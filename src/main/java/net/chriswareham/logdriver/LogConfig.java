@@ -0,0 +1,126 @@
+/*
+ * @(#) LogConfig.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+/**
+ * This class provides a bean that stores the configuration of a logging
+ * connection and the statements it creates. A connection copies the
+ * configuration when it is created, so changing the configuration afterwards
+ * does not affect connections that are already open.
+ */
+public class LogConfig {
+    /**
+     * The metrics, or null if metrics are not recorded.
+     */
+    private JdbcMetrics metrics;
+    /**
+     * The tracer that decides which statements are logged, or null if every
+     * statement is logged.
+     */
+    private StatementTracer tracer;
+    /**
+     * The recorder of recent statements, or null if statements are not
+     * recorded.
+     */
+    private StatementRecorder recorder;
+    /**
+     * The workload recorder, or null if the workload is not recorded.
+     */
+    private WorkloadRecorder workloadRecorder;
+
+    /**
+     * Construct an instance of the configuration, with no metrics, tracer or
+     * recorders.
+     */
+    public LogConfig() {
+        // nothing to initialise
+    }
+
+    /**
+     * Construct an instance of the configuration that is a copy of another.
+     *
+     * @param c the configuration to copy
+     */
+    public LogConfig(final LogConfig c) {
+        metrics = c.metrics;
+        tracer = c.tracer;
+        recorder = c.recorder;
+        workloadRecorder = c.workloadRecorder;
+    }
+
+    /**
+     * Get the metrics.
+     *
+     * @return the metrics, or null if metrics are not recorded
+     */
+    public JdbcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the metrics.
+     *
+     * @param m the metrics, or null if metrics are not recorded
+     */
+    public void setMetrics(final JdbcMetrics m) {
+        metrics = m;
+    }
+
+    /**
+     * Get the tracer that decides which statements are logged.
+     *
+     * @return the tracer, or null if every statement is logged
+     */
+    public StatementTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Set the tracer that decides which statements are logged.
+     *
+     * @param t the tracer, or null if every statement is logged
+     */
+    public void setTracer(final StatementTracer t) {
+        tracer = t;
+    }
+
+    /**
+     * Get the recorder of recent statements.
+     *
+     * @return the recorder, or null if statements are not recorded
+     */
+    public StatementRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Set the recorder of recent statements.
+     *
+     * @param r the recorder, or null if statements are not recorded
+     */
+    public void setRecorder(final StatementRecorder r) {
+        recorder = r;
+    }
+
+    /**
+     * Get the workload recorder.
+     *
+     * @return the workload recorder, or null if the workload is not recorded
+     */
+    public WorkloadRecorder getWorkloadRecorder() {
+        return workloadRecorder;
+    }
+
+    /**
+     * Set the workload recorder.
+     *
+     * @param w the workload recorder, or null if the workload is not recorded
+     */
+    public void setWorkloadRecorder(final WorkloadRecorder w) {
+        workloadRecorder = w;
+    }
+}
@@ -28,7 +28,11 @@ import java.util.concurrent.Executor;
 import org.apache.log4j.Logger;
 
 /**
- * This class provides a logging connection.
+ * This class provides a logging connection. If metrics are recorded, the
+ * time taken to commit and roll back is recorded, and the statements created
+ * by the connection record their own metrics. If a recorder is set, the
+ * statements add their executions to it. If a workload recorder is set, the
+ * connection and its statements write their events to it.
  */
 public class LogConnection implements Connection {
     /**
@@ -40,6 +44,22 @@ public class LogConnection implements Connection {
      * The wrapped connection.
      */
     private final Connection connection;
+    /**
+     * The configuration of the connection and its statements.
+     */
+    private final LogConfig config;
+    /**
+     * The metrics, or null if metrics are not recorded.
+     */
+    private final JdbcMetrics metrics;
+    /**
+     * The workload recorder, or null if the workload is not recorded.
+     */
+    private final WorkloadRecorder workload;
+    /**
+     * The identifier of the connection in the recorded workload.
+     */
+    private final int workloadId;
 
     /**
      * Create an instance of the logging connection.
@@ -47,9 +67,24 @@ public class LogConnection implements Connection {
      * @param c the connection to wrap
      */
     public LogConnection(final Connection c) {
+        this(c, new LogConfig());
+    }
+
+    /**
+     * Create an instance of the logging connection.
+     *
+     * @param c the connection to wrap
+     * @param cfg the configuration of the connection and its statements, which
+     * is copied
+     */
+    public LogConnection(final Connection c, final LogConfig cfg) {
         connection = c;
+        config = new LogConfig(cfg);
+        metrics = config.getMetrics();
+        workload = config.getWorkloadRecorder();
+        workloadId = workload != null ? workload.connect() : 0;
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Opening connection: " + connection);
+            AsyncSqlLogger.getInstance().log(LOGGER, "Opening connection: ", connection);
         }
     }
 
@@ -58,8 +93,10 @@ public class LogConnection implements Connection {
      */
     @Override
     public Statement createStatement() throws SQLException {
-        LOGGER.debug("Creating a new statement");
-        return new LogStatement(connection.createStatement(), this);
+        if (LOGGER.isDebugEnabled()) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Creating a new statement");
+        }
+        return new LogStatement(connection.createStatement(), this, config);
     }
 
     /**
@@ -67,8 +104,10 @@ public class LogConnection implements Connection {
      */
     @Override
     public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
-        LOGGER.debug("Creating a new statement");
-        return new LogStatement(connection.createStatement(resultSetType, resultSetConcurrency), this);
+        if (LOGGER.isDebugEnabled()) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Creating a new statement");
+        }
+        return new LogStatement(connection.createStatement(resultSetType, resultSetConcurrency), this, config);
     }
 
     /**
@@ -76,8 +115,10 @@ public class LogConnection implements Connection {
      */
     @Override
     public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
-        LOGGER.debug("Creating a new statement");
-        return new LogStatement(connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
+        if (LOGGER.isDebugEnabled()) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Creating a new statement");
+        }
+        return new LogStatement(connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this, config);
     }
 
     /**
@@ -85,7 +126,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql), this, sql, config);
     }
 
     /**
@@ -93,7 +134,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql, autoGeneratedKeys), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql, autoGeneratedKeys), this, sql, config);
     }
 
     /**
@@ -101,7 +142,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql, columnIndexes), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql, columnIndexes), this, sql, config);
     }
 
     /**
@@ -109,7 +150,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql, columnNames), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql, columnNames), this, sql, config);
     }
 
     /**
@@ -117,7 +158,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql, resultSetType, resultSetConcurrency), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql, resultSetType, resultSetConcurrency), this, sql, config);
     }
 
     /**
@@ -125,7 +166,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
-        return new LogPreparedStatement(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql);
+        return new LogPreparedStatement(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql, config);
     }
 
     /**
@@ -133,7 +174,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(final String sql) throws SQLException {
-        return new LogCallableStatement(connection.prepareCall(sql), this, sql);
+        return new LogCallableStatement(connection.prepareCall(sql), this, sql, config);
     }
 
     /**
@@ -141,7 +182,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
-        return new LogCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency), this, sql);
+        return new LogCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency), this, sql, config);
     }
 
     /**
@@ -149,7 +190,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
-        return new LogCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql);
+        return new LogCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql, config);
     }
 
     /**
@@ -165,6 +206,7 @@ public class LogConnection implements Connection {
      */
     @Override
     public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        recordWorkload(autoCommit ? WorkloadRecorder.AUTO_COMMIT_ON : WorkloadRecorder.AUTO_COMMIT_OFF, null, null);
         connection.setAutoCommit(autoCommit);
     }
 
@@ -214,9 +256,16 @@ public class LogConnection implements Connection {
     @Override
     public void rollback() throws SQLException {
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Rolling back connection: " + connection);
+            AsyncSqlLogger.getInstance().log(LOGGER, "Rolling back connection: ", connection);
+        }
+        recordWorkload(WorkloadRecorder.ROLLBACK, null, null);
+        if (metrics == null) {
+            connection.rollback();
+            return;
         }
+        long start = System.nanoTime();
         connection.rollback();
+        metrics.recordRollback(System.nanoTime() - start);
     }
 
     /**
@@ -225,9 +274,16 @@ public class LogConnection implements Connection {
     @Override
     public void commit() throws SQLException {
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Committing connection: " + connection);
+            AsyncSqlLogger.getInstance().log(LOGGER, "Committing connection: ", connection);
         }
+        recordWorkload(WorkloadRecorder.COMMIT, null, null);
+        if (metrics == null) {
+            connection.commit();
+            return;
+        }
+        long start = System.nanoTime();
         connection.commit();
+        metrics.recordCommit(System.nanoTime() - start);
     }
 
     /**
@@ -236,8 +292,9 @@ public class LogConnection implements Connection {
     @Override
     public void close() throws SQLException  {
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Closing connection: " + connection);
+            AsyncSqlLogger.getInstance().log(LOGGER, "Closing connection: ", connection);
         }
+        recordWorkload(WorkloadRecorder.CLOSE, null, null);
         connection.close();
     }
 
@@ -481,6 +538,28 @@ public class LogConnection implements Connection {
         return connection.getNetworkTimeout();
     }
 
+    /**
+     * Get whether the workload is recorded.
+     *
+     * @return whether the workload is recorded
+     */
+    boolean isRecordingWorkload() {
+        return workload != null;
+    }
+
+    /**
+     * Record an event in the workload, if it is recorded.
+     *
+     * @param event the event, with the statement flags for statement events
+     * @param sql the SQL of a statement event, or null
+     * @param binds the bind parameters of a statement event, or null
+     */
+    void recordWorkload(final byte event, final String sql, final BindParameters binds) {
+        if (workload != null) {
+            workload.record(workloadId, event, sql, binds);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
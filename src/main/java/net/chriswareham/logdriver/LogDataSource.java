@@ -6,28 +6,94 @@
 
 package net.chriswareham.logdriver;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 
 /**
- * This class provides a logging data source.
+ * This class provides a logging data source. If metrics are enabled, the
+ * connections and statements it creates record their metrics in a named
+ * instance of {@link JdbcMetrics}, which is registered with the platform
+ * MBean server. Sampling, rate limits and a slow threshold can be set to
+ * limit the statements logged while debug logging is enabled. If recording
+ * is enabled, recent statements are held in a named instance of
+ * {@link StatementRecorder}, which can be dumped after an incident. If a
+ * workload file or recorder is set, the workload passing through the
+ * connections is recorded for replay by a {@link WorkloadReplayer}.
  */
 public class LogDataSource implements DataSource {
     /**
      * The logger.
      */
     private static final Logger LOGGER = Logger.getLogger(LogDataSource.class);
+    /**
+     * The number of instances created, used to generate metrics names.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
 
     /**
      * The wrapped data source.
      */
     private final DataSource dataSource;
+    /**
+     * Whether metrics are recorded.
+     */
+    private boolean metricsEnabled;
+    /**
+     * The name the metrics are registered under.
+     */
+    private String metricsName = "logDataSource" + INSTANCES.incrementAndGet();
+    /**
+     * The number of seconds between summaries of the metrics written to the
+     * log, or zero if summaries are not written.
+     */
+    private long summaryInterval;
+    /**
+     * The metrics, or null if they have not been created.
+     */
+    private volatile JdbcMetrics metrics;
+    /**
+     * The tracer that decides which statements are logged.
+     */
+    private final StatementTracer tracer = new StatementTracer();
+    /**
+     * Whether recent statements are recorded.
+     */
+    private boolean recordingEnabled;
+    /**
+     * The name the recorder is registered under, or null to use the name of
+     * the metrics.
+     */
+    private String recorderName;
+    /**
+     * The number of recent statements held.
+     */
+    private int recorderCapacity = StatementRecorder.DEFAULT_CAPACITY;
+    /**
+     * The path of the file whose creation triggers a dump of the recent
+     * statements to the log, or null if there is none.
+     */
+    private String recorderTriggerFile;
+    /**
+     * The recorder, or null if it has not been created.
+     */
+    private volatile StatementRecorder recorder;
+    /**
+     * The path of the file the workload is recorded to, or null if the
+     * workload is not recorded.
+     */
+    private String workloadFile;
+    /**
+     * The workload recorder, or null if it has not been created.
+     */
+    private volatile WorkloadRecorder workloadRecorder;
 
     /**
      * Create an instance of the logging data source.
@@ -38,12 +104,214 @@ public class LogDataSource implements DataSource {
         dataSource = ds;
     }
 
+    /**
+     * Set whether metrics are recorded.
+     *
+     * @param me whether metrics are recorded
+     */
+    public void setMetrics(final boolean me) {
+        metricsEnabled = me;
+    }
+
+    /**
+     * Set the name the metrics are registered under.
+     *
+     * @param mn the name the metrics are registered under
+     */
+    public void setMetricsName(final String mn) {
+        metricsName = mn;
+    }
+
+    /**
+     * Set the number of seconds between summaries of the metrics written to
+     * the log.
+     *
+     * @param si the number of seconds between summaries, or zero to not
+     * write summaries
+     */
+    public void setSummaryInterval(final long si) {
+        summaryInterval = si;
+    }
+
+    /**
+     * Set the interval between statements logged, so that one in every
+     * <code>si</code> statements is logged.
+     *
+     * @param si the interval between statements logged, or one to log every
+     * statement
+     */
+    public void setSampleInterval(final int si) {
+        tracer.setSampleInterval(si);
+    }
+
+    /**
+     * Set the probability a statement is logged.
+     *
+     * @param sp the probability a statement is logged, between 0 and 1
+     */
+    public void setSampleProbability(final double sp) {
+        tracer.setSampleProbability(sp);
+    }
+
+    /**
+     * Set the maximum number of times each statement is logged per second.
+     *
+     * @param rl the maximum number of times each statement is logged per
+     * second, or zero if unlimited
+     */
+    public void setRateLimit(final int rl) {
+        tracer.setRateLimit(rl);
+    }
+
+    /**
+     * Set the number of milliseconds after which a statement is logged, so
+     * that only slow statements are logged, once they have executed.
+     *
+     * @param st the number of milliseconds after which a statement is
+     * logged, or zero to log statements before they execute
+     */
+    public void setSlowThreshold(final long st) {
+        tracer.setSlowThreshold(st);
+    }
+
+    /**
+     * Get the tracer that decides which statements are logged.
+     *
+     * @return the tracer
+     */
+    public StatementTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Set whether recent statements are recorded.
+     *
+     * @param re whether recent statements are recorded
+     */
+    public void setRecording(final boolean re) {
+        recordingEnabled = re;
+    }
+
+    /**
+     * Set the name the recorder of recent statements is registered under.
+     *
+     * @param rn the name the recorder is registered under, or null to use
+     * the name of the metrics
+     */
+    public void setRecorderName(final String rn) {
+        recorderName = rn;
+    }
+
+    /**
+     * Set the number of recent statements held.
+     *
+     * @param rc the number of recent statements held
+     */
+    public void setRecorderCapacity(final int rc) {
+        recorderCapacity = rc;
+    }
+
+    /**
+     * Set the path of the file whose creation triggers a dump of the recent
+     * statements to the log.
+     *
+     * @param rtf the path of the trigger file, or null for none
+     */
+    public void setRecorderTriggerFile(final String rtf) {
+        recorderTriggerFile = rtf;
+    }
+
+    /**
+     * Get the recorder of recent statements, creating it if necessary.
+     *
+     * @return the recorder, or null if recent statements are not recorded
+     */
+    public StatementRecorder getRecorder() {
+        if (!recordingEnabled) {
+            return null;
+        }
+        StatementRecorder r = recorder;
+        if (r == null) {
+            r = StatementRecorder.getInstance(recorderName != null ? recorderName : metricsName, recorderCapacity);
+            if (recorderTriggerFile != null) {
+                r.setTriggerFile(recorderTriggerFile);
+            }
+            recorder = r;
+        }
+        return r;
+    }
+
+    /**
+     * Set the path of the file the workload is recorded to.
+     *
+     * @param wf the path of the workload file, or null to not record the
+     * workload
+     */
+    public void setWorkloadFile(final String wf) {
+        workloadFile = wf;
+    }
+
+    /**
+     * Set the workload recorder.
+     *
+     * @param wr the workload recorder, or null to not record the workload
+     */
+    public void setWorkloadRecorder(final WorkloadRecorder wr) {
+        workloadRecorder = wr;
+    }
+
+    /**
+     * Get the workload recorder, creating it if necessary.
+     *
+     * @return the workload recorder, or null if the workload is not recorded
+     * @throws SQLException if the workload file cannot be created
+     */
+    public WorkloadRecorder getWorkloadRecorder() throws SQLException {
+        WorkloadRecorder wr = workloadRecorder;
+        if (wr == null && workloadFile != null) {
+            try {
+                wr = WorkloadRecorder.getInstance(workloadFile);
+            } catch (IOException exception) {
+                throw new SQLException("Couldn't open workload log " + workloadFile, exception);
+            }
+            workloadRecorder = wr;
+        }
+        return wr;
+    }
+
+    /**
+     * Get the metrics, creating them if necessary.
+     *
+     * @return the metrics, or null if metrics are not recorded
+     */
+    public JdbcMetrics getMetrics() {
+        if (!metricsEnabled) {
+            return null;
+        }
+        JdbcMetrics m = metrics;
+        if (m == null) {
+            m = JdbcMetrics.getInstance(metricsName);
+            if (summaryInterval > 0) {
+                m.setSummaryInterval(summaryInterval);
+            }
+            metrics = m;
+        }
+        return m;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Connection getConnection() throws SQLException {
-        return new LogConnection(dataSource.getConnection());
+        JdbcMetrics m = getMetrics();
+        if (m == null) {
+            return new LogConnection(dataSource.getConnection(), config(null));
+        }
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        m.recordOpen(System.nanoTime() - start);
+        return new LogConnection(connection, config(m));
     }
 
     /**
@@ -51,7 +319,14 @@ public class LogDataSource implements DataSource {
      */
     @Override
     public Connection getConnection(final String username, final String password) throws SQLException {
-        return new LogConnection(dataSource.getConnection(username, password));
+        JdbcMetrics m = getMetrics();
+        if (m == null) {
+            return new LogConnection(dataSource.getConnection(username, password), config(null));
+        }
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection(username, password);
+        m.recordOpen(System.nanoTime() - start);
+        return new LogConnection(connection, config(m));
     }
 
     /**
@@ -122,4 +397,29 @@ public class LogDataSource implements DataSource {
         }
         throw new SQLException(getClass().getName() + " is not a wrapper for " + iface);
     }
+
+    /**
+     * Get the tracer to pass to connections.
+     *
+     * @return the tracer, or null if every statement is logged
+     */
+    private StatementTracer tracer() {
+        return tracer.isEnabled() ? tracer : null;
+    }
+
+    /**
+     * Get the configuration to pass to connections.
+     *
+     * @param m the metrics, or null if metrics are not recorded
+     * @return the configuration
+     * @throws SQLException if the workload log cannot be opened
+     */
+    private LogConfig config(final JdbcMetrics m) throws SQLException {
+        LogConfig config = new LogConfig();
+        config.setMetrics(m);
+        config.setTracer(tracer());
+        config.setRecorder(getRecorder());
+        config.setWorkloadRecorder(getWorkloadRecorder());
+        return config;
+    }
 }
@@ -27,13 +27,20 @@ import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
+import net.chriswareham.da.QueryStatistics;
+
 /**
- * This class provides a logging JDBC prepared statement.
+ * This class provides a logging JDBC prepared statement. Statements are logged
+ * asynchronously, and if a tracer is set it decides which executions are
+ * logged. Bind parameters are only recorded while debug logging is enabled,
+ * which is checked each time the statement is executed or recent statements
+ * or the workload are recorded. If bind parameters start being recorded after
+ * some were set, they are unknown and are not logged until the parameters are
+ * cleared. If metrics are recorded, the statement is normalised once, when it
+ * is prepared.
  */
 public class LogPreparedStatement extends LogStatement implements PreparedStatement {
     /**
@@ -52,7 +59,19 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     /**
      * The bind parameters by index.
      */
-    private final Map<Integer, Object> bindParams = new TreeMap<>();
+    private final BindParameters bindParams = new BindParameters();
+    /**
+     * Whether bind parameters are recorded.
+     */
+    private boolean captureBinds;
+    /**
+     * Whether some bind parameters were set while they were not recorded.
+     */
+    private boolean bindsUnknown;
+    /**
+     * The statistics of the statement, or null if metrics are not recorded.
+     */
+    private final QueryStatistics statistics;
 
     /**
      * Construct an instance of the logging prepared JDBC statement.
@@ -62,9 +81,24 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
      * @param s the SQL
      */
     public LogPreparedStatement(final PreparedStatement ps, final Connection c, final String s) {
-        super(ps, c);
+        this(ps, c, s, new LogConfig());
+    }
+
+    /**
+     * Construct an instance of the logging prepared JDBC statement.
+     *
+     * @param ps the wrapped prepared statement
+     * @param c the connection
+     * @param s the SQL
+     * @param cfg the configuration, which is read when the statement is
+     * constructed
+     */
+    public LogPreparedStatement(final PreparedStatement ps, final Connection c, final String s, final LogConfig cfg) {
+        super(ps, c, cfg);
         statement = ps;
         sql = s;
+        captureBinds = LOGGER.isDebugEnabled() || isRecording();
+        statistics = statistics(s);
     }
 
     /**
@@ -73,7 +107,17 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public boolean execute() throws SQLException {
         logStatement("Executing: ");
-        return statement.execute();
+        recordWorkload(WorkloadRecorder.EXECUTE, sql, getBindParameters());
+        long start = startTimer();
+        try {
+            boolean result = statement.execute();
+            executed(statistics, sql, getBindParameters(), start, -1L);
+            logSlowStatement("Executing: ", start);
+            return result;
+        } catch (SQLException exception) {
+            failed(statistics, sql, getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -82,7 +126,17 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public ResultSet executeQuery() throws SQLException {
         logStatement("Executing query: ");
-        return statement.executeQuery();
+        recordWorkload(WorkloadRecorder.QUERY, sql, getBindParameters());
+        long start = startTimer();
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            executed(statistics, sql, getBindParameters(), start, -1L);
+            logSlowStatement("Executing query: ", start);
+            return wrap(statistics, resultSet);
+        } catch (SQLException exception) {
+            failed(statistics, sql, getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -91,7 +145,17 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public int executeUpdate() throws SQLException {
         logStatement("Executing update: ");
-        return statement.executeUpdate();
+        recordWorkload(WorkloadRecorder.UPDATE, sql, getBindParameters());
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate();
+            executed(statistics, sql, getBindParameters(), start, updated);
+            logSlowStatement("Executing update: ", start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(statistics, sql, getBindParameters(), start);
+            throw exception;
+        }
     }
 
     /**
@@ -100,7 +164,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void addBatch() throws SQLException {
         logStatement("Adding to batch: ");
+        recordWorkload(WorkloadRecorder.ADD_BATCH, sql, getBindParameters());
         statement.addBatch();
+        addedBatch();
     }
 
     /**
@@ -108,8 +174,22 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
      */
     @Override
     public int[] executeBatch() throws SQLException {
-        LOGGER.debug("Executing batch");
-        return statement.executeBatch();
+        if (isTraced(LOGGER, null)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing batch");
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE_BATCH, sql, null);
+        long start = startTimer();
+        try {
+            int[] counts = executedBatch(statistics, sql, start, statement.executeBatch());
+            long elapsed = slowElapsed(LOGGER, null, start);
+            if (elapsed >= 0L) {
+                AsyncSqlLogger.getInstance().log(LOGGER, "Executing batch", null, null, null, elapsed);
+            }
+            return counts;
+        } catch (SQLException exception) {
+            failedBatch(statistics, sql, start);
+            throw exception;
+        }
     }
 
     /**
@@ -118,7 +198,8 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void clearParameters() throws SQLException {
         statement.clearParameters();
-        bindParams.clear();
+        clearBinds();
+        bindsUnknown = false;
     }
 
     /**
@@ -127,7 +208,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
         statement.setNull(parameterIndex, sqlType, typeName);
-        bindParams.put(parameterIndex, null);
+        if (captureBinds) {
+            bindParams.setNull(parameterIndex);
+        }
     }
 
     /**
@@ -136,7 +219,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
         statement.setNull(parameterIndex, sqlType);
-        bindParams.put(parameterIndex, null);
+        if (captureBinds) {
+            bindParams.setNull(parameterIndex);
+        }
     }
 
     /**
@@ -145,7 +230,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
         statement.setBoolean(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setBoolean(parameterIndex, x);
+        }
     }
 
     /**
@@ -154,7 +241,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setByte(final int parameterIndex, final byte x) throws SQLException {
         statement.setByte(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setLong(parameterIndex, x);
+        }
     }
 
     /**
@@ -163,7 +252,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setShort(final int parameterIndex, final short x) throws SQLException {
         statement.setShort(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setLong(parameterIndex, x);
+        }
     }
 
     /**
@@ -172,7 +263,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setInt(final int parameterIndex, final int x) throws SQLException {
         statement.setInt(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setLong(parameterIndex, x);
+        }
     }
 
     /**
@@ -181,7 +274,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setLong(final int parameterIndex, final long x) throws SQLException {
         statement.setLong(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setLong(parameterIndex, x);
+        }
     }
 
     /**
@@ -190,7 +285,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setFloat(final int parameterIndex, final float x) throws SQLException {
         statement.setFloat(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setFloat(parameterIndex, x);
+        }
     }
 
     /**
@@ -199,7 +296,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setDouble(final int parameterIndex, final double x) throws SQLException {
         statement.setDouble(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setDouble(parameterIndex, x);
+        }
     }
 
     /**
@@ -208,7 +307,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
         statement.setBigDecimal(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -217,7 +318,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setString(final int parameterIndex, final String x) throws SQLException {
         statement.setString(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -226,7 +329,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
         statement.setBytes(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -235,7 +340,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
         statement.setDate(parameterIndex, x, cal);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -244,7 +351,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setDate(final int parameterIndex, final Date x) throws SQLException {
         statement.setDate(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -253,7 +362,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
         statement.setTime(parameterIndex, x, cal);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -262,7 +373,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setTime(final int parameterIndex, final Time x) throws SQLException {
         statement.setTime(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -271,7 +384,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
         statement.setTimestamp(parameterIndex, x, cal);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -280,7 +395,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
         statement.setTimestamp(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -289,7 +406,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
         statement.setAsciiStream(parameterIndex, x, length);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -298,7 +417,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
         statement.setAsciiStream(parameterIndex, x, length);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -307,7 +428,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
         statement.setAsciiStream(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -318,7 +441,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Deprecated
     public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
         statement.setUnicodeStream(parameterIndex, x, length);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -327,7 +452,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
         statement.setBinaryStream(parameterIndex, x, length);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -336,7 +463,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
         statement.setBinaryStream(parameterIndex, x, length);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -345,7 +474,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
         statement.setBinaryStream(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -354,7 +485,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException {
         statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -363,7 +496,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
         statement.setObject(parameterIndex, x, targetSqlType);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -372,7 +507,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setObject(final int parameterIndex, final Object x) throws SQLException {
         statement.setObject(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -381,7 +518,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException {
         statement.setCharacterStream(parameterIndex, reader, length);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -390,7 +529,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader, final int length) throws SQLException {
         statement.setCharacterStream(parameterIndex, reader, length);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -399,7 +540,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
         statement.setCharacterStream(parameterIndex, reader);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -408,7 +551,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setRef(final int parameterIndex, final Ref x) throws SQLException {
         statement.setRef(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -417,7 +562,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setArray(final int parameterIndex, final Array x) throws SQLException {
         statement.setArray(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -426,7 +573,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setURL(final int parameterIndex, final URL x) throws SQLException {
         statement.setURL(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -435,7 +584,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
         statement.setRowId(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -444,7 +595,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNString(final int parameterIndex, final String value) throws SQLException {
         statement.setNString(parameterIndex, value);
-        bindParams.put(parameterIndex, value);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, value);
+        }
     }
 
     /**
@@ -453,7 +606,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNCharacterStream(final int parameterIndex, final Reader value, final long length) throws SQLException {
         statement.setNCharacterStream(parameterIndex, value, length);
-        bindParams.put(parameterIndex, value);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, value);
+        }
     }
 
     /**
@@ -462,7 +617,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
         statement.setNCharacterStream(parameterIndex, value);
-        bindParams.put(parameterIndex, value);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, value);
+        }
     }
 
     /**
@@ -471,7 +628,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setClob(final int parameterIndex, final Clob x) throws SQLException {
         statement.setClob(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -480,7 +639,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
         statement.setClob(parameterIndex, reader, length);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -489,7 +650,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
         statement.setClob(parameterIndex, reader);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -498,7 +661,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
         statement.setBlob(parameterIndex, x);
-        bindParams.put(parameterIndex, x);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, x);
+        }
     }
 
     /**
@@ -507,7 +672,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException {
         statement.setBlob(parameterIndex, inputStream, length);
-        bindParams.put(parameterIndex, inputStream);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, inputStream);
+        }
     }
 
     /**
@@ -516,7 +683,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
         statement.setBlob(parameterIndex, inputStream);
-        bindParams.put(parameterIndex, inputStream);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, inputStream);
+        }
     }
 
     /**
@@ -525,7 +694,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
         statement.setNClob(parameterIndex, value);
-        bindParams.put(parameterIndex, value);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, value);
+        }
     }
 
     /**
@@ -534,7 +705,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
         statement.setNClob(parameterIndex, reader, length);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -543,7 +716,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
         statement.setNClob(parameterIndex, reader);
-        bindParams.put(parameterIndex, reader);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, reader);
+        }
     }
 
     /**
@@ -552,7 +727,9 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
     @Override
     public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
         statement.setSQLXML(parameterIndex, xmlObject);
-        bindParams.put(parameterIndex, xmlObject);
+        if (captureBinds) {
+            bindParams.setObject(parameterIndex, xmlObject);
+        }
     }
 
     /**
@@ -600,14 +777,131 @@ public class LogPreparedStatement extends LogStatement implements PreparedStatem
      * @param msg the log message
      */
     private void logStatement(final String msg) {
-        if (LOGGER.isDebugEnabled()) {
-            StringBuilder buf = new StringBuilder(msg);
-            buf.append(sql);
-            if (!bindParams.isEmpty()) {
-                buf.append(" Bind parameters: ");
-                buf.append(bindParams);
-            }
-            LOGGER.debug(buf);
+        if (isTraced(LOGGER)) {
+            logStatement(LOGGER, msg, null, -1L);
         }
     }
+
+    /**
+     * Log a statement after it has executed, if it was slow.
+     *
+     * @param msg the log message
+     * @param start the time the execution started, in nanoseconds
+     */
+    private void logSlowStatement(final String msg, final long start) {
+        long elapsed = slowElapsed(LOGGER, sql, start);
+        if (elapsed >= 0L) {
+            logStatement(LOGGER, msg, null, elapsed);
+        }
+    }
+
+    /**
+     * Decide whether to log the statement before it is executed, and record
+     * bind parameters from now on only if debug logging is enabled or recent
+     * statements or the workload are recorded. When recording starts or stops
+     * the recorded bind parameters are discarded, and when it starts they are
+     * unknown until the parameters are cleared, as earlier parameters were
+     * not recorded.
+     *
+     * @param logger the logger
+     * @return whether to log the statement
+     */
+    boolean isTraced(final Logger logger) {
+        boolean debug = logger.isDebugEnabled();
+        boolean capture = debug || isRecording();
+        if (capture != captureBinds) {
+            clearBinds();
+            bindsUnknown = capture;
+            captureBinds = capture;
+        }
+        return debug && isTraced(logger, sql);
+    }
+
+    /**
+     * Discard the recorded bind parameters.
+     */
+    void clearBinds() {
+        bindParams.clear();
+    }
+
+    /**
+     * Get whether some bind parameters were set while they were not recorded,
+     * so the recorded bind parameters are incomplete.
+     *
+     * @return whether the bind parameters are unknown
+     */
+    boolean isBindsUnknown() {
+        return bindsUnknown;
+    }
+
+    /**
+     * Decide whether to log the statement after it has executed, because it
+     * was slow.
+     *
+     * @param logger the logger
+     * @param start the time the execution started, in nanoseconds
+     * @return the time the statement took, in nanoseconds, or -1 if it should
+     * not be logged
+     */
+    long slowElapsed(final Logger logger, final long start) {
+        return slowElapsed(logger, sql, start);
+    }
+
+    /**
+     * Log the statement asynchronously with its bind parameters.
+     *
+     * @param logger the logger
+     * @param msg the log message
+     * @param detail an object appended to the log message, or null
+     * @param elapsed the time the statement took, in nanoseconds, or -1 if
+     * it has not executed
+     */
+    void logStatement(final Logger logger, final String msg, final Object detail, final long elapsed) {
+        AsyncSqlLogger.getInstance().log(logger, msg, sql, getBindParameters(), detail, elapsed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    byte workloadFlags() {
+        return WorkloadRecorder.PREPARED;
+    }
+
+    /**
+     * Get whether bind parameters are recorded.
+     *
+     * @return whether bind parameters are recorded
+     */
+    boolean isCapturingBinds() {
+        return captureBinds;
+    }
+
+    /**
+     * Get the SQL of the statement.
+     *
+     * @return the SQL of the statement
+     */
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get the bind parameters by index.
+     *
+     * @return the bind parameters by index, or null if they are unknown
+     */
+    BindParameters getBindParameters() {
+        return bindsUnknown ? null : bindParams;
+    }
+
+    /**
+     * Get the statistics of the statement.
+     *
+     * @return the statistics of the statement, or null if metrics are not
+     * recorded
+     */
+    QueryStatistics getQueryStatistics() {
+        return statistics;
+    }
 }
@@ -0,0 +1,1644 @@
+/*
+ * @(#) LogResultSet.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+
+import net.chriswareham.da.QueryStatistics;
+
+/**
+ * This class provides a JDBC result set that counts the rows fetched from it.
+ * The count is added to the metrics of the statement that produced the
+ * result set when the last row has been read, or when the result set is
+ * closed, either directly or by closing or re-executing its statement.
+ */
+public class LogResultSet implements ResultSet {
+    /**
+     * The wrapped result set.
+     */
+    private final ResultSet resultSet;
+    /**
+     * The statement that produced the result set.
+     */
+    private final Statement statement;
+    /**
+     * The statistics of the statement that produced the result set.
+     */
+    private final QueryStatistics statistics;
+    /**
+     * The metrics.
+     */
+    private final JdbcMetrics metrics;
+    /**
+     * The number of rows fetched.
+     */
+    private long rows;
+    /**
+     * Whether the number of rows fetched has been recorded.
+     */
+    private boolean recorded;
+
+    /**
+     * Construct an instance of the result set.
+     *
+     * @param rs the wrapped result set
+     * @param s the statement that produced the result set
+     * @param qs the statistics of the statement that produced the result set
+     * @param m the metrics
+     */
+    public LogResultSet(final ResultSet rs, final Statement s, final QueryStatistics qs, final JdbcMetrics m) {
+        resultSet = rs;
+        statement = s;
+        statistics = qs;
+        metrics = m;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws SQLException {
+        if (resultSet.next()) {
+            ++rows;
+            return true;
+        }
+        recordRows();
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws SQLException {
+        recordRows();
+        resultSet.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean wasNull() throws SQLException {
+        return resultSet.wasNull();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getString(final int columnIndex) throws SQLException {
+        return resultSet.getString(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBoolean(final int columnIndex) throws SQLException {
+        return resultSet.getBoolean(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int columnIndex) throws SQLException {
+        return resultSet.getByte(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int columnIndex) throws SQLException {
+        return resultSet.getShort(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int columnIndex) throws SQLException {
+        return resultSet.getInt(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong(final int columnIndex) throws SQLException {
+        return resultSet.getLong(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getFloat(final int columnIndex) throws SQLException {
+        return resultSet.getFloat(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDouble(final int columnIndex) throws SQLException {
+        return resultSet.getDouble(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(final int columnIndex, final int scale) throws SQLException {
+        return resultSet.getBigDecimal(columnIndex, scale);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getBytes(final int columnIndex) throws SQLException {
+        return resultSet.getBytes(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate(final int columnIndex) throws SQLException {
+        return resultSet.getDate(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Time getTime(final int columnIndex) throws SQLException {
+        return resultSet.getTime(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Timestamp getTimestamp(final int columnIndex) throws SQLException {
+        return resultSet.getTimestamp(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getAsciiStream(final int columnIndex) throws SQLException {
+        return resultSet.getAsciiStream(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Deprecated
+    public InputStream getUnicodeStream(final int columnIndex) throws SQLException {
+        return resultSet.getUnicodeStream(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getBinaryStream(final int columnIndex) throws SQLException {
+        return resultSet.getBinaryStream(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getString(final String columnLabel) throws SQLException {
+        return resultSet.getString(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBoolean(final String columnLabel) throws SQLException {
+        return resultSet.getBoolean(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final String columnLabel) throws SQLException {
+        return resultSet.getByte(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final String columnLabel) throws SQLException {
+        return resultSet.getShort(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final String columnLabel) throws SQLException {
+        return resultSet.getInt(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong(final String columnLabel) throws SQLException {
+        return resultSet.getLong(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getFloat(final String columnLabel) throws SQLException {
+        return resultSet.getFloat(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDouble(final String columnLabel) throws SQLException {
+        return resultSet.getDouble(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(final String columnLabel, final int scale) throws SQLException {
+        return resultSet.getBigDecimal(columnLabel, scale);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getBytes(final String columnLabel) throws SQLException {
+        return resultSet.getBytes(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate(final String columnLabel) throws SQLException {
+        return resultSet.getDate(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Time getTime(final String columnLabel) throws SQLException {
+        return resultSet.getTime(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Timestamp getTimestamp(final String columnLabel) throws SQLException {
+        return resultSet.getTimestamp(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getAsciiStream(final String columnLabel) throws SQLException {
+        return resultSet.getAsciiStream(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Deprecated
+    public InputStream getUnicodeStream(final String columnLabel) throws SQLException {
+        return resultSet.getUnicodeStream(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getBinaryStream(final String columnLabel) throws SQLException {
+        return resultSet.getBinaryStream(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return resultSet.getWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearWarnings() throws SQLException {
+        resultSet.clearWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getCursorName() throws SQLException {
+        return resultSet.getCursorName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return resultSet.getMetaData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getObject(final int columnIndex) throws SQLException {
+        return resultSet.getObject(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getObject(final String columnLabel) throws SQLException {
+        return resultSet.getObject(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findColumn(final String columnLabel) throws SQLException {
+        return resultSet.findColumn(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reader getCharacterStream(final int columnIndex) throws SQLException {
+        return resultSet.getCharacterStream(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reader getCharacterStream(final String columnLabel) throws SQLException {
+        return resultSet.getCharacterStream(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BigDecimal getBigDecimal(final int columnIndex) throws SQLException {
+        return resultSet.getBigDecimal(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BigDecimal getBigDecimal(final String columnLabel) throws SQLException {
+        return resultSet.getBigDecimal(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return resultSet.isBeforeFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return resultSet.isAfterLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFirst() throws SQLException {
+        return resultSet.isFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLast() throws SQLException {
+        return resultSet.isLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws SQLException {
+        resultSet.beforeFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws SQLException {
+        resultSet.afterLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws SQLException {
+        return resultSet.first();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws SQLException {
+        return resultSet.last();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRow() throws SQLException {
+        return resultSet.getRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean absolute(final int row) throws SQLException {
+        return resultSet.absolute(row);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean relative(final int rows) throws SQLException {
+        return resultSet.relative(rows);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws SQLException {
+        return resultSet.previous();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        resultSet.setFetchDirection(direction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return resultSet.getFetchDirection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        resultSet.setFetchSize(rows);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFetchSize() throws SQLException {
+        return resultSet.getFetchSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getType() throws SQLException {
+        return resultSet.getType();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getConcurrency() throws SQLException {
+        return resultSet.getConcurrency();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return resultSet.rowUpdated();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return resultSet.rowInserted();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return resultSet.rowDeleted();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNull(final int columnIndex) throws SQLException {
+        resultSet.updateNull(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBoolean(final int columnIndex, final boolean x) throws SQLException {
+        resultSet.updateBoolean(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateByte(final int columnIndex, final byte x) throws SQLException {
+        resultSet.updateByte(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateShort(final int columnIndex, final short x) throws SQLException {
+        resultSet.updateShort(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateInt(final int columnIndex, final int x) throws SQLException {
+        resultSet.updateInt(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateLong(final int columnIndex, final long x) throws SQLException {
+        resultSet.updateLong(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateFloat(final int columnIndex, final float x) throws SQLException {
+        resultSet.updateFloat(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDouble(final int columnIndex, final double x) throws SQLException {
+        resultSet.updateDouble(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBigDecimal(final int columnIndex, final BigDecimal x) throws SQLException {
+        resultSet.updateBigDecimal(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateString(final int columnIndex, final String x) throws SQLException {
+        resultSet.updateString(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBytes(final int columnIndex, final byte[] x) throws SQLException {
+        resultSet.updateBytes(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDate(final int columnIndex, final Date x) throws SQLException {
+        resultSet.updateDate(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateTime(final int columnIndex, final Time x) throws SQLException {
+        resultSet.updateTime(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateTimestamp(final int columnIndex, final Timestamp x) throws SQLException {
+        resultSet.updateTimestamp(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x, final int length) throws SQLException {
+        resultSet.updateAsciiStream(columnIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x, final int length) throws SQLException {
+        resultSet.updateBinaryStream(columnIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader, final int length) throws SQLException {
+        resultSet.updateCharacterStream(columnIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateObject(final int columnIndex, final Object x, final int scaleOrLength) throws SQLException {
+        resultSet.updateObject(columnIndex, x, scaleOrLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateObject(final int columnIndex, final Object x) throws SQLException {
+        resultSet.updateObject(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNull(final String columnLabel) throws SQLException {
+        resultSet.updateNull(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBoolean(final String columnLabel, final boolean x) throws SQLException {
+        resultSet.updateBoolean(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateByte(final String columnLabel, final byte x) throws SQLException {
+        resultSet.updateByte(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateShort(final String columnLabel, final short x) throws SQLException {
+        resultSet.updateShort(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateInt(final String columnLabel, final int x) throws SQLException {
+        resultSet.updateInt(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateLong(final String columnLabel, final long x) throws SQLException {
+        resultSet.updateLong(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateFloat(final String columnLabel, final float x) throws SQLException {
+        resultSet.updateFloat(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDouble(final String columnLabel, final double x) throws SQLException {
+        resultSet.updateDouble(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBigDecimal(final String columnLabel, final BigDecimal x) throws SQLException {
+        resultSet.updateBigDecimal(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateString(final String columnLabel, final String x) throws SQLException {
+        resultSet.updateString(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBytes(final String columnLabel, final byte[] x) throws SQLException {
+        resultSet.updateBytes(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDate(final String columnLabel, final Date x) throws SQLException {
+        resultSet.updateDate(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateTime(final String columnLabel, final Time x) throws SQLException {
+        resultSet.updateTime(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateTimestamp(final String columnLabel, final Timestamp x) throws SQLException {
+        resultSet.updateTimestamp(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x, final int length) throws SQLException {
+        resultSet.updateAsciiStream(columnLabel, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x, final int length) throws SQLException {
+        resultSet.updateBinaryStream(columnLabel, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader, final int length) throws SQLException {
+        resultSet.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateObject(final String columnLabel, final Object x, final int scaleOrLength) throws SQLException {
+        resultSet.updateObject(columnLabel, x, scaleOrLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateObject(final String columnLabel, final Object x) throws SQLException {
+        resultSet.updateObject(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertRow() throws SQLException {
+        resultSet.insertRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateRow() throws SQLException {
+        resultSet.updateRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteRow() throws SQLException {
+        resultSet.deleteRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void refreshRow() throws SQLException {
+        resultSet.refreshRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        resultSet.cancelRowUpdates();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        resultSet.moveToInsertRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        resultSet.moveToCurrentRow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getObject(final int columnIndex, final Map<String, Class<?>> map) throws SQLException {
+        return resultSet.getObject(columnIndex, map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ref getRef(final int columnIndex) throws SQLException {
+        return resultSet.getRef(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Blob getBlob(final int columnIndex) throws SQLException {
+        return resultSet.getBlob(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Clob getClob(final int columnIndex) throws SQLException {
+        return resultSet.getClob(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Array getArray(final int columnIndex) throws SQLException {
+        return resultSet.getArray(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getObject(final String columnLabel, final Map<String, Class<?>> map) throws SQLException {
+        return resultSet.getObject(columnLabel, map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ref getRef(final String columnLabel) throws SQLException {
+        return resultSet.getRef(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Blob getBlob(final String columnLabel) throws SQLException {
+        return resultSet.getBlob(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Clob getClob(final String columnLabel) throws SQLException {
+        return resultSet.getClob(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Array getArray(final String columnLabel) throws SQLException {
+        return resultSet.getArray(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate(final int columnIndex, final Calendar cal) throws SQLException {
+        return resultSet.getDate(columnIndex, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate(final String columnLabel, final Calendar cal) throws SQLException {
+        return resultSet.getDate(columnLabel, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Time getTime(final int columnIndex, final Calendar cal) throws SQLException {
+        return resultSet.getTime(columnIndex, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Time getTime(final String columnLabel, final Calendar cal) throws SQLException {
+        return resultSet.getTime(columnLabel, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Timestamp getTimestamp(final int columnIndex, final Calendar cal) throws SQLException {
+        return resultSet.getTimestamp(columnIndex, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Timestamp getTimestamp(final String columnLabel, final Calendar cal) throws SQLException {
+        return resultSet.getTimestamp(columnLabel, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public URL getURL(final int columnIndex) throws SQLException {
+        return resultSet.getURL(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public URL getURL(final String columnLabel) throws SQLException {
+        return resultSet.getURL(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateRef(final int columnIndex, final Ref x) throws SQLException {
+        resultSet.updateRef(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateRef(final String columnLabel, final Ref x) throws SQLException {
+        resultSet.updateRef(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final Blob x) throws SQLException {
+        resultSet.updateBlob(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final Blob x) throws SQLException {
+        resultSet.updateBlob(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Clob x) throws SQLException {
+        resultSet.updateClob(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Clob x) throws SQLException {
+        resultSet.updateClob(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateArray(final int columnIndex, final Array x) throws SQLException {
+        resultSet.updateArray(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateArray(final String columnLabel, final Array x) throws SQLException {
+        resultSet.updateArray(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RowId getRowId(final int columnIndex) throws SQLException {
+        return resultSet.getRowId(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RowId getRowId(final String columnLabel) throws SQLException {
+        return resultSet.getRowId(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateRowId(final int columnIndex, final RowId x) throws SQLException {
+        resultSet.updateRowId(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateRowId(final String columnLabel, final RowId x) throws SQLException {
+        resultSet.updateRowId(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHoldability() throws SQLException {
+        return resultSet.getHoldability();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed() throws SQLException {
+        return resultSet.isClosed();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNString(final int columnIndex, final String x) throws SQLException {
+        resultSet.updateNString(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNString(final String columnLabel, final String x) throws SQLException {
+        resultSet.updateNString(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final NClob x) throws SQLException {
+        resultSet.updateNClob(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final NClob x) throws SQLException {
+        resultSet.updateNClob(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NClob getNClob(final int columnIndex) throws SQLException {
+        return resultSet.getNClob(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NClob getNClob(final String columnLabel) throws SQLException {
+        return resultSet.getNClob(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLXML getSQLXML(final int columnIndex) throws SQLException {
+        return resultSet.getSQLXML(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLXML getSQLXML(final String columnLabel) throws SQLException {
+        return resultSet.getSQLXML(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateSQLXML(final int columnIndex, final SQLXML x) throws SQLException {
+        resultSet.updateSQLXML(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateSQLXML(final String columnLabel, final SQLXML x) throws SQLException {
+        resultSet.updateSQLXML(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getNString(final int columnIndex) throws SQLException {
+        return resultSet.getNString(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getNString(final String columnLabel) throws SQLException {
+        return resultSet.getNString(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reader getNCharacterStream(final int columnIndex) throws SQLException {
+        return resultSet.getNCharacterStream(columnIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reader getNCharacterStream(final String columnLabel) throws SQLException {
+        return resultSet.getNCharacterStream(columnLabel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        resultSet.updateNCharacterStream(columnIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        resultSet.updateNCharacterStream(columnLabel, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x, final long length) throws SQLException {
+        resultSet.updateAsciiStream(columnIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x, final long length) throws SQLException {
+        resultSet.updateBinaryStream(columnIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        resultSet.updateCharacterStream(columnIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x, final long length) throws SQLException {
+        resultSet.updateAsciiStream(columnLabel, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x, final long length) throws SQLException {
+        resultSet.updateBinaryStream(columnLabel, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        resultSet.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream x, final long length) throws SQLException {
+        resultSet.updateBlob(columnIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream x, final long length) throws SQLException {
+        resultSet.updateBlob(columnLabel, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        resultSet.updateClob(columnIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        resultSet.updateClob(columnLabel, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final Reader reader, final long length) throws SQLException {
+        resultSet.updateNClob(columnIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final Reader reader, final long length) throws SQLException {
+        resultSet.updateNClob(columnLabel, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNCharacterStream(final int columnIndex, final Reader reader) throws SQLException {
+        resultSet.updateNCharacterStream(columnIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNCharacterStream(final String columnLabel, final Reader reader) throws SQLException {
+        resultSet.updateNCharacterStream(columnLabel, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final int columnIndex, final InputStream x) throws SQLException {
+        resultSet.updateAsciiStream(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final int columnIndex, final InputStream x) throws SQLException {
+        resultSet.updateBinaryStream(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final int columnIndex, final Reader reader) throws SQLException {
+        resultSet.updateCharacterStream(columnIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateAsciiStream(final String columnLabel, final InputStream x) throws SQLException {
+        resultSet.updateAsciiStream(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBinaryStream(final String columnLabel, final InputStream x) throws SQLException {
+        resultSet.updateBinaryStream(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateCharacterStream(final String columnLabel, final Reader reader) throws SQLException {
+        resultSet.updateCharacterStream(columnLabel, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final int columnIndex, final InputStream x) throws SQLException {
+        resultSet.updateBlob(columnIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateBlob(final String columnLabel, final InputStream x) throws SQLException {
+        resultSet.updateBlob(columnLabel, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final int columnIndex, final Reader reader) throws SQLException {
+        resultSet.updateClob(columnIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateClob(final String columnLabel, final Reader reader) throws SQLException {
+        resultSet.updateClob(columnLabel, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final int columnIndex, final Reader reader) throws SQLException {
+        resultSet.updateNClob(columnIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateNClob(final String columnLabel, final Reader reader) throws SQLException {
+        resultSet.updateNClob(columnLabel, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T getObject(final int columnIndex, final Class<T> type) throws SQLException {
+        return resultSet.getObject(columnIndex, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T getObject(final String columnLabel, final Class<T> type) throws SQLException {
+        return resultSet.getObject(columnLabel, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isAssignableFrom(resultSet.getClass());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isAssignableFrom(resultSet.getClass())) {
+            return (T) resultSet;
+        }
+        if (isWrapperFor(iface)) {
+            return resultSet.unwrap(iface);
+        }
+        throw new SQLException(getClass().getName() + " is not a wrapper for " + iface);
+    }
+
+    /**
+     * Get whether this wraps a result set.
+     *
+     * @param rs the result set
+     * @return whether this wraps the result set
+     */
+    boolean wraps(final ResultSet rs) {
+        return resultSet == rs;
+    }
+
+    /**
+     * Record the number of rows fetched, if it has not already been recorded.
+     */
+    void recordRows() {
+        if (!recorded) {
+            recorded = true;
+            metrics.recordRows(statistics, rows);
+        }
+    }
+}
@@ -14,14 +14,25 @@ import java.sql.Statement;
 
 import org.apache.log4j.Logger;
 
+import net.chriswareham.da.QueryStatistics;
+
 /**
- * This class provides a logging JDBC statement.
+ * This class provides a logging JDBC statement. If metrics are recorded, the
+ * execution time, update counts and errors of each statement are recorded,
+ * and result sets are wrapped to count the rows fetched from them. If a
+ * recorder is set, each execution is added to its ring buffer of recent
+ * statements. If the connection is a logging connection that records its
+ * workload, each execution is written to the workload log before it starts.
  */
 public class LogStatement implements Statement {
     /**
      * The logger.
      */
     private static final Logger LOGGER = Logger.getLogger(LogStatement.class);
+    /**
+     * The key of the statistics of batches of unprepared statements.
+     */
+    private static final String BATCH_STATEMENTS = "(batch)";
 
     /**
      * The wrapped statement.
@@ -31,6 +42,32 @@ public class LogStatement implements Statement {
      * The connection.
      */
     private final Connection connection;
+    /**
+     * The metrics, or null if metrics are not recorded.
+     */
+    private final JdbcMetrics metrics;
+    /**
+     * The tracer that decides which statements are logged, or null if every
+     * statement is logged.
+     */
+    private final StatementTracer tracer;
+    /**
+     * The recorder of recent statements, or null if statements are not
+     * recorded.
+     */
+    private final StatementRecorder recorder;
+    /**
+     * The last result set wrapped to count its rows, or null.
+     */
+    private LogResultSet openResultSet;
+    /**
+     * The statistics of the last statement executed, or null.
+     */
+    private QueryStatistics lastStatistics;
+    /**
+     * The number of statements added to the current batch.
+     */
+    private int batchSize;
 
     /**
      * Construct an instance of the logging JDBC statement.
@@ -39,8 +76,23 @@ public class LogStatement implements Statement {
      * @param c the connection
      */
     public LogStatement(final Statement s, final Connection c) {
+        this(s, c, new LogConfig());
+    }
+
+    /**
+     * Construct an instance of the logging JDBC statement.
+     *
+     * @param s the wrapped statement
+     * @param c the connection
+     * @param cfg the configuration, which is read when the statement is
+     * constructed
+     */
+    public LogStatement(final Statement s, final Connection c, final LogConfig cfg) {
         statement = s;
         connection = c;
+        metrics = cfg.getMetrics();
+        tracer = cfg.getTracer();
+        recorder = cfg.getRecorder();
     }
 
     /**
@@ -48,10 +100,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean execute(final String sql) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            boolean result = statement.execute(sql);
+            executed(s, sql, null, start, -1L);
+            logSlowStatement("Executing: ", sql, start);
+            return result;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.execute(sql);
     }
 
     /**
@@ -59,10 +122,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            boolean result = statement.execute(sql, autoGeneratedKeys);
+            executed(s, sql, null, start, -1L);
+            logSlowStatement("Executing: ", sql, start);
+            return result;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.execute(sql, autoGeneratedKeys);
     }
 
     /**
@@ -70,10 +144,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            boolean result = statement.execute(sql, columnIndexes);
+            executed(s, sql, null, start, -1L);
+            logSlowStatement("Executing: ", sql, start);
+            return result;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.execute(sql, columnIndexes);
     }
 
     /**
@@ -81,10 +166,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean execute(final String sql, final String[] columnNames) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            boolean result = statement.execute(sql, columnNames);
+            executed(s, sql, null, start, -1L);
+            logSlowStatement("Executing: ", sql, start);
+            return result;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.execute(sql, columnNames);
     }
 
     /**
@@ -92,10 +188,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public ResultSet executeQuery(final String sql) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing query: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing query: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.QUERY, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            ResultSet resultSet = statement.executeQuery(sql);
+            executed(s, sql, null, start, -1L);
+            logSlowStatement("Executing query: ", sql, start);
+            return wrap(s, resultSet);
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.executeQuery(sql);
     }
 
     /**
@@ -103,10 +210,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public int executeUpdate(final String sql) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing update: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing update: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.UPDATE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate(sql);
+            executed(s, sql, null, start, updated);
+            logSlowStatement("Executing update: ", sql, start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.executeUpdate(sql);
     }
 
     /**
@@ -114,10 +232,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing update: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing update: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.UPDATE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate(sql, autoGeneratedKeys);
+            executed(s, sql, null, start, updated);
+            logSlowStatement("Executing update: ", sql, start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.executeUpdate(sql, autoGeneratedKeys);
     }
 
     /**
@@ -125,10 +254,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing update: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing update: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.UPDATE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate(sql, columnIndexes);
+            executed(s, sql, null, start, updated);
+            logSlowStatement("Executing update: ", sql, start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.executeUpdate(sql, columnIndexes);
     }
 
     /**
@@ -136,10 +276,21 @@ public class LogStatement implements Statement {
      */
     @Override
     public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Executing update: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing update: ", sql, null, null);
+        }
+        recordWorkload(WorkloadRecorder.UPDATE, sql, null);
+        QueryStatistics s = statistics(sql);
+        long start = startTimer();
+        try {
+            int updated = statement.executeUpdate(sql, columnNames);
+            executed(s, sql, null, start, updated);
+            logSlowStatement("Executing update: ", sql, start);
+            return updated;
+        } catch (SQLException exception) {
+            failed(s, sql, null, start);
+            throw exception;
         }
-        return statement.executeUpdate(sql, columnNames);
     }
 
     /**
@@ -147,10 +298,12 @@ public class LogStatement implements Statement {
      */
     @Override
     public void addBatch(final String sql) throws SQLException {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Adding to batch: " + sql);
+        if (isTraced(LOGGER, sql)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Adding to batch: ", sql, null, null);
         }
+        recordWorkload(WorkloadRecorder.ADD_BATCH, sql, null);
         statement.addBatch(sql);
+        addedBatch();
     }
 
     /**
@@ -158,8 +311,20 @@ public class LogStatement implements Statement {
      */
     @Override
     public int[] executeBatch() throws SQLException {
-        LOGGER.debug("Executing batch");
-        return statement.executeBatch();
+        if (isTraced(LOGGER, null)) {
+            AsyncSqlLogger.getInstance().log(LOGGER, "Executing batch");
+        }
+        recordWorkload(WorkloadRecorder.EXECUTE_BATCH, null, null);
+        QueryStatistics s = metrics != null ? metrics.getStatistics(BATCH_STATEMENTS) : null;
+        long start = startTimer();
+        try {
+            int[] counts = executedBatch(s, BATCH_STATEMENTS, start, statement.executeBatch());
+            logSlowStatement("Executing batch", null, start);
+            return counts;
+        } catch (SQLException exception) {
+            failedBatch(s, BATCH_STATEMENTS, start);
+            throw exception;
+        }
     }
 
     /**
@@ -168,6 +333,7 @@ public class LogStatement implements Statement {
     @Override
     public void clearBatch() throws SQLException {
         statement.clearBatch();
+        batchSize = 0;
     }
 
     /**
@@ -175,6 +341,7 @@ public class LogStatement implements Statement {
      */
     @Override
     public void close() throws SQLException {
+        closedResultSet();
         statement.close();
     }
 
@@ -271,7 +438,7 @@ public class LogStatement implements Statement {
      */
     @Override
     public ResultSet getResultSet() throws SQLException {
-        return statement.getResultSet();
+        return wrap(lastStatistics, statement.getResultSet());
     }
 
     /**
@@ -287,6 +454,7 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean getMoreResults() throws SQLException {
+        closedResultSet();
         return statement.getMoreResults();
     }
 
@@ -295,6 +463,9 @@ public class LogStatement implements Statement {
      */
     @Override
     public boolean getMoreResults(final int current) throws SQLException {
+        if (current != KEEP_CURRENT_RESULT) {
+            closedResultSet();
+        }
         return statement.getMoreResults(current);
     }
 
@@ -411,6 +582,235 @@ public class LogStatement implements Statement {
         return statement.isCloseOnCompletion();
     }
 
+    /**
+     * Get the statistics of a statement.
+     *
+     * @param sql the SQL of the statement
+     * @return the statistics of the statement, or null if metrics are not
+     * recorded
+     */
+    QueryStatistics statistics(final String sql) {
+        return metrics != null ? metrics.getStatistics(sql) : null;
+    }
+
+    /**
+     * Get the time an execution started.
+     *
+     * @return the time an execution started, in nanoseconds, or zero if
+     * no metrics, recent statements or slow statements are recorded
+     */
+    long startTimer() {
+        return metrics != null || recorder != null || tracer != null && tracer.isDeferred() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record a successful execution.
+     *
+     * @param s the statistics of the statement, or null if metrics are not
+     * recorded
+     * @param sql the SQL of the statement
+     * @param binds the bind parameters of the statement, or null
+     * @param start the time the execution started, in nanoseconds
+     * @param rows the number of rows updated, or -1 if unknown
+     */
+    void executed(final QueryStatistics s, final String sql, final BindParameters binds, final long start, final long rows) {
+        if (s == null && recorder == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (s != null) {
+            s.record(elapsed, Math.max(rows, 0L));
+            lastStatistics = s;
+        }
+        if (recorder != null) {
+            recorder.record(recorder.intern(sql), binds, elapsed, rows, false);
+        }
+    }
+
+    /**
+     * Record a successful execution of a batch.
+     *
+     * @param s the statistics of the statement, or null if metrics are not
+     * recorded
+     * @param sql the SQL of the statement
+     * @param start the time the execution started, in nanoseconds
+     * @param counts the update counts of the batch
+     * @return the update counts of the batch
+     */
+    int[] executedBatch(final QueryStatistics s, final String sql, final long start, final int[] counts) {
+        if (s != null || recorder != null) {
+            long rows = 0L;
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+            executed(s, sql, null, start, rows);
+        }
+        if (s != null) {
+            metrics.recordBatch(batchSize);
+        }
+        batchSize = 0;
+        return counts;
+    }
+
+    /**
+     * Record a failed execution.
+     *
+     * @param s the statistics of the statement, or null if metrics are not
+     * recorded
+     * @param sql the SQL of the statement
+     * @param binds the bind parameters of the statement, or null
+     * @param start the time the execution started, in nanoseconds
+     */
+    void failed(final QueryStatistics s, final String sql, final BindParameters binds, final long start) {
+        if (s != null) {
+            s.recordError();
+        }
+        if (recorder != null) {
+            recorder.record(recorder.intern(sql), binds, System.nanoTime() - start, -1L, true);
+        }
+    }
+
+    /**
+     * Record a failed execution of a batch.
+     *
+     * @param s the statistics of the statement, or null if metrics are not
+     * recorded
+     * @param sql the SQL of the statement
+     * @param start the time the execution started, in nanoseconds
+     */
+    void failedBatch(final QueryStatistics s, final String sql, final long start) {
+        failed(s, sql, null, start);
+        batchSize = 0;
+    }
+
+    /**
+     * Record that a statement was added to the current batch.
+     */
+    void addedBatch() {
+        ++batchSize;
+    }
+
+    /**
+     * Wrap a result set to count the rows fetched from it. As a statement has
+     * a single open result set, the rows fetched from the previous result set
+     * are recorded, unless it is the same result set.
+     *
+     * @param s the statistics of the statement that produced the result set,
+     * or null if metrics are not recorded
+     * @param resultSet the result set, or null
+     * @return the wrapped result set, or the result set if metrics are not
+     * recorded
+     */
+    ResultSet wrap(final QueryStatistics s, final ResultSet resultSet) {
+        if (s == null || resultSet == null) {
+            return resultSet;
+        }
+        if (openResultSet != null && openResultSet.wraps(resultSet)) {
+            return openResultSet;
+        }
+        closedResultSet();
+        openResultSet = new LogResultSet(resultSet, this, s, metrics);
+        return openResultSet;
+    }
+
+    /**
+     * Record the rows fetched from the last wrapped result set, which has been
+     * or is about to be closed by the statement.
+     */
+    private void closedResultSet() {
+        if (openResultSet != null) {
+            openResultSet.recordRows();
+            openResultSet = null;
+        }
+    }
+
+    /**
+     * Decide whether to log a statement before it is executed.
+     *
+     * @param logger the logger
+     * @param sql the SQL of the statement, or null if the message is not for
+     * a single statement
+     * @return whether to log the statement
+     */
+    boolean isTraced(final Logger logger, final String sql) {
+        return logger.isDebugEnabled() && (tracer == null || !tracer.isDeferred() && tracer.trace(sql));
+    }
+
+    /**
+     * Decide whether to log a statement after it has executed, because it
+     * was slow.
+     *
+     * @param logger the logger
+     * @param sql the SQL of the statement, or null if the message is not for
+     * a single statement
+     * @param start the time the execution started, in nanoseconds
+     * @return the time the statement took, in nanoseconds, or -1 if it should
+     * not be logged
+     */
+    long slowElapsed(final Logger logger, final String sql, final long start) {
+        if (tracer == null || !tracer.isDeferred() || !logger.isDebugEnabled()) {
+            return -1L;
+        }
+        long elapsed = System.nanoTime() - start;
+        return tracer.traceSlow(sql, elapsed) ? elapsed : -1L;
+    }
+
+    /**
+     * Log a statement after it has executed, if it was slow.
+     *
+     * @param msg the log message
+     * @param sql the SQL of the statement, or null
+     * @param start the time the execution started, in nanoseconds
+     */
+    private void logSlowStatement(final String msg, final String sql, final long start) {
+        long elapsed = slowElapsed(LOGGER, sql, start);
+        if (elapsed >= 0L) {
+            AsyncSqlLogger.getInstance().log(LOGGER, msg, sql, null, null, elapsed);
+        }
+    }
+
+    /**
+     * Get whether recent statements or the workload are recorded, so that
+     * bind parameters are needed.
+     *
+     * @return whether recent statements or the workload are recorded
+     */
+    boolean isRecording() {
+        return recorder != null || connection instanceof LogConnection && ((LogConnection) connection).isRecordingWorkload();
+    }
+
+    /**
+     * Record a statement event in the workload of the connection, if it is a
+     * logging connection that records its workload.
+     *
+     * @param event the event, without the statement flags
+     * @param sql the SQL of the statement, or null
+     * @param binds the bind parameters of the statement, or null
+     */
+    void recordWorkload(final byte event, final String sql, final BindParameters binds) {
+        if (connection instanceof LogConnection) {
+            ((LogConnection) connection).recordWorkload((byte) (event | workloadFlags()), sql, binds);
+        }
+    }
+
+    /**
+     * Get the flags that identify the kind of statement in the workload.
+     *
+     * @return the flags that identify the kind of statement
+     */
+    byte workloadFlags() {
+        return 0;
+    }
+
+    /**
+     * Get the metrics.
+     *
+     * @return the metrics, or null if metrics are not recorded
+     */
+    JdbcMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
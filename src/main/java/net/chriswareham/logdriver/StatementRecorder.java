@@ -0,0 +1,398 @@
+/*
+ * @(#) StatementRecorder.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class records the most recent statements executed through the
+ * logging wrappers, with their bind parameters, thread, duration and row
+ * count, in a fixed size ring buffer of pre-allocated slots, so that they
+ * can be dumped after an incident without logging every statement.
+ * <p>
+ * Recording a statement claims the next slot with a single atomic
+ * increment, and guards the slot with a version that is odd while it is
+ * being written, so neither recording nor dumping takes a lock. A statement
+ * whose slot is still being written by a thread that has lapped the ring is
+ * dropped rather than waited for. SQL text is interned, so the ring holds
+ * references to shared strings rather than copies.
+ * <p>
+ * Each named instance is registered with the platform MBean server, whose
+ * dump operations return or log the recorded statements. A dump can also be
+ * triggered by creating a trigger file, which is checked once a second and
+ * deleted after the dump is written.
+ */
+public class StatementRecorder implements StatementRecorderMBean {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(StatementRecorder.class);
+    /**
+     * The default number of statements held.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    /**
+     * The maximum number of distinct SQL strings interned.
+     */
+    private static final int MAX_INTERNED = 10000;
+    /**
+     * The number of milliseconds between checks for the trigger file.
+     */
+    private static final long TRIGGER_PERIOD = 1000L;
+    /**
+     * The instances, keyed on name.
+     */
+    private static final ConcurrentMap<String, StatementRecorder> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * The name.
+     */
+    private final String name;
+    /**
+     * The slots of the ring buffer.
+     */
+    private final Entry[] entries;
+    /**
+     * The version of each slot, which is odd while the slot is being
+     * written.
+     */
+    private final AtomicLongArray versions;
+    /**
+     * The mask that maps a position to a slot.
+     */
+    private final int mask;
+    /**
+     * The next position to be written.
+     */
+    private final AtomicLong next = new AtomicLong();
+    /**
+     * The number of dropped statements.
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * The interned SQL strings.
+     */
+    private final ConcurrentMap<String, String> interned = new ConcurrentHashMap<>();
+    /**
+     * The path of the trigger file, or null if there is none.
+     */
+    private String triggerFile;
+    /**
+     * The executor that checks for the trigger file.
+     */
+    private ScheduledExecutorService triggerExecutor;
+
+    /**
+     * Construct an instance of the recorder.
+     *
+     * @param n the name
+     * @param capacity the number of statements held, which is rounded up to a
+     * power of two
+     */
+    StatementRecorder(final String n, final int capacity) {
+        name = n;
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        entries = new Entry[size];
+        versions = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            entries[i] = new Entry();
+        }
+    }
+
+    /**
+     * Get the recorder with a name, creating and registering it with the
+     * platform MBean server if necessary.
+     *
+     * @param name the name
+     * @param capacity the number of statements held, if the recorder is
+     * created
+     * @return the recorder
+     */
+    public static StatementRecorder getInstance(final String name, final int capacity) {
+        StatementRecorder recorder = INSTANCES.get(name);
+        if (recorder == null) {
+            recorder = INSTANCES.computeIfAbsent(name, n -> {
+                StatementRecorder r = new StatementRecorder(n, capacity);
+                r.register();
+                return r;
+            });
+        }
+        return recorder;
+    }
+
+    /**
+     * Get the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Intern the SQL of a statement, so that recorded statements share a
+     * single copy of it.
+     *
+     * @param sql the SQL
+     * @return the interned SQL
+     */
+    String intern(final String sql) {
+        String s = interned.get(sql);
+        if (s == null) {
+            if (interned.size() >= MAX_INTERNED) {
+                return sql;
+            }
+            s = interned.putIfAbsent(sql, sql);
+            if (s == null) {
+                s = sql;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Record an executed statement.
+     *
+     * @param sql the interned SQL of the statement
+     * @param binds the bind parameters, which are copied, or null
+     * @param elapsed the time the statement took, in nanoseconds
+     * @param rows the number of rows updated, or -1 if unknown
+     * @param failed whether the statement failed
+     */
+    void record(final String sql, final BindParameters binds, final long elapsed, final long rows, final boolean failed) {
+        long position = next.getAndIncrement();
+        int index = (int) position & mask;
+        long version = versions.get(index);
+        if ((version & 1L) != 0L || !versions.compareAndSet(index, version, version + 1L)) {
+            dropped.increment();
+            return;
+        }
+
+        Entry entry = entries[index];
+        entry.position = position;
+        entry.timestamp = System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.sql = sql;
+        entry.binds.copyFrom(binds);
+        entry.elapsed = elapsed;
+        entry.rows = rows;
+        entry.failed = failed;
+        versions.set(index, version + 2L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRecordedCount() {
+        return next.get() - dropped.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String getTriggerFile() {
+        return triggerFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setTriggerFile(final String tf) {
+        triggerFile = tf;
+        if (tf != null && triggerExecutor == null) {
+            triggerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StatementRecorder-trigger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            triggerExecutor.scheduleWithFixedDelay(this::checkTrigger, TRIGGER_PERIOD, TRIGGER_PERIOD, TimeUnit.MILLISECONDS);
+        } else if (tf == null && triggerExecutor != null) {
+            triggerExecutor.shutdownNow();
+            triggerExecutor = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dump() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder sb = new StringBuilder();
+        Entry snapshot = new Entry();
+        long end = next.get();
+        for (long position = Math.max(end - entries.length, 0L); position < end; ++position) {
+            if (read(position, snapshot)) {
+                sb.append(dateFormat.format(new Date(snapshot.timestamp)));
+                sb.append(" [").append(snapshot.thread).append("] ");
+                sb.append(String.format("%.3fms", snapshot.elapsed / 1000000.0));
+                if (snapshot.rows >= 0L) {
+                    sb.append(" rows:[").append(snapshot.rows).append(']');
+                }
+                if (snapshot.failed) {
+                    sb.append(" FAILED");
+                }
+                sb.append(' ').append(snapshot.sql);
+                if (!snapshot.binds.isEmpty()) {
+                    sb.append(" Bind parameters: ");
+                    snapshot.binds.appendTo(sb);
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dumpToLog() {
+        LOGGER.info("Recent statements for " + name + ":\n" + dump());
+    }
+
+    /**
+     * Copy a recorded statement, if it is still in the ring buffer and not
+     * being written.
+     *
+     * @param position the position of the statement
+     * @param snapshot the entry to copy the statement into
+     * @return whether the statement was copied
+     */
+    private boolean read(final long position, final Entry snapshot) {
+        int index = (int) position & mask;
+        long version = versions.get(index);
+        if ((version & 1L) != 0L) {
+            return false;
+        }
+        Entry entry = entries[index];
+        try {
+            snapshot.position = entry.position;
+            snapshot.timestamp = entry.timestamp;
+            snapshot.thread = entry.thread;
+            snapshot.sql = entry.sql;
+            snapshot.binds.copyFrom(entry.binds);
+            snapshot.elapsed = entry.elapsed;
+            snapshot.rows = entry.rows;
+            snapshot.failed = entry.failed;
+        } catch (RuntimeException exception) {
+            // the bind parameters were resized while being copied
+            return false;
+        }
+        // an atomic update rather than a read, so the copies above cannot be
+        // reordered after the version check
+        return versions.getAndAdd(index, 0L) == version && snapshot.position == position;
+    }
+
+    /**
+     * Dump the recorded statements to the log if the trigger file exists,
+     * and delete it.
+     */
+    private void checkTrigger() {
+        String path = getTriggerFile();
+        if (path == null) {
+            return;
+        }
+        File file = new File(path);
+        if (file.exists()) {
+            try {
+                dumpToLog();
+            } catch (RuntimeException exception) {
+                LOGGER.warn("Couldn't dump recent statements", exception);
+            }
+            if (!file.delete()) {
+                LOGGER.warn("Couldn't delete trigger file " + path);
+            }
+        }
+    }
+
+    /**
+     * Register the recorder with the platform MBean server.
+     */
+    private void register() {
+        try {
+            ObjectName objectName = new ObjectName("net.chriswareham.logdriver:type=StatementRecorder,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException exception) {
+            LOGGER.warn("Couldn't register statement recorder " + name, exception);
+        }
+    }
+
+    /**
+     * This class provides a slot of the ring buffer.
+     */
+    private static final class Entry {
+        /**
+         * The position of the statement.
+         */
+        private long position = -1L;
+        /**
+         * The time the statement finished, in milliseconds since the epoch.
+         */
+        private long timestamp;
+        /**
+         * The name of the thread that executed the statement.
+         */
+        private String thread;
+        /**
+         * The interned SQL of the statement.
+         */
+        private String sql;
+        /**
+         * The bind parameters.
+         */
+        private final BindParameters binds = new BindParameters();
+        /**
+         * The time the statement took, in nanoseconds.
+         */
+        private long elapsed;
+        /**
+         * The number of rows updated, or -1 if unknown.
+         */
+        private long rows;
+        /**
+         * Whether the statement failed.
+         */
+        private boolean failed;
+    }
+}
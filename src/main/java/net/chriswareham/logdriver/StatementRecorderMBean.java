@@ -0,0 +1,61 @@
+/*
+ * @(#) StatementRecorderMBean.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+/**
+ * This interface is implemented by managed statement recorders.
+ */
+public interface StatementRecorderMBean {
+    /**
+     * Get the number of statements the recorder holds.
+     *
+     * @return the number of statements the recorder holds
+     */
+    int getCapacity();
+
+    /**
+     * Get the number of statements recorded.
+     *
+     * @return the number of statements recorded
+     */
+    long getRecordedCount();
+
+    /**
+     * Get the number of statements not recorded because their slot was still
+     * being written by another thread.
+     *
+     * @return the number of statements not recorded
+     */
+    long getDroppedCount();
+
+    /**
+     * Get the path of the file whose creation triggers a dump to the log.
+     *
+     * @return the path of the trigger file, or null if there is none
+     */
+    String getTriggerFile();
+
+    /**
+     * Set the path of the file whose creation triggers a dump to the log. The
+     * file is deleted once the dump has been written.
+     *
+     * @param tf the path of the trigger file, or null for none
+     */
+    void setTriggerFile(String tf);
+
+    /**
+     * Dump the recorded statements, oldest first.
+     *
+     * @return the recorded statements, one per line
+     */
+    String dump();
+
+    /**
+     * Write the recorded statements to the log, oldest first.
+     */
+    void dumpToLog();
+}
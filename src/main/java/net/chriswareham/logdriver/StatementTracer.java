@@ -0,0 +1,267 @@
+/*
+ * @(#) StatementTracer.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class decides which statements the logging wrappers log while debug
+ * logging is enabled. Statements can be sampled, either one in every N or
+ * with a probability, and the number of times each statement is logged can be
+ * limited to a rate per second. If a slow threshold is set, statements are
+ * logged after they have executed, and only if they took at least as long as
+ * the threshold, with the time they took.
+ */
+public class StatementTracer {
+    /**
+     * The maximum number of distinct statements with their own rate limit.
+     */
+    private static final int MAX_STATEMENTS = 1000;
+    /**
+     * The key of the rate limit shared by statements once the maximum number
+     * of distinct statements is reached.
+     */
+    private static final String OTHER_STATEMENTS = "(other)";
+
+    /**
+     * The interval between sampled statements, or one to not sample.
+     */
+    private volatile int sampleInterval = 1;
+    /**
+     * The probability a statement is sampled.
+     */
+    private volatile double sampleProbability = 1.0;
+    /**
+     * The maximum number of times each statement is logged per second, or
+     * zero if unlimited.
+     */
+    private volatile int rateLimit;
+    /**
+     * The number of nanoseconds after which a statement is logged, or zero if
+     * statements are logged before they execute.
+     */
+    private volatile long slowThreshold;
+    /**
+     * The number of statements considered for sampling.
+     */
+    private final AtomicLong sampleCount = new AtomicLong();
+    /**
+     * The rate limits, keyed on statement.
+     */
+    private final ConcurrentMap<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+    /**
+     * The number of statements not logged because of sampling or rate
+     * limits.
+     */
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * Get the interval between sampled statements.
+     *
+     * @return the interval between sampled statements
+     */
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Set the interval between sampled statements, so that one in every
+     * <code>si</code> statements is logged.
+     *
+     * @param si the interval between sampled statements, or one to log every
+     * statement
+     */
+    public void setSampleInterval(final int si) {
+        sampleInterval = Math.max(si, 1);
+    }
+
+    /**
+     * Get the probability a statement is sampled.
+     *
+     * @return the probability a statement is sampled
+     */
+    public double getSampleProbability() {
+        return sampleProbability;
+    }
+
+    /**
+     * Set the probability a statement is sampled.
+     *
+     * @param sp the probability a statement is sampled, between 0 and 1
+     */
+    public void setSampleProbability(final double sp) {
+        sampleProbability = Math.min(Math.max(sp, 0.0), 1.0);
+    }
+
+    /**
+     * Get the maximum number of times each statement is logged per second.
+     *
+     * @return the maximum number of times each statement is logged per
+     * second, or zero if unlimited
+     */
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Set the maximum number of times each statement is logged per second.
+     *
+     * @param rl the maximum number of times each statement is logged per
+     * second, or zero if unlimited
+     */
+    public void setRateLimit(final int rl) {
+        rateLimit = Math.max(rl, 0);
+    }
+
+    /**
+     * Get the number of milliseconds after which a statement is logged.
+     *
+     * @return the number of milliseconds after which a statement is logged,
+     * or zero if statements are logged before they execute
+     */
+    public long getSlowThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThreshold);
+    }
+
+    /**
+     * Set the number of milliseconds after which a statement is logged.
+     *
+     * @param st the number of milliseconds after which a statement is logged,
+     * or zero to log statements before they execute
+     */
+    public void setSlowThreshold(final long st) {
+        slowThreshold = TimeUnit.MILLISECONDS.toNanos(Math.max(st, 0L));
+    }
+
+    /**
+     * Get whether any statements are filtered, so that the tracer needs to
+     * be consulted.
+     *
+     * @return whether any statements are filtered
+     */
+    public boolean isEnabled() {
+        return sampleInterval > 1 || sampleProbability < 1.0 || rateLimit > 0 || slowThreshold > 0L;
+    }
+
+    /**
+     * Get whether statements are logged after they have executed, if they
+     * were slow.
+     *
+     * @return whether statements are logged after they have executed
+     */
+    public boolean isDeferred() {
+        return slowThreshold > 0L;
+    }
+
+    /**
+     * Get the number of statements not logged because of sampling or rate
+     * limits.
+     *
+     * @return the number of statements not logged
+     */
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Decide whether to log a statement that is about to be executed.
+     *
+     * @param sql the SQL of the statement, or null if the message is not for
+     * a single statement
+     * @return whether to log the statement
+     */
+    public boolean trace(final String sql) {
+        if (!sample() || !acquire(sql)) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decide whether to log a statement that has executed.
+     *
+     * @param sql the SQL of the statement, or null if the message is not for
+     * a single statement
+     * @param elapsed the time the statement took, in nanoseconds
+     * @return whether to log the statement
+     */
+    public boolean traceSlow(final String sql, final long elapsed) {
+        return elapsed >= slowThreshold && trace(sql);
+    }
+
+    /**
+     * Decide whether a statement is sampled.
+     *
+     * @return whether the statement is sampled
+     */
+    private boolean sample() {
+        int interval = sampleInterval;
+        if (interval > 1 && sampleCount.getAndIncrement() % interval != 0L) {
+            return false;
+        }
+        double probability = sampleProbability;
+        return probability >= 1.0 || ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+    /**
+     * Decide whether a statement is within its rate limit.
+     *
+     * @param sql the SQL of the statement, or null
+     * @return whether the statement is within its rate limit
+     */
+    private boolean acquire(final String sql) {
+        int limit = rateLimit;
+        if (limit == 0 || sql == null) {
+            return true;
+        }
+        RateLimit rl = rateLimits.get(sql);
+        if (rl == null) {
+            String key = rateLimits.size() < MAX_STATEMENTS ? sql : OTHER_STATEMENTS;
+            rl = rateLimits.computeIfAbsent(key, k -> new RateLimit());
+        }
+        return rl.acquire(System.nanoTime(), limit);
+    }
+
+    /**
+     * This class counts the number of times a statement is logged in the
+     * current second.
+     */
+    private static final class RateLimit {
+        /**
+         * The current second, in nanoseconds divided by one billion.
+         */
+        private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+        /**
+         * The number of times the statement was logged in the current second.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Count an attempt to log the statement.
+         *
+         * @param now the current time, in nanoseconds
+         * @param limit the maximum number of times the statement is logged
+         * per second
+         * @return whether the statement is within its rate limit
+         */
+        private boolean acquire(final long now, final int limit) {
+            long current = now / 1000000000L;
+            long previous = second.get();
+            if (previous != current && second.compareAndSet(previous, current)) {
+                count.set(0);
+            }
+            return count.incrementAndGet() <= limit;
+        }
+    }
+}
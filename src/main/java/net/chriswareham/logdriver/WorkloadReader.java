@@ -0,0 +1,354 @@
+/*
+ * @(#) WorkloadReader.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads the events of a workload log written by a
+ * {@link WorkloadRecorder}.
+ */
+final class WorkloadReader implements Closeable {
+    /**
+     * The value of a bind parameter that was not set.
+     */
+    static final Object UNSET = new Object();
+    /**
+     * The size of the input buffer.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The input stream.
+     */
+    private final DataInputStream in;
+    /**
+     * The SQL strings that have been read, by identifier.
+     */
+    private final List<String> sqls = new ArrayList<>();
+    /**
+     * The time the log was started, in milliseconds since the epoch.
+     */
+    private final long startTime;
+    /**
+     * The time of the previous event since the log was started, in
+     * nanoseconds.
+     */
+    private long offset;
+
+    /**
+     * Construct an instance of the reader.
+     *
+     * @param is the stream to read, which is closed when the reader is closed
+     * @throws IOException if the stream is not a workload log
+     */
+    WorkloadReader(final InputStream is) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+        if (in.readInt() != WorkloadRecorder.MAGIC) {
+            throw new IOException("Not a workload log");
+        }
+        int version = in.readInt();
+        if (version != WorkloadRecorder.VERSION) {
+            throw new IOException("Unsupported workload log version " + version);
+        }
+        startTime = in.readLong();
+    }
+
+    /**
+     * Get the time the log was started.
+     *
+     * @return the time the log was started, in milliseconds since the epoch
+     */
+    long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Create a close event, for a connection that was still open when the
+     * log ended.
+     *
+     * @param connection the identifier of the connection
+     * @param offset the time of the event since the log was started, in
+     * nanoseconds
+     * @return the close event
+     */
+    static Event close(final int connection, final long offset) {
+        Event event = new Event();
+        event.type = WorkloadRecorder.CLOSE;
+        event.offset = offset;
+        event.connection = connection;
+        return event;
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return the next event, or null at the end of the log
+     * @throws IOException if the event cannot be read
+     */
+    Event read() throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        Event event = new Event();
+        event.type = (byte) (type & WorkloadRecorder.EVENT_MASK);
+        event.flags = (byte) (type & ~WorkloadRecorder.EVENT_MASK);
+        offset += readVarLong();
+        event.offset = offset;
+        event.connection = (int) readVarLong();
+        if (event.type >= WorkloadRecorder.QUERY) {
+            event.sql = readSql();
+            event.binds = readBinds();
+        }
+        return event;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Read the SQL of a statement.
+     *
+     * @return the SQL, or null
+     * @throws IOException if the SQL cannot be read
+     */
+    private String readSql() throws IOException {
+        long ref = readVarLong();
+        if (ref == WorkloadRecorder.NULL_SQL) {
+            return null;
+        }
+        if (ref == WorkloadRecorder.NEW_SQL) {
+            String sql = readString();
+            if (sqls.size() < WorkloadRecorder.MAX_SQL) {
+                sqls.add(sql);
+            }
+            return sql;
+        }
+        long id = ref - 2L;
+        if (id >= sqls.size()) {
+            throw new IOException("Invalid SQL reference " + ref);
+        }
+        return sqls.get((int) id);
+    }
+
+    /**
+     * Read the bind parameters of a statement.
+     *
+     * @return the bind parameters, with nulls for null parameters and
+     * {@link #UNSET} for parameters that were not set
+     * @throws IOException if the bind parameters cannot be read
+     */
+    private Object[] readBinds() throws IOException {
+        Object[] binds = new Object[(int) readVarLong()];
+        for (int i = 0; i < binds.length; ++i) {
+            byte type = in.readByte();
+            switch (type) {
+            case BindParameters.NONE:
+                binds[i] = UNSET;
+                break;
+            case BindParameters.NULL:
+                binds[i] = null;
+                break;
+            case BindParameters.BOOLEAN:
+                binds[i] = in.readBoolean();
+                break;
+            case BindParameters.LONG:
+                long value = readVarLong();
+                binds[i] = value >>> 1 ^ -(value & 1L);
+                break;
+            case BindParameters.FLOAT:
+                binds[i] = Float.intBitsToFloat(in.readInt());
+                break;
+            case BindParameters.DOUBLE:
+                binds[i] = Double.longBitsToDouble(in.readLong());
+                break;
+            case BindParameters.OBJECT:
+                binds[i] = readObject();
+                break;
+            default:
+                throw new IOException("Invalid bind parameter type " + type);
+            }
+        }
+        return binds;
+    }
+
+    /**
+     * Read an object bind parameter.
+     *
+     * @return the bind parameter
+     * @throws IOException if the bind parameter cannot be read
+     */
+    private Object readObject() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case WorkloadRecorder.STRING:
+            return readString();
+        case WorkloadRecorder.DECIMAL:
+            return new BigDecimal(readString());
+        case WorkloadRecorder.DATE:
+            return new java.sql.Date(in.readLong());
+        case WorkloadRecorder.TIME:
+            return new Time(in.readLong());
+        case WorkloadRecorder.TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos((int) readVarLong());
+            return timestamp;
+        case WorkloadRecorder.BYTES:
+            byte[] bytes = new byte[(int) readVarLong()];
+            in.readFully(bytes);
+            return bytes;
+        case WorkloadRecorder.UNSUPPORTED:
+            return null;
+        default:
+            throw new IOException("Invalid bind parameter tag " + tag);
+        }
+    }
+
+    /**
+     * Read a string written as its length followed by its UTF-8 encoding.
+     *
+     * @return the string
+     * @throws IOException if the string cannot be read
+     */
+    private String readString() throws IOException {
+        byte[] bytes = new byte[(int) readVarLong()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a number written in seven bit groups, least significant first.
+     *
+     * @return the number
+     * @throws IOException if the number cannot be read
+     */
+    private long readVarLong() throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable length number");
+    }
+
+    /**
+     * This class holds an event read from a workload log.
+     */
+    static final class Event {
+        /**
+         * The event, without the statement flags.
+         */
+        private byte type;
+        /**
+         * The statement flags.
+         */
+        private byte flags;
+        /**
+         * The time of the event since the log was started, in nanoseconds.
+         */
+        private long offset;
+        /**
+         * The identifier of the connection.
+         */
+        private int connection;
+        /**
+         * The SQL of a statement event, or null.
+         */
+        private String sql;
+        /**
+         * The bind parameters of a statement event, or null.
+         */
+        private Object[] binds;
+
+        /**
+         * Get the event, without the statement flags.
+         *
+         * @return the event
+         */
+        byte getType() {
+            return type;
+        }
+
+        /**
+         * Get whether the event is for a prepared or callable statement.
+         *
+         * @return whether the event is for a prepared or callable statement
+         */
+        boolean isPrepared() {
+            return flags != 0;
+        }
+
+        /**
+         * Get whether the event is for a callable statement.
+         *
+         * @return whether the event is for a callable statement
+         */
+        boolean isCallable() {
+            return (flags & WorkloadRecorder.CALLABLE) != 0;
+        }
+
+        /**
+         * Get the time of the event since the log was started.
+         *
+         * @return the time of the event since the log was started, in
+         * nanoseconds
+         */
+        long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Get the identifier of the connection.
+         *
+         * @return the identifier of the connection
+         */
+        int getConnection() {
+            return connection;
+        }
+
+        /**
+         * Get the SQL of a statement event.
+         *
+         * @return the SQL, or null
+         */
+        String getSql() {
+            return sql;
+        }
+
+        /**
+         * Get the bind parameters of a statement event.
+         *
+         * @return the bind parameters, or null
+         */
+        Object[] getBinds() {
+            return binds;
+        }
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * @(#) WorkloadRecorder.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class records the workload passing through logging connections to a
+ * compact binary log, so that it can be re-executed by a
+ * {@link WorkloadReplayer}. The opening and closing of each connection, the
+ * statements executed on it with their bind parameters, batches, commits,
+ * rollbacks and changes to auto-commit are recorded, each with the time since
+ * the previous event.
+ * <p>
+ * Events are encoded into an in-memory buffer while holding the recorder's
+ * lock, so recording costs a few hundred nanoseconds per statement. When the
+ * buffer is full it is swapped with a spare buffer and written to the log
+ * after the lock is released, so other threads carry on recording while it is
+ * written, and only wait if the spare buffer fills before the write finishes.
+ * Integers are written as variable length numbers,
+ * and SQL is written in full the first time it is seen and as a reference to
+ * that first occurrence afterwards. If the log cannot be written, the error is
+ * logged once and recording stops.
+ * <p>
+ * Bind parameters set as streams, readers, large objects or other types with
+ * no portable representation are recorded as nulls.
+ */
+public class WorkloadRecorder implements Closeable {
+    /**
+     * The number that starts a workload log.
+     */
+    static final int MAGIC = 0x4c44574c;
+    /**
+     * The version of the workload log format.
+     */
+    static final int VERSION = 1;
+    /**
+     * The event of a connection being opened.
+     */
+    static final byte CONNECT = 1;
+    /**
+     * The event of a connection being closed.
+     */
+    static final byte CLOSE = 2;
+    /**
+     * The event of a transaction being committed.
+     */
+    static final byte COMMIT = 3;
+    /**
+     * The event of a transaction being rolled back.
+     */
+    static final byte ROLLBACK = 4;
+    /**
+     * The event of auto-commit being enabled.
+     */
+    static final byte AUTO_COMMIT_ON = 5;
+    /**
+     * The event of auto-commit being disabled.
+     */
+    static final byte AUTO_COMMIT_OFF = 6;
+    /**
+     * The event of a query being executed.
+     */
+    static final byte QUERY = 8;
+    /**
+     * The event of an update being executed.
+     */
+    static final byte UPDATE = 9;
+    /**
+     * The event of a statement that may return results being executed.
+     */
+    static final byte EXECUTE = 10;
+    /**
+     * The event of a statement being added to a batch.
+     */
+    static final byte ADD_BATCH = 11;
+    /**
+     * The event of a batch being executed.
+     */
+    static final byte EXECUTE_BATCH = 12;
+    /**
+     * The flag added to a statement event for a prepared statement.
+     */
+    static final byte PREPARED = 0x10;
+    /**
+     * The flag added to a statement event for a callable statement.
+     */
+    static final byte CALLABLE = 0x20;
+    /**
+     * The mask of the event without the statement flags.
+     */
+    static final byte EVENT_MASK = 0x0f;
+    /**
+     * The reference to a null SQL string.
+     */
+    static final int NULL_SQL = 0;
+    /**
+     * The reference to an SQL string written in full.
+     */
+    static final int NEW_SQL = 1;
+    /**
+     * The maximum number of distinct SQL strings written as references.
+     */
+    static final int MAX_SQL = 65536;
+    /**
+     * The tag of a string bind parameter.
+     */
+    static final byte STRING = 1;
+    /**
+     * The tag of a decimal bind parameter.
+     */
+    static final byte DECIMAL = 2;
+    /**
+     * The tag of a date bind parameter.
+     */
+    static final byte DATE = 3;
+    /**
+     * The tag of a time bind parameter.
+     */
+    static final byte TIME = 4;
+    /**
+     * The tag of a timestamp bind parameter.
+     */
+    static final byte TIMESTAMP = 5;
+    /**
+     * The tag of a byte array bind parameter.
+     */
+    static final byte BYTES = 6;
+    /**
+     * The tag of a bind parameter that cannot be recorded.
+     */
+    static final byte UNSUPPORTED = 7;
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(WorkloadRecorder.class);
+    /**
+     * The size of the buffered events that are written to the log at once.
+     */
+    private static final int BUFFER_SIZE = 65536;
+    /**
+     * The instances, keyed on path.
+     */
+    private static final ConcurrentMap<String, WorkloadRecorder> INSTANCES = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(WorkloadRecorder::closeInstances, "WorkloadRecorder-shutdown"));
+    }
+
+    /**
+     * The output stream, which is only written while holding the write lock.
+     */
+    private final OutputStream out;
+    /**
+     * The lock held while writing buffered events to the output stream.
+     */
+    private final Lock writeLock = new ReentrantLock();
+    /**
+     * The identifiers of SQL strings that have been written, keyed on SQL.
+     */
+    private final Map<String, Integer> sqlIds = new HashMap<>();
+    /**
+     * The last connection identifier assigned.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+    /**
+     * The buffer events are encoded into.
+     */
+    private EventBuffer buffer = new EventBuffer();
+    /**
+     * The buffer that is being written to the log, or that is free to be
+     * swapped with the buffer events are encoded into.
+     */
+    private EventBuffer spareBuffer = new EventBuffer();
+    /**
+     * The stream that encodes events into the buffer.
+     */
+    private DataOutputStream data = buffer.data;
+    /**
+     * The time of the previous event, in nanoseconds.
+     */
+    private long lastEvent;
+    /**
+     * The number of events recorded.
+     */
+    private long eventCount;
+    /**
+     * Whether recording has stopped.
+     */
+    private volatile boolean closed;
+    /**
+     * Whether the output stream has been closed, guarded by the write lock.
+     */
+    private boolean outputClosed;
+
+    /**
+     * Construct an instance of the recorder that writes to a file.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be created
+     */
+    public WorkloadRecorder(final File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     * Construct an instance of the recorder that writes to a stream.
+     *
+     * @param os the stream, which is closed when the recorder is closed
+     * @throws IOException if the header cannot be written
+     */
+    public WorkloadRecorder(final OutputStream os) throws IOException {
+        out = os;
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(System.currentTimeMillis());
+        lastEvent = System.nanoTime();
+    }
+
+    /**
+     * Get the recorder that writes to a file, creating it if necessary.
+     * Recorders created this way are closed when the virtual machine shuts
+     * down.
+     *
+     * @param path the path of the file
+     * @return the recorder
+     * @throws IOException if the file cannot be created
+     */
+    public static WorkloadRecorder getInstance(final String path) throws IOException {
+        WorkloadRecorder recorder = INSTANCES.get(path);
+        if (recorder == null) {
+            synchronized (INSTANCES) {
+                recorder = INSTANCES.get(path);
+                if (recorder == null) {
+                    recorder = new WorkloadRecorder(new File(path));
+                    INSTANCES.put(path, recorder);
+                }
+            }
+        }
+        return recorder;
+    }
+
+    /**
+     * Get the number of events recorded.
+     *
+     * @return the number of events recorded
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Get whether events are still being recorded.
+     *
+     * @return whether events are still being recorded
+     */
+    public boolean isRecording() {
+        return !closed;
+    }
+
+    /**
+     * Write any buffered events to the log.
+     *
+     * @throws IOException if the events cannot be written
+     */
+    public void flush() throws IOException {
+        EventBuffer events;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            events = swapBuffers();
+        }
+        write(events, true, false);
+    }
+
+    /**
+     * Stop recording and close the log.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        EventBuffer events;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            events = swapBuffers();
+        }
+        write(events, true, true);
+    }
+
+    /**
+     * Record the opening of a connection.
+     *
+     * @return the identifier of the connection
+     */
+    int connect() {
+        int connection = connections.incrementAndGet();
+        record(connection, CONNECT, null, null);
+        return connection;
+    }
+
+    /**
+     * Record an event.
+     *
+     * @param connection the identifier of the connection
+     * @param event the event, with the statement flags for statement events
+     * @param sql the SQL of a statement event, or null
+     * @param binds the bind parameters of a statement event, or null
+     */
+    void record(final int connection, final byte event, final String sql, final BindParameters binds) {
+        EventBuffer events;
+        boolean stopped = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int size = buffer.size();
+            try {
+                long now = System.nanoTime();
+                data.writeByte(event);
+                writeVarLong(now - lastEvent);
+                writeVarLong(connection);
+                if ((event & EVENT_MASK) >= QUERY) {
+                    writeSql(sql);
+                    writeBinds(binds);
+                }
+                lastEvent = now;
+                ++eventCount;
+            } catch (IOException | RuntimeException exception) {
+                LOGGER.error("Couldn't record workload, recording stopped", exception);
+                buffer.truncate(size);
+                closed = true;
+                stopped = true;
+            }
+            if (!stopped && buffer.size() < BUFFER_SIZE) {
+                return;
+            }
+            events = swapBuffers();
+        }
+        try {
+            write(events, stopped, stopped);
+        } catch (IOException exception) {
+            LOGGER.error("Couldn't write workload log, recording stopped", exception);
+        }
+    }
+
+    /**
+     * Take the buffered events, swapping the buffer events are encoded into
+     * with the spare buffer. This must be called while holding the lock of
+     * the recorder, and acquires the write lock, so that buffers are written
+     * in the order they were taken. The events must be passed to
+     * {@link #write(EventBuffer, boolean, boolean)}, which releases the write
+     * lock.
+     *
+     * @return the buffered events
+     */
+    private EventBuffer swapBuffers() {
+        writeLock.lock();
+        EventBuffer events = buffer;
+        buffer = spareBuffer;
+        spareBuffer = events;
+        data = buffer.data;
+        return events;
+    }
+
+    /**
+     * Write events taken from the buffer to the log and release the write
+     * lock. If the events cannot be written, recording stops and the log is
+     * closed.
+     *
+     * @param events the events
+     * @param flush whether to flush the log
+     * @param close whether to close the log
+     * @throws IOException if the events cannot be written or the log cannot
+     * be closed
+     */
+    private void write(final EventBuffer events, final boolean flush, final boolean close) throws IOException {
+        try {
+            if (!outputClosed) {
+                writeOutput(events, flush, close);
+            }
+        } finally {
+            events.reset();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write events to the output stream, while holding the write lock. If the
+     * events cannot be written, recording stops and the output stream is
+     * closed.
+     *
+     * @param events the events
+     * @param flush whether to flush the output stream
+     * @param close whether to close the output stream
+     * @throws IOException if the events cannot be written or the output stream
+     * cannot be closed
+     */
+    private void writeOutput(final EventBuffer events, final boolean flush, final boolean close) throws IOException {
+        try {
+            events.writeTo(out);
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException exception) {
+            closed = true;
+            outputClosed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                exception.addSuppressed(e);
+            }
+            throw exception;
+        }
+        if (close) {
+            outputClosed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Write the SQL of a statement, as a reference if it has been written
+     * before.
+     *
+     * @param sql the SQL, or null
+     * @throws IOException if the SQL cannot be written
+     */
+    private void writeSql(final String sql) throws IOException {
+        if (sql == null) {
+            writeVarLong(NULL_SQL);
+            return;
+        }
+        Integer id = sqlIds.get(sql);
+        if (id != null) {
+            writeVarLong(id + 2L);
+            return;
+        }
+        writeVarLong(NEW_SQL);
+        writeString(sql);
+        if (sqlIds.size() < MAX_SQL) {
+            sqlIds.put(sql, sqlIds.size());
+        }
+    }
+
+    /**
+     * Write the bind parameters of a statement.
+     *
+     * @param binds the bind parameters, or null
+     * @throws IOException if the bind parameters cannot be written
+     */
+    private void writeBinds(final BindParameters binds) throws IOException {
+        int size = binds != null ? binds.size() : 0;
+        writeVarLong(size);
+        for (int i = 1; i <= size; ++i) {
+            byte type = binds.getType(i);
+            data.writeByte(type);
+            switch (type) {
+            case BindParameters.BOOLEAN:
+                data.writeBoolean(binds.getPrimitive(i) != 0L);
+                break;
+            case BindParameters.LONG:
+                long value = binds.getPrimitive(i);
+                writeVarLong(value << 1 ^ value >> 63);
+                break;
+            case BindParameters.FLOAT:
+                data.writeInt((int) binds.getPrimitive(i));
+                break;
+            case BindParameters.DOUBLE:
+                data.writeLong(binds.getPrimitive(i));
+                break;
+            case BindParameters.OBJECT:
+                writeObject(binds.getObject(i));
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write an object bind parameter.
+     *
+     * @param value the bind parameter
+     * @throws IOException if the bind parameter cannot be written
+     */
+    private void writeObject(final Object value) throws IOException {
+        if (value instanceof String) {
+            data.writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            data.writeByte(DECIMAL);
+            writeString(value.toString());
+        } else if (value instanceof Timestamp) {
+            data.writeByte(TIMESTAMP);
+            data.writeLong(((Timestamp) value).getTime());
+            writeVarLong(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            data.writeByte(DATE);
+            data.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            data.writeByte(TIME);
+            data.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            data.writeByte(TIMESTAMP);
+            data.writeLong(((Date) value).getTime());
+            writeVarLong(0L);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            data.writeByte(BYTES);
+            writeVarLong(bytes.length);
+            data.write(bytes);
+        } else {
+            data.writeByte(UNSUPPORTED);
+        }
+    }
+
+    /**
+     * Write a string as its length followed by its UTF-8 encoding.
+     *
+     * @param s the string
+     * @throws IOException if the string cannot be written
+     */
+    private void writeString(final String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Write a non-negative number in seven bit groups, least significant
+     * first, with the high bit of each byte set if more follow.
+     *
+     * @param value the number
+     * @throws IOException if the number cannot be written
+     */
+    private void writeVarLong(final long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7fL) != 0L) {
+            data.writeByte((int) (v & 0x7fL | 0x80L));
+            v >>>= 7;
+        }
+        data.writeByte((int) v);
+    }
+
+    /**
+     * Close the recorders created by path.
+     */
+    private static void closeInstances() {
+        for (WorkloadRecorder recorder : INSTANCES.values()) {
+            try {
+                recorder.close();
+            } catch (IOException exception) {
+                LOGGER.warn("Couldn't close workload log", exception);
+            }
+        }
+    }
+
+    /**
+     * This class provides a buffer that events are encoded into.
+     */
+    private static final class EventBuffer extends ByteArrayOutputStream {
+        /**
+         * The stream that encodes events into the buffer.
+         */
+        private final DataOutputStream data = new DataOutputStream(this);
+
+        /**
+         * Construct an instance of the buffer.
+         */
+        EventBuffer() {
+            super(BUFFER_SIZE);
+        }
+
+        /**
+         * Discard the bytes written after the given size, such as a partly
+         * encoded event.
+         *
+         * @param size the size to truncate the buffer to
+         */
+        void truncate(final int size) {
+            count = size;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * @(#) WorkloadReplayer.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.log4j.Logger;
+
+import net.chriswareham.da.Histogram;
+
+/**
+ * This class re-executes a workload recorded by a {@link WorkloadRecorder}
+ * against a data source. Each recorded connection is replayed on its own
+ * thread with its own connection, so the original concurrency is reproduced.
+ * Events are dispatched to the connections at their original times, or as
+ * fast as possible if timing is disabled, in which case the statements of
+ * each connection are still executed in their original order.
+ * <p>
+ * The rows of each query are fetched, and the time taken by each statement,
+ * commit and rollback is recorded. Statements that fail are counted and
+ * logged at debug level, and replay continues. The out parameters of
+ * callable statements are not recorded, so calls that depend on them may
+ * fail when replayed.
+ * <p>
+ * The replayer can be run standalone:
+ * <pre>
+ * java net.chriswareham.logdriver.WorkloadReplayer [--fast] workload-file jdbc-url [user [password]]
+ * </pre>
+ */
+public class WorkloadReplayer {
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(WorkloadReplayer.class);
+
+    /**
+     * The data source the workload is replayed against.
+     */
+    private final DataSource dataSource;
+    /**
+     * Whether events are replayed at their original times.
+     */
+    private volatile boolean timed = true;
+    /**
+     * The number of statements, commits and rollbacks replayed.
+     */
+    private final LongAdder statementCount = new LongAdder();
+    /**
+     * The number of events that failed.
+     */
+    private final LongAdder errorCount = new LongAdder();
+    /**
+     * The number of rows fetched from queries.
+     */
+    private final LongAdder rowsFetched = new LongAdder();
+    /**
+     * The times taken by statements, commits and rollbacks.
+     */
+    private final Histogram latencies = new Histogram();
+    /**
+     * The number of connections opened.
+     */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    /**
+     * The time the last replay took, in nanoseconds.
+     */
+    private volatile long elapsed;
+
+    /**
+     * Construct an instance of the replayer.
+     *
+     * @param ds the data source the workload is replayed against
+     */
+    public WorkloadReplayer(final DataSource ds) {
+        dataSource = ds;
+    }
+
+    /**
+     * Get whether events are replayed at their original times.
+     *
+     * @return whether events are replayed at their original times
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Set whether events are replayed at their original times, or as fast as
+     * possible.
+     *
+     * @param t whether events are replayed at their original times
+     */
+    public void setTimed(final boolean t) {
+        timed = t;
+    }
+
+    /**
+     * Get the number of statements, commits and rollbacks replayed.
+     *
+     * @return the number of statements, commits and rollbacks replayed
+     */
+    public long getStatementCount() {
+        return statementCount.sum();
+    }
+
+    /**
+     * Get the number of events that failed.
+     *
+     * @return the number of events that failed
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * Get the number of rows fetched from queries.
+     *
+     * @return the number of rows fetched from queries
+     */
+    public long getRowsFetched() {
+        return rowsFetched.sum();
+    }
+
+    /**
+     * Get the number of connections opened.
+     *
+     * @return the number of connections opened
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Get the times taken by statements, commits and rollbacks.
+     *
+     * @return the times taken by statements, commits and rollbacks
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Get a summary of the replay.
+     *
+     * @return a summary of the replay
+     */
+    public String getSummary() {
+        return String.format("Workload replay: elapsed:[%.3fs] connections:[%d] statements:[%d] errors:[%d] rows fetched:[%d] mean:[%.3fms] p50:[%.3fms] p99:[%.3fms] max:[%.3fms]",
+            elapsed / 1000000000.0, getConnectionCount(), getStatementCount(), getErrorCount(), getRowsFetched(),
+            latencies.getMean(), latencies.getPercentile(50.0), latencies.getPercentile(99.0), latencies.getMax());
+    }
+
+    /**
+     * Replay a workload log file.
+     *
+     * @param file the workload log file
+     * @throws IOException if the log cannot be read
+     * @throws InterruptedException if the replay is interrupted
+     */
+    public void replay(final File file) throws IOException, InterruptedException {
+        try (InputStream is = new FileInputStream(file)) {
+            replay(is);
+        }
+    }
+
+    /**
+     * Replay a workload log, returning once every connection has finished.
+     *
+     * @param is the workload log, which is closed once it has been read
+     * @throws IOException if the log cannot be read
+     * @throws InterruptedException if the replay is interrupted
+     */
+    public void replay(final InputStream is) throws IOException, InterruptedException {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "WorkloadReplayer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<Integer, Worker> workers = new HashMap<>();
+        long start = System.nanoTime();
+        long offset = 0L;
+        try (WorkloadReader reader = new WorkloadReader(is)) {
+            for (WorkloadReader.Event event = reader.read(); event != null; event = reader.read()) {
+                offset = event.getOffset();
+                if (timed) {
+                    long delay = start + offset - System.nanoTime();
+                    if (delay > 0L) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                }
+                Worker worker = workers.get(event.getConnection());
+                if (worker == null) {
+                    worker = new Worker();
+                    workers.put(event.getConnection(), worker);
+                    executor.execute(worker);
+                }
+                worker.events.add(event);
+                if (event.getType() == WorkloadRecorder.CLOSE) {
+                    workers.remove(event.getConnection());
+                }
+            }
+        } finally {
+            for (Map.Entry<Integer, Worker> entry : workers.entrySet()) {
+                entry.getValue().events.add(WorkloadReader.close(entry.getKey(), offset));
+            }
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        elapsed = System.nanoTime() - start;
+    }
+
+    /**
+     * Replay a workload log file against a database.
+     *
+     * @param args the options, the path of the workload log file, the JDBC
+     * URL of the database, and optionally the user and password
+     * @throws Exception if the workload cannot be replayed
+     */
+    public static void main(final String[] args) throws Exception {
+        boolean timed = true;
+        List<String> params = new ArrayList<>();
+        for (String arg : args) {
+            if ("--fast".equals(arg)) {
+                timed = false;
+            } else {
+                params.add(arg);
+            }
+        }
+        if (params.size() < 2) {
+            System.err.println("Usage: WorkloadReplayer [--fast] workload-file jdbc-url [user [password]]");
+            System.exit(1);
+        }
+
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl(params.get(1));
+        if (params.size() > 2) {
+            dataSource.setUsername(params.get(2));
+        }
+        if (params.size() > 3) {
+            dataSource.setPassword(params.get(3));
+        }
+        dataSource.setMaxActive(-1);
+        dataSource.setMaxIdle(-1);
+        try {
+            WorkloadReplayer replayer = new WorkloadReplayer(dataSource);
+            replayer.setTimed(timed);
+            replayer.replay(new File(params.get(0)));
+            LOGGER.info(replayer.getSummary());
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * This class replays the events of a recorded connection.
+     */
+    private final class Worker implements Runnable {
+        /**
+         * The events waiting to be replayed, which are unbounded so a slow
+         * connection cannot hold up the others.
+         */
+        private final BlockingQueue<WorkloadReader.Event> events = new LinkedBlockingQueue<>();
+        /**
+         * The prepared statements, keyed on SQL.
+         */
+        private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+        /**
+         * The connection, or null if it has not been opened.
+         */
+        private Connection connection;
+        /**
+         * The statement used for unprepared SQL, or null if it has not been
+         * created.
+         */
+        private Statement statement;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                WorkloadReader.Event event;
+                do {
+                    event = events.take();
+                    replay(event);
+                } while (event.getType() != WorkloadRecorder.CLOSE);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Replay an event.
+         *
+         * @param event the event
+         */
+        private void replay(final WorkloadReader.Event event) {
+            long start = System.nanoTime();
+            try {
+                switch (event.getType()) {
+                case WorkloadRecorder.CONNECT:
+                    connection = dataSource.getConnection();
+                    connectionCount.incrementAndGet();
+                    return;
+                case WorkloadRecorder.AUTO_COMMIT_ON:
+                    connection().setAutoCommit(true);
+                    return;
+                case WorkloadRecorder.AUTO_COMMIT_OFF:
+                    connection().setAutoCommit(false);
+                    return;
+                case WorkloadRecorder.COMMIT:
+                    connection().commit();
+                    break;
+                case WorkloadRecorder.ROLLBACK:
+                    connection().rollback();
+                    break;
+                case WorkloadRecorder.QUERY:
+                    if (event.isPrepared()) {
+                        fetch(bind(event).executeQuery());
+                    } else {
+                        fetch(statement().executeQuery(event.getSql()));
+                    }
+                    break;
+                case WorkloadRecorder.UPDATE:
+                    if (event.isPrepared()) {
+                        bind(event).executeUpdate();
+                    } else {
+                        statement().executeUpdate(event.getSql());
+                    }
+                    break;
+                case WorkloadRecorder.EXECUTE:
+                    if (event.isPrepared()) {
+                        PreparedStatement ps = bind(event);
+                        if (ps.execute()) {
+                            fetch(ps.getResultSet());
+                        }
+                    } else if (statement().execute(event.getSql())) {
+                        fetch(statement().getResultSet());
+                    }
+                    break;
+                case WorkloadRecorder.ADD_BATCH:
+                    if (event.isPrepared()) {
+                        bind(event).addBatch();
+                    } else {
+                        statement().addBatch(event.getSql());
+                    }
+                    return;
+                case WorkloadRecorder.EXECUTE_BATCH:
+                    if (event.isPrepared()) {
+                        prepare(event).executeBatch();
+                    } else {
+                        statement().executeBatch();
+                    }
+                    break;
+                default:
+                    return;
+                }
+                latencies.record(System.nanoTime() - start);
+                statementCount.increment();
+            } catch (SQLException exception) {
+                errorCount.increment();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Couldn't replay event: " + (event.getSql() != null ? event.getSql() : event.getType()), exception);
+                }
+            }
+        }
+
+        /**
+         * Get the connection.
+         *
+         * @return the connection
+         * @throws SQLException if the connection could not be opened
+         */
+        private Connection connection() throws SQLException {
+            if (connection == null) {
+                throw new SQLException("Connection not open");
+            }
+            return connection;
+        }
+
+        /**
+         * Get the statement used for unprepared SQL, creating it if
+         * necessary.
+         *
+         * @return the statement
+         * @throws SQLException if the statement cannot be created
+         */
+        private Statement statement() throws SQLException {
+            if (statement == null) {
+                statement = connection().createStatement();
+            }
+            return statement;
+        }
+
+        /**
+         * Get the prepared statement of an event, preparing it if necessary.
+         *
+         * @param event the event
+         * @return the prepared statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        private PreparedStatement prepare(final WorkloadReader.Event event) throws SQLException {
+            PreparedStatement ps = preparedStatements.get(event.getSql());
+            if (ps == null) {
+                ps = event.isCallable() ? connection().prepareCall(event.getSql()) : connection().prepareStatement(event.getSql());
+                preparedStatements.put(event.getSql(), ps);
+            }
+            return ps;
+        }
+
+        /**
+         * Get the prepared statement of an event and set its bind parameters.
+         *
+         * @param event the event
+         * @return the prepared statement
+         * @throws SQLException if the statement cannot be prepared or the
+         * bind parameters cannot be set
+         */
+        private PreparedStatement bind(final WorkloadReader.Event event) throws SQLException {
+            PreparedStatement ps = prepare(event);
+            ps.clearParameters();
+            Object[] binds = event.getBinds();
+            for (int i = 0; i < binds.length; ++i) {
+                if (binds[i] == null) {
+                    ps.setNull(i + 1, Types.NULL);
+                } else if (binds[i] != WorkloadReader.UNSET) {
+                    ps.setObject(i + 1, binds[i]);
+                }
+            }
+            return ps;
+        }
+
+        /**
+         * Fetch every row of a result set and close it.
+         *
+         * @param resultSet the result set, or null
+         * @throws SQLException if the rows cannot be fetched
+         */
+        private void fetch(final ResultSet resultSet) throws SQLException {
+            if (resultSet == null) {
+                return;
+            }
+            try {
+                long rows = 0L;
+                while (resultSet.next()) {
+                    ++rows;
+                }
+                rowsFetched.add(rows);
+            } finally {
+                resultSet.close();
+            }
+        }
+
+        /**
+         * Close the statements and the connection.
+         */
+        private void close() {
+            try {
+                for (PreparedStatement ps : preparedStatements.values()) {
+                    ps.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException exception) {
+                LOGGER.warn("Couldn't close replayed connection", exception);
+            }
+        }
+    }
+}
@@ -19,10 +19,16 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import net.chriswareham.da.QueryCursor;
+import net.chriswareham.da.QueryException;
 import net.chriswareham.util.CsvWriter;
 
 /**
  * This class provides a view that renders models as comma separated values.
+ * <p>
+ * The data model may be a single object, a collection of objects, or a query
+ * cursor. The rows of a cursor are written to the response as they are read,
+ * and the cursor is closed once they are written.
  *
  * @author Chris Wareham
  * @param <T> the type of objects to serialise
@@ -131,7 +137,14 @@ public class CsvView<T> implements View {
             writer.writeLine(serialiser.getHeaders());
 
             Object model = models.get(dataModel);
-            if (model instanceof Collection<?>) {
+            if (model instanceof QueryCursor<?>) {
+                @SuppressWarnings("unchecked") QueryCursor<T> cursor = (QueryCursor<T>) model;
+                try (QueryCursor<T> c = cursor) {
+                    while (c.next()) {
+                        writer.writeLine(serialiser.serialise(c.get()));
+                    }
+                }
+            } else if (model instanceof Collection<?>) {
                 @SuppressWarnings("unchecked") Collection<T> list = (Collection<T>) model;
                 for (T item : list) {
                     writer.writeLine(serialiser.serialise(item));
@@ -142,6 +155,8 @@ public class CsvView<T> implements View {
             }
 
             writer.flush();
+        } catch (QueryException exception) {
+            throw new ServletException("Error reading query results", exception);
         } catch (IOException exception) {
             // assume the client aborted the request (the following line just keeps Checkstyle happy)
             return;
@@ -18,12 +18,18 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.json.JSONArray;
+import net.chriswareham.da.QueryCursor;
+import net.chriswareham.da.QueryException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * This class provides a view that renders models as JSON.
+ * <p>
+ * A model may be a query cursor, which is rendered as an array with each
+ * result written to the response as it is read. The cursor is closed once
+ * the results are written.
  *
  * @author Chris Wareham
  */
@@ -81,34 +87,70 @@ public class JsonView implements View {
     @Override
     public void render(final Map<String, Object> models, final HttpServletRequest request, final HttpServletResponse response, final ServletContext context) throws IOException, ServletException {
         try {
-            JSONObject obj = new JSONObject();
+            response.setContentType(CONTENT_TYPE);
+            response.setCharacterEncoding(CHARACTER_ENCODING);
+            if (expiry > 0) {
+                response.addDateHeader(EXPIRES_HEADER, expiry * 1000L + System.currentTimeMillis());
+            }
 
+            PrintWriter writer = response.getWriter();
+            writer.print('{');
+
+            boolean first = true;
             for (String modelName : modelNames) {
                 if (models.containsKey(modelName)) {
+                    if (!first) {
+                        writer.print(',');
+                    }
+                    first = false;
+                    writer.print(JSONObject.quote(modelName));
+                    writer.print(':');
                     Object model = models.get(modelName);
-                    if (model instanceof Collection<?>) {
-                        obj.put(modelName, new JSONArray(model));
+                    if (model instanceof QueryCursor<?>) {
+                        renderCursor((QueryCursor<?>) model, writer);
+                    } else if (model instanceof Collection<?>) {
+                        writer.print(JSONObject.valueToString(JSONObject.wrap(model)));
                     } else if (model instanceof Map<?, ?>) {
-                        obj.put(modelName, model);
+                        writer.print(new JSONObject((Map<?, ?>) model).toString());
                     } else if (model instanceof String) {
-                        obj.put(modelName, model);
+                        writer.print(JSONObject.quote((String) model));
                     } else {
-                        obj.put(modelName, new JSONObject(model));
+                        writer.print(new JSONObject(model).toString());
                     }
                 }
             }
 
-            response.setContentType(CONTENT_TYPE);
-            response.setCharacterEncoding(CHARACTER_ENCODING);
-            if (expiry > 0) {
-                response.addDateHeader(EXPIRES_HEADER, expiry * 1000L + System.currentTimeMillis());
-            }
-
-            PrintWriter writer = response.getWriter();
-            writer.print(obj.toString());
+            writer.print('}');
             writer.flush();
         } catch (JSONException exception) {
             throw new ServletException("Error serialising models as JSON", exception);
+        } catch (QueryException exception) {
+            throw new ServletException("Error reading query results", exception);
+        }
+    }
+
+    /**
+     * Render a query cursor as a JSON array, writing each result as it is
+     * read. Results are wrapped in the same way as the elements of a
+     * collection, so maps, collections and scalars are rendered as such rather
+     * than as beans. The cursor is closed once the results are written.
+     *
+     * @param cursor the query cursor
+     * @param writer the writer to render to
+     * @throws QueryException if an error occurs reading the results
+     */
+    private static void renderCursor(final QueryCursor<?> cursor, final PrintWriter writer) throws QueryException {
+        try (QueryCursor<?> c = cursor) {
+            writer.print('[');
+            boolean first = true;
+            while (c.next()) {
+                if (!first) {
+                    writer.print(',');
+                }
+                first = false;
+                writer.print(JSONObject.valueToString(JSONObject.wrap(c.get())));
+            }
+            writer.print(']');
         }
     }
 }
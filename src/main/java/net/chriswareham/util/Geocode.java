@@ -42,6 +42,15 @@ public final class Geocode implements Externalizable {
      */
     private double y;
 
+    /**
+     * Constructs a new instance of the Geocode class. This is required for
+     * deserialisation, as externalizable classes must have a public no
+     * argument constructor.
+     */
+    public Geocode() {
+        // fields are set by readExternal()
+    }
+
     /**
      * Constructs a new instance of the Geocode class.
      *
@@ -0,0 +1,170 @@
+/*
+ * @(#) AsyncQueryServiceImplTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.ResultSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * This class provides a unit test for the asynchronous query service.
+ *
+ * @author Chris Wareham
+ */
+public class AsyncQueryServiceImplTest {
+    /**
+     * The first query.
+     */
+    private static final String FIRST_QUERY = "SELECT first FROM test";
+    /**
+     * The second query.
+     */
+    private static final String SECOND_QUERY = "SELECT second FROM test";
+    /**
+     * The failing query.
+     */
+    private static final String FAILING_QUERY = "SELECT failing FROM test";
+
+    /**
+     * The query that throws an error.
+     */
+    private static final String ERROR_QUERY = "SELECT error FROM test";
+
+    /**
+     * The latch that the queries wait on, so that they only complete if they
+     * run concurrently.
+     */
+    private final CountDownLatch latch = new CountDownLatch(2);
+    /**
+     * The instance to test.
+     */
+    private AsyncQueryServiceImpl asyncQueryService;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception {
+        QueryService mockQueryService = Mockito.mock(QueryService.class);
+        Mockito.when(mockQueryService.query(Mockito.eq(FIRST_QUERY), Mockito.any(QueryCallback.class))).thenAnswer(new LatchAnswer("first"));
+        Mockito.when(mockQueryService.query(Mockito.eq(SECOND_QUERY), Mockito.any(QueryCallback.class))).thenAnswer(new LatchAnswer("second"));
+        Mockito.when(mockQueryService.query(Mockito.eq(FAILING_QUERY), Mockito.any(QueryCallback.class))).thenThrow(new QueryException("failed"));
+        Mockito.when(mockQueryService.query(Mockito.eq(ERROR_QUERY), Mockito.any(QueryCallback.class))).thenThrow(new AssertionError("error"));
+
+        asyncQueryService = new AsyncQueryServiceImpl();
+        asyncQueryService.setQueryService(mockQueryService);
+        asyncQueryService.setThreads(2);
+        asyncQueryService.start();
+    }
+
+    /**
+     * Tear down the instance to test.
+     */
+    @After
+    public void after() {
+        asyncQueryService.stop();
+    }
+
+    /**
+     * Test that independent queries run concurrently.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        CompletableFuture<String> first = asyncQueryService.query(FIRST_QUERY, new NullCallback());
+        CompletableFuture<String> second = asyncQueryService.query(SECOND_QUERY, new NullCallback());
+
+        asyncQueryService.await(first, second);
+
+        Assert.assertEquals("first", asyncQueryService.join(first));
+        Assert.assertEquals("second", asyncQueryService.join(second));
+    }
+
+    /**
+     * Test that a failed query is reported as a query exception.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = QueryException.class)
+    public void testFailingQuery() throws Exception {
+        asyncQueryService.join(asyncQueryService.query(FAILING_QUERY, new NullCallback()));
+    }
+
+    /**
+     * Test that a query that throws an error completes its future.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testErrorQuery() throws Exception {
+        CompletableFuture<String> future = asyncQueryService.query(ERROR_QUERY, new NullCallback());
+        try {
+            asyncQueryService.join(future);
+            Assert.fail("Expected a query exception");
+        } catch (QueryException exception) {
+            Assert.assertTrue(exception.getCause() instanceof AssertionError);
+        }
+    }
+
+    /**
+     * This class provides an answer that waits for both queries to start.
+     */
+    private final class LatchAnswer implements Answer<String> {
+        /**
+         * The result.
+         */
+        private final String result;
+
+        /**
+         * Construct an instance of the answer.
+         *
+         * @param r the result
+         */
+        private LatchAnswer(final String r) {
+            result = r;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String answer(final InvocationOnMock invocation) throws Throwable {
+            latch.countDown();
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new QueryException("Queries did not run concurrently");
+            }
+            return result;
+        }
+    }
+
+    /**
+     * This class provides a callback that is never called.
+     */
+    private static final class NullCallback implements QueryCallback<String> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String callback(final QueryConnection connection, final ResultSet resultSet) {
+            return null;
+        }
+    }
+}
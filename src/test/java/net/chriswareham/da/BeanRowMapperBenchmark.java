@@ -0,0 +1,201 @@
+/*
+ * @(#) BeanRowMapperBenchmark.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+/**
+ * This class provides a benchmark of the bean row mapper against hand written
+ * query callbacks that read columns by label and by index. It is run from the
+ * command line rather than as a unit test:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... net.chriswareham.da.BeanRowMapperBenchmark [rows] [iterations]
+ * </pre>
+ *
+ * @author Chris Wareham
+ */
+public final class BeanRowMapperBenchmark {
+    /**
+     * The query.
+     */
+    private static final String QUERY = "SELECT id, first_name, score, active FROM users";
+    /**
+     * The default number of rows.
+     */
+    private static final int DEFAULT_ROWS = 10000;
+    /**
+     * The default number of timed iterations.
+     */
+    private static final int DEFAULT_ITERATIONS = 200;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BeanRowMapperBenchmark() {
+        // empty
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args the number of rows and the number of timed iterations
+     * @throws Exception if an error occurs
+     */
+    public static void main(final String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        JDBCDataSource hsqldbDataSource = new JDBCDataSource();
+        hsqldbDataSource.setUrl("jdbc:hsqldb:mem:beanrowmapperbenchmark");
+        hsqldbDataSource.setUser("SA");
+        hsqldbDataSource.setPassword("");
+
+        DataSourceImpl dataSource = new DataSourceImpl();
+        dataSource.setDataSource(hsqldbDataSource);
+        dataSource.setMaxActive(1);
+        dataSource.setMaxIdle(1);
+        dataSource.start();
+
+        try {
+            populate(dataSource, rows);
+
+            QueryServiceImpl queryService = new QueryServiceImpl();
+            queryService.setDataSource(dataSource);
+
+            QueryCallback<BeanRowMapperTest.User> labelCallback = new LabelCallback();
+            QueryCallback<BeanRowMapperTest.User> indexCallback = new IndexCallback();
+            QueryCallback<BeanRowMapperTest.User> beanRowMapper = new BeanRowMapper<>(BeanRowMapperTest.User.class);
+
+            for (int i = 0; i < iterations; ++i) {
+                run(queryService, labelCallback, rows);
+                run(queryService, indexCallback, rows);
+                run(queryService, beanRowMapper, rows);
+            }
+
+            report("label callback", time(queryService, labelCallback, rows, iterations), rows, iterations);
+            report("index callback", time(queryService, indexCallback, rows, iterations), rows, iterations);
+            report("bean row mapper", time(queryService, beanRowMapper, rows, iterations), rows, iterations);
+        } finally {
+            dataSource.stop();
+        }
+    }
+
+    /**
+     * Create and populate the table.
+     *
+     * @param dataSource the data source
+     * @param rows the number of rows
+     * @throws SQLException if an error occurs
+     */
+    private static void populate(final DataSourceImpl dataSource, final int rows) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE users (id INTEGER PRIMARY KEY, first_name VARCHAR(32), score DOUBLE, active BOOLEAN)");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO users VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; ++i) {
+                    statement.setInt(1, i);
+                    statement.setString(2, "name" + i);
+                    statement.setDouble(3, i / 2.0);
+                    statement.setBoolean(4, i % 2 == 0);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Time a number of iterations of the query with a callback.
+     *
+     * @param queryService the query service
+     * @param callback the callback
+     * @param rows the number of rows
+     * @param iterations the number of iterations
+     * @return the elapsed time in nanoseconds
+     * @throws QueryException if an error occurs
+     */
+    private static long time(final QueryService queryService, final QueryCallback<BeanRowMapperTest.User> callback, final int rows, final int iterations) throws QueryException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            run(queryService, callback, rows);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Run the query with a callback.
+     *
+     * @param queryService the query service
+     * @param callback the callback
+     * @param rows the expected number of rows
+     * @throws QueryException if an error occurs
+     */
+    private static void run(final QueryService queryService, final QueryCallback<BeanRowMapperTest.User> callback, final int rows) throws QueryException {
+        List<BeanRowMapperTest.User> users = queryService.listQuery(QUERY, callback);
+        if (users.size() != rows) {
+            throw new IllegalStateException("Expected " + rows + " rows but read " + users.size());
+        }
+    }
+
+    /**
+     * Report the time taken by a callback.
+     *
+     * @param name the name of the callback
+     * @param nanos the elapsed time in nanoseconds
+     * @param rows the number of rows
+     * @param iterations the number of iterations
+     */
+    private static void report(final String name, final long nanos, final int rows, final int iterations) {
+        System.out.printf("%-16s %8.1f ns/row%n", name, (double) nanos / ((long) rows * iterations));
+    }
+
+    /**
+     * This class provides a hand written callback that reads columns by
+     * label.
+     */
+    private static final class LabelCallback implements QueryCallback<BeanRowMapperTest.User> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BeanRowMapperTest.User callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+            BeanRowMapperTest.User user = new BeanRowMapperTest.User();
+            user.setId(resultSet.getInt("id"));
+            user.setFirstName(resultSet.getString("first_name"));
+            user.setScore(resultSet.getDouble("score"));
+            user.setActive(resultSet.getBoolean("active"));
+            return user;
+        }
+    }
+
+    /**
+     * This class provides a hand written callback that reads columns by
+     * index.
+     */
+    private static final class IndexCallback implements QueryCallback<BeanRowMapperTest.User> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BeanRowMapperTest.User callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+            BeanRowMapperTest.User user = new BeanRowMapperTest.User();
+            user.setId(resultSet.getInt(1));
+            user.setFirstName(resultSet.getString(2));
+            user.setScore(resultSet.getDouble(3));
+            user.setActive(resultSet.getBoolean(4));
+            return user;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * @(#) BeanRowMapperTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.Mockito;
+
+/**
+ * This class provides a unit test for the bean row mapper.
+ *
+ * @author Chris Wareham
+ */
+public class BeanRowMapperTest {
+    /**
+     * The mock result set meta data.
+     */
+    private ResultSetMetaData mockMetaData;
+    /**
+     * The mock result set.
+     */
+    private ResultSet mockResultSet;
+    /**
+     * The instance to test.
+     */
+    private BeanRowMapper<User> beanRowMapper;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        mockMetaData = Mockito.mock(ResultSetMetaData.class);
+        Mockito.when(mockMetaData.getColumnCount()).thenReturn(5);
+        Mockito.when(mockMetaData.getColumnLabel(1)).thenReturn("ID");
+        Mockito.when(mockMetaData.getColumnLabel(2)).thenReturn("FIRST_NAME");
+        Mockito.when(mockMetaData.getColumnLabel(3)).thenReturn("SCORE");
+        Mockito.when(mockMetaData.getColumnLabel(4)).thenReturn("ACTIVE");
+        Mockito.when(mockMetaData.getColumnLabel(5)).thenReturn("UNMAPPED");
+
+        mockResultSet = Mockito.mock(ResultSet.class);
+        Mockito.when(mockResultSet.getMetaData()).thenReturn(mockMetaData);
+
+        beanRowMapper = new BeanRowMapper<>(User.class);
+    }
+
+    /**
+     * Test that rows are mapped by column index, with the columns resolved
+     * once per result set.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCallback() throws Exception {
+        Mockito.when(mockResultSet.getInt(1)).thenReturn(1, 2);
+        Mockito.when(mockResultSet.getString(2)).thenReturn("Alice", "Bob");
+        Mockito.when(mockResultSet.getDouble(3)).thenReturn(1.5, 0.0);
+        Mockito.when(mockResultSet.getBoolean(4)).thenReturn(true, false);
+        Mockito.when(mockResultSet.wasNull()).thenReturn(false);
+
+        User first = beanRowMapper.callback(null, mockResultSet);
+        User second = beanRowMapper.callback(null, mockResultSet);
+
+        Assert.assertEquals(1, first.getId());
+        Assert.assertEquals("Alice", first.getFirstName());
+        Assert.assertEquals(1.5, first.getScore(), 0.0);
+        Assert.assertTrue(first.isActive());
+
+        Assert.assertEquals(2, second.getId());
+        Assert.assertEquals("Bob", second.getFirstName());
+        Assert.assertEquals(0.0, second.getScore(), 0.0);
+        Assert.assertFalse(second.isActive());
+
+        Mockito.verify(mockResultSet, Mockito.times(1)).getMetaData();
+        Mockito.verify(mockResultSet, Mockito.never()).getObject(5);
+        Mockito.verify(mockResultSet, Mockito.never()).getString(Mockito.anyString());
+    }
+
+    /**
+     * Test that a null primitive column leaves the property at its default
+     * value.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testNullPrimitive() throws Exception {
+        Mockito.when(mockResultSet.getInt(1)).thenReturn(0);
+        Mockito.when(mockResultSet.getDouble(3)).thenReturn(0.0);
+        Mockito.when(mockResultSet.wasNull()).thenReturn(true);
+
+        User user = beanRowMapper.callback(null, mockResultSet);
+
+        Assert.assertEquals(-1, user.getId());
+        Assert.assertEquals(-1.0, user.getScore(), 0.0);
+    }
+
+    /**
+     * Test that a bean without a public no argument constructor is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoConstructor() {
+        new BeanRowMapper<>(Integer.class);
+    }
+
+    /**
+     * This class provides a bean to map rows to.
+     */
+    public static final class User {
+        /**
+         * The identifier.
+         */
+        private int id = -1;
+        /**
+         * The first name.
+         */
+        private String firstName;
+        /**
+         * The score.
+         */
+        private double score = -1.0;
+        /**
+         * Whether the user is active.
+         */
+        private boolean active;
+
+        /**
+         * Get the identifier.
+         *
+         * @return the identifier
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Set the identifier.
+         *
+         * @param i the identifier
+         */
+        public void setId(final int i) {
+            id = i;
+        }
+
+        /**
+         * Get the first name.
+         *
+         * @return the first name
+         */
+        public String getFirstName() {
+            return firstName;
+        }
+
+        /**
+         * Set the first name.
+         *
+         * @param fn the first name
+         */
+        public void setFirstName(final String fn) {
+            firstName = fn;
+        }
+
+        /**
+         * Get the score.
+         *
+         * @return the score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Set the score.
+         *
+         * @param s the score
+         */
+        public void setScore(final double s) {
+            score = s;
+        }
+
+        /**
+         * Get whether the user is active.
+         *
+         * @return whether the user is active
+         */
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * Set whether the user is active.
+         *
+         * @param a whether the user is active
+         */
+        public void setActive(final boolean a) {
+            active = a;
+        }
+    }
+}
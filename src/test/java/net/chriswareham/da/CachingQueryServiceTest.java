@@ -0,0 +1,287 @@
+/*
+ * @(#) CachingQueryServiceTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * This class provides a unit test for the caching query service.
+ *
+ * @author Chris Wareham
+ */
+public class CachingQueryServiceTest {
+    /**
+     * The query.
+     */
+    private static final String QUERY = "SELECT name FROM users WHERE id = ?";
+    /**
+     * The update.
+     */
+    private static final String UPDATE = "UPDATE users SET name = 'none'";
+
+    /**
+     * The mock query service.
+     */
+    private QueryService mockQueryService;
+    /**
+     * The mock event service.
+     */
+    private EventService mockEventService;
+    /**
+     * The cache of results.
+     */
+    private MemoryCache<Object, Object> cache;
+    /**
+     * The instance to test.
+     */
+    private CachingQueryService cachingQueryService;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception {
+        mockQueryService = Mockito.mock(QueryService.class);
+        Mockito.when(mockQueryService.listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class))).thenReturn(Collections.singletonList("name"));
+
+        mockEventService = Mockito.mock(EventService.class);
+
+        cache = new MemoryCache<>();
+        cache.start();
+
+        cachingQueryService = new CachingQueryService();
+        cachingQueryService.setQueryService(mockQueryService);
+        cachingQueryService.setCache(cache);
+        cachingQueryService.setEventService(mockEventService);
+        cachingQueryService.start();
+    }
+
+    /**
+     * Tear down the instance to test.
+     */
+    @After
+    public void after() {
+        cachingQueryService.stop();
+        cache.stop();
+    }
+
+    /**
+     * Test that results are cached by the values bound to the query.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedByParameters() throws Exception {
+        List<String> first = cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        List<String> second = cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        Assert.assertEquals(first, second);
+        Mockito.verify(mockQueryService, Mockito.times(1)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+
+        cachingQueryService.listQuery(QUERY, new IdExecutor(2), new NameCallback());
+        Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+
+        Assert.assertEquals(1, cachingQueryService.getHitCount());
+        Assert.assertEquals(2, cachingQueryService.getMissCount());
+    }
+
+    /**
+     * Test that results are invalidated by an update event on a table they
+     * use, and by an update of the table made through the service.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInvalidation() throws Exception {
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+
+        ArgumentCaptor<TopicListener> listener = ArgumentCaptor.forClass(TopicListener.class);
+        Mockito.verify(mockEventService).addTopicListener(Mockito.eq("users"), listener.capture());
+        listener.getValue().receiveEvent(new Event(1, EventType.UPDATE));
+
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+
+        cachingQueryService.update(UPDATE);
+
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        Mockito.verify(mockQueryService, Mockito.times(3)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+    }
+
+    /**
+     * Test that an update made on a query connection invalidates the results
+     * again when the connection commits, so that a result read before the
+     * commit is not served afterwards.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTransactionalInvalidation() throws Exception {
+        QueryConnection mockConnection = Mockito.mock(QueryConnection.class);
+        Mockito.when(mockQueryService.getQueryConnection(true)).thenReturn(mockConnection);
+
+        try (QueryConnection connection = cachingQueryService.getQueryConnection(true)) {
+            cachingQueryService.update(connection, UPDATE);
+            Mockito.verify(mockQueryService).update(mockConnection, UPDATE);
+
+            cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+            cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+            Mockito.verify(mockQueryService, Mockito.times(1)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+
+            connection.commitTransaction();
+            Mockito.verify(mockConnection).commitTransaction();
+
+            cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+            Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+        }
+        Mockito.verify(mockConnection).close();
+    }
+
+    /**
+     * Test that every table in a comma separated list of tables is tagged.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCommaSeparatedTables() throws Exception {
+        String query = "SELECT u.name FROM users u, groups AS g, audit WHERE u.group_id = g.id AND u.id = ?";
+        Mockito.when(mockQueryService.listQuery(Mockito.eq(query), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class))).thenReturn(Collections.singletonList("name"));
+
+        cachingQueryService.listQuery(query, new IdExecutor(1), new NameCallback());
+
+        ArgumentCaptor<TopicListener> listener = ArgumentCaptor.forClass(TopicListener.class);
+        Mockito.verify(mockEventService).addTopicListener(Mockito.eq("users"), Mockito.any(TopicListener.class));
+        Mockito.verify(mockEventService).addTopicListener(Mockito.eq("audit"), Mockito.any(TopicListener.class));
+        Mockito.verify(mockEventService).addTopicListener(Mockito.eq("groups"), listener.capture());
+        Mockito.verify(mockEventService, Mockito.never()).addTopicListener(Mockito.eq("g"), Mockito.any(TopicListener.class));
+        listener.getValue().receiveEvent(new Event(1, EventType.DELETE));
+
+        cachingQueryService.listQuery(query, new IdExecutor(1), new NameCallback());
+        Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(query), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+    }
+
+    /**
+     * Test that results of callbacks with state are not cached, even when the
+     * same callback instance is reused.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStatefulCallback() throws Exception {
+        QueryCallback<String> upper = new PrefixCallback("upper");
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), upper);
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), upper);
+        Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+        Assert.assertEquals(0, cachingQueryService.getHitCount());
+        Assert.assertEquals(0, cachingQueryService.getMissCount());
+    }
+
+    /**
+     * Test that the tables of statements beyond the maximum number of
+     * statements are still found, so that updates invalidate results.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxStatements() throws Exception {
+        cachingQueryService.setMaxStatements(1);
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        cachingQueryService.update(UPDATE);
+        cachingQueryService.update(UPDATE);
+        cachingQueryService.listQuery(QUERY, new IdExecutor(1), new NameCallback());
+        Mockito.verify(mockQueryService, Mockito.times(2)).listQuery(Mockito.eq(QUERY), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class));
+        Assert.assertEquals(0, cachingQueryService.getHitCount());
+    }
+
+    /**
+     * This class provides an executor that binds an identifier.
+     */
+    private static final class IdExecutor implements QueryExecutor {
+        /**
+         * The identifier.
+         */
+        private final int id;
+
+        /**
+         * Construct an instance of the executor.
+         *
+         * @param i the identifier
+         */
+        private IdExecutor(final int i) {
+            id = i;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ResultSet query(final PreparedStatement statement) throws SQLException {
+            statement.setInt(1, id);
+            return statement.executeQuery();
+        }
+    }
+
+    /**
+     * This class provides a callback that reads a name and prefixes it.
+     */
+    private static final class PrefixCallback implements QueryCallback<String> {
+        /**
+         * The prefix.
+         */
+        private final String prefix;
+
+        /**
+         * Construct an instance of the callback.
+         *
+         * @param p the prefix
+         */
+        private PrefixCallback(final String p) {
+            prefix = p;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+            return prefix + resultSet.getString(1);
+        }
+    }
+
+    /**
+     * This class provides a callback that reads a name.
+     */
+    private static final class NameCallback implements QueryCallback<String> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * @(#) CodecTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.chriswareham.util.Geocode;
+
+/**
+ * This class provides a unit test for the codecs.
+ *
+ * @author Chris Wareham
+ */
+public class CodecTest {
+    /**
+     * Test the JavaCodec class.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testJavaCodec() throws Exception {
+        Codec codec = new JavaCodec();
+        Assert.assertEquals("TEST STRING", roundTrip(codec, "TEST STRING"));
+    }
+
+    /**
+     * Test the ExternalizableCodec class with an externalizable object, an
+     * object that is not externalizable and a null object.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExternalizableCodec() throws Exception {
+        Codec codec = new ExternalizableCodec();
+        Geocode geocode = Geocode.fromLatLng(51.5, -0.12);
+        Assert.assertEquals(geocode, roundTrip(codec, geocode));
+        Assert.assertTrue(encode(codec, geocode).length < encode(new JavaCodec(), geocode).length);
+        List<Integer> list = Arrays.asList(1, 2, 3);
+        Assert.assertEquals(list, roundTrip(codec, list));
+        Assert.assertNull(roundTrip(codec, null));
+    }
+
+    /**
+     * Test the DeflateCodec class.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDeflateCodec() throws Exception {
+        DeflateCodec codec = new DeflateCodec();
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'a');
+        String s = new String(chars);
+        Assert.assertEquals(s, roundTrip(codec, s));
+        Assert.assertTrue(encode(codec, s).length < encode(new JavaCodec(), s).length);
+    }
+
+    /**
+     * Encode an object.
+     *
+     * @param codec the codec
+     * @param obj the object
+     * @return the encoded object
+     * @throws Exception if an error occurs
+     */
+    private static byte[] encode(final Codec codec, final Object obj) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(obj, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode and decode an object.
+     *
+     * @param codec the codec
+     * @param obj the object
+     * @return the decoded object
+     * @throws Exception if an error occurs
+     */
+    private static Object roundTrip(final Codec codec, final Object obj) throws Exception {
+        return codec.decode(new ByteArrayInputStream(encode(codec, obj)));
+    }
+}
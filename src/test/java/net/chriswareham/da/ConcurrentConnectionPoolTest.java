@@ -0,0 +1,282 @@
+/*
+ * @(#) ConcurrentConnectionPoolTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the concurrent connection pool.
+ *
+ * @author Chris Wareham
+ */
+public class ConcurrentConnectionPoolTest {
+    /**
+     * The maximum number of milliseconds to wait for a connection.
+     */
+    private static final long MAX_WAIT = 100L;
+    /**
+     * The number of threads borrowing connections at once.
+     */
+    private static final int THREADS = 8;
+    /**
+     * The number of connections each thread borrows.
+     */
+    private static final int BORROWS_PER_THREAD = 500;
+
+    /**
+     * The instance to test.
+     */
+    private ConcurrentConnectionPool connectionPool;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        JDBCDataSource hsqldbDataSource = new JDBCDataSource();
+        hsqldbDataSource.setUrl("jdbc:hsqldb:mem:concurrentconnectionpooltest");
+        hsqldbDataSource.setUser("SA");
+        hsqldbDataSource.setPassword("");
+
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.setMaxActive(2);
+        config.setMaxIdle(2);
+        config.setMaxWait(MAX_WAIT);
+
+        connectionPool = new ConcurrentConnectionPool();
+        connectionPool.open(hsqldbDataSource, config);
+    }
+
+    /**
+     * Tear down the instance to test.
+     */
+    @After
+    public void after() {
+        connectionPool.close();
+    }
+
+    /**
+     * Test that a closed connection is returned to the pool and reused.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReuse() throws Exception {
+        try (Connection connection = connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+            Assert.assertEquals(1, connectionPool.getActiveCount());
+        }
+
+        Assert.assertEquals(0, connectionPool.getActiveCount());
+        Assert.assertEquals(1, connectionPool.getIdleCount());
+
+        try (Connection connection = connectionPool.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit());
+            Assert.assertEquals(1, connectionPool.getActiveCount());
+            Assert.assertEquals(0, connectionPool.getIdleCount());
+        }
+
+        Assert.assertEquals(2, connectionPool.getStatistics().getBorrowCount());
+        Assert.assertEquals(2, connectionPool.getStatistics().getHoldTime().getCount());
+    }
+
+    /**
+     * Test that the settings changed on a connection are restored when it is
+     * returned to the pool.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testSettingsRestored() throws Exception {
+        int isolation;
+        int holdability;
+        try (Connection connection = connectionPool.getConnection()) {
+            isolation = connection.getTransactionIsolation();
+            holdability = connection.getHoldability();
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            connection.setHoldability(holdability == ResultSet.HOLD_CURSORS_OVER_COMMIT ? ResultSet.CLOSE_CURSORS_AT_COMMIT : ResultSet.HOLD_CURSORS_OVER_COMMIT);
+        }
+        Assert.assertEquals(1, connectionPool.getIdleCount());
+
+        try (Connection connection = connectionPool.getConnection()) {
+            Assert.assertEquals(isolation, connection.getTransactionIsolation());
+            Assert.assertEquals(holdability, connection.getHoldability());
+        }
+    }
+
+    /**
+     * Test that a closed connection cannot be used.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = SQLException.class)
+    public void testClosedConnection() throws Exception {
+        Connection connection = connectionPool.getConnection();
+        connection.close();
+        connection.createStatement();
+    }
+
+    /**
+     * Test that waiting for a connection times out when the pool is
+     * exhausted.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExhausted() throws Exception {
+        Connection first = connectionPool.getConnection();
+        Connection second = connectionPool.getConnection();
+        try {
+            long start = System.currentTimeMillis();
+            try {
+                connectionPool.getConnection();
+                Assert.fail("Expected the pool to be exhausted");
+            } catch (SQLException exception) {
+                Assert.assertTrue(exception instanceof SQLTimeoutException);
+                Assert.assertTrue(System.currentTimeMillis() - start >= MAX_WAIT);
+            }
+        } finally {
+            second.close();
+            first.close();
+        }
+
+        Assert.assertEquals(2, connectionPool.getIdleCount());
+        Assert.assertEquals(1, connectionPool.getStatistics().getTimeoutCount());
+        Assert.assertEquals(0, connectionPool.getStatistics().getWaitingCount());
+        Assert.assertTrue(connectionPool.getStatistics().getBorrowWaitTime().getMax() >= MAX_WAIT);
+    }
+
+    /**
+     * Test that only threads blocked waiting for a connection to be returned
+     * are counted as waiting.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testWaitingCount() throws Exception {
+        Connection first = connectionPool.getConnection();
+        Assert.assertEquals(0, connectionPool.getStatistics().getWaitingCount());
+        Connection second = connectionPool.getConnection();
+        Assert.assertEquals(0, connectionPool.getStatistics().getWaitingCount());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> {
+                try {
+                    connectionPool.getConnection();
+                    Assert.fail("Expected the pool to be exhausted");
+                } catch (SQLException exception) {
+                    Assert.assertTrue(exception instanceof SQLTimeoutException);
+                }
+                return null;
+            });
+
+            int maxWaiting = 0;
+            while (!future.isDone()) {
+                maxWaiting = Math.max(maxWaiting, connectionPool.getStatistics().getWaitingCount());
+                Thread.yield();
+            }
+            future.get();
+            Assert.assertEquals(1, maxWaiting);
+        } finally {
+            executor.shutdownNow();
+            second.close();
+            first.close();
+        }
+
+        Assert.assertEquals(0, connectionPool.getStatistics().getWaitingCount());
+    }
+
+    /**
+     * Test that statements return the pooled connection, and that statements
+     * left open are closed when the connection is returned to the pool.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStatements() throws Exception {
+        Statement statement;
+        PreparedStatement preparedStatement;
+        try (Connection connection = connectionPool.getConnection()) {
+            statement = connection.createStatement();
+            preparedStatement = connection.prepareStatement("VALUES (1)");
+            Assert.assertSame(connection, statement.getConnection());
+            Assert.assertSame(connection, preparedStatement.getConnection());
+            statement.close();
+            Assert.assertTrue(statement.isClosed());
+            Assert.assertFalse(preparedStatement.isClosed());
+        }
+        Assert.assertTrue(preparedStatement.isClosed());
+    }
+
+    /**
+     * Test that connections are borrowed and returned by several threads
+     * at once without exceeding the maximum size of the pool, and that
+     * waiting threads are handed returned connections.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; ++i) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < BORROWS_PER_THREAD; ++j) {
+                    Connection connection = connectionPool.getConnection();
+                    try {
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        Thread.yield();
+                        active.decrementAndGet();
+                    } finally {
+                        connection.close();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<Void> future : futures) {
+                future.get(10L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(maxActive.get() <= 2);
+        Assert.assertEquals(0, connectionPool.getActiveCount());
+        Assert.assertEquals(THREADS * BORROWS_PER_THREAD, connectionPool.getStatistics().getBorrowCount());
+        Assert.assertEquals(0, connectionPool.getStatistics().getTimeoutCount());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * @(#) DataSourceImplTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the pooling data source.
+ *
+ * @author Chris Wareham
+ */
+public class DataSourceImplTest {
+    /**
+     * The query.
+     */
+    private static final String QUERY = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+
+    /**
+     * The instance to test.
+     */
+    private DataSourceImpl dataSource;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        JDBCDataSource hsqldbDataSource = new JDBCDataSource();
+        hsqldbDataSource.setUrl("jdbc:hsqldb:mem:datasourceimpltest");
+        hsqldbDataSource.setUser("SA");
+        hsqldbDataSource.setPassword("");
+
+        dataSource = new DataSourceImpl();
+        dataSource.setDataSource(hsqldbDataSource);
+        dataSource.setMaxActive(1);
+        dataSource.setMaxIdle(1);
+        dataSource.start();
+    }
+
+    /**
+     * Tear down the instance to test.
+     */
+    @After
+    public void after() {
+        dataSource.stop();
+    }
+
+    /**
+     * Test that a prepared statement is cached when its connection is
+     * returned to the pool.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStatementCache() throws Exception {
+        for (int i = 0; i < 3; ++i) {
+            try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(QUERY); ResultSet resultSet = statement.executeQuery()) {
+                Assert.assertTrue(resultSet.next());
+            }
+        }
+
+        Assert.assertEquals(1, dataSource.getStatementCacheMissCount());
+        Assert.assertEquals(2, dataSource.getStatementCacheHitCount());
+    }
+}
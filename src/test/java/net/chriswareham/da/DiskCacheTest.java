@@ -8,6 +8,8 @@ package net.chriswareham.da;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -90,6 +92,20 @@ public class DiskCacheTest {
         Assert.assertTrue(objRead != null);
     }
 
+    /**
+     * Test the DiskCache::fetchAll() method.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetchAll() throws Exception {
+        TestObject obj = new TestObject(8);
+        cache.store(obj.getId(), obj);
+        Map<Integer, TestObject> objsRead = cache.fetchAll(Arrays.asList(8, 9));
+        Assert.assertEquals(1, objsRead.size());
+        Assert.assertTrue(objsRead.get(8) != null);
+    }
+
     /**
      * Test the DiskCache::flushAndStore() method.
      *
@@ -132,6 +148,50 @@ public class DiskCacheTest {
         Assert.assertTrue(objRead == null);
     }
 
+    /**
+     * Test the segmented storage, including recovering objects when the cache
+     * is restarted.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testSegmentedStorage() throws Exception {
+        DiskCache<Integer, TestObject> segmentedCache = new DiskCache<>();
+        segmentedCache.setCacheDirectory(CACHE_DIRECTORY + "/segmented");
+        segmentedCache.setStorage("segmented");
+        segmentedCache.start();
+        try {
+            for (int i = 0; i < 10; ++i) {
+                segmentedCache.store(i, new TestObject(i));
+            }
+            segmentedCache.flush(3);
+            segmentedCache.flushAndStore(4, new TestObject(40));
+            segmentedCache.stop();
+            segmentedCache.start();
+            Assert.assertEquals(9, segmentedCache.getCacheItemCount());
+            Assert.assertTrue(segmentedCache.fetch(3) == null);
+            Assert.assertEquals(40, segmentedCache.fetch(4).getId());
+            Assert.assertEquals(9, segmentedCache.fetch(9).getId());
+        } finally {
+            segmentedCache.flush();
+            segmentedCache.stop();
+            new File(CACHE_DIRECTORY + "/segmented").delete();
+        }
+    }
+
+    /**
+     * Test the DiskCache::storeBytes() and DiskCache::fetchBytes() methods.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetchBytes() throws Exception {
+        byte[] data = {1, 2, 3};
+        cache.storeBytes(10, data);
+        Assert.assertArrayEquals(data, cache.fetchBytes(10));
+        Assert.assertTrue(cache.fetchBytes(11) == null);
+    }
+
     /**
      * This class provides a test object suitable for caching.
      */
@@ -0,0 +1,103 @@
+/*
+ * @(#) ListQueryCacheLoaderTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * This class provides a unit test for the list query cache loader.
+ *
+ * @author Chris Wareham
+ */
+public class ListQueryCacheLoaderTest {
+    /**
+     * The mock query service.
+     */
+    private QueryService mockQueryService;
+    /**
+     * The instance to test.
+     */
+    private ListQueryCacheLoader<Integer, String> loader;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception {
+        mockQueryService = Mockito.mock(QueryService.class);
+        Mockito.when(mockQueryService.listQuery(Mockito.anyString(), Mockito.any(QueryExecutor.class), Mockito.any(QueryCallback.class))).thenReturn(Arrays.asList("1", "2", "3"));
+
+        loader = new ListQueryCacheLoader<>();
+        loader.setQueryService(mockQueryService);
+        loader.setCallback(Mockito.mock(QueryCallback.class));
+        loader.setIdFetcher((final String obj) -> Integer.valueOf(obj));
+    }
+
+    /**
+     * Test that only the <tt>IN (?)</tt> clause is expanded, that the batch
+     * is padded by repeating the last id, and that the other placeholders in
+     * the query are bound to the parameters either side of the ids.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLoadAll() throws Exception {
+        loader.setQuery("SELECT id FROM users WHERE LOWER(name) = LOWER(?) AND id in ( ? ) AND status IN (?)");
+        loader.setParameters(Arrays.asList("bob", "active"));
+
+        Map<Integer, String> objs = loader.loadAll(Arrays.asList(1, 2, 3));
+        Assert.assertEquals(3, objs.size());
+        Assert.assertEquals("2", objs.get(2));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<QueryExecutor> executor = ArgumentCaptor.forClass(QueryExecutor.class);
+        Mockito.verify(mockQueryService).listQuery(sql.capture(), executor.capture(), Mockito.any(QueryCallback.class));
+        Assert.assertEquals("SELECT id FROM users WHERE LOWER(name) = LOWER(?) AND id in (?, ?, ?, ?) AND status IN (?)", sql.getValue());
+
+        PreparedStatement mockStatement = Mockito.mock(PreparedStatement.class);
+        executor.getValue().query(mockStatement);
+        Mockito.verify(mockStatement).setObject(1, "bob");
+        Mockito.verify(mockStatement).setObject(2, 1);
+        Mockito.verify(mockStatement).setObject(3, 2);
+        Mockito.verify(mockStatement).setObject(4, 3);
+        Mockito.verify(mockStatement).setObject(5, 3);
+        Mockito.verify(mockStatement).setObject(6, "active");
+    }
+
+    /**
+     * Test that loading with a query whose other placeholders do not match
+     * the parameters is rejected.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testMissingParameters() throws Exception {
+        loader.setQuery("SELECT id FROM users WHERE LOWER(name) = LOWER(?) AND id IN (?)");
+        loader.loadAll(Arrays.asList(1, 2, 3));
+    }
+
+    /**
+     * Test that a query without an <tt>IN (?)</tt> clause is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueryWithoutInClause() {
+        loader.setQuery("SELECT id FROM users WHERE LOWER(name) = LOWER(?)");
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * @(#) LoadingCacheTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the loading cache.
+ *
+ * @author Chris Wareham
+ */
+public class LoadingCacheTest {
+    /**
+     * The number of threads that concurrently fetch an object.
+     */
+    private static final int THREADS = 10;
+
+    /**
+     * The number of times the loader has been invoked.
+     */
+    private final AtomicInteger loads = new AtomicInteger();
+    /**
+     * The underlying memory cache.
+     */
+    private MemoryCache<Integer, String> memoryCache;
+    /**
+     * The loading cache.
+     */
+    private LoadingCache<Integer, String> cache;
+
+    /**
+     * Setup the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        memoryCache = new MemoryCache<>();
+        memoryCache.start();
+        cache = new LoadingCache<>();
+        cache.setCache(memoryCache);
+        cache.setLoader(new CacheLoader<Integer, String>() {
+            @Override
+            public String load(final Integer id) throws QueryException {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException exception) {
+                    throw new QueryException(exception);
+                }
+                return id > 0 ? "object " + id : null;
+            }
+        });
+        cache.start();
+    }
+
+    /**
+     * Teardown the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @After
+    public void tearDown() throws Exception {
+        cache.stop();
+        memoryCache.stop();
+    }
+
+    /**
+     * Test the LoadingCache::fetch() method loads and caches an object.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetch() throws Exception {
+        Assert.assertEquals("object 1", cache.fetch(1));
+        Assert.assertEquals("object 1", memoryCache.fetch(1));
+        Assert.assertEquals("object 1", cache.fetch(1));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    /**
+     * Test the LoadingCache::fetch() method does not cache objects that do not
+     * exist.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetchNotFound() throws Exception {
+        Assert.assertNull(cache.fetch(-1));
+        Assert.assertNull(memoryCache.fetch(-1));
+    }
+
+    /**
+     * Test the LoadingCache::getAll() method loads the objects that are not
+     * cached with a single call to a bulk loader.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testGetAll() throws Exception {
+        final AtomicInteger bulkLoads = new AtomicInteger();
+        LoadingCache<Integer, String> bulkCache = new LoadingCache<>();
+        bulkCache.setCache(memoryCache);
+        bulkCache.setLoader(new BulkCacheLoader<Integer, String>() {
+            @Override
+            public String load(final Integer id) throws QueryException {
+                throw new QueryException("Unexpected load of a single object");
+            }
+
+            @Override
+            public Map<Integer, String> loadAll(final Collection<Integer> ids) throws QueryException {
+                bulkLoads.incrementAndGet();
+                Map<Integer, String> objs = new HashMap<>();
+                for (Integer id : ids) {
+                    objs.put(id, "object " + id);
+                }
+                return objs;
+            }
+        });
+        bulkCache.start();
+        try {
+            memoryCache.store(3, "object 3");
+            Map<Integer, String> objs = bulkCache.getAll(Arrays.asList(3, 4, 5));
+            Assert.assertEquals(3, objs.size());
+            Assert.assertEquals("object 5", objs.get(5));
+            Assert.assertEquals("object 4", memoryCache.fetch(4));
+            Assert.assertEquals(1, bulkLoads.get());
+        } finally {
+            bulkCache.stop();
+        }
+    }
+
+    /**
+     * Test the LoadingCache::get() method coalesces concurrent loads of the
+     * same object.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentGet() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return cache.get(2);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                Assert.assertEquals("object 2", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, loads.get());
+    }
+}
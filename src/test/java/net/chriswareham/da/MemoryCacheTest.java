@@ -6,7 +6,11 @@
 
 package net.chriswareham.da;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -56,6 +60,25 @@ public class MemoryCacheTest {
         cache.store(obj.getId(), obj);
     }
 
+    /**
+     * Test the MemoryCache::store() method with a list of objects.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStoreList() throws Exception {
+        List<TestObject> objs = Arrays.asList(new TestObject(6), new TestObject(7));
+        cache.store(objs, new IdFetcher<Integer, TestObject>() {
+            @Override
+            public Integer fetchId(final TestObject obj) {
+                return obj.getId();
+            }
+        });
+        Assert.assertTrue(cache.fetch(6) != null);
+        Assert.assertTrue(cache.fetch(7) != null);
+        Assert.assertEquals(2, cache.fetch().size());
+    }
+
     /**
      * Test the MemoryCache::fetch() method.
      *
@@ -69,6 +92,20 @@ public class MemoryCacheTest {
         Assert.assertTrue(objRead != null);
     }
 
+    /**
+     * Test the MemoryCache::fetchAll() method.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetchAll() throws Exception {
+        TestObject obj = new TestObject(8);
+        cache.store(obj.getId(), obj);
+        Map<Integer, TestObject> objsRead = cache.fetchAll(Arrays.asList(8, 9));
+        Assert.assertEquals(1, objsRead.size());
+        Assert.assertTrue(objsRead.get(8) != null);
+    }
+
     /**
      * Test the MemoryCache::flushAndStore() method.
      *
@@ -111,6 +148,129 @@ public class MemoryCacheTest {
         Assert.assertTrue(objRead == null);
     }
 
+    /**
+     * Test that a cache bounded by a maximum number of entries evicts objects
+     * with each of the eviction policies.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMaxEntries() throws Exception {
+        for (String evictionPolicy : new String[] {"lru", "lfu", "tinylfu"}) {
+            MemoryCache<Integer, TestObject> boundedCache = new MemoryCache<>();
+            boundedCache.setMaxEntries(10);
+            boundedCache.setEvictionPolicy(evictionPolicy);
+            boundedCache.start();
+            for (int i = 0; i < 20; ++i) {
+                boundedCache.store(i, new TestObject(i));
+            }
+            Assert.assertEquals(evictionPolicy, 10, boundedCache.fetch().size());
+            Assert.assertEquals(evictionPolicy, 10, boundedCache.getEvictionCount());
+            boundedCache.stop();
+        }
+    }
+
+    /**
+     * Test that the expiry queue of a bounded cache does not grow with the
+     * number of objects evicted from it.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExpiryQueueBounded() throws Exception {
+        MemoryCache<Integer, TestObject> boundedCache = new MemoryCache<>();
+        boundedCache.setMaxEntries(10);
+        boundedCache.setPurgeTime(60);
+        boundedCache.setPurgeFrequency(60);
+        boundedCache.start();
+        for (int i = 0; i < 100000; ++i) {
+            boundedCache.store(i, new TestObject(i));
+        }
+        Assert.assertEquals(10, boundedCache.fetch().size());
+        Assert.assertTrue(boundedCache.getExpiryQueueSize() <= 2 * 10 + 1024 + 1);
+        boundedCache.stop();
+    }
+
+    /**
+     * Test that a cache bounded by a maximum weight evicts objects.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMaxWeight() throws Exception {
+        MemoryCache<Integer, TestObject> boundedCache = new MemoryCache<>();
+        boundedCache.setMaxWeight(10);
+        boundedCache.setWeigher(new Weigher<Integer, TestObject>() {
+            @Override
+            public int weigh(final Integer id, final TestObject obj) {
+                return 2;
+            }
+        });
+        boundedCache.start();
+        for (int i = 0; i < 10; ++i) {
+            boundedCache.store(i, new TestObject(i));
+        }
+        Assert.assertEquals(10, boundedCache.getWeightedSize());
+        Assert.assertEquals(5, boundedCache.fetch().size());
+        Assert.assertTrue(boundedCache.fetch(9) != null);
+        boundedCache.stop();
+    }
+
+    /**
+     * Test the statistics exposed by the managed interface.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStatistics() throws Exception {
+        TestObject obj = new TestObject(8);
+        cache.store(obj.getId(), obj);
+        Assert.assertTrue(cache.fetch(8) != null);
+        Assert.assertTrue(cache.fetch(9) == null);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.0);
+        Assert.assertEquals(1, cache.getCacheItemCount());
+        Assert.assertEquals(1, cache.getCacheItems(10).get(8).getReferenceCount());
+        Assert.assertEquals(1, cache.getCacheItems().size());
+        Assert.assertTrue(cache.getCacheSize() > 0);
+        cache.resetStatistics();
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * Test that the cache is snapshotted when it is stopped, and reloaded from
+     * the snapshot when it is started.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        File snapshotFile = new File("target/memorycache.snapshot");
+        snapshotFile.getParentFile().mkdirs();
+        snapshotFile.delete();
+        MemoryCache<Integer, TestObject> snapshotCache = new MemoryCache<>();
+        snapshotCache.setSnapshotFile(snapshotFile.getPath());
+        snapshotCache.start();
+        for (int i = 0; i < 100; ++i) {
+            snapshotCache.store(i, new TestObject(i));
+        }
+        snapshotCache.stop();
+        Assert.assertTrue(snapshotFile.exists());
+
+        MemoryCache<Integer, TestObject> reloadedCache = new MemoryCache<>();
+        reloadedCache.setSnapshotFile(snapshotFile.getPath());
+        reloadedCache.start();
+        for (int attempt = 0; attempt < 100 && !reloadedCache.isSnapshotLoaded(); ++attempt) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(reloadedCache.isSnapshotLoaded());
+        Assert.assertEquals(100, reloadedCache.fetch().size());
+        Assert.assertEquals(42, reloadedCache.fetch(42).getId());
+        reloadedCache.stop();
+        snapshotFile.delete();
+    }
+
     /**
      * This class provides a test object suitable for caching.
      */
@@ -0,0 +1,346 @@
+/*
+ * @(#) QueryServiceImplTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.Mockito;
+
+/**
+ * This class provides a unit test for the query service.
+ *
+ * @author Chris Wareham
+ */
+public class QueryServiceImplTest {
+    /**
+     * The query.
+     */
+    private static final String QUERY = "SELECT name FROM users";
+    /**
+     * The update.
+     */
+    private static final String UPDATE = "INSERT INTO users (name) VALUES (?)";
+    /**
+     * The slow query.
+     */
+    private static final String SLOW_QUERY = "SELECT name FROM users WHERE id = ?";
+    /**
+     * The number of milliseconds the slow query takes.
+     */
+    private static final long SLOW_QUERY_MILLIS = 5L;
+    /**
+     * The fetch size.
+     */
+    private static final int FETCH_SIZE = 100;
+
+    /**
+     * The mock connection.
+     */
+    private Connection mockConnection;
+    /**
+     * The mock statement.
+     */
+    private Statement mockStatement;
+    /**
+     * The mock result set.
+     */
+    private ResultSet mockResultSet;
+    /**
+     * The instance to test.
+     */
+    private QueryServiceImpl queryService;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        mockResultSet = Mockito.mock(ResultSet.class);
+        Mockito.when(mockResultSet.next()).thenReturn(true, true, true, false);
+        Mockito.when(mockResultSet.getString(1)).thenReturn("one", null, "three");
+
+        mockStatement = Mockito.mock(Statement.class);
+        Mockito.doReturn(mockResultSet).when(mockStatement).executeQuery(QUERY);
+
+        mockConnection = Mockito.mock(Connection.class);
+        Mockito.doReturn(mockStatement).when(mockConnection).createStatement();
+
+        DataSource mockDataSource = Mockito.mock(DataSource.class);
+        Mockito.doReturn(mockConnection).when(mockDataSource).getConnection();
+
+        queryService = new QueryServiceImpl();
+        queryService.setDataSource(mockDataSource);
+        queryService.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Test that a cursor reads results as it is advanced, skips null results
+     * and closes its connection.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testOpenQuery() throws Exception {
+        try (QueryCursor<String> cursor = queryService.openQuery(QUERY, new NameCallback())) {
+            Mockito.verify(mockStatement).setFetchSize(FETCH_SIZE);
+            Mockito.verify(mockResultSet, Mockito.never()).next();
+
+            Assert.assertTrue(cursor.next());
+            Assert.assertEquals("one", cursor.get());
+            Assert.assertTrue(cursor.next());
+            Assert.assertEquals("three", cursor.get());
+            Assert.assertFalse(cursor.next());
+            Assert.assertFalse(cursor.next());
+            Assert.assertEquals(2, cursor.getCount());
+
+            Mockito.verify(mockConnection, Mockito.never()).close();
+        }
+
+        Mockito.verify(mockResultSet).close();
+        Mockito.verify(mockStatement).close();
+        Mockito.verify(mockConnection).close();
+    }
+
+    /**
+     * Test that a cursor opened on a query connection leaves the connection
+     * open.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testOpenQueryWithConnection() throws Exception {
+        try (QueryConnection connection = queryService.getQueryConnection(false)) {
+            try (QueryCursor<String> cursor = queryService.openQuery(connection, QUERY, new NameCallback())) {
+                Assert.assertTrue(cursor.next());
+            }
+            Mockito.verify(mockStatement).close();
+            Mockito.verify(mockConnection, Mockito.never()).close();
+        }
+        Mockito.verify(mockConnection).close();
+    }
+
+    /**
+     * Test that a cursor over a prepared statement restores the fetch size of
+     * the statement when it is closed.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testOpenPreparedQueryRestoresFetchSize() throws Exception {
+        PreparedStatement mockPreparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.doReturn(mockResultSet).when(mockPreparedStatement).executeQuery();
+        Mockito.when(mockPreparedStatement.getFetchSize()).thenReturn(0);
+        Mockito.doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(SLOW_QUERY);
+
+        try (QueryCursor<String> cursor = queryService.openQuery(SLOW_QUERY, new SlowExecutor(), new NameCallback())) {
+            Mockito.verify(mockPreparedStatement).setFetchSize(FETCH_SIZE);
+            Assert.assertTrue(cursor.next());
+        }
+
+        Mockito.verify(mockPreparedStatement).setFetchSize(0);
+        Mockito.verify(mockConnection).close();
+    }
+
+    /**
+     * Test that a cursor that fails to open with a runtime exception closes
+     * its connection.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testOpenQueryRuntimeException() throws Exception {
+        Mockito.doThrow(new IllegalStateException()).when(mockStatement).executeQuery(QUERY);
+
+        try {
+            queryService.openQuery(QUERY, new NameCallback());
+            Assert.fail("Expected an exception");
+        } catch (IllegalStateException exception) {
+            Mockito.verify(mockStatement).close();
+            Mockito.verify(mockConnection).close();
+        }
+    }
+
+    /**
+     * Test that a batched update resends the rows after a failed row when the
+     * driver stops executing the batch, and reports the failed row.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testBatchUpdate() throws Exception {
+        PreparedStatement mockPreparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(mockPreparedStatement.executeBatch())
+            .thenThrow(new BatchUpdateException(new int[] {1}))
+            .thenReturn(new int[] {1, 1});
+        Mockito.doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(UPDATE);
+
+        queryService.setBatchSize(4);
+
+        BatchResult result = queryService.batchUpdate(UPDATE, Arrays.asList("one", "two", "three", "four"), new NameBinder());
+
+        Assert.assertEquals(4, result.getRowCount());
+        Assert.assertEquals(3, result.getUpdateCount());
+        Assert.assertEquals(Collections.singletonList(1), result.getFailedRows());
+        Assert.assertFalse(result.isAborted());
+        Mockito.verify(mockPreparedStatement, Mockito.times(6)).addBatch();
+    }
+
+    /**
+     * Test that a failed row aborts a batched update in a transaction.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testBatchUpdateInTransaction() throws Exception {
+        PreparedStatement mockPreparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(mockPreparedStatement.executeBatch())
+            .thenReturn(new int[] {1, 1})
+            .thenThrow(new BatchUpdateException(new int[] {1}));
+        Mockito.doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(UPDATE);
+
+        queryService.setBatchSize(2);
+        queryService.setCommitBatches(1);
+
+        try (QueryConnection connection = queryService.getQueryConnection(true)) {
+            BatchResult result = queryService.batchUpdate(connection, UPDATE, Arrays.asList("one", "two", "three", "four", "five"), new NameBinder());
+
+            Assert.assertTrue(result.isAborted());
+            Assert.assertTrue(connection.isTransactionAborted());
+            Assert.assertEquals(2, result.getCommittedRowCount());
+            Assert.assertEquals(Collections.singletonList(3), result.getFailedRows());
+        }
+
+        Mockito.verify(mockConnection).commit();
+        Mockito.verify(mockConnection).rollback();
+    }
+
+    /**
+     * Test that queries are routed to a replica, except for a while after an
+     * update.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReplicaRouting() throws Exception {
+        ResultSet mockReplicaResultSet = Mockito.mock(ResultSet.class);
+        Statement mockReplicaStatement = Mockito.mock(Statement.class);
+        Mockito.doReturn(mockReplicaResultSet).when(mockReplicaStatement).executeQuery(QUERY);
+        Connection mockReplicaConnection = Mockito.mock(Connection.class);
+        Mockito.doReturn(mockReplicaStatement).when(mockReplicaConnection).createStatement();
+        DataSourceImpl mockReplicaDataSource = Mockito.mock(DataSourceImpl.class);
+        Mockito.doReturn(mockReplicaConnection).when(mockReplicaDataSource).getConnection();
+
+        queryService.addReplicaDataSource(mockReplicaDataSource);
+        queryService.setReadYourWritesWindow(60000L);
+
+        queryService.listQuery(QUERY, new NameCallback());
+        Mockito.verify(mockReplicaStatement).executeQuery(QUERY);
+        Mockito.verify(mockReplicaConnection).close();
+        Mockito.verify(mockStatement, Mockito.never()).executeQuery(QUERY);
+
+        queryService.update(UPDATE);
+        queryService.listQuery(QUERY, new NameCallback());
+        Mockito.verify(mockStatement).executeQuery(QUERY);
+        Mockito.verify(mockReplicaStatement, Mockito.times(1)).executeQuery(QUERY);
+    }
+
+    /**
+     * Test that statements are recorded under their normalised form, and that
+     * slow statements are counted with their parameters still bound.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStatistics() throws Exception {
+        queryService.listQuery(QUERY, new NameCallback());
+        queryService.listQuery(QUERY, new NameCallback());
+
+        Assert.assertEquals(1, queryService.getStatementCount());
+        QueryStatistics statistics = queryService.getQueryStatistics().get(0);
+        Assert.assertEquals(QUERY, statistics.getSql());
+        Assert.assertEquals(2, statistics.getCount());
+        Assert.assertEquals(2, statistics.getRows());
+        Assert.assertEquals(0, statistics.getErrorCount());
+
+        PreparedStatement mockPreparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.doReturn(mockResultSet).when(mockPreparedStatement).executeQuery();
+        Mockito.doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(SLOW_QUERY);
+
+        queryService.setSlowQueryThreshold(1L);
+        queryService.listQuery(SLOW_QUERY, new SlowExecutor(), new NameCallback());
+
+        Mockito.verify(mockPreparedStatement).setInt(1, 1);
+        Assert.assertEquals(1, queryService.getSlowQueryCount());
+        Assert.assertEquals(2, queryService.getStatementCount());
+        Assert.assertTrue(queryService.getStatementStatistics().containsKey(SLOW_QUERY));
+
+        queryService.resetStatistics();
+        Assert.assertEquals(0, queryService.getSlowQueryCount());
+        Assert.assertEquals(0, statistics.getCount());
+    }
+
+    /**
+     * This class provides a callback that reads a name.
+     */
+    private static final class NameCallback implements QueryCallback<String> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String callback(final QueryConnection connection, final ResultSet resultSet) throws SQLException {
+            return resultSet.getString(1);
+        }
+    }
+
+    /**
+     * This class provides an executor that binds an identifier and takes
+     * longer than the slow query threshold.
+     */
+    private static final class SlowExecutor implements QueryExecutor {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ResultSet query(final PreparedStatement statement) throws SQLException {
+            statement.setInt(1, 1);
+            try {
+                Thread.sleep(SLOW_QUERY_MILLIS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return statement.executeQuery();
+        }
+    }
+
+    /**
+     * This class provides a binder that binds a name.
+     */
+    private static final class NameBinder implements BatchBinder<String> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void bind(final PreparedStatement statement, final String obj) throws SQLException {
+            statement.setString(1, obj);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * @(#) QueryStatisticsRegistryTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the query statistics registry.
+ *
+ * @author Chris Wareham
+ */
+public class QueryStatisticsRegistryTest {
+    /**
+     * Test that statements differing only in literals share statistics, that
+     * statements beyond the maximum share a single set of statistics, and
+     * that statistics are ordered by total execution time.
+     */
+    @Test
+    public void testGetStatistics() {
+        QueryStatisticsRegistry registry = new QueryStatisticsRegistry();
+        registry.setMaxStatements(2);
+
+        QueryStatistics first = registry.getStatistics("SELECT name FROM users WHERE id = 1");
+        Assert.assertSame(first, registry.getStatistics("SELECT name FROM users WHERE id = 2"));
+        QueryStatistics second = registry.getStatistics("SELECT name FROM groups");
+        Assert.assertNotSame(first, second);
+        QueryStatistics other = registry.getStatistics("SELECT name FROM roles");
+        Assert.assertEquals("(other)", other.getSql());
+        Assert.assertSame(other, registry.getStatistics("SELECT name FROM permissions"));
+        Assert.assertEquals(3, registry.getStatementCount());
+
+        first.record(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        second.record(TimeUnit.MILLISECONDS.toNanos(10), 1);
+        List<QueryStatistics> list = registry.getQueryStatistics();
+        Assert.assertSame(second, list.get(0));
+        Assert.assertSame(first, list.get(1));
+        Assert.assertEquals("SELECT name FROM groups", registry.getStatementStatistics().keySet().iterator().next());
+
+        registry.reset();
+        Assert.assertEquals(0, second.getCount());
+    }
+}
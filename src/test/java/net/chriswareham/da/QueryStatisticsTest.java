@@ -0,0 +1,59 @@
+/*
+ * @(#) QueryStatisticsTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the query statistics.
+ *
+ * @author Chris Wareham
+ */
+public class QueryStatisticsTest {
+    /**
+     * Test that literals, comments, whitespace and lists of placeholders are
+     * normalised.
+     */
+    @Test
+    public void testNormalise() {
+        Assert.assertEquals("SELECT name FROM users WHERE id = ? AND name = ? AND type IN (?)",
+            QueryStatistics.normalise("SELECT name\n  FROM users -- comment\n WHERE id = 42 AND name = 'O''Brien' AND type IN (1, 2, 3)"));
+        Assert.assertEquals("SELECT t1.col2 FROM table3 t1 WHERE t1.x = ?",
+            QueryStatistics.normalise("SELECT /* hint */ t1.col2 FROM table3 t1 WHERE t1.x = 1.5e3"));
+        Assert.assertEquals("INSERT INTO users (id, name) VALUES (?)",
+            QueryStatistics.normalise("INSERT INTO users (id, name) VALUES (?, ?)"));
+    }
+
+    /**
+     * Test that the counts and percentiles are recorded.
+     */
+    @Test
+    public void testRecord() {
+        QueryStatistics statistics = new QueryStatistics("SELECT 1");
+        for (int i = 1; i <= 100; ++i) {
+            statistics.record(TimeUnit.MILLISECONDS.toNanos(i), 1);
+        }
+        statistics.recordError();
+
+        Assert.assertEquals(100, statistics.getCount());
+        Assert.assertEquals(100, statistics.getRows());
+        Assert.assertEquals(1, statistics.getErrorCount());
+        Assert.assertEquals(50.5, statistics.getMean(), 0.001);
+        Assert.assertEquals(100.0, statistics.getMax(), 0.001);
+
+        double median = statistics.getPercentile(50.0);
+        Assert.assertTrue(median >= 50.0 && median <= 50.0 * 1.125);
+        Assert.assertEquals(100.0, statistics.getPercentile(100.0), 0.001);
+
+        statistics.reset();
+        Assert.assertEquals(0, statistics.getCount());
+        Assert.assertEquals(0.0, statistics.getPercentile(50.0), 0.0);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * @(#) SegmentedDiskCacheStorageTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the segmented disk cache storage.
+ *
+ * @author Chris Wareham
+ */
+public class SegmentedDiskCacheStorageTest {
+    /**
+     * The storage directory.
+     */
+    private static final String STORAGE_DIRECTORY = "target/segments";
+    /**
+     * The maximum size of a segment.
+     */
+    private static final long SEGMENT_SIZE = 1024L;
+
+    /**
+     * The storage.
+     */
+    private SegmentedDiskCacheStorage storage;
+
+    /**
+     * Setup the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        File directory = new File(STORAGE_DIRECTORY);
+        directory.mkdirs();
+        storage = new SegmentedDiskCacheStorage();
+        storage.setSegmentSize(SEGMENT_SIZE);
+        storage.open(directory);
+    }
+
+    /**
+     * Teardown the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @After
+    public void tearDown() throws Exception {
+        storage.clear();
+        storage.close();
+        File directory = new File(STORAGE_DIRECTORY);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Test the SegmentedDiskCacheStorage::write() and
+     * SegmentedDiskCacheStorage::read() methods.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testWriteAndRead() throws Exception {
+        storage.write("1", bytes("one"));
+        storage.write("2", bytes("two"));
+        storage.write("1", bytes("uno"));
+        Assert.assertEquals("uno", string(storage.read("1")));
+        Assert.assertEquals("two", string(storage.read("2")));
+        Assert.assertTrue(storage.read("3") == null);
+        Assert.assertEquals(2, storage.getCount());
+    }
+
+    /**
+     * Test the SegmentedDiskCacheStorage::remove() method.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRemove() throws Exception {
+        storage.write("1", bytes("one"));
+        storage.remove("1");
+        Assert.assertFalse(storage.contains("1"));
+        Assert.assertTrue(storage.read("1") == null);
+    }
+
+    /**
+     * Test that objects are recovered when the storage is reopened, and that
+     * removed objects are not.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRecover() throws Exception {
+        for (int i = 0; i < 100; ++i) {
+            storage.write(Integer.toString(i), bytes("value" + i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            storage.remove(Integer.toString(i));
+        }
+        storage.close();
+        storage.open(new File(STORAGE_DIRECTORY));
+        Assert.assertEquals(50, storage.getCount());
+        Assert.assertTrue(storage.read("10") == null);
+        Assert.assertEquals("value11", string(storage.read("11")));
+    }
+
+    /**
+     * Test that replacing objects compacts segments.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        for (int round = 0; round < 50; ++round) {
+            for (int i = 0; i < 10; ++i) {
+                storage.write(Integer.toString(i), bytes("value" + i + "-" + round));
+            }
+        }
+        for (int attempt = 0; attempt < 100 && storage.getSize() > 4 * SEGMENT_SIZE; ++attempt) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(storage.getSize() <= 4 * SEGMENT_SIZE);
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals("value" + i + "-49", string(storage.read(Integer.toString(i))));
+        }
+        storage.close();
+        storage.open(new File(STORAGE_DIRECTORY));
+        Assert.assertEquals(10, storage.getCount());
+        Assert.assertEquals("value5-49", string(storage.read("5")));
+    }
+
+    /**
+     * Test reading objects from memory mapped segments.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMemoryMapped() throws Exception {
+        storage.close();
+        storage.setMemoryMapped(true);
+        storage.open(new File(STORAGE_DIRECTORY));
+        for (int i = 0; i < 100; ++i) {
+            storage.write(Integer.toString(i), bytes("value" + i));
+        }
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals("value" + i, string(storage.read(Integer.toString(i))));
+        }
+    }
+
+    /**
+     * Test the SegmentedDiskCacheStorage::purge() method.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testPurge() throws Exception {
+        storage.write("1", bytes("one"));
+        Thread.sleep(5);
+        long expiry = System.currentTimeMillis();
+        Thread.sleep(5);
+        storage.purge(expiry, new ReentrantLock());
+        Assert.assertFalse(storage.contains("1"));
+        storage.write("2", bytes("two"));
+        storage.purge(expiry, new ReentrantLock());
+        Assert.assertEquals("two", string(storage.read("2")));
+    }
+
+    /**
+     * Test that the SegmentedDiskCacheStorage::touch() method delays the
+     * expiry of an object, including after the storage is reopened, while an
+     * object in the same segment that is not touched expires.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testTouch() throws Exception {
+        storage.write("1", bytes("one"));
+        storage.write("2", new byte[(int) SEGMENT_SIZE - 64]);
+        Thread.sleep(5);
+        long expiry = System.currentTimeMillis();
+        Thread.sleep(5);
+        storage.touch("1");
+        storage.touch("3");
+        storage.purge(expiry, new ReentrantLock());
+        Assert.assertEquals("one", string(storage.read("1")));
+        Assert.assertFalse(storage.contains("2"));
+        Assert.assertFalse(storage.contains("3"));
+        storage.close();
+        storage.open(new File(STORAGE_DIRECTORY));
+        storage.purge(expiry, new ReentrantLock());
+        Assert.assertEquals(1, storage.getCount());
+        Assert.assertEquals("one", string(storage.read("1")));
+    }
+
+    /**
+     * Encode a string.
+     *
+     * @param s the string
+     * @return the encoded string
+     */
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode a string.
+     *
+     * @param b the encoded string
+     * @return the string
+     */
+    private static String string(final byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
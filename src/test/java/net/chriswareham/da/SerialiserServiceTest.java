@@ -69,4 +69,22 @@ public class SerialiserServiceTest {
         String deserialised = serialiserService.deserialise(serialised, String.class);
         Assert.assertEquals("Deserialised string should match test string", testString, deserialised);
     }
+
+    /**
+     * Test the deserialise method with a compressing codec.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDeserialiseWithCodec() throws Exception {
+        DeflateCodec codec = new DeflateCodec();
+        codec.setCodec(new ExternalizableCodec());
+        SerialiserServiceImpl impl = new SerialiserServiceImpl();
+        impl.setKey(impl.generateKey());
+        impl.setCodec(codec);
+        String testString = "TEST STRING";
+        String serialised = impl.serialise(testString);
+        String deserialised = impl.deserialise(serialised, String.class);
+        Assert.assertEquals("Deserialised string should match test string", testString, deserialised);
+    }
 }
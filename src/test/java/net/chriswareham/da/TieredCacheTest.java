@@ -0,0 +1,198 @@
+/*
+ * @(#) TieredCacheTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.da;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides a unit test for the tiered cache.
+ *
+ * @author Chris Wareham
+ */
+public class TieredCacheTest {
+    /**
+     * The cache directory.
+     */
+    private static final String CACHE_DIRECTORY = "target/tieredcache";
+    /**
+     * The maximum number of objects in the memory tier.
+     */
+    private static final int MAX_ENTRIES = 2;
+
+    /**
+     * The memory tier.
+     */
+    private MemoryCache<Integer, TestObject> memoryCache;
+    /**
+     * The disk tier.
+     */
+    private DiskCache<Integer, TestObject> diskCache;
+    /**
+     * The tiered cache.
+     */
+    private TieredCache<Integer, TestObject> cache;
+
+    /**
+     * Setup the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        memoryCache = new MemoryCache<>();
+        memoryCache.setMaxEntries(MAX_ENTRIES);
+        memoryCache.start();
+        diskCache = new DiskCache<>();
+        diskCache.setCacheDirectory(CACHE_DIRECTORY);
+        diskCache.start();
+        cache = new TieredCache<>();
+        cache.setMemoryCache(memoryCache);
+        cache.setDiskCache(diskCache);
+        cache.start();
+    }
+
+    /**
+     * Teardown the test fixture.
+     *
+     * @throws Exception if an error occurs
+     */
+    @After
+    public void tearDown() throws Exception {
+        cache.flush();
+        cache.stop();
+        diskCache.stop();
+        memoryCache.stop();
+        new File(CACHE_DIRECTORY).delete();
+    }
+
+    /**
+     * Test that objects evicted from the memory tier are demoted to the disk
+     * tier, and promoted back when fetched.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDemoteAndPromote() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            cache.store(i, new TestObject(i));
+        }
+        awaitDemotions(3);
+        Assert.assertEquals(MAX_ENTRIES, memoryCache.fetch().size());
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertEquals(i, cache.fetch(i).getId());
+        }
+        Assert.assertTrue(cache.getPromotionCount() > 0);
+        Assert.assertEquals(5, cache.getHitCount());
+    }
+
+    /**
+     * Test the TieredCache::fetchAll() method.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFetchAll() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            cache.store(i, new TestObject(i));
+        }
+        awaitDemotions(3);
+        Map<Integer, TestObject> objs = cache.fetchAll(Arrays.asList(0, 1, 2, 3, 4, 5));
+        Assert.assertEquals(5, objs.size());
+        Assert.assertTrue(objs.get(5) == null);
+    }
+
+    /**
+     * Test that flushing an object removes it from both tiers.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testFlush() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            cache.store(i, new TestObject(i));
+        }
+        awaitDemotions(3);
+        cache.flush(0);
+        cache.flush(4);
+        Assert.assertTrue(cache.fetch(0) == null);
+        Assert.assertTrue(cache.fetch(4) == null);
+        Assert.assertTrue(diskCache.fetch(0) == null);
+    }
+
+    /**
+     * Test that the objects in the memory tier are written to the disk tier
+     * when the cache is stopped.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStopWritesMemoryTier() throws Exception {
+        for (int i = 0; i < MAX_ENTRIES; ++i) {
+            cache.store(i, new TestObject(i));
+        }
+        Assert.assertTrue(diskCache.fetch(0) == null);
+        cache.stop();
+        for (int i = 0; i < MAX_ENTRIES; ++i) {
+            Assert.assertEquals(i, diskCache.fetch(i).getId());
+        }
+        cache.start();
+    }
+
+    /**
+     * Wait for objects to be demoted.
+     *
+     * @param count the number of demotions to wait for
+     * @throws Exception if an error occurs
+     */
+    private void awaitDemotions(final int count) throws Exception {
+        for (int attempt = 0; attempt < 100 && cache.getDemotionCount() < count; ++attempt) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, cache.getDemotionCount());
+    }
+
+    /**
+     * This class provides a test object suitable for caching.
+     */
+    private static class TestObject implements Serializable {
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The id of the test object.
+         */
+        private final int id;
+
+        /**
+         * Constructs a new instance of a test object.
+         *
+         * @param i the id of the test object
+         */
+        TestObject(final int i) {
+            id = i;
+        }
+
+        /**
+         * Get the id of the test object.
+         *
+         * @return the id of the test object
+         */
+        public int getId() {
+            return id;
+        }
+    }
+}
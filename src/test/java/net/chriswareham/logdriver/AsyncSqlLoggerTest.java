@@ -0,0 +1,131 @@
+/*
+ * @(#) AsyncSqlLoggerTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides tests for the asynchronous SQL logger.
+ *
+ * @author Chris Wareham
+ */
+public class AsyncSqlLoggerTest {
+    /**
+     * The maximum number of milliseconds to wait for messages to be logged.
+     */
+    private static final long FLUSH_TIMEOUT = 5000L;
+
+    /**
+     * The logger messages are written to.
+     */
+    private final Logger logger = Logger.getLogger(AsyncSqlLoggerTest.class);
+    /**
+     * The level of the logger before the test.
+     */
+    private Level level;
+    /**
+     * The appender that records the logged messages.
+     */
+    private RecordingAppender appender;
+
+    /**
+     * Set up the logger.
+     */
+    @Before
+    public void before() {
+        level = logger.getLevel();
+        logger.setLevel(Level.DEBUG);
+        appender = new RecordingAppender();
+        logger.addAppender(appender);
+    }
+
+    /**
+     * Restore the logger.
+     */
+    @After
+    public void after() {
+        logger.removeAppender(appender);
+        logger.setLevel(level);
+    }
+
+    /**
+     * Test that the detail of a message is converted to a string when it is
+     * logged, rather than when it is written.
+     */
+    @Test
+    public void testDetail() {
+        StringBuilder detail = new StringBuilder("before");
+        AsyncSqlLogger.getInstance().log(logger, "Detail: ", detail);
+        detail.setLength(0);
+        detail.append("after");
+
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals("Detail: before", appender.messages.get(0));
+    }
+
+    /**
+     * Test that shutting down writes the messages logged so far, and that
+     * logging another message starts the background thread again.
+     */
+    @Test
+    public void testShutdown() {
+        for (int i = 0; i < 100; ++i) {
+            AsyncSqlLogger.getInstance().log(logger, "Message " + i);
+        }
+        Assert.assertTrue(AsyncSqlLogger.getInstance().shutdown(FLUSH_TIMEOUT));
+        Assert.assertEquals(100, appender.messages.size());
+
+        AsyncSqlLogger.getInstance().log(logger, "Restarted");
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals("Restarted", appender.messages.get(100));
+    }
+
+    /**
+     * This class provides an appender that records the logged messages.
+     */
+    private static final class RecordingAppender extends AppenderSkeleton {
+        /**
+         * The logged messages.
+         */
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void append(final LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
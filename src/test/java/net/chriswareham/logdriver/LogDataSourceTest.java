@@ -7,6 +7,9 @@
 package net.chriswareham.logdriver;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 
 import javax.sql.DataSource;
 
@@ -34,11 +37,27 @@ public class LogDataSourceTest {
      * The password.
      */
     private static final String PASSWORD = "password";
+    /**
+     * The SQL of the query.
+     */
+    private static final String QUERY_SQL = "SELECT name FROM users WHERE id = ?";
+    /**
+     * The SQL of the update.
+     */
+    private static final String UPDATE_SQL = "UPDATE users SET name = 'x' WHERE id = 42";
 
     /**
      * The instance to test.
      */
     private LogDataSource logDataSource;
+    /**
+     * The mock prepared statement.
+     */
+    private PreparedStatement mockPreparedStatement;
+    /**
+     * The mock statement.
+     */
+    private Statement mockStatement;
 
     /**
      * Set up the instance to test.
@@ -47,7 +66,19 @@ public class LogDataSourceTest {
      */
     @Before
     public void before() throws Exception {
+        ResultSet mockResultSet = Mockito.mock(ResultSet.class);
+        Mockito.doReturn(true).doReturn(true).doReturn(true).doReturn(false).when(mockResultSet).next();
+
+        mockPreparedStatement = Mockito.mock(PreparedStatement.class);
+        Mockito.doReturn(mockResultSet).when(mockPreparedStatement).executeQuery();
+        Mockito.doReturn(new int[] {1, 1}).when(mockPreparedStatement).executeBatch();
+
+        mockStatement = Mockito.mock(Statement.class);
+        Mockito.doReturn(2).when(mockStatement).executeUpdate(UPDATE_SQL);
+
         Connection mockConnection = Mockito.mock(Connection.class);
+        Mockito.doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(QUERY_SQL);
+        Mockito.doReturn(mockStatement).when(mockConnection).createStatement();
 
         DataSource mockDataSource = Mockito.mock(DataSource.class);
         Mockito.doReturn(mockConnection).when(mockDataSource).getConnection();
@@ -96,4 +127,89 @@ public class LogDataSourceTest {
     public void testSetLoginTimeout() throws Exception {
         logDataSource.setLoginTimeout(LOGIN_TIMEOUT);
     }
+
+    /**
+     * Test that metrics are recorded.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        logDataSource.setMetrics(true);
+        logDataSource.setMetricsName(LogDataSourceTest.class.getName() + ".testMetrics");
+        JdbcMetrics metrics = logDataSource.getMetrics();
+        metrics.resetStatistics();
+
+        Connection connection = logDataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(QUERY_SQL);
+        ResultSet resultSet = statement.executeQuery();
+        Assert.assertSame(statement, resultSet.getStatement());
+        while (resultSet.next()) {
+            resultSet.getString(1);
+        }
+        resultSet.close();
+
+        statement.addBatch();
+        statement.addBatch();
+        statement.executeBatch();
+
+        connection.createStatement().executeUpdate(UPDATE_SQL);
+        connection.commit();
+
+        Assert.assertEquals(1L, metrics.getConnectionOpenCount());
+        Assert.assertEquals(1L, metrics.getCommitCount());
+        Assert.assertEquals(0L, metrics.getRollbackCount());
+        Assert.assertEquals(3L, metrics.getRowsFetched());
+        Assert.assertEquals(1L, metrics.getBatchCount());
+        Assert.assertEquals(2L, metrics.getMaxBatchSize());
+        Assert.assertEquals(2, metrics.getStatementCount());
+
+        Assert.assertEquals(2L, metrics.getStatistics(QUERY_SQL).getCount());
+        Assert.assertEquals(5L, metrics.getStatistics(QUERY_SQL).getRows());
+        Assert.assertEquals(1L, metrics.getStatistics(UPDATE_SQL).getCount());
+        Assert.assertEquals(2L, metrics.getStatistics(UPDATE_SQL).getRows());
+        Assert.assertTrue(metrics.getStatementStatistics().containsKey("UPDATE users SET name = ? WHERE id = ?"));
+        Assert.assertTrue(metrics.getSummary().contains("rows fetched:[3]"));
+    }
+
+    /**
+     * Test that the rows fetched from a result set are recorded when the
+     * result set is closed by its statement.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMetricsStatementClose() throws Exception {
+        logDataSource.setMetrics(true);
+        logDataSource.setMetricsName(LogDataSourceTest.class.getName() + ".testMetricsStatementClose");
+        JdbcMetrics metrics = logDataSource.getMetrics();
+        metrics.resetStatistics();
+
+        Connection connection = logDataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(QUERY_SQL);
+        ResultSet resultSet = statement.executeQuery();
+        Assert.assertTrue(resultSet.next());
+        resultSet = statement.executeQuery();
+        Assert.assertTrue(resultSet.next());
+        Assert.assertTrue(resultSet.next());
+        statement.close();
+        resultSet.close();
+        connection.close();
+
+        Assert.assertEquals(3L, metrics.getRowsFetched());
+        Assert.assertEquals(3L, metrics.getStatistics(QUERY_SQL).getRows());
+    }
+
+    /**
+     * Test that metrics are not recorded unless enabled.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testMetricsDisabled() throws Exception {
+        Assert.assertNull(logDataSource.getMetrics());
+
+        ResultSet resultSet = logDataSource.getConnection().prepareStatement(QUERY_SQL).executeQuery();
+        Assert.assertFalse(resultSet instanceof LogResultSet);
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * @(#) LogPreparedStatementTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.Mockito;
+
+/**
+ * This class provides tests for the logging JDBC prepared statement.
+ *
+ * @author Chris Wareham
+ */
+public class LogPreparedStatementTest {
+    /**
+     * The SQL.
+     */
+    private static final String SQL = "SELECT name FROM users WHERE id = ? AND type = ? AND score > ?";
+    /**
+     * The maximum number of milliseconds to wait for messages to be logged.
+     */
+    private static final long FLUSH_TIMEOUT = 5000L;
+    /**
+     * The number of milliseconds after which a statement is slow.
+     */
+    private static final long SLOW_THRESHOLD = 20L;
+
+    /**
+     * The logger of the prepared statement.
+     */
+    private final Logger logger = Logger.getLogger(LogPreparedStatement.class);
+    /**
+     * The level of the logger before the test.
+     */
+    private Level level;
+    /**
+     * The appender that records the logged messages.
+     */
+    private RecordingAppender appender;
+    /**
+     * The mock prepared statement.
+     */
+    private PreparedStatement mockStatement;
+    /**
+     * The instance to test.
+     */
+    private LogConnection logConnection;
+    /**
+     * The mock connection.
+     */
+    private Connection mockConnection;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        level = logger.getLevel();
+        appender = new RecordingAppender();
+        logger.addAppender(appender);
+
+        mockStatement = Mockito.mock(PreparedStatement.class);
+        mockConnection = Mockito.mock(Connection.class);
+        Mockito.doReturn(mockStatement).when(mockConnection).prepareStatement(SQL);
+
+        logConnection = new LogConnection(mockConnection);
+    }
+
+    /**
+     * Tear down the instance to test.
+     */
+    @After
+    public void after() {
+        logger.removeAppender(appender);
+        logger.setLevel(level);
+    }
+
+    /**
+     * Test that a statement is logged asynchronously with its bind
+     * parameters.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLogStatement() throws Exception {
+        logger.setLevel(Level.DEBUG);
+
+        PreparedStatement statement = logConnection.prepareStatement(SQL);
+        statement.setInt(1, 42);
+        statement.setString(2, "admin");
+        statement.setDouble(3, 1.5);
+        statement.executeQuery();
+
+        Mockito.verify(mockStatement).setInt(1, 42);
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals(1, appender.messages.size());
+        Assert.assertEquals("Executing query: " + SQL + " Bind parameters: {1=42, 2=admin, 3=1.5}", appender.messages.get(0));
+
+        statement.clearParameters();
+        statement.setNull(1, 0);
+        statement.executeUpdate();
+
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals("Executing update: " + SQL + " Bind parameters: {1=null}", appender.messages.get(1));
+    }
+
+    /**
+     * Test that bind parameters are not recorded while logging is disabled.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLoggingDisabled() throws Exception {
+        logger.setLevel(Level.INFO);
+
+        PreparedStatement statement = logConnection.prepareStatement(SQL);
+        statement.setInt(1, 42);
+        statement.executeQuery();
+
+        logger.setLevel(Level.DEBUG);
+        statement.executeQuery();
+
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals(1, appender.messages.size());
+        Assert.assertEquals("Executing query: " + SQL, appender.messages.get(0));
+    }
+
+    /**
+     * Test that bind parameters set while logging was disabled are not logged
+     * with the stale values recorded before, until the parameters are
+     * cleared.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testStaleBindParameters() throws Exception {
+        logger.setLevel(Level.DEBUG);
+
+        PreparedStatement statement = logConnection.prepareStatement(SQL);
+        statement.setInt(1, 42);
+        statement.executeQuery();
+
+        logger.setLevel(Level.INFO);
+        statement.setInt(1, 7);
+        statement.executeQuery();
+
+        logger.setLevel(Level.DEBUG);
+        statement.executeQuery();
+
+        statement.clearParameters();
+        statement.setInt(1, 8);
+        statement.executeQuery();
+
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals(3, appender.messages.size());
+        Assert.assertEquals("Executing query: " + SQL + " Bind parameters: {1=42}", appender.messages.get(0));
+        Assert.assertEquals("Executing query: " + SQL, appender.messages.get(1));
+        Assert.assertEquals("Executing query: " + SQL + " Bind parameters: {1=8}", appender.messages.get(2));
+    }
+
+    /**
+     * Test that only slow statements are logged when a slow threshold is set,
+     * once they have executed.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testSlowThreshold() throws Exception {
+        logger.setLevel(Level.DEBUG);
+
+        StatementTracer tracer = new StatementTracer();
+        tracer.setSlowThreshold(SLOW_THRESHOLD);
+        Mockito.doReturn(1).doAnswer(invocation -> {
+            Thread.sleep(SLOW_THRESHOLD * 2);
+            return 1;
+        }).when(mockStatement).executeUpdate();
+
+        LogConfig config = new LogConfig();
+        config.setTracer(tracer);
+        PreparedStatement statement = new LogConnection(mockConnection, config).prepareStatement(SQL);
+        statement.setInt(1, 42);
+        statement.executeUpdate();
+        statement.executeUpdate();
+
+        Assert.assertTrue(AsyncSqlLogger.getInstance().flush(FLUSH_TIMEOUT));
+        Assert.assertEquals(1, appender.messages.size());
+        Assert.assertTrue(appender.messages.get(0).startsWith("Executing update: " + SQL + " Bind parameters: {1=42} Elapsed: "));
+    }
+
+    /**
+     * This class provides an appender that records the logged messages.
+     */
+    private static final class RecordingAppender extends AppenderSkeleton {
+        /**
+         * The logged messages.
+         */
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void append(final LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
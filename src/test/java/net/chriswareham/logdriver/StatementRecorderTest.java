@@ -0,0 +1,120 @@
+/*
+ * @(#) StatementRecorderTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This class provides tests for the recorder of recent statements.
+ *
+ * @author Chris Wareham
+ */
+public class StatementRecorderTest {
+    /**
+     * The SQL of the query.
+     */
+    private static final String QUERY_SQL = "SELECT name FROM users WHERE id = ?";
+    /**
+     * The SQL of the update.
+     */
+    private static final String UPDATE_SQL = "UPDATE users SET name = ? WHERE id = ?";
+
+    /**
+     * Test that statements are dumped oldest first with their bind
+     * parameters, row counts and failures.
+     */
+    @Test
+    public void testDump() {
+        StatementRecorder recorder = new StatementRecorder("testDump", 8);
+
+        BindParameters binds = new BindParameters();
+        binds.setLong(1, 42L);
+        recorder.record(recorder.intern(QUERY_SQL), binds, TimeUnit.MILLISECONDS.toNanos(2L), -1L, false);
+        binds.clear();
+        binds.setObject(1, "x");
+        binds.setLong(2, 42L);
+        recorder.record(recorder.intern(UPDATE_SQL), binds, TimeUnit.MILLISECONDS.toNanos(1L), 1L, false);
+        recorder.record(recorder.intern(UPDATE_SQL), null, TimeUnit.MILLISECONDS.toNanos(1L), -1L, true);
+
+        String[] lines = recorder.dump().split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0].contains("[" + Thread.currentThread().getName() + "] 2.000ms " + QUERY_SQL + " Bind parameters: {1=42}"));
+        Assert.assertTrue(lines[1].endsWith("1.000ms rows:[1] " + UPDATE_SQL + " Bind parameters: {1=x, 2=42}"));
+        Assert.assertTrue(lines[2].endsWith("1.000ms FAILED " + UPDATE_SQL));
+        Assert.assertEquals(3L, recorder.getRecordedCount());
+    }
+
+    /**
+     * Test that only the most recent statements are held once the ring buffer
+     * wraps.
+     */
+    @Test
+    public void testWrap() {
+        StatementRecorder recorder = new StatementRecorder("testWrap", 3);
+        Assert.assertEquals(4, recorder.getCapacity());
+
+        for (int i = 0; i < 10; ++i) {
+            recorder.record("SELECT " + i, null, 0L, -1L, false);
+        }
+
+        String[] lines = recorder.dump().split("\n");
+        Assert.assertEquals(4, lines.length);
+        for (int i = 0; i < 4; ++i) {
+            Assert.assertTrue(lines[i].endsWith("SELECT " + (i + 6)));
+        }
+    }
+
+    /**
+     * Test that SQL is interned.
+     */
+    @Test
+    public void testIntern() {
+        StatementRecorder recorder = new StatementRecorder("testIntern", 8);
+        String sql = recorder.intern(new String(QUERY_SQL));
+        Assert.assertSame(sql, recorder.intern(new String(QUERY_SQL)));
+    }
+
+    /**
+     * Test that every statement recorded by concurrent threads is either
+     * recorded or counted as dropped.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final int threadCount = 4;
+        final int statements = 100000;
+        StatementRecorder recorder = new StatementRecorder("testConcurrentRecording", 1024);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; ++i) {
+            Thread thread = new Thread(() -> {
+                BindParameters binds = new BindParameters();
+                for (int j = 0; j < statements; ++j) {
+                    binds.setLong(1, j);
+                    recorder.record(QUERY_SQL, binds, j, 1L, false);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(recorder.dump().split("\n").length <= recorder.getCapacity());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals((long) threadCount * statements, recorder.getRecordedCount() + recorder.getDroppedCount());
+        Assert.assertEquals(recorder.getCapacity(), recorder.dump().split("\n").length);
+    }
+}
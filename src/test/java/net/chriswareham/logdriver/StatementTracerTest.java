@@ -0,0 +1,120 @@
+/*
+ * @(#) StatementTracerTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This class provides tests for the statement tracer.
+ *
+ * @author Chris Wareham
+ */
+public class StatementTracerTest {
+    /**
+     * The SQL.
+     */
+    private static final String SQL = "SELECT name FROM users WHERE id = ?";
+    /**
+     * Another SQL statement.
+     */
+    private static final String OTHER_SQL = "SELECT name FROM groups WHERE id = ?";
+
+    /**
+     * The instance to test.
+     */
+    private final StatementTracer tracer = new StatementTracer();
+
+    /**
+     * Test that every statement is traced by default.
+     */
+    @Test
+    public void testDefaults() {
+        Assert.assertFalse(tracer.isEnabled());
+        Assert.assertFalse(tracer.isDeferred());
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(tracer.trace(SQL));
+        }
+        Assert.assertEquals(0L, tracer.getSuppressedCount());
+    }
+
+    /**
+     * Test that one in every N statements is traced.
+     */
+    @Test
+    public void testSampleInterval() {
+        tracer.setSampleInterval(10);
+        Assert.assertTrue(tracer.isEnabled());
+
+        int traced = 0;
+        for (int i = 0; i < 100; ++i) {
+            if (tracer.trace(SQL)) {
+                ++traced;
+            }
+        }
+        Assert.assertEquals(10, traced);
+        Assert.assertEquals(90L, tracer.getSuppressedCount());
+    }
+
+    /**
+     * Test that statements are traced with a probability.
+     */
+    @Test
+    public void testSampleProbability() {
+        tracer.setSampleProbability(0.0);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertFalse(tracer.trace(SQL));
+        }
+
+        tracer.setSampleProbability(0.5);
+        int traced = 0;
+        for (int i = 0; i < 10000; ++i) {
+            if (tracer.trace(SQL)) {
+                ++traced;
+            }
+        }
+        Assert.assertTrue(traced > 4000 && traced < 6000);
+    }
+
+    /**
+     * Test that each statement is traced at most a number of times per
+     * second.
+     */
+    @Test
+    public void testRateLimit() {
+        tracer.setRateLimit(5);
+
+        int traced = 0;
+        int otherTraced = 0;
+        for (int i = 0; i < 20; ++i) {
+            if (tracer.trace(SQL)) {
+                ++traced;
+            }
+            if (tracer.trace(OTHER_SQL)) {
+                ++otherTraced;
+            }
+        }
+        Assert.assertTrue(traced >= 5 && traced < 20);
+        Assert.assertTrue(otherTraced >= 5 && otherTraced < 20);
+        Assert.assertTrue(tracer.trace(null));
+    }
+
+    /**
+     * Test that only slow statements are traced when a slow threshold is set.
+     */
+    @Test
+    public void testSlowThreshold() {
+        tracer.setSlowThreshold(100L);
+        Assert.assertTrue(tracer.isDeferred());
+        Assert.assertEquals(100L, tracer.getSlowThreshold());
+
+        Assert.assertFalse(tracer.traceSlow(SQL, TimeUnit.MILLISECONDS.toNanos(99L)));
+        Assert.assertTrue(tracer.traceSlow(SQL, TimeUnit.MILLISECONDS.toNanos(100L)));
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * @(#) WorkloadReplayerTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.logdriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class provides tests for recording and replaying a workload.
+ *
+ * @author Chris Wareham
+ */
+public class WorkloadReplayerTest {
+    /**
+     * The SQL to create the table.
+     */
+    private static final String CREATE_SQL = "CREATE TABLE orders (id INT PRIMARY KEY, name VARCHAR(50), amount DECIMAL(10,2), created TIMESTAMP)";
+    /**
+     * The SQL to insert an order.
+     */
+    private static final String INSERT_SQL = "INSERT INTO orders (id, name, amount, created) VALUES (?, ?, ?, ?)";
+    /**
+     * The SQL to select orders.
+     */
+    private static final String SELECT_SQL = "SELECT id, name FROM orders WHERE id > ?";
+    /**
+     * The timestamp of the orders.
+     */
+    private static final Timestamp CREATED = Timestamp.valueOf("2015-06-01 12:34:56.789");
+    /**
+     * The number of threads that record events concurrently.
+     */
+    private static final int THREADS = 8;
+    /**
+     * The number of events each thread records.
+     */
+    private static final int EVENTS_PER_THREAD = 5000;
+
+    /**
+     * The data source the workload is recorded from.
+     */
+    private DataSource sourceDataSource;
+    /**
+     * The data source the workload is replayed against.
+     */
+    private DataSource targetDataSource;
+
+    /**
+     * Set up the databases.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        sourceDataSource = createDataSource("workloadsource");
+        targetDataSource = createDataSource("workloadtarget");
+    }
+
+    /**
+     * Test a workload recorded through a logging data source is replayed with
+     * the same results.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReplay() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadRecorder recorder = new WorkloadRecorder(out);
+        LogDataSource logDataSource = new LogDataSource(sourceDataSource);
+        logDataSource.setWorkloadRecorder(recorder);
+
+        try (Connection connection = logDataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                statement.setInt(1, 1);
+                statement.setString(2, "first");
+                statement.setBigDecimal(3, new BigDecimal("12.50"));
+                statement.setTimestamp(4, CREATED);
+                statement.executeUpdate();
+                for (int id = 2; id <= 3; ++id) {
+                    statement.setInt(1, id);
+                    statement.setString(2, "batch");
+                    statement.setNull(3, Types.DECIMAL);
+                    statement.setTimestamp(4, CREATED);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE orders SET name = 'updated' WHERE id = 3");
+            }
+            connection.commit();
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+                statement.setInt(1, 0);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Assert.assertNotNull(resultSet.getString(2));
+                    }
+                }
+            }
+        }
+
+        try (Connection connection = logDataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO orders (id, name) VALUES (4, 'rolled back')");
+            }
+            connection.rollback();
+        }
+        recorder.close();
+        Assert.assertEquals(16L, recorder.getEventCount());
+
+        WorkloadReplayer replayer = new WorkloadReplayer(targetDataSource);
+        replayer.setTimed(false);
+        replayer.replay(new ByteArrayInputStream(out.toByteArray()));
+
+        Assert.assertEquals(0L, replayer.getErrorCount());
+        Assert.assertEquals(2, replayer.getConnectionCount());
+        Assert.assertEquals(3L, replayer.getRowsFetched());
+        try (Connection connection = targetDataSource.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT id, name, amount, created FROM orders ORDER BY id")) {
+            Assert.assertTrue(resultSet.next());
+            Assert.assertEquals(1, resultSet.getInt(1));
+            Assert.assertEquals("first", resultSet.getString(2));
+            Assert.assertEquals(new BigDecimal("12.50"), resultSet.getBigDecimal(3));
+            Assert.assertEquals(CREATED, resultSet.getTimestamp(4));
+            Assert.assertTrue(resultSet.next());
+            Assert.assertEquals("batch", resultSet.getString(2));
+            Assert.assertNull(resultSet.getBigDecimal(3));
+            Assert.assertTrue(resultSet.next());
+            Assert.assertEquals("updated", resultSet.getString(2));
+            Assert.assertFalse(resultSet.next());
+        }
+    }
+
+    /**
+     * Test recorded events and bind parameters are read back unchanged.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testReadEvents() throws Exception {
+        BindParameters binds = new BindParameters();
+        binds.setLong(1, -42L);
+        binds.setNull(2);
+        binds.setBoolean(3, true);
+        binds.setDouble(4, 1.5);
+        binds.setObject(5, "caf\u00e9");
+        binds.setObject(7, new byte[] {1, 2, 3});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (WorkloadRecorder recorder = new WorkloadRecorder(out)) {
+            int connection = recorder.connect();
+            recorder.record(connection, (byte) (WorkloadRecorder.QUERY | WorkloadRecorder.PREPARED), SELECT_SQL, binds);
+            recorder.record(connection, (byte) (WorkloadRecorder.QUERY | WorkloadRecorder.PREPARED), SELECT_SQL, null);
+            recorder.record(connection, WorkloadRecorder.CLOSE, null, null);
+        }
+
+        try (WorkloadReader reader = new WorkloadReader(new ByteArrayInputStream(out.toByteArray()))) {
+            WorkloadReader.Event event = reader.read();
+            Assert.assertEquals(WorkloadRecorder.CONNECT, event.getType());
+            Assert.assertEquals(1, event.getConnection());
+
+            event = reader.read();
+            Assert.assertEquals(WorkloadRecorder.QUERY, event.getType());
+            Assert.assertTrue(event.isPrepared());
+            Assert.assertFalse(event.isCallable());
+            Assert.assertEquals(SELECT_SQL, event.getSql());
+            Object[] values = event.getBinds();
+            Assert.assertEquals(7, values.length);
+            Assert.assertEquals(-42L, values[0]);
+            Assert.assertNull(values[1]);
+            Assert.assertEquals(Boolean.TRUE, values[2]);
+            Assert.assertEquals(1.5, values[3]);
+            Assert.assertEquals("caf\u00e9", values[4]);
+            Assert.assertSame(WorkloadReader.UNSET, values[5]);
+            Assert.assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) values[6]);
+
+            event = reader.read();
+            Assert.assertEquals(SELECT_SQL, event.getSql());
+            Assert.assertEquals(0, event.getBinds().length);
+            Assert.assertTrue(event.getOffset() >= 0L);
+
+            event = reader.read();
+            Assert.assertEquals(WorkloadRecorder.CLOSE, event.getType());
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    /**
+     * Test events recorded concurrently, filling the buffer many times, are
+     * all read back intact.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadRecorder recorder = new WorkloadRecorder(out);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; ++i) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int connection = recorder.connect();
+                        BindParameters binds = new BindParameters();
+                        for (int j = 0; j < EVENTS_PER_THREAD; ++j) {
+                            binds.setLong(1, j);
+                            recorder.record(connection, (byte) (WorkloadRecorder.QUERY | WorkloadRecorder.PREPARED), SELECT_SQL, binds);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        recorder.close();
+        Assert.assertEquals(THREADS * (EVENTS_PER_THREAD + 1L), recorder.getEventCount());
+
+        long[] next = new long[THREADS + 1];
+        try (WorkloadReader reader = new WorkloadReader(new ByteArrayInputStream(out.toByteArray()))) {
+            for (WorkloadReader.Event event = reader.read(); event != null; event = reader.read()) {
+                if (event.getType() == WorkloadRecorder.QUERY) {
+                    Assert.assertEquals(SELECT_SQL, event.getSql());
+                    Assert.assertEquals(next[event.getConnection()]++, event.getBinds()[0]);
+                }
+            }
+        }
+        for (int i = 1; i <= THREADS; ++i) {
+            Assert.assertEquals(EVENTS_PER_THREAD, next[i]);
+        }
+    }
+
+    /**
+     * Create an in-memory database with the orders table.
+     *
+     * @param name the name of the database
+     * @return the data source of the database
+     * @throws Exception if an error occurs
+     */
+    private static DataSource createDataSource(final String name) throws Exception {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:" + name);
+        dataSource.setUser("SA");
+        dataSource.setPassword("");
+        try (Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE orders IF EXISTS");
+            statement.execute(CREATE_SQL);
+        }
+        return dataSource;
+    }
+}
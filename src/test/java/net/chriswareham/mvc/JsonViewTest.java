@@ -0,0 +1,180 @@
+/*
+ * @(#) JsonViewTest.java
+ *
+ * Copyright (C) 2015, Chris Wareham, All Rights Reserved
+ */
+
+package net.chriswareham.mvc;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.Mockito;
+
+import net.chriswareham.da.QueryCursor;
+
+/**
+ * This class provides a unit test for the JSON view.
+ *
+ * @author Chris Wareham
+ */
+public class JsonViewTest {
+    /**
+     * The name of the model.
+     */
+    private static final String MODEL_NAME = "results";
+
+    /**
+     * The mock response.
+     */
+    private HttpServletResponse mockResponse;
+    /**
+     * The response body.
+     */
+    private StringWriter body;
+    /**
+     * The instance to test.
+     */
+    private JsonView view;
+
+    /**
+     * Set up the instance to test.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void before() throws Exception {
+        body = new StringWriter();
+        mockResponse = Mockito.mock(HttpServletResponse.class);
+        Mockito.doReturn(new PrintWriter(body)).when(mockResponse).getWriter();
+
+        view = new JsonView();
+        view.addModelName(MODEL_NAME);
+    }
+
+    /**
+     * Test that a cursor of maps is rendered as an array of objects rather
+     * than as beans, in the same way as a collection of maps.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRenderCursorOfMaps() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("name", "one");
+        List<Map<String, Object>> rows = Arrays.asList(row, Collections.<String, Object>singletonMap("name", "two"));
+        ListCursor<Map<String, Object>> cursor = new ListCursor<>(rows);
+
+        Assert.assertEquals("{\"results\":[{\"name\":\"one\"},{\"name\":\"two\"}]}", render(cursor));
+        Assert.assertTrue(cursor.closed);
+
+        body.getBuffer().setLength(0);
+        Assert.assertEquals("{\"results\":[{\"name\":\"one\"},{\"name\":\"two\"}]}", render(rows));
+    }
+
+    /**
+     * Test that a cursor of scalars is rendered as an array of scalars.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRenderCursorOfScalars() throws Exception {
+        ListCursor<Object> cursor = new ListCursor<>(Arrays.<Object>asList("one", 2, true));
+
+        Assert.assertEquals("{\"results\":[\"one\",2,true]}", render(cursor));
+        Assert.assertTrue(cursor.closed);
+    }
+
+    /**
+     * Render a model.
+     *
+     * @param model the model
+     * @return the rendered JSON
+     * @throws Exception if an error occurs
+     */
+    private String render(final Object model) throws Exception {
+        view.render(Collections.<String, Object>singletonMap(MODEL_NAME, model), null, mockResponse, null);
+        return body.toString();
+    }
+
+    /**
+     * This class provides a cursor over a list.
+     *
+     * @param <T> the type of results
+     */
+    private static final class ListCursor<T> implements QueryCursor<T> {
+        /**
+         * The iterator over the results.
+         */
+        private final Iterator<T> iterator;
+        /**
+         * The current result.
+         */
+        private T current;
+        /**
+         * The number of results read.
+         */
+        private int count;
+        /**
+         * Whether the cursor is closed.
+         */
+        private boolean closed;
+
+        /**
+         * Construct an instance of the cursor.
+         *
+         * @param results the results
+         */
+        ListCursor(final List<T> results) {
+            iterator = results.iterator();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean next() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            if (current != null) {
+                ++count;
+            }
+            return current != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public T get() {
+            return current;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}